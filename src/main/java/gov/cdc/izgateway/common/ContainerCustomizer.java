@@ -1,25 +1,35 @@
 package gov.cdc.izgateway.common;
 
+import java.util.concurrent.ExecutorService;
+
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
 import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.stereotype.Component;
 
+import gov.cdc.izgateway.configuration.ServerConfiguration;
 import gov.cdc.izgateway.logging.LoggingValve;
 import gov.cdc.izgateway.security.AccessControlValve;
+import gov.cdc.izgateway.utils.UtilizationSampler;
+import gov.cdc.izgateway.utils.VirtualThreads;
 import lombok.extern.slf4j.Slf4j;
 
 @Component
 @Slf4j
-public class ContainerCustomizer implements WebServerFactoryCustomizer<TomcatServletWebServerFactory> {
+public class ContainerCustomizer implements WebServerFactoryCustomizer<TomcatServletWebServerFactory>, DisposableBean {
 
 	private LoggingValve loggingValve;
 	private AccessControlValve accessControlValve;
+	private ServerConfiguration serverConfig;
+	/** Tomcat does not shut down an executor it did not create, so this does on context close */
+	private ExecutorService virtualThreadExecutor;
 	
 	 @Autowired
-	 public ContainerCustomizer(LoggingValve loggingValve, AccessControlValve accessControlValve) {
+	 public ContainerCustomizer(LoggingValve loggingValve, AccessControlValve accessControlValve, ServerConfiguration serverConfig) {
 		this.loggingValve = loggingValve;
 		this.accessControlValve = accessControlValve;
+		this.serverConfig = serverConfig;
 	}
 	
     @Override
@@ -27,5 +37,24 @@ public class ContainerCustomizer implements WebServerFactoryCustomizer<TomcatSer
 
         log.info("Configuring embedded Tomcat");
         factory.addContextValves(loggingValve, accessControlValve);
+        factory.addProtocolHandlerCustomizers(UtilizationSampler.getDefault()::setConnector);
+        if (serverConfig.isVirtualThreads()) {
+        	if (VirtualThreads.isSupported()) {
+        		log.info("Running requests on virtual threads");
+        		ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+        		virtualThreadExecutor = executor;
+        		factory.addProtocolHandlerCustomizers(handler -> handler.setExecutor(executor));
+        	} else {
+        		log.warn("server.virtual-threads is set, but virtual threads require Java 21 or later, running requests on platform threads");
+        	}
+        }
+    }
+
+    @Override
+    public void destroy() {
+    	if (virtualThreadExecutor != null) {
+    		virtualThreadExecutor.shutdown();
+    		virtualThreadExecutor = null;
+    	}
     }
-}
\ No newline at end of file
+}
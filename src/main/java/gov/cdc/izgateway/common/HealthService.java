@@ -1,5 +1,7 @@
 package gov.cdc.izgateway.common;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 import gov.cdc.izgateway.logging.event.Health;
 import gov.cdc.izgateway.logging.markers.Markers2;
 import lombok.extern.slf4j.Slf4j;
@@ -7,7 +9,11 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class HealthService {
 	private HealthService() {}
+	/** Guards changes in health; a ReentrantLock rather than a monitor, so request threads that are virtual do not pin their carrier */
+	private static final ReentrantLock LOCK = new ReentrantLock();
 	private static Health health = new Health();
+	private static volatile boolean warmingUp = false;
+	private static String deferredHealthyReason = null;
 
    //overloaded setHealthy method  that is invoked when there is an exception
     public static void setHealthy(Throwable ex) {
@@ -15,12 +21,103 @@ public class HealthService {
         setHealthy(false, ex.getMessage());
     }
 
+    /**
+     * Set the health of the server.  While the server is warming up, marking it healthy is
+     * deferred until {@link #endWarmUp(String)} is called.
+     * @param b	True if the server is healthy
+     * @param message	The reason for the change
+     */
     public static void setHealthy(boolean b, String message) {
-    	health.setHealthy(b);
-    	health.setLastChangeReason(message);
-        log.info(Markers2.append("health", health), "Server health changed to {}", health.isHealthy() ? "healthy" : "not healthy");
+    	LOCK.lock();
+    	try {
+    		if (warmingUp) {
+    			deferredHealthyReason = b ? message : null;
+    			if (b) {
+    				log.info("Server will be marked healthy after warm-up: {}", message);
+    				return;
+    			}
+    		}
+    		health.setHealthy(b);
+    		health.setLastChangeReason(message);
+    		log.info(Markers2.append("health", health), "Server health changed to {}", health.isHealthy() ? "healthy" : "not healthy");
+    	} finally {
+    		LOCK.unlock();
+    	}
     }
 
+	/**
+	 * Start warming up.  Until {@link #endWarmUp(String)} is called, the server is not marked healthy.
+	 */
+	public static void startWarmUp() {
+		LOCK.lock();
+		try {
+			warmingUp = true;
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	/**
+	 * Finish warming up, and mark the server healthy if that was deferred by warm-up.
+	 * @param summary	A summary of the warm-up
+	 */
+	public static void endWarmUp(String summary) {
+		LOCK.lock();
+		try {
+			warmingUp = false;
+			if (deferredHealthyReason != null) {
+				String reason = deferredHealthyReason;
+				deferredHealthyReason = null;
+				setHealthy(true, reason + " (warm-up: " + summary + ")");
+			}
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	/**
+	 * Replace the health of the server, ending any warm-up without marking it healthy.  This
+	 * is used by tests to restore the health saved before they changed it.
+	 * @param saved	The health to restore
+	 */
+	static void restore(Health saved) {
+		LOCK.lock();
+		try {
+			health = saved.copy();
+			warmingUp = false;
+			deferredHealthyReason = null;
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
+	/**
+	 * @return true if the server is warming up
+	 */
+	public static boolean isWarmingUp() {
+		return warmingUp;
+	}
+
+	/**
+	 * Mark the server as degraded, or no longer degraded.  A degraded server is healthy, but saturated,
+	 * and rejects low priority requests, so load balancers should prefer other servers.
+	 * @param degraded	True if the server is degraded
+	 * @param reason	The reason
+	 */
+	public static void setDegraded(boolean degraded, String reason) {
+		LOCK.lock();
+		try {
+			if (health.isDegraded() == degraded) {
+				return;
+			}
+			health.setDegraded(degraded);
+			health.setDegradedReason(degraded ? reason : null);
+			log.info(Markers2.append("health", health), "Server {}", degraded ? "degraded: " + reason : "no longer degraded");
+		} finally {
+			LOCK.unlock();
+		}
+	}
+
 	public static Health getHealth() {
         return health.copy();
     }
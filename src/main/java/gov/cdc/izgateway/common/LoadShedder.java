@@ -0,0 +1,184 @@
+package gov.cdc.izgateway.common;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import gov.cdc.izgateway.utils.UtilizationSampler.Sample;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * LoadShedder decides when this server is saturated and should turn away low priority requests,
+ * so that it degrades gracefully rather than collapsing under load.
+ *
+ * It is fed each {@link Sample} taken by the {@link gov.cdc.izgateway.utils.UtilizationSampler}.  When any
+ * utilization exceeds its threshold, the server is marked degraded in {@link HealthService} and
+ * {@link #shouldShed(boolean)} reports that low priority requests should be rejected.  The server
+ * recovers when every utilization has fallen below its threshold times the recovery ratio,
+ * so that it does not flap between states while utilization hovers near a threshold.
+ * A threshold of 0 is not checked.
+ *
+ * @author Audacious Inquiry
+ */
+@Slf4j
+@Getter
+@Setter
+public class LoadShedder implements Consumer<Sample> {
+	private static final LoadShedder DEFAULT_SHEDDER = new LoadShedder();
+
+	/**
+	 * Statistics on load shedding.
+	 */
+	@Data
+	@Schema(description="Statistics on load shedding")
+	public static class Stats {
+		@Schema(description="True if load shedding is enabled")
+		private boolean enabled;
+		@Schema(description="True if low priority requests are being rejected")
+		private boolean shedding;
+		@Schema(description="The utilization that exceeded its threshold when shedding last started")
+		private String reason;
+		@Schema(description="The time shedding last started or stopped in milliseconds since the epoch")
+		private long since;
+		@Schema(description="Number of requests rejected")
+		private long shed;
+		@Schema(description="The most recent utilization sample")
+		private Sample utilization;
+	}
+
+	/** True to reject low priority requests when saturated */
+	private boolean enabled = false;
+	/** The process CPU load above which the server is saturated */
+	private double cpu = 0.90;
+	/** The fraction of the heap in use after garbage collection above which the server is saturated */
+	private double heap = 0.90;
+	/** The fraction of time spent in garbage collection above which the server is saturated */
+	private double gc = 0.20;
+	/** The fraction of connector threads busy above which the server is saturated */
+	private double threads = 0.90;
+	/** The number of requests waiting for a connector thread above which the server is saturated */
+	private int queue = 50;
+	/** The fraction of the maximum connections open above which the server is saturated */
+	private double connections = 0.90;
+	/** The fraction of each threshold that utilization must fall below to recover */
+	private double recovery = 0.80;
+
+	@Setter(AccessLevel.NONE)
+	private volatile boolean shedding = false;
+	@Setter(AccessLevel.NONE)
+	private volatile String reason;
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private volatile long since = System.currentTimeMillis();
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private volatile Sample latest;
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final LongAdder shed = new LongAdder();
+
+	/**
+	 * @return The load shedder of this server
+	 */
+	public static LoadShedder getDefault() {
+		return DEFAULT_SHEDDER;
+	}
+
+	/**
+	 * Update the state of the server from a utilization sample.
+	 * @param s	The sample
+	 */
+	@Override
+	public void accept(Sample s) {
+		latest = s;
+		if (!enabled) {
+			if (shedding) {
+				setShedding(false, "Load shedding disabled");
+			}
+			return;
+		}
+		if (!shedding) {
+			String over = getExceeded(s, 1.0);
+			if (over != null) {
+				setShedding(true, over);
+			}
+		} else if (getExceeded(s, recovery) == null) {
+			setShedding(false, "Utilization is below load shedding thresholds");
+		}
+	}
+
+	private synchronized void setShedding(boolean shedding, String reason) {
+		this.shedding = shedding;
+		this.since = System.currentTimeMillis();
+		if (shedding) {
+			this.reason = reason;
+			log.warn("Server is saturated ({}), rejecting low priority requests", reason);
+		} else {
+			log.info("Server is no longer saturated, accepting all requests");
+		}
+		HealthService.setDegraded(shedding, reason);
+	}
+
+	/**
+	 * Find the first utilization above its threshold
+	 * @param s	The sample
+	 * @param ratio	The fraction of each threshold to compare against
+	 * @return	A description of the utilization and threshold, or null if none is exceeded
+	 */
+	String getExceeded(Sample s, double ratio) {
+		if (exceeds(s.getProcessCpuLoad(), cpu, ratio)) {
+			return String.format("CPU %.0f%% > %.0f%%", s.getProcessCpuLoad() * 100, cpu * ratio * 100);
+		}
+		if (exceeds(s.getHeapAfterGc(), heap, ratio)) {
+			return String.format("heap after GC %.0f%% > %.0f%%", s.getHeapAfterGc() * 100, heap * ratio * 100);
+		}
+		if (exceeds(s.getGcTime(), gc, ratio)) {
+			return String.format("GC time %.0f%% > %.0f%%", s.getGcTime() * 100, gc * ratio * 100);
+		}
+		if (exceeds(s.getThreadsUsed(), threads, ratio)) {
+			return String.format("busy threads %d of %d > %.0f%%", s.getBusyThreads(), s.getMaxThreads(), threads * ratio * 100);
+		}
+		if (exceeds(s.getQueueDepth(), queue, ratio)) {
+			return String.format("queued requests %d > %.0f", s.getQueueDepth(), queue * ratio);
+		}
+		if (exceeds(s.getConnectionsUsed(), connections, ratio)) {
+			return String.format("connections %d of %d > %.0f%%", s.getConnections(), s.getMaxConnections(), connections * ratio * 100);
+		}
+		return null;
+	}
+
+	private static boolean exceeds(double value, double threshold, double ratio) {
+		return threshold > 0 && value > threshold * ratio;
+	}
+
+	/**
+	 * Decide whether to reject a request, counting those rejected.
+	 * @param lowPriority	True if the request is low priority
+	 * @return	True if the request should be rejected
+	 */
+	public boolean shouldShed(boolean lowPriority) {
+		if (lowPriority && shedding) {
+			shed.increment();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return	Statistics on load shedding
+	 */
+	public Stats getStats() {
+		Stats s = new Stats();
+		s.setEnabled(enabled);
+		s.setShedding(shedding);
+		s.setReason(reason);
+		s.setSince(since);
+		s.setShed(shed.sum());
+		s.setUtilization(latest);
+		return s;
+	}
+}
@@ -0,0 +1,262 @@
+package gov.cdc.izgateway.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.security.SecureRandom;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import gov.cdc.izgateway.logging.RequestContext;
+import gov.cdc.izgateway.logging.event.TransactionData;
+import gov.cdc.izgateway.logging.event.TransactionData.MessageType;
+import gov.cdc.izgateway.security.crypto.CryptoSupport;
+import gov.cdc.izgateway.soap.MockMessage;
+import gov.cdc.izgateway.soap.message.SoapMessage;
+import gov.cdc.izgateway.soap.message.SubmitSingleMessageRequest;
+import gov.cdc.izgateway.soap.message.SubmitSingleMessageResponse;
+import gov.cdc.izgateway.soap.net.SoapMessageConverter;
+import gov.cdc.izgateway.utils.HL7Utils;
+import gov.cdc.izgateway.utils.JsonUtils;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * WarmUp exercises the code paths of a request with synthetic messages at startup, so that
+ * they are compiled by the JIT before the server takes traffic.  While it runs, {@link HealthService}
+ * defers marking the server healthy.
+ *
+ * The warm-up runs rounds of the steps added with {@link #addStep(String, Step)}, timing each step.
+ * It stops when the mean time of every step has stayed within the tolerance of the previous round
+ * for the required number of rounds, or when the maximum duration has passed.  A step that fails
+ * is dropped, so that a missing provider (e.g., BCFIPS in a unit test) does not prevent warm-up.
+ *
+ * @author Audacious Inquiry
+ */
+@Slf4j
+public class WarmUp {
+	private static final String MESSAGE =
+		"MSH|^~\\&|WARMUP|WARMUP|TEST|TC_04|20240101120000-0500||VXU^V04^VXU_V04|%d|P|2.5.1|||ER|AL\r"
+		+ "PID|1||12345^^^WARMUP^MR||TEST^IZG^^^^^L||20200101|F|||123 MAIN ST^^ANYTOWN^MA^02101\r"
+		+ "ORC|RE||197023^WARMUP\r"
+		+ "RXA|0|1|20240101|20240101|08^HepB^CVX|0.5|mL^mL^UCUM||00^New^NIP001\r";
+
+	/**
+	 * A step of the warm-up.
+	 */
+	public interface Step {
+		/**
+		 * Run the step once.
+		 * @throws Exception	If the step fails
+		 */
+		void run() throws Exception;	// NOSONAR Any failure drops the step
+	}
+
+	/**
+	 * The outcome of a warm-up.
+	 */
+	@Data
+	public static class Result {
+		/** The time taken in milliseconds */
+		private long duration;
+		/** The number of rounds run */
+		private int rounds;
+		/** True if timings stabilized before the maximum duration passed */
+		private boolean stable;
+		/** The mean time in microseconds of each step in the first round */
+		private final Map<String, Double> before = new LinkedHashMap<>();
+		/** The mean time in microseconds of each step in the last round */
+		private final Map<String, Double> after = new LinkedHashMap<>();
+
+		@Override
+		public String toString() {
+			StringBuilder b = new StringBuilder();
+			b.append(String.format("%d ms, %d rounds, %s", duration, rounds, stable ? "stable" : "not stable"));
+			before.forEach((name, first) ->
+				b.append(String.format(", %s %.1f -> %.1f us", name, first, after.getOrDefault(name, Double.NaN))));
+			return b.toString();
+		}
+	}
+
+	private final Map<String, Step> steps = new LinkedHashMap<>();
+	private final long maxDuration;
+	private final int iterations;
+	private final double tolerance;
+	private final int stableRounds;
+
+	/**
+	 * Create a warm-up with no steps
+	 * @param maxDuration	The maximum time in milliseconds to run
+	 * @param iterations	The number of times each step runs in a round
+	 * @param tolerance	The fractional change in the mean time of a step between rounds that is stable
+	 * @param stableRounds	The number of consecutive stable rounds after which the warm-up stops
+	 */
+	public WarmUp(long maxDuration, int iterations, double tolerance, int stableRounds) {
+		this.maxDuration = maxDuration;
+		this.iterations = Math.max(1, iterations);
+		this.tolerance = tolerance;
+		this.stableRounds = Math.max(1, stableRounds);
+	}
+
+	/**
+	 * Add a step to the warm-up
+	 * @param name	The name of the step
+	 * @param step	The step
+	 * @return	this
+	 */
+	public WarmUp addStep(String name, Step step) {
+		steps.put(name, step);
+		return this;
+	}
+
+	/**
+	 * Add the steps of a request: parsing and writing SOAP messages, masking HL7, serializing
+	 * transaction data, verifying a JWT and AES-GCM encryption through the public {@link CryptoSupport} API, using a request for the TC_04
+	 * {@link MockMessage} and its response.
+	 * @return	this
+	 * @throws Exception	If the synthetic messages or keys cannot be created
+	 */
+	public WarmUp addRequestSteps() throws Exception {
+		SoapMessageConverter inbound = new SoapMessageConverter(SoapMessageConverter.INBOUND);
+		SoapMessageConverter outbound = new SoapMessageConverter(SoapMessageConverter.OUTBOUND);
+		SubmitSingleMessageRequest request = new SubmitSingleMessageRequest(String.format(MESSAGE, 1));
+		request.setSchema(SoapMessage.HUB_NS);
+		request.getHubHeader().setDestinationId("warmup");
+		request.updateAction(true);
+		byte[] requestBytes = toBytes(outbound, request);
+		// The bodies of mock responses are shared, write a copy of the body
+		SubmitSingleMessageResponse response = new SubmitSingleMessageResponse(
+			(SoapMessage) MockMessage.TC_04.getMessage(request).getBody(), SoapMessage.HUB_NS, true);
+		String responseHl7 = response.getHl7Message();
+
+		addStep("parse", () -> inbound.read(toInputMessage(requestBytes), null));
+		addStep("serialize", () -> {
+			toBytes(outbound, request);
+			toBytes(inbound, response);
+		});
+		addStep("mask", () -> {
+			HL7Utils.protectHL7Message(request.getHl7Message());
+			HL7Utils.analyzeHL7Response(responseHl7);
+		});
+		addStep("transactionData", () -> {
+			TransactionData t = new TransactionData();
+			t.setMessageType(MessageType.SUBMIT_SINGLE_MESSAGE);
+			t.setRequestHL7Message(request.getHl7Message());
+			t.setResponseHL7Message(responseHl7);
+			JsonUtils.getMapper().writeValueAsString(t);
+		});
+
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+		SignedJWT jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256),
+			new JWTClaimsSet.Builder().subject("warmup").issuer("warmup")
+				.issueTime(new Date()).expirationTime(new Date(System.currentTimeMillis() + maxDuration + 60_000)).build());
+		jwt.sign(new MACSigner(key));
+		String token = jwt.serialize();
+		NimbusJwtDecoder decoder = NimbusJwtDecoder.withSecretKey(new SecretKeySpec(key, "HmacSHA256")).build();
+		addStep("jwt", () -> decoder.decode(token));
+
+		String plainText = request.getHl7Message();
+		// Decryption uses keys from the key provider, which may be remote, so only encryption is warmed up
+		addStep("crypto", () -> CryptoSupport.encrypt(plainText, key));
+		return this;
+	}
+
+	/**
+	 * Run the warm-up
+	 * @return	The timings before and after warm-up
+	 */
+	public Result run() {
+		Result result = new Result();
+		long started = System.currentTimeMillis();
+		Map<String, Double> previous = null;
+		int stable = 0;
+		RequestContext.init();
+		try {
+			while (!steps.isEmpty()) {
+				Map<String, Double> timings = runRound();
+				result.rounds++;
+				if (previous == null) {
+					result.before.putAll(timings);
+				} else if (isStable(previous, timings)) {
+					stable++;
+				} else {
+					stable = 0;
+				}
+				result.after.clear();
+				result.after.putAll(timings);
+				previous = timings;
+				if (stable >= stableRounds) {
+					result.stable = true;
+					break;
+				}
+				if (System.currentTimeMillis() - started >= maxDuration) {
+					break;
+				}
+			}
+		} finally {
+			RequestContext.clear();
+		}
+		result.duration = System.currentTimeMillis() - started;
+		return result;
+	}
+
+	private Map<String, Double> runRound() {
+		Map<String, Double> timings = new LinkedHashMap<>();
+		Iterator<Map.Entry<String, Step>> it = steps.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Step> step = it.next();
+			long start = System.nanoTime();
+			try {
+				for (int i = 0; i < iterations; i++) {
+					step.getValue().run();
+				}
+			} catch (Exception e) {
+				log.warn("Warm-up step {} failed and will be skipped: {}", step.getKey(), e.getMessage());
+				it.remove();
+				continue;
+			}
+			timings.put(step.getKey(), (System.nanoTime() - start) / 1000.0 / iterations);
+		}
+		return timings;
+	}
+
+	private boolean isStable(Map<String, Double> previous, Map<String, Double> timings) {
+		for (Map.Entry<String, Double> e: timings.entrySet()) {
+			Double before = previous.get(e.getKey());
+			if (before == null || Math.abs(e.getValue() - before) > tolerance * before) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] toBytes(SoapMessageConverter converter, SoapMessage message) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		converter.write(message, bytes);
+		return bytes.toByteArray();
+	}
+
+	private static HttpInputMessage toInputMessage(byte[] body) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.CONTENT_TYPE, "application/soap+xml;charset=UTF-8");
+		return new HttpInputMessage() {
+			@Override public HttpHeaders getHeaders() { return headers; }
+			@Override public InputStream getBody() { return new ByteArrayInputStream(body); }
+		};
+	}
+}
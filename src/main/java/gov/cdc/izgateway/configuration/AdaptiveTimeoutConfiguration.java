@@ -0,0 +1,112 @@
+package gov.cdc.izgateway.configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import gov.cdc.izgateway.metrics.AdaptiveTimeouts;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Configures the read timeouts learned for each destination by {@link AdaptiveTimeouts}, and
+ * when enabled, periodically saves them so that they survive a restart.  Until a timeout is learned
+ * for a destination, client.readTimeout applies.  While disabled, response times are still recorded
+ * and reported, but no file is read or written.
+ *
+ * @author Audacious Inquiry
+ */
+@Configuration
+@ConfigurationProperties(prefix = "hub.adaptive-timeout")
+@Data
+@Slf4j
+public class AdaptiveTimeoutConfiguration implements InitializingBean, DisposableBean {
+	@Schema(description = "True to apply the read timeouts learned for each destination")
+	private boolean enabled = false;
+
+	@Schema(description = "The percentile of recent response times from which the timeout is derived")
+	private double percentile = 99.0;
+
+	@Schema(description = "The multiple of the percentile used as the timeout")
+	private double multiplier = 3.0;
+
+	@Schema(description = "The smallest timeout in milliseconds that will be learned")
+	private long minTimeout = 5_000;
+
+	@Schema(description = "The largest timeout in milliseconds that will be learned")
+	private long maxTimeout = 120_000;
+
+	@Schema(description = "The number of response times that must be recorded before a timeout is learned")
+	private int minSamples = 20;
+
+	@Schema(description = "The number of most recent response times kept for each destination")
+	private int window = 200;
+
+	@Schema(description = "The file in which learned timeouts are saved when enabled, or empty to not save them")
+	private String file = "adaptive-timeouts.json";
+
+	@Schema(description = "The time in milliseconds between saves of learned timeouts")
+	private long saveInterval = 300_000;
+
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private ScheduledExecutorService saver;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		AdaptiveTimeouts timeouts = AdaptiveTimeouts.getDefault();
+		timeouts.setEnabled(enabled);
+		timeouts.setPercentile(percentile);
+		timeouts.setMultiplier(multiplier);
+		timeouts.setMinTimeout(minTimeout);
+		timeouts.setMaxTimeout(maxTimeout);
+		timeouts.setMinSamples(minSamples);
+		timeouts.setWindow(window);
+		if (!enabled || StringUtils.isEmpty(file)) {
+			return;
+		}
+		File f = new File(file);
+		if (f.exists()) {
+			try {
+				timeouts.load(f);
+			} catch (IOException e) {
+				log.error("Cannot load read timeouts from {}: {}", f, e.getMessage());
+			}
+		}
+		saver = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "Adaptive-Timeout-Saver");
+			t.setDaemon(true);
+			return t;
+		});
+		long interval = Math.max(1000, saveInterval);
+		saver.scheduleWithFixedDelay(this::save, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	private void save() {
+		try {
+			AdaptiveTimeouts.getDefault().save(new File(file));
+		} catch (IOException e) {
+			log.error("Cannot save read timeouts to {}: {}", file, e.getMessage());
+		}
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		if (saver != null) {
+			saver.shutdownNow();
+			save();
+		}
+	}
+}
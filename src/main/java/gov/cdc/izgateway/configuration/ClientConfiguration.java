@@ -1,10 +1,14 @@
 package gov.cdc.izgateway.configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.MediaType;
 
+import gov.cdc.izgateway.soap.net.ContentCoding;
 import lombok.Data;
 
 @Configuration
@@ -16,6 +20,23 @@ public class ClientConfiguration implements InitializingBean {
 	private int maxBufferSize = 65536;
 	private int maxRetries = 3;
 	private String contentType = MediaType.TEXT_XML_VALUE;
+	/** Send Accept-Encoding: gzip, deflate to destinations */
+	private boolean acceptEncoding = false;
+	/** The destination ids to send compressed requests to, or * for all destinations */
+	private List<String> compressRequests = new ArrayList<>();
+	private int compressionLevel = 6;
+	private int minCompressSize = 1024;
+	/** The maximum size of a gzip or deflate encoded response after it is decoded */
+	private long maxDecodedSize = ContentCoding.DEFAULT_MAX_DECODED_SIZE;
+	
+	/**
+	 * Determine if requests to a destination should be compressed.
+	 * @param destId	The destination id
+	 * @return	true if requests to the destination should be compressed.
+	 */
+	public boolean isCompressRequests(String destId) {
+		return compressRequests.contains("*") || compressRequests.contains(destId);
+	}
 	
 	@Override
 	public void afterPropertiesSet() throws Exception {
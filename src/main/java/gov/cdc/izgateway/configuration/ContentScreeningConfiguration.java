@@ -0,0 +1,36 @@
+package gov.cdc.izgateway.configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import gov.cdc.izgateway.soap.net.SoapMessageReader;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * Configures the patterns that SoapMessageReader screens inbound messages for.  A message with
+ * an element name, text value or attribute value containing one of them, ignoring case, is
+ * rejected with a SecurityFault.  Each list must contain at least one pattern.
+ *
+ * @author Audacious Inquiry
+ */
+@Configuration
+@ConfigurationProperties(prefix = "hub.content-screening")
+@Data
+public class ContentScreeningConfiguration implements InitializingBean {
+	@Schema(description = "The patterns that may not appear in element names")
+	private List<String> tagNamePatterns = new ArrayList<>(SoapMessageReader.DEFAULT_TAG_NAME_PATTERNS);
+
+	@Schema(description = "The patterns that may not appear in text or attribute values")
+	private List<String> textValuePatterns = new ArrayList<>(SoapMessageReader.DEFAULT_TEXT_VALUE_PATTERNS);
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		SoapMessageReader.setTagNamePatterns(tagNamePatterns);
+		SoapMessageReader.setTextValuePatterns(textValuePatterns);
+	}
+}
@@ -0,0 +1,74 @@
+package gov.cdc.izgateway.configuration;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import gov.cdc.izgateway.common.LoadShedder;
+import gov.cdc.izgateway.utils.UtilizationSampler;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * Configures the sampling of server utilization, and the thresholds above which the server
+ * is degraded and rejects low priority requests.  Sampling starts when the application
+ * context starts, and stops when it is closed.
+ *
+ * @author Audacious Inquiry
+ */
+@Configuration
+@ConfigurationProperties(prefix = "hub.load-shedding")
+@Data
+public class LoadSheddingConfiguration implements InitializingBean, DisposableBean {
+	@Schema(description = "True to reject low priority requests when a threshold is exceeded")
+	private boolean enabled = false;
+
+	@Schema(description = "The time in milliseconds between utilization samples")
+	private long sampleInterval = UtilizationSampler.DEFAULT_INTERVAL;
+
+	@Schema(description = "The number of utilization samples kept")
+	private int samples = UtilizationSampler.DEFAULT_SIZE;
+
+	@Schema(description = "The process CPU load above which the server is degraded, or 0 to ignore it")
+	private double cpu = 0.90;
+
+	@Schema(description = "The fraction of the heap in use after garbage collection above which the server is degraded, or 0 to ignore it")
+	private double heap = 0.90;
+
+	@Schema(description = "The fraction of time spent in garbage collection above which the server is degraded, or 0 to ignore it")
+	private double gc = 0.20;
+
+	@Schema(description = "The fraction of connector threads busy above which the server is degraded, or 0 to ignore it")
+	private double threads = 0.90;
+
+	@Schema(description = "The number of requests waiting for a connector thread above which the server is degraded, or 0 to ignore it")
+	private int queue = 50;
+
+	@Schema(description = "The fraction of the maximum connections open above which the server is degraded, or 0 to ignore it")
+	private double connections = 0.90;
+
+	@Schema(description = "The fraction of each threshold that utilization must fall below before the server recovers")
+	private double recovery = 0.80;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		LoadShedder shedder = LoadShedder.getDefault();
+		shedder.setCpu(cpu);
+		shedder.setHeap(heap);
+		shedder.setGc(gc);
+		shedder.setThreads(threads);
+		shedder.setQueue(queue);
+		shedder.setConnections(connections);
+		shedder.setRecovery(recovery);
+		shedder.setEnabled(enabled);
+		UtilizationSampler sampler = UtilizationSampler.getDefault();
+		sampler.addListener(shedder);
+		sampler.start(sampleInterval, samples);
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		UtilizationSampler.getDefault().stop();
+	}
+}
@@ -32,6 +32,10 @@ public class ServerConfiguration implements InitializingBean {
 	)
 	private String mode = "prod";
 
+	@Schema(description = "When true, the embedded Tomcat connector runs each request on its own virtual thread "
+			+ "instead of a thread from its worker pool.  This requires Java 21 or later, and is ignored with a warning on earlier runtimes.")
+	private boolean virtualThreads = false;
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		baseUrl = new URL(protocol, hostname, port, "/");
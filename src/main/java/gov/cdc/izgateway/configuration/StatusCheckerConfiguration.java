@@ -28,4 +28,13 @@ public class StatusCheckerConfiguration {
     /** List of endpoints EXPECTED to fail */
     @Value("${hub.status-check.failing-endpoints: 404,down,invalid,reject}")
     private List<String> testingEndpoints;
+    /** Maximum number of status checks run at once */
+    @Value("${hub.status-check.concurrency:8}")
+    private int statusCheckConcurrency;
+    /** Window over which the starts of the status checks in a sweep are spread */
+    @Value("${hub.status-check.jitter:30}")
+    private int statusCheckJitterInSeconds;
+    /** Time after its start by which a status check must finish */
+    @Value("${hub.status-check.deadline:60}")
+    private int statusCheckDeadlineInSeconds;
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package gov.cdc.izgateway.configuration;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import gov.cdc.izgateway.logging.TransactionDataEmitter;
+import gov.cdc.izgateway.logging.TransactionDataEmitter.OverflowPolicy;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * Configures how TransactionData records are written to the log, and drains
+ * any records waiting to be written when the application context is closed.
+ *
+ * @author Audacious Inquiry
+ */
+@Configuration
+@ConfigurationProperties(prefix = "hub.transaction-log")
+@Data
+public class TransactionLogConfiguration implements InitializingBean, DisposableBean {
+	@Schema(description = "True to write transaction data records on a background thread, false to write them on the request thread")
+	private boolean async = true;
+
+	@Schema(description = "The maximum number of transaction data records waiting to be written")
+	private int capacity = TransactionDataEmitter.DEFAULT_CAPACITY;
+
+	@Schema(description = "The maximum number of transaction data records written in a batch")
+	private int batchSize = TransactionDataEmitter.DEFAULT_BATCH_SIZE;
+
+	@Schema(description = "What to do with a transaction data record when the queue is full", allowableValues = { "BLOCK", "DROP" })
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+	@Schema(description = "The time in milliseconds to wait for space in the queue under the BLOCK policy")
+	private long blockTimeout = TransactionDataEmitter.DEFAULT_BLOCK_TIMEOUT;
+
+	@Schema(description = "The time in milliseconds to wait for waiting records to be written at shutdown")
+	private long shutdownTimeout = 10000;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		TransactionDataEmitter emitter = new TransactionDataEmitter(capacity, batchSize, overflowPolicy, blockTimeout, TransactionDataEmitter::log);
+		if (!async) {
+			// Records emitted after shutdown are written on the calling thread
+			emitter.shutdown(0);
+		}
+		TransactionDataEmitter.setDefault(emitter, shutdownTimeout);
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		TransactionDataEmitter.getDefault().shutdown(shutdownTimeout);
+	}
+}
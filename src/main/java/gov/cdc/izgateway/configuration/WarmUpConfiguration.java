@@ -0,0 +1,67 @@
+package gov.cdc.izgateway.configuration;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import gov.cdc.izgateway.common.HealthService;
+import gov.cdc.izgateway.common.WarmUp;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Configures the warm-up run at startup, which exercises the code paths of a request until
+ * their timings stabilize before {@link HealthService} lets the server be marked healthy.
+ * Warm-up runs on a background thread while the rest of the application starts.  It is disabled by default,
+ * since it delays the server being marked healthy; enable it with hub.warm-up.enabled=true.
+ *
+ * @author Audacious Inquiry
+ */
+@Configuration
+@ConfigurationProperties(prefix = "hub.warm-up")
+@Data
+@Slf4j
+public class WarmUpConfiguration implements InitializingBean {
+	@Schema(description = "True to warm up before the server is marked healthy")
+	private boolean enabled = false;
+
+	@Schema(description = "The maximum time in milliseconds to warm up")
+	private long maxDuration = 30_000;
+
+	@Schema(description = "The number of times each step of the warm-up runs in a round")
+	private int iterations = 100;
+
+	@Schema(description = "The fractional change in the mean time of a step between rounds that is considered stable")
+	private double tolerance = 0.10;
+
+	@Schema(description = "The number of consecutive stable rounds after which warm-up stops")
+	private int stableRounds = 3;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		if (!enabled) {
+			return;
+		}
+		HealthService.startWarmUp();
+		Thread t = new Thread(this::warmUp, "Warm-Up");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	private void warmUp() {
+		String summary = "did not complete";
+		try {
+			log.info("Warming up for at most {} ms", maxDuration);
+			WarmUp.Result result = new WarmUp(maxDuration, iterations, tolerance, stableRounds).addRequestSteps().run();
+			summary = result.toString();
+			log.info("Warm-up completed: {}", summary);
+		} catch (Exception e) {
+			summary = "failed: " + e.getMessage();
+			log.error("Warm-up failed: {}", e.getMessage(), e);
+		} finally {
+			// Never leave the server unable to become healthy
+			HealthService.endWarmUp(summary);
+		}
+	}
+}
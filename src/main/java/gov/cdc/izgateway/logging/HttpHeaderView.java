@@ -0,0 +1,102 @@
+package gov.cdc.izgateway.logging;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.tomcat.util.http.MimeHeaders;
+
+/**
+ * HttpHeaderView is a read-only, case-insensitive view of the headers of a request as a map
+ * from header name to values, without copying them.  A lookup by name scans the headers in place
+ * and converts only the values of the named header to strings.  Iteration materializes all
+ * headers once, in name order, as {@link LoggingValveBase} did when it copied them.
+ *
+ * The view is backed by the request, which Tomcat recycles when the request completes.  It
+ * must not be retained beyond the request; use {@link #copyOf(Map)} for headers that are logged.
+ *
+ * @author Audacious Inquiry
+ */
+public class HttpHeaderView extends AbstractMap<String, List<String>> {
+	private final MimeHeaders headers;
+	private Map<String, List<String>> materialized;
+
+	/**
+	 * Create a view of headers.
+	 * @param headers	The headers
+	 */
+	public HttpHeaderView(MimeHeaders headers) {
+		this.headers = headers;
+	}
+
+	/**
+	 * Copy headers so that they can be retained beyond the request.
+	 * @param headers	The headers, which may be a view
+	 * @return	A copy of the headers if they are a view, otherwise the headers
+	 */
+	public static Map<String, List<String>> copyOf(Map<String, List<String>> headers) {
+		if (headers instanceof HttpHeaderView view) {
+			return new TreeMap<>(view.materialize());
+		}
+		return headers;
+	}
+
+	/**
+	 * Get the first value of a header.
+	 * @param name	The name of the header, in any case
+	 * @return	The first value, or null if the header is not present
+	 */
+	public String getFirst(String name) {
+		return headers.getHeader(name);
+	}
+
+	@Override
+	public List<String> get(Object key) {
+		if (!(key instanceof String name)) {
+			return null;
+		}
+		int i = headers.findHeader(name, 0);
+		if (i < 0) {
+			return null;
+		}
+		List<String> values = new ArrayList<>(1);
+		for (; i >= 0; i = headers.findHeader(name, i + 1)) {
+			values.add(headers.getValue(i).toString());
+		}
+		return Collections.unmodifiableList(values);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof String name && headers.findHeader(name, 0) >= 0;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return headers.size() == 0;
+	}
+
+	@Override
+	public Set<Entry<String, List<String>>> entrySet() {
+		return materialize().entrySet();
+	}
+
+	private Map<String, List<String>> materialize() {
+		if (materialized == null) {
+			// Group values case-insensitively under the first spelling of each name
+			Map<String, List<String>> grouped = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+			for (int i = 0; i < headers.size(); i++) {
+				grouped.computeIfAbsent(headers.getName(i).toString(), k -> new ArrayList<>(1))
+					.add(headers.getValue(i).toString());
+			}
+			Map<String, List<String>> sorted = new TreeMap<>();
+			grouped.forEach((name, values) -> sorted.put(name, Collections.unmodifiableList(values)));
+			materialized = Collections.unmodifiableMap(sorted);
+		}
+		return materialized;
+	}
+}
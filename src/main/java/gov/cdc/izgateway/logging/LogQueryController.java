@@ -0,0 +1,98 @@
+package gov.cdc.izgateway.logging;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import ch.qos.logback.classic.Level;
+import gov.cdc.izgateway.common.BadRequestException;
+import gov.cdc.izgateway.logging.event.LogEvent;
+import gov.cdc.izgateway.security.AccessControlRegistry;
+import gov.cdc.izgateway.security.Roles;
+import gov.cdc.izgateway.utils.ListConverter;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import jakarta.annotation.security.RolesAllowed;
+
+/**
+ * LogQueryController queries the recent log events kept in memory by the
+ * {@link MemoryAppender} named "memory".
+ *
+ * @author Audacious Inquiry
+ */
+@RestController
+@CrossOrigin
+@RolesAllowed({Roles.ADMIN, Roles.OPERATIONS})
+@RequestMapping({"/rest"})
+@Lazy(false)
+public class LogQueryController {
+	/** The name of the appender queried */
+	public static final String APPENDER_NAME = "memory";
+
+	/**
+	 * Construct a new log query controller
+	 * @param registry	The access control registry
+	 */
+	@Autowired
+	public LogQueryController(AccessControlRegistry registry) {
+		registry.register(this);
+	}
+
+	/**
+	 * Query recent log events.
+	 * @param eventId	The event id of the events
+	 * @param level	The level of the events
+	 * @param logger	The name of the logger of the events
+	 * @param destination	The id of the destination of the request logging the events
+	 * @param search	Text contained in the messages of the events
+	 * @param offset	The number of matching events to skip
+	 * @param limit	The maximum number of events to return
+	 * @return	The number of matching events, the offset, and the matching events, most recent first
+	 */
+	@Operation(summary="Query recent log events kept in memory",
+		description="Return matching log events, most recent first, in pages of at most " + MemoryAppender.MAX_LIMIT + " events")
+	@GetMapping("/logs/query")
+	public Map<String, Object> queryLogs(
+		@Parameter(description="The event id of the events") @RequestParam(required=false) String eventId,
+		@Parameter(description="The level of the events") @RequestParam(required=false) String level,
+		@Parameter(description="The name of the logger of the events") @RequestParam(required=false) String logger,
+		@Parameter(description="The id of the destination of the request") @RequestParam(required=false) String destination,
+		@Parameter(description="Text contained in the messages of the events") @RequestParam(required=false) String search,
+		@Parameter(description="The number of matching events to skip") @RequestParam(defaultValue="0") int offset,
+		@Parameter(description="The maximum number of events to return") @RequestParam(defaultValue="100") int limit
+	) {
+		Level queryLevel = null;
+		if (StringUtils.isNotBlank(level)) {
+			queryLevel = Level.toLevel(level, null);
+			if (queryLevel == null) {
+				throw new BadRequestException("Unknown log level: " + level);
+			}
+		}
+		MemoryAppender.Query query = new MemoryAppender.Query();
+		query.setEventId(StringUtils.defaultIfBlank(eventId, null));
+		query.setLevel(queryLevel);
+		query.setLogger(StringUtils.defaultIfBlank(logger, null));
+		query.setDestination(StringUtils.defaultIfBlank(destination, null));
+		query.setText(StringUtils.defaultIfBlank(search, null));
+		query.setOffset(offset);
+		query.setLimit(limit);
+
+		MemoryAppender appender = MemoryAppender.getInstance(APPENDER_NAME);
+		MemoryAppender.Page page = appender == null ? new MemoryAppender.Page() : appender.query(query);
+		List<LogEvent> events = new ListConverter<>(page.getEvents(), LogEvent::new);
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("matched", page.getMatched());
+		result.put("offset", offset);
+		result.put("events", events);
+		return result;
+	}
+}
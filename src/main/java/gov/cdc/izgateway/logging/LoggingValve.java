@@ -9,7 +9,6 @@ import gov.cdc.izgateway.logging.markers.Markers2;
 import gov.cdc.izgateway.security.service.PrincipalService;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletResponse;
-import jakarta.servlet.http.HttpSession;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.catalina.connector.Request;
 import org.apache.catalina.connector.Response;
@@ -143,13 +142,14 @@ public class LoggingValve extends LoggingValveBase implements EventCreator {
 
 	@Override
 	protected TransactionData createTransactionData(Request req) {
-        HttpSession sess = req.getSession();
+        // Do not create an HTTP session, these requests are stateless
+        String sessionId = getSessionId(req);
 
         // When IZ Gateway calls itself (e.g., for Mock access), we don't want to treat this as a new event, instead,
         // we want to retain the existing event ID to track them all together.
-        Event e = getEvent(sess);
+        Event e = getEvent(sessionId);
         if (e == null) {
-            log.debug("{} did not get event id for : {}", req.getRequestURI(), sess.getId());
+            log.debug("{} did not get event id for : {}", req.getRequestURI(), sessionId);
         }
         String eventId = e == null ? null : e.getId();
         req.setAttribute(EVENT_ID, eventId);
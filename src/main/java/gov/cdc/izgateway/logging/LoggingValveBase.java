@@ -1,12 +1,14 @@
 package gov.cdc.izgateway.logging;
 
 import gov.cdc.izgateway.common.HealthService;
+import gov.cdc.izgateway.logging.capture.TrafficCapture;
 import gov.cdc.izgateway.logging.event.EventCreator;
 import gov.cdc.izgateway.logging.event.EventId;
 import gov.cdc.izgateway.logging.event.TransactionData;
 import gov.cdc.izgateway.logging.info.MessageInfo;
 import gov.cdc.izgateway.logging.info.SourceInfo;
 import gov.cdc.izgateway.logging.markers.Markers2;
+import gov.cdc.izgateway.metrics.MetricsRegistry;
 import gov.cdc.izgateway.security.IzgPrincipal;
 import gov.cdc.izgateway.security.service.PrincipalService;
 import jakarta.servlet.ServletException;
@@ -25,7 +27,6 @@ import javax.net.ssl.SSLSession;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.*;
-import java.util.Map.Entry;
 import java.util.function.Predicate;
 
 /**
@@ -53,35 +54,11 @@ public abstract class LoggingValveBase extends ValveBase implements EventCreator
 
     protected PrincipalService principalService;
 
-    // Keep mappings for at most one minute.
-    private static final int MAX_AGE = 60 * 1000;
     // HTTP Headers for IP Address, Host and Protocol values
 	private static final String X_FORWARDED_FOR = "x-forwarded-for";
 
-    private Map<String, LoggingValveEvent> map = new LinkedHashMap<>();
+    private final SessionEventCache events = SessionEventCache.getDefault();
     
-    private static class LoggingValveEvent implements Event {
-        private final String id;
-        private Date date;
-        private int refs;
-
-        private LoggingValveEvent(String id, Date date) {
-            refs = 1;
-            this.id = id;
-            this.date = date;
-        }
-
-        @Override
-        public String getId() {
-            return id;
-        }
-
-        @Override
-        public Date getDate() {
-            return date;
-        }
-    }
-
     protected static String convertSize(long sizeBytes) {
     	if (sizeBytes <= 0) {
     		return "0b";
@@ -106,7 +83,7 @@ public abstract class LoggingValveBase extends ValveBase implements EventCreator
         IzgPrincipal p = principalService.getPrincipal(req);
         RequestContext.setPrincipal(p);
         RequestContext.setTransactionData(t);
-        RequestContext.setHttpHeaders(getHeaders(req));
+        RequestContext.setHttpHeaders(new HttpHeaderView(req.getCoyoteRequest().getMimeHeaders()));
         RequestContext.setResponse(resp);
         
         // Update the principal in source
@@ -126,6 +103,8 @@ public abstract class LoggingValveBase extends ValveBase implements EventCreator
             // Log first, then clean up MDC!
             if (RequestContext.getTransactionData() != null && !RequestContext.isLoggingDisabled()) {
                 t.logIt();
+                MetricsRegistry.getDefault().record(t);
+                TrafficCapture.getDefault().record(t);
             }
             RequestContext.clear();
             clearMdcValues();
@@ -153,6 +132,11 @@ public abstract class LoggingValveBase extends ValveBase implements EventCreator
     	return headers;
 	}
 
+	/**
+	 * Copy the headers of a request.  Prefer {@link HttpHeaderView}, which does not copy them.
+	 * @param req	The request
+	 * @return	The headers in name order
+	 */
 	protected static Map<String, List<String>> getHeaders(Request req) {
     	Map<String, List<String>> headers = new TreeMap<>();
     	for (Enumeration<String> h = req.getHeaderNames(); h.hasMoreElements(); ) {
@@ -215,7 +199,10 @@ public abstract class LoggingValveBase extends ValveBase implements EventCreator
 	protected void setMdcValues(Request req, TransactionData t, String requestURI, SourceInfo source) {
 		// Put the id into thread local storage so that threaded events can get to it
         MDC.put(EventId.EVENTID_KEY, t.getEventId());
-        MDC.put(SESSION_ID, req.getSession().getId());
+        String sessionId = getSessionId(req);
+        if (sessionId != null) {
+        	MDC.put(SESSION_ID, sessionId);
+        }
         MDC.put(REQUEST_URI, requestURI);
         MDC.put(METHOD, req.getMethod());
         MDC.put(IP_ADDRESS, req.getRemoteAddr());
@@ -249,44 +236,40 @@ public abstract class LoggingValveBase extends ValveBase implements EventCreator
         return source;
     }
 
-	public Event getEvent(HttpSession sess) {
-        String sessionId = sess.getId();
-        LoggingValveEvent event = map.get(sessionId);
-
-        if (event != null && --event.refs == 0) {
-            map.remove(sessionId);
-        }
+	/**
+	 * Get the identifier of the session of a request without creating an HTTP session.
+	 * This is the TLS session identifier if the request was received over TLS, which is
+	 * the key under which {@link #createEvent(SSLSession)} records its event, or the
+	 * identifier of an existing HTTP session otherwise.
+	 *
+	 * @param req	The request
+	 * @return	The session identifier, or null if the request has no session
+	 */
+	protected static String getSessionId(Request req) {
+		Object sslSessionId = req.getAttribute(Globals.SSL_SESSION_ID_ATTR);
+		if (sslSessionId != null) {
+			return sslSessionId.toString();
+		}
+		HttpSession sess = req.getSession(false);
+		return sess == null ? null : sess.getId();
+	}
 
-        // Eventually, events will age out
-        if (map.size() > 20) {
-            // Purge the cache of values that are older than MAX_AGE
-            long time = System.currentTimeMillis() - MAX_AGE;
-            Iterator<Entry<String, LoggingValveEvent>> it = map.entrySet().iterator();
-            while (it.hasNext()) {
-                Entry<String, LoggingValveEvent> e = it.next();
-                if (e.getValue().getDate().getTime() > time) {
-                    break;
-                }
-                it.remove();
-            }
-        }
+	public Event getEvent(HttpSession sess) {
+        return getEvent(sess.getId());
+    }
 
-        return event;
+	/**
+	 * Get the event associated with a session
+	 * @param sessionId	The session identifier
+	 * @return	The event, or null if there is none
+	 */
+	public Event getEvent(String sessionId) {
+        return sessionId == null ? null : events.take(sessionId);
     }
 
     @Override
     public String createEvent(SSLSession sess) {
-        LoggingValveEvent event = map.get(EventCreator.toHex(sess.getId()));
-
-        if (event != null) {
-            event.date = new Date(); // reset the date
-            event.refs++;   // Bump the ref count
-        } else {
-            event = new LoggingValveEvent(TransactionData.getNextEventId(), new Date());
-            map.put(EventCreator.toHex(sess.getId()), event);
-        }
-
-        return event.getId();
+        return events.create(EventCreator.toHex(sess.getId()));
     }
 
 }
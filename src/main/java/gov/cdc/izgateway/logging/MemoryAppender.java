@@ -1,62 +1,140 @@
 package gov.cdc.izgateway.logging;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.lang.ref.SoftReference;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
-import ch.qos.logback.core.read.ListAppender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import gov.cdc.izgateway.logging.event.EventId;
+import gov.cdc.izgateway.logging.info.DestinationInfo;
+import lombok.Data;
 
 /**
- * In memory appender to support log testing.  This Appender keeps the last 50 log messages in memory so that they
+ * In memory appender to support log testing.  This Appender keeps the most recent log messages in memory so that they
  * can be retrieved primarily for testing log outputs during integration testing.  However, log events are not turned
- * off in production, so they may also be of some small diagnostic value. 
- * 
+ * off in production, so they are also of diagnostic value, and can be queried by event id, level, logger and
+ * destination through {@link #query(Query)}.
+ *
+ * Events are kept in a ring of preallocated slots, the number of which is set by the capacity property
+ * (rounded up to a power of two).  Events retain references to their arguments, so the default capacity
+ * is kept small; raise it in the logback configuration where more history is wanted.  An appending thread takes the next sequence number atomically, claims the
+ * slot for that sequence with a compare and set, and writes the event and its index keys to it, so appending
+ * neither locks nor allocates beyond the first use of an index key.  Each slot links to the previous slot having
+ * the same key in each index, so a query by key visits only the matching events.  Readers verify the sequence
+ * number of a slot before and after reading it, and skip slots that were overwritten while being read.
+ *
  * See https://www.baeldung.com/junit-asserting-logs
  */
-public class MemoryAppender extends ListAppender<ILoggingEvent> {
+public class MemoryAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+    /** The default number of events kept */
+    public static final int DEFAULT_CAPACITY = 64;
+    /** The maximum number of events returned by a query */
+    public static final int MAX_LIMIT = 1000;
     /** For now, just keep track of all MemoryAppenders in a map, using softReferences so that they can be GC'd */
-    private static final Map<String, SoftReference<MemoryAppender>> appenders = new TreeMap<>();
+    private static final Map<String, SoftReference<MemoryAppender>> appenders = new ConcurrentHashMap<>();
+
+    /** The indexes, and their positions in the keys and links of a slot */
+    private static final int EVENT_ID = 0;
+    private static final int LEVEL = 1;
+    private static final int LOGGER = 2;
+    private static final int DESTINATION = 3;
+    private static final int INDEX_COUNT = 4;
+
+    /** The sequence of a slot that has never been written, and the end of an index chain */
+    private static final long NONE = -1;
+    /** The sequence of a slot that is being written */
+    private static final long WRITING = -2;
+    /** How long a reader waits for a slot being written */
+    private static final int MAX_SPINS = 1000;
+    private static final VarHandle SEQ;
+    static {
+        try {
+            SEQ = MethodHandles.lookup().findVarHandle(Slot.class, "seq", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     /**
-     * A RingBuffer is a first in first out queue that removes older entries when the queue reaches 
-     * the maximum length.  
-     *
-     * @param <T> The type of object to keep in the queue.
+     * A query of the events in memory.  Null criteria match all events.
      */
-    static class RingBuffer<T> extends LinkedList<T> {
-        private static final long serialVersionUID = 1L;
-        private final int maxSize;
-        RingBuffer(int maxSize) {
-            this.maxSize = maxSize;
-        }
-        @Override
-        public
-        boolean add(T e) {
-            super.add(e);
-            while (size() > maxSize) {
-                removeFirst();
-            }
-            return true;
-        }
-        @Override
-        public boolean equals(Object that) {
-        	return super.equals(that);
-        }
-        @Override
-        public int hashCode() {
-        	return super.hashCode();
-        }
+    @Data
+    public static class Query {
+        /** The event id of the events */
+        private String eventId;
+        /** The level of the events */
+        private Level level;
+        /** The name of the logger of the events */
+        private String logger;
+        /** The id of the destination of the request logging the events */
+        private String destination;
+        /** Text contained in the formatted messages of the events */
+        private String text;
+        /** The number of matching events to skip, most recent first */
+        private int offset;
+        /** The maximum number of events to return */
+        private int limit = 100;
+    }
+
+    /**
+     * A page of the results of a query.
+     */
+    @Data
+    public static class Page {
+        /** The number of events matching the query */
+        private int matched;
+        /** The number of matching events skipped */
+        private int offset;
+        /** The matching events, most recent first */
+        private List<ILoggingEvent> events = new ArrayList<>();
     }
 
+    /**
+     * A preallocated slot for an event.
+     */
+    private static final class Slot {
+        private volatile long seq = NONE;
+        private ILoggingEvent event;
+        private final String[] keys = new String[INDEX_COUNT];
+        private final long[] links = new long[INDEX_COUNT];
+    }
+
+    /**
+     * A consistent copy of a slot taken by a reader.
+     */
+    private static final class Entry {
+        private ILoggingEvent event;
+        private final String[] keys = new String[INDEX_COUNT];
+        private final long[] links = new long[INDEX_COUNT];
+    }
+
+    private int capacity = DEFAULT_CAPACITY;
+    private volatile Slot[] slots = new Slot[0];
+    private int mask;
+    private final AtomicLong next = new AtomicLong();
+    /** Events before this sequence were cleared by {@link #reset()} */
+    private volatile long floor = 0;
+    /** For each index, the sequence of the most recent event having each key */
+    @SuppressWarnings("unchecked")
+    private final Map<String, AtomicLong>[] heads = new Map[INDEX_COUNT];
+
+    /**
+     * Create a new appender.
+     */
     public MemoryAppender() {
         super();
-        // 50 is sufficient for log testing
-        list = new RingBuffer<ILoggingEvent>(50);
+        for (int i = 0; i < INDEX_COUNT; i++) {
+            heads[i] = new ConcurrentHashMap<>();
+        }
     }
 
     public static MemoryAppender getInstance(String name) {
@@ -67,7 +145,7 @@ public class MemoryAppender extends ListAppender<ILoggingEvent> {
         MemoryAppender value = ref.get();
         if (value == null) {
             // Remove this useless key to a GC-ed Appender
-            appenders.remove(name);
+            appenders.remove(name, ref);
         }
         return value;
     }
@@ -85,38 +163,282 @@ public class MemoryAppender extends ListAppender<ILoggingEvent> {
         }
     }
 
+    /**
+     * @return The number of events kept
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Set the number of events kept, which takes effect when the appender is started.
+     * @param capacity    The number of events kept, rounded up to a power of two
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void start() {
+        if (capacity < 1) {
+            addError("Capacity must be > 0 for appender " + name);
+            return;
+        }
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        Slot[] s = new Slot[Math.min(size, 1 << 30)];
+        for (int i = 0; i < s.length; i++) {
+            s[i] = new Slot();
+        }
+        mask = s.length - 1;
+        next.set(0);
+        floor = 0;
+        for (Map<String, AtomicLong> index: heads) {
+            index.clear();
+        }
+        slots = s;
+        super.start();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        Slot[] s = slots;
+        if (s.length == 0) {
+            return;
+        }
+        long seq = next.getAndIncrement();
+        Slot slot = s[(int) (seq & mask)];
+        if (!claim(slot, seq)) {
+            return;
+        }
+        // Fix the formatted message, thread name and MDC now, since the event is read later on other threads
+        event.prepareForDeferredProcessing();
+        slot.event = event;
+        // Read the MDC on the logging thread, which is where it is captured from
+        slot.keys[EVENT_ID] = event.getMDCPropertyMap().get(EventId.EVENTID_KEY);
+        slot.keys[LEVEL] = event.getLevel().toString();
+        slot.keys[LOGGER] = event.getLoggerName();
+        // Records written by the TransactionDataEmitter carry the destination of the request that emitted them
+        String destinationId = TransactionDataEmitter.getWritingDestinationId();
+        if (destinationId == null) {
+            DestinationInfo dest = RequestContext.getDestinationInfo();
+            destinationId = dest == null ? null : dest.getId();
+        }
+        slot.keys[DESTINATION] = destinationId;
+        for (int i = 0; i < INDEX_COUNT; i++) {
+            slot.links[i] = link(i, slot.keys[i], seq);
+        }
+        slot.seq = seq;
+        if ((seq & mask) == mask) {
+            purge(seq - mask);
+        }
+    }
+
+    /**
+     * Mark a slot as being written for a sequence.  A thread that was delayed between taking its sequence
+     * and claiming the slot may find that a later sequence has already been written to it, in which case
+     * its event is older than any kept and is discarded.
+     * @return  True if the slot was claimed, false if the event is to be discarded
+     */
+    private static boolean claim(Slot slot, long seq) {
+        for (;;) {
+            long current = slot.seq;
+            if (current >= seq) {
+                return false;
+            }
+            if (current == WRITING) {
+                Thread.onSpinWait();
+            } else if (SEQ.compareAndSet(slot, current, WRITING)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Make an event the most recent having its key in an index.
+     * @return    The sequence of the previous event having the key
+     */
+    private long link(int index, String key, long seq) {
+        if (key == null) {
+            return NONE;
+        }
+        Map<String, AtomicLong> keys = heads[index];
+        AtomicLong head = keys.get(key);
+        if (head == null) {
+            head = keys.computeIfAbsent(key, k -> new AtomicLong(NONE));
+        }
+        long prev = head.getAndSet(seq);
+        if (keys.get(key) != head) {
+            // The key was purged while being linked
+            keys.putIfAbsent(key, head);
+        }
+        return prev;
+    }
+
+    /**
+     * Remove index keys for which no events remain.
+     */
+    private void purge(long oldest) {
+        for (Map<String, AtomicLong> index: heads) {
+            index.values().removeIf(head -> head.get() < oldest);
+        }
+    }
+
+    /**
+     * Read a slot if it still holds an event.
+     * @param seq    The sequence of the event
+     * @param entry    The entry to copy the slot to
+     * @return    True if the event was read, false if it was overwritten or cleared
+     */
+    private boolean read(Slot[] s, long seq, Entry entry) {
+        if (s.length == 0 || seq < floor || seq < next.get() - s.length) {
+            return false;
+        }
+        Slot slot = s[(int) (seq & mask)];
+        for (int spins = 0; spins < MAX_SPINS; spins++) {
+            long before = slot.seq;
+            if (before == WRITING) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (before != seq) {
+                return false;
+            }
+            entry.event = slot.event;
+            System.arraycopy(slot.keys, 0, entry.keys, 0, INDEX_COUNT);
+            System.arraycopy(slot.links, 0, entry.links, 0, INDEX_COUNT);
+            // Keep the reads above from being satisfied after the sequence is checked again
+            VarHandle.acquireFence();
+            return slot.seq == seq;
+        }
+        return false;
+    }
+
+    /**
+     * Visit the events in memory, oldest first.
+     */
+    private void forEach(Predicate<Entry> visitor) {
+        Slot[] s = slots;
+        long end = next.get();
+        Entry entry = new Entry();
+        for (long seq = Math.max(floor, end - s.length); seq < end; seq++) {
+            if (read(s, seq, entry) && !visitor.test(entry)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Find the events matching a query, most recent first.  When the query specifies an event id, destination,
+     * logger or level, only events having that key are visited.
+     * @param query    The query
+     * @return    The matching events in the page requested by the query
+     */
+    public Page query(Query query) {
+        String[] wanted = new String[INDEX_COUNT];
+        wanted[EVENT_ID] = query.getEventId();
+        wanted[LEVEL] = query.getLevel() == null ? null : query.getLevel().toString();
+        wanted[LOGGER] = query.getLogger();
+        wanted[DESTINATION] = query.getDestination();
+        int limit = Math.min(Math.max(0, query.getLimit()), MAX_LIMIT);
+        int offset = Math.max(0, query.getOffset());
+        Page page = new Page();
+        page.setOffset(offset);
+        Predicate<Entry> visitor = entry -> {
+            for (int i = 0; i < INDEX_COUNT; i++) {
+                if (wanted[i] != null && !wanted[i].equals(entry.keys[i])) {
+                    return true;
+                }
+            }
+            if (query.getText() != null && !entry.event.getFormattedMessage().contains(query.getText())) {
+                return true;
+            }
+            int matched = page.getMatched();
+            if (matched >= offset && matched < offset + limit) {
+                page.getEvents().add(entry.event);
+            }
+            page.setMatched(matched + 1);
+            return true;
+        };
+
+        // Use the most selective index available
+        int index = -1;
+        for (int i: new int[] { EVENT_ID, DESTINATION, LOGGER, LEVEL }) {
+            if (wanted[i] != null) {
+                index = i;
+                break;
+            }
+        }
+        Slot[] s = slots;
+        Entry entry = new Entry();
+        if (index < 0) {
+            long end = next.get();
+            for (long seq = end - 1; seq >= Math.max(floor, end - s.length); seq--) {
+                if (read(s, seq, entry)) {
+                    visitor.test(entry);
+                }
+            }
+        } else {
+            AtomicLong head = heads[index].get(wanted[index]);
+            for (long seq = head == null ? NONE : head.get(); seq >= 0 && read(s, seq, entry); seq = entry.links[index]) {
+                visitor.test(entry);
+            }
+        }
+        return page;
+    }
+
     public void reset() {
-        this.list.clear();
+        floor = next.get();
     }
 
     public boolean contains(String string, Level level) {
-        return this.list.stream()
-          .anyMatch(event -> event.toString().contains(string)
-            && event.getLevel().equals(level));
+        boolean[] found = { false };
+        forEach(entry -> {
+            found[0] = entry.event.toString().contains(string) && entry.event.getLevel().equals(level);
+            return !found[0];
+        });
+        return found[0];
     }
 
     public int countEventsForLogger(String loggerName) {
-        return (int) this.list.stream()
-          .filter(event -> event.getLoggerName().contains(loggerName))
-          .count();
+        int[] count = { 0 };
+        forEach(entry -> {
+            if (entry.event.getLoggerName().contains(loggerName)) {
+                count[0]++;
+            }
+            return true;
+        });
+        return count[0];
     }
 
     public List<ILoggingEvent> search(String string) {
-        return this.list.stream()
-          .filter(event -> event.toString().contains(string)).toList();
+        return search(event -> event.toString().contains(string));
     }
 
     public List<ILoggingEvent> search(String string, Level level) {
-        return this.list.stream()
-          .filter(event -> event.toString().contains(string)
-            && event.getLevel().equals(level)).toList();
+        return search(event -> event.toString().contains(string) && event.getLevel().equals(level));
+    }
+
+    private List<ILoggingEvent> search(Predicate<ILoggingEvent> test) {
+        List<ILoggingEvent> result = new ArrayList<>();
+        forEach(entry -> {
+            if (test.test(entry.event)) {
+                result.add(entry.event);
+            }
+            return true;
+        });
+        return result;
     }
 
     public int getSize() {
-        return this.list.size();
+        Slot[] s = slots;
+        long end = next.get();
+        return (int) (end - Math.max(floor, end - s.length));
     }
 
+    /**
+     * @return    The events in memory, oldest first
+     */
     public List<ILoggingEvent> getLoggedEvents() {
-        return new ArrayList<>(this.list);
+        return search(event -> true);
     }
 }
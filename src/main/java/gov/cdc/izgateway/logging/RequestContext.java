@@ -4,6 +4,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import org.slf4j.MDC;
 
 import gov.cdc.izgateway.logging.event.TransactionData;
 import gov.cdc.izgateway.logging.info.DestinationInfo;
@@ -15,23 +21,75 @@ import jakarta.servlet.http.HttpServletResponse;
  * RequestContext is a class intended to provide access to variables relevant to the
  * current request that we don't want to store in the MDC as the MDC variables get
  * logged.
+ *
+ * The variables of a request are held together in a single {@link Context}, carried by one
+ * thread local.  Work handed to another thread through {@link #wrap(Runnable)}, {@link #wrap(Executor)}
+ * or {@link #supplyAsync(Supplier, Executor)} runs with the Context and MDC of the thread that
+ * handed it off, so that its logging and TransactionData updates are attributed to the same request.
  */
 public class RequestContext {
 	private RequestContext() {}
-    private static ThreadLocal<IzgPrincipal> principalDataVar = new ThreadLocal<>();
-	private static ThreadLocal<TransactionData> transactionDataVar = new ThreadLocal<>();
-	private static ThreadLocal<SourceInfo> sourceInfoVar = new ThreadLocal<>();
-	private static ThreadLocal<DestinationInfo> destinationInfoVar = new ThreadLocal<>();
-	private static ThreadLocal<String> eventIdVar = new ThreadLocal<>();
-	private static ThreadLocal<Boolean> disableLogging = ThreadLocal.withInitial(() -> Boolean.FALSE);
-	private static ThreadLocal<Set<String>> roles = ThreadLocal.withInitial(() -> new HashSet<String>());
-	private static ThreadLocal<HttpServletResponse> responseVar = new ThreadLocal<>();
-	private static ThreadLocal<Map<String, List<String>>> httpHeadersVar = new ThreadLocal<>();
+
+	/**
+	 * The variables of a request.  A Context is shared with any work the request hands
+	 * to other threads, so the objects it refers to are shared as well.
+	 */
+	public static final class Context {
+		private IzgPrincipal principal;
+		private TransactionData transactionData;
+		private SourceInfo sourceInfo;
+		private DestinationInfo destinationInfo;
+		private String eventId;
+		private boolean loggingDisabled;
+		private Set<String> roles = new HashSet<>();
+		private HttpServletResponse response;
+		private Map<String, List<String>> httpHeaders;
+
+		private Context() {}
+	}
+
+	private static final ThreadLocal<Context> contextVar = new ThreadLocal<>();
+
+	/**
+	 * @return The context of the current thread, creating it if necessary
+	 */
+	private static Context context() {
+		Context c = contextVar.get();
+		if (c == null) {
+			c = new Context();
+			contextVar.set(c);
+		}
+		return c;
+	}
+
+	/**
+	 * @return The context of the current thread, or null if there is none
+	 */
+	public static Context getContext() {
+		return contextVar.get();
+	}
+
+	/**
+	 * Make a context current on this thread.
+	 * @param context	The context, or null to clear the context
+	 * @return	The context that was previously current, for {@link #setContext(Context)} to restore
+	 */
+	public static Context setContext(Context context) {
+		Context previous = contextVar.get();
+		if (context == null) {
+			contextVar.remove();
+		} else {
+			contextVar.set(context);
+		}
+		return previous;
+	}
+
 	public static TransactionData getTransactionData() {
-		return transactionDataVar.get();
+		Context c = contextVar.get();
+		return c == null ? null : c.transactionData;
 	}
     public static void setPrincipal(IzgPrincipal izgPrincipal) {
-        principalDataVar.set(izgPrincipal);
+        context().principal = izgPrincipal;
     }
 
 	public static void setTransactionData(TransactionData transactionData) {
@@ -39,50 +97,48 @@ public class RequestContext {
 			clear();
 			return;
 		}
-		transactionDataVar.set(transactionData);
-		sourceInfoVar.set(transactionData.getSource());
-		destinationInfoVar.set(transactionData.getDestination());
-		eventIdVar.set(transactionData.getEventId());
+		Context c = context();
+		c.transactionData = transactionData;
+		c.sourceInfo = transactionData.getSource();
+		c.destinationInfo = transactionData.getDestination();
+		c.eventId = transactionData.getEventId();
 	}
 	public static Set<String> initRoles() {
-		Set<String> init = new HashSet<>(); 
-		roles.set(init);
+		Set<String> init = new HashSet<>();
+		context().roles = init;
 		return init;
 	}
 
     public static IzgPrincipal getPrincipal() {
-        return principalDataVar.get();
+		Context c = contextVar.get();
+		return c == null ? null : c.principal;
     }
 	public static SourceInfo getSourceInfo() {
-		return sourceInfoVar.get();
+		Context c = contextVar.get();
+		return c == null ? null : c.sourceInfo;
 	}
 	public static DestinationInfo getDestinationInfo() {
-		return destinationInfoVar.get();
+		Context c = contextVar.get();
+		return c == null ? null : c.destinationInfo;
 	}
 	public static String getEventId() {
-		return eventIdVar.get();
+		Context c = contextVar.get();
+		return c == null ? null : c.eventId;
 	}
-	
+
 	public static Set<String> getRoles() {
-		return roles.get();
+		return context().roles;
 	}
-	
+
 	public static void clear() {
-		transactionDataVar.remove();
-		sourceInfoVar.remove();
-		destinationInfoVar.remove();
-		eventIdVar.remove();
-		disableLogging.remove();
-		roles.remove();
-		responseVar.remove();
-		httpHeadersVar.remove();
-        principalDataVar.remove();
+		contextVar.remove();
 	}
 	public static void disableTransactionDataLogging() {
-		disableLogging.set(Boolean.TRUE);
+		context().loggingDisabled = true;
 	}
 	public static boolean isLoggingDisabled() {
-		return disableLogging.get();
+		Context c = contextVar.get();
+		return c != null && c.loggingDisabled;
 	}
 	public static TransactionData init() {
 		TransactionData tData = new TransactionData();
@@ -90,17 +146,96 @@ public class RequestContext {
 		return tData;
 	}
 	public static void setResponse(HttpServletResponse resp) {
-		responseVar.set(resp);
+		context().response = resp;
 	}
 	public static HttpServletResponse getResponse() {
-		return responseVar.get();
+		Context c = contextVar.get();
+		return c == null ? null : c.response;
 	}
-	
+
 	public static void setHttpHeaders(Map<String, List<String>> headers) {
-		httpHeadersVar.set(headers);
+		context().httpHeaders = headers;
 	}
 
+	/**
+	 * Get the headers of the current request.  These may be a view of the request which
+	 * is only valid during the request, see {@link HttpHeaderView#copyOf(Map)}.
+	 * @return	The headers of the current request
+	 */
 	public static Map<String, List<String>> getHttpHeaders() {
-		return httpHeadersVar.get();
+		Context c = contextVar.get();
+		return c == null ? null : c.httpHeaders;
+	}
+
+	/**
+	 * Wrap a task so that it runs with the Context and MDC of the current thread.
+	 * @param task	The task
+	 * @return	The wrapped task
+	 */
+	public static Runnable wrap(Runnable task) {
+		Context captured = contextVar.get();
+		Map<String, String> mdc = MDC.getCopyOfContextMap();
+		return () -> {
+			Context previous = setContext(captured);
+			Map<String, String> previousMdc = MDC.getCopyOfContextMap();
+			setMdc(mdc);
+			try {
+				task.run();
+			} finally {
+				setMdc(previousMdc);
+				setContext(previous);
+			}
+		};
+	}
+
+	/**
+	 * Wrap a task so that it runs with the Context and MDC of the current thread.
+	 * @param <T>	The type of the result of the task
+	 * @param task	The task
+	 * @return	The wrapped task
+	 */
+	public static <T> Callable<T> wrap(Callable<T> task) {
+		Context captured = contextVar.get();
+		Map<String, String> mdc = MDC.getCopyOfContextMap();
+		return () -> {
+			Context previous = setContext(captured);
+			Map<String, String> previousMdc = MDC.getCopyOfContextMap();
+			setMdc(mdc);
+			try {
+				return task.call();
+			} finally {
+				setMdc(previousMdc);
+				setContext(previous);
+			}
+		};
+	}
+
+	/**
+	 * Wrap an executor so that the tasks submitted to it run with the Context and MDC
+	 * of the thread submitting them.
+	 * @param executor	The executor
+	 * @return	The wrapped executor
+	 */
+	public static Executor wrap(Executor executor) {
+		return task -> executor.execute(wrap(task));
+	}
+
+	/**
+	 * Compute a value asynchronously with the Context and MDC of the current thread.
+	 * @param <T>	The type of the value
+	 * @param supplier	Computes the value
+	 * @param executor	The executor to compute the value on
+	 * @return	A future for the value
+	 */
+	public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+		return CompletableFuture.supplyAsync(supplier, wrap(executor));
+	}
+
+	private static void setMdc(Map<String, String> mdc) {
+		if (mdc == null) {
+			MDC.clear();
+		} else {
+			MDC.setContextMap(mdc);
+		}
 	}
 }
@@ -0,0 +1,231 @@
+package gov.cdc.izgateway.logging;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import gov.cdc.izgateway.logging.event.EventCreator.Event;
+import gov.cdc.izgateway.logging.event.TransactionData;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * SessionEventCache correlates the event created during a TLS handshake with the
+ * request(s) later received on that session, so that log records from both share an event id.
+ *
+ * An event is created or reused by {@link #create(String)} when a session is established or resumed,
+ * which counts a reference to it, and taken by {@link #take(String)} when a request on the session is received,
+ * which releases a reference.  The event is removed when its last reference is released.  Lookups do not lock;
+ * reference counts are changed atomically with respect to the entry, so that concurrent handshakes and requests on the
+ * same session neither lose nor leak an event.
+ *
+ * Events for sessions that never see a request (e.g., load balancer health checks) expire after
+ * the maximum age.  Expired events are swept at most once per sweep interval by whichever thread
+ * first uses the cache after the interval has passed, so no timer thread is needed.
+ *
+ * @author Audacious Inquiry
+ */
+public class SessionEventCache {
+	/** The default time in milliseconds an unused event is kept */
+	public static final long DEFAULT_MAX_AGE = 60_000;
+	/** The default time in milliseconds between sweeps for expired events */
+	public static final long DEFAULT_SWEEP_INTERVAL = 5_000;
+
+	private static final SessionEventCache DEFAULT_CACHE =
+		new SessionEventCache(DEFAULT_MAX_AGE, DEFAULT_SWEEP_INTERVAL, TransactionData::getNextEventId);
+
+	/**
+	 * Statistics on the event cache.
+	 */
+	@Data
+	@Schema(description="Statistics on the correlation of TLS sessions with requests")
+	public static class Stats {
+		@Schema(description="Number of events waiting for a request")
+		private int size;
+		@Schema(description="The largest number of events that have been waiting for a request")
+		private int maxSize;
+		@Schema(description="Number of events created for new TLS sessions")
+		private long created;
+		@Schema(description="Number of events reused for resumed TLS sessions")
+		private long reused;
+		@Schema(description="Number of requests matched to an event")
+		private long matched;
+		@Schema(description="Number of requests for which no event was found")
+		private long missed;
+		@Schema(description="Number of events removed after their last reference was released")
+		private long released;
+		@Schema(description="Number of events removed because they were unused for the maximum age")
+		private long expired;
+	}
+
+	/**
+	 * An event and its references.  The reference count and last use are only
+	 * modified within a compute operation on the map, which serializes changes to the entry.
+	 */
+	private static class SessionEvent implements Event {
+		private final String id;
+		private volatile long lastUsed;
+		private int refs;
+
+		private SessionEvent(String id, long now) {
+			this.id = id;
+			this.lastUsed = now;
+			this.refs = 1;
+		}
+
+		@Override
+		public String getId() {
+			return id;
+		}
+
+		@Override
+		public Date getDate() {
+			return new Date(lastUsed);
+		}
+	}
+
+	private final Map<String, SessionEvent> events = new ConcurrentHashMap<>();
+	private final long maxAge;
+	private final long sweepInterval;
+	private final Supplier<String> idSupplier;
+	private final AtomicLong nextSweep;
+	private final AtomicInteger maxSize = new AtomicInteger();
+	private final LongAdder created = new LongAdder();
+	private final LongAdder reused = new LongAdder();
+	private final LongAdder matched = new LongAdder();
+	private final LongAdder missed = new LongAdder();
+	private final LongAdder released = new LongAdder();
+	private final LongAdder expired = new LongAdder();
+
+	/**
+	 * Create a new cache.
+	 * @param maxAge	The time in milliseconds an unused event is kept
+	 * @param sweepInterval	The minimum time in milliseconds between sweeps for expired events
+	 * @param idSupplier	Supplies the identifiers of new events
+	 */
+	public SessionEventCache(long maxAge, long sweepInterval, Supplier<String> idSupplier) {
+		if (maxAge < 1) {
+			throw new IllegalArgumentException("Maximum age must be > 0");
+		}
+		this.maxAge = maxAge;
+		this.sweepInterval = Math.max(0, sweepInterval);
+		this.idSupplier = idSupplier;
+		this.nextSweep = new AtomicLong(System.currentTimeMillis() + this.sweepInterval);
+	}
+
+	/**
+	 * @return The cache used by {@link LoggingValveBase}
+	 */
+	public static SessionEventCache getDefault() {
+		return DEFAULT_CACHE;
+	}
+
+	/**
+	 * Create an event for a session, or add a reference to the existing event if the session was resumed.
+	 * @param sessionId	The session identifier
+	 * @return	The event identifier
+	 */
+	public String create(String sessionId) {
+		return create(sessionId, System.currentTimeMillis());
+	}
+
+	String create(String sessionId, long now) {
+		SessionEvent event = events.compute(sessionId, (k, e) -> {
+			if (e == null) {
+				created.increment();
+				return new SessionEvent(idSupplier.get(), now);
+			}
+			reused.increment();
+			e.lastUsed = now;
+			e.refs++;
+			return e;
+		});
+		updateMaxSize();
+		sweep(now);
+		return event.getId();
+	}
+
+	/**
+	 * Take the event for a session, releasing a reference to it.
+	 * @param sessionId	The session identifier
+	 * @return	The event, or null if there is none
+	 */
+	public Event take(String sessionId) {
+		return take(sessionId, System.currentTimeMillis());
+	}
+
+	Event take(String sessionId, long now) {
+		SessionEvent[] taken = { null };
+		events.computeIfPresent(sessionId, (k, e) -> {
+			taken[0] = e;
+			if (--e.refs == 0) {
+				released.increment();
+				return null;
+			}
+			return e;
+		});
+		if (taken[0] == null) {
+			missed.increment();
+		} else {
+			matched.increment();
+		}
+		sweep(now);
+		return taken[0];
+	}
+
+	/**
+	 * Remove expired events if the sweep interval has passed and no other thread is sweeping.
+	 */
+	private void sweep(long now) {
+		long next = nextSweep.get();
+		if (now < next || !nextSweep.compareAndSet(next, now + sweepInterval)) {
+			return;
+		}
+		long cutoff = now - maxAge;
+		for (Map.Entry<String, SessionEvent> entry: events.entrySet()) {
+			SessionEvent e = entry.getValue();
+			if (e.lastUsed <= cutoff) {
+				// Recheck under the entry's lock in case the session was resumed since it was read
+				events.computeIfPresent(entry.getKey(), (k, current) -> {
+					if (current == e && current.lastUsed <= cutoff) {
+						expired.increment();
+						return null;
+					}
+					return current;
+				});
+			}
+		}
+	}
+
+	private void updateMaxSize() {
+		int size = events.size();
+		maxSize.accumulateAndGet(size, Math::max);
+	}
+
+	/**
+	 * @return The number of events waiting for a request
+	 */
+	public int size() {
+		return events.size();
+	}
+
+	/**
+	 * @return Statistics on the cache
+	 */
+	public Stats getStats() {
+		Stats stats = new Stats();
+		stats.setSize(events.size());
+		stats.setMaxSize(maxSize.get());
+		stats.setCreated(created.sum());
+		stats.setReused(reused.sum());
+		stats.setMatched(matched.sum());
+		stats.setMissed(missed.sum());
+		stats.setReleased(released.sum());
+		stats.setExpired(expired.sum());
+		return stats;
+	}
+}
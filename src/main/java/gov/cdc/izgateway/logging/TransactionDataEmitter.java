@@ -0,0 +1,362 @@
+package gov.cdc.izgateway.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import gov.cdc.izgateway.logging.event.TransactionData;
+import gov.cdc.izgateway.logging.info.DestinationInfo;
+import gov.cdc.izgateway.logging.markers.Markers2;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * TransactionDataEmitter writes TransactionData records to the log on a dedicated thread, so that
+ * JSON serialization of the record and appender I/O are not part of the latency of a request.
+ *
+ * Records are handed off through a bounded queue preallocated at its capacity.  The writer thread
+ * takes the records available in batches of up to {@link #getBatchSize()} and writes each with the
+ * MDC values that were present on the request thread when it was emitted, and the id of its destination,
+ * which {@link MemoryAppender} indexes.  The {@link RequestContext} is not carried over, since it refers
+ * to request and response objects that the container recycles once the request completes.  When the queue is full,
+ * the {@link OverflowPolicy} determines whether the request thread waits for space or the record
+ * is dropped.  Records that are emitted after the emitter is shut down are written on the calling thread.
+ *
+ * The emitter is started when the first record is emitted, and drains any queued records when shut down,
+ * either by {@link gov.cdc.izgateway.configuration.TransactionLogConfiguration} when the application
+ * context is closed, or by a JVM shutdown hook.
+ *
+ * @author Audacious Inquiry
+ */
+@Slf4j
+public class TransactionDataEmitter {
+	/** The default capacity of the queue */
+	public static final int DEFAULT_CAPACITY = 8192;
+	/** The default maximum number of records written in a batch */
+	public static final int DEFAULT_BATCH_SIZE = 256;
+	/** The default time in milliseconds to wait for space in the queue under the BLOCK policy */
+	public static final long DEFAULT_BLOCK_TIMEOUT = 1000;
+	/** How long the writer waits for a record before checking for shut down */
+	private static final long POLL_INTERVAL = 100;
+	private static final Logger TRANSACTION_LOG = LoggerFactory.getLogger(TransactionData.class);
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+	private static volatile TransactionDataEmitter defaultEmitter = new TransactionDataEmitter(
+		DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, OverflowPolicy.BLOCK, DEFAULT_BLOCK_TIMEOUT, TransactionDataEmitter::log);
+
+	/**
+	 * What to do with a record when the queue is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Wait up to the block timeout for space in the queue, and then write the record on the calling thread.
+		 * No records are lost, but requests are slowed when the writer cannot keep up.
+		 */
+		BLOCK,
+		/** Drop the record and count it. Requests are never slowed, but records may be lost. */
+		DROP
+	}
+
+	/**
+	 * Statistics on emitter usage.
+	 */
+	@Data
+	@Schema(description="Statistics on the emission of transaction data records")
+	public static class Stats {
+		@Schema(description="Number of records waiting to be written")
+		private int queueDepth;
+		@Schema(description="The largest number of records that have been waiting to be written")
+		private int maxQueueDepth;
+		@Schema(description="The maximum number of records that can wait to be written")
+		private int capacity;
+		@Schema(description="Number of records written")
+		private long written;
+		@Schema(description="Number of records written on the request thread because the queue was full")
+		private long overflowed;
+		@Schema(description="Number of records dropped because the queue was full")
+		private long dropped;
+		@Schema(description="Number of records that could not be written because of an error")
+		private long failed;
+		@Schema(description="The policy applied when the queue is full", allowableValues = { "BLOCK", "DROP" })
+		private OverflowPolicy overflowPolicy;
+	}
+
+	/** A record waiting to be written */
+	private static class Entry {
+		private final TransactionData data;
+		private final Map<String, String> mdc;
+		private final String destinationId;
+		private Entry(TransactionData data, Map<String, String> mdc, String destinationId) {
+			this.data = data;
+			this.mdc = mdc;
+			this.destinationId = destinationId;
+		}
+	}
+
+	/** The destination of the record being written on a writer thread */
+	private static final ThreadLocal<String> WRITING_DESTINATION = new ThreadLocal<>();
+
+	private final ArrayBlockingQueue<Entry> queue;
+	private final int batchSize;
+	private final OverflowPolicy overflowPolicy;
+	private final long blockTimeout;
+	private final Consumer<TransactionData> writer;
+	private final LongAdder written = new LongAdder();
+	private final LongAdder overflowed = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+	private final AtomicInteger maxQueueDepth = new AtomicInteger();
+	private Thread thread;
+	private Thread shutdownHook;
+	private volatile boolean running = false;
+	private volatile boolean shutdown = false;
+
+	/**
+	 * Create a new emitter.
+	 * @param capacity	The maximum number of records waiting to be written
+	 * @param batchSize	The maximum number of records written in a batch
+	 * @param overflowPolicy	What to do with a record when the queue is full
+	 * @param blockTimeout	The time in milliseconds to wait for space in the queue under the BLOCK policy
+	 * @param writer	Writes a record, called with the MDC of the request that emitted it
+	 */
+	public TransactionDataEmitter(int capacity, int batchSize, OverflowPolicy overflowPolicy, long blockTimeout, Consumer<TransactionData> writer) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be > 0");
+		}
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be > 0");
+		}
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.batchSize = batchSize;
+		this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.BLOCK : overflowPolicy;
+		this.blockTimeout = Math.max(0, blockTimeout);
+		this.writer = writer;
+	}
+
+	/**
+	 * @return The emitter used by {@link TransactionData#logIt()}
+	 */
+	public static TransactionDataEmitter getDefault() {
+		return defaultEmitter;
+	}
+
+	/**
+	 * Replace the default emitter, draining any records waiting in the previous one.
+	 * @param emitter	The new default emitter
+	 * @param timeout	The time in milliseconds to wait for the previous emitter to drain
+	 */
+	public static void setDefault(TransactionDataEmitter emitter, long timeout) {
+		TransactionDataEmitter previous = defaultEmitter;
+		defaultEmitter = emitter;
+		if (previous != emitter) {
+			previous.shutdown(timeout);
+		}
+	}
+
+	/**
+	 * Write a transaction data record to the log with the current MDC.
+	 * @param t	The record to write
+	 */
+	public static void log(TransactionData t) {
+		TRANSACTION_LOG.info(Markers2.append("transactionData", t), "{}", t.getMessage());
+	}
+
+	/**
+	 * Emit a record. The record must not be modified after it is emitted.
+	 * @param t	The record to emit
+	 */
+	public void emit(TransactionData t) {
+		if (shutdown || !(running || start())) {
+			write(t);
+			return;
+		}
+		DestinationInfo dest = RequestContext.getDestinationInfo();
+		Entry entry = new Entry(t, MDC.getCopyOfContextMap(), dest == null ? null : dest.getId());
+		if (!queue.offer(entry) && !overflow(entry)) {
+			return;
+		}
+		int depth = queue.size();
+		if (depth > maxQueueDepth.get()) {
+			maxQueueDepth.accumulateAndGet(depth, Math::max);
+		}
+		if (shutdown) {
+			// Shut down while this record was being queued, make sure it is not left behind
+			shutdown(POLL_INTERVAL);
+		}
+	}
+
+	/**
+	 * Apply the overflow policy to a record that did not fit in the queue.
+	 * @return true if the record was queued.
+	 */
+	private boolean overflow(Entry entry) {
+		if (overflowPolicy == OverflowPolicy.DROP) {
+			dropped.increment();
+			if (dropped.sum() == 1) {
+				log.warn("Transaction data queue is full, dropping records");
+			}
+			return false;
+		}
+		try {
+			if (queue.offer(entry, blockTimeout, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		overflowed.increment();
+		write(entry.data);
+		return false;
+	}
+
+	/**
+	 * Start the writer thread if it is not already running.
+	 * @return false if the emitter has been shut down.
+	 */
+	private synchronized boolean start() {
+		if (running) {
+			return true;
+		}
+		if (shutdown) {
+			return false;
+		}
+		thread = new Thread(this::run, "TransactionData-Writer-" + THREAD_COUNT.incrementAndGet());
+		thread.setDaemon(true);
+		shutdownHook = new Thread(() -> shutdown(POLL_INTERVAL * 50), "TransactionData-Drain");
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+		running = true;
+		thread.start();
+		return true;
+	}
+
+	private void run() {
+		List<Entry> batch = new ArrayList<>(batchSize);
+		while (running || !queue.isEmpty()) {
+			try {
+				Entry first = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+			} catch (InterruptedException e) {
+				// Interrupts are not used to stop the writer, which must drain the queue
+				Thread.interrupted();
+				continue;
+			}
+			queue.drainTo(batch, batchSize - 1);
+			writeBatch(batch);
+			batch.clear();
+		}
+	}
+
+	private void writeBatch(List<Entry> batch) {
+		try {
+			for (Entry entry: batch) {
+				if (entry.mdc == null) {
+					MDC.clear();
+				} else {
+					MDC.setContextMap(entry.mdc);
+				}
+				WRITING_DESTINATION.set(entry.destinationId);
+				write(entry.data);
+			}
+		} finally {
+			MDC.clear();
+			WRITING_DESTINATION.remove();
+		}
+	}
+
+	private void write(TransactionData t) {
+		try {
+			writer.accept(t);
+			written.increment();
+		} catch (Exception e) {
+			failed.increment();
+			log.error("Error writing transaction data: {}", e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Stop accepting records and wait for those waiting in the queue to be written. Records emitted
+	 * after this call are written on the calling thread.  This may be called more than once.
+	 * @param timeout	The time in milliseconds to wait for the writer to drain the queue.
+	 * @return	true if all waiting records were written.
+	 */
+	public boolean shutdown(long timeout) {
+		Thread writerThread;
+		synchronized (this) {
+			shutdown = true;
+			running = false;
+			writerThread = thread;
+			if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+				try {
+					Runtime.getRuntime().removeShutdownHook(shutdownHook);
+				} catch (IllegalStateException e) {
+					// The JVM is already shutting down
+				}
+			}
+			shutdownHook = null;
+		}
+		if (writerThread != null && writerThread != Thread.currentThread()) {
+			try {
+				writerThread.join(Math.max(1, timeout));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (writerThread == null || !writerThread.isAlive()) {
+			// The writer is not running, so drain anything left behind on this thread.
+			List<Entry> rest = new ArrayList<>();
+			queue.drainTo(rest);
+			writeBatch(rest);
+		}
+		return queue.isEmpty();
+	}
+
+	/**
+	 * @return	The id of the destination of the record being written on this thread by an emitter, or null
+	 * if this thread is not writing a queued record
+	 */
+	static String getWritingDestinationId() {
+		return WRITING_DESTINATION.get();
+	}
+
+	/**
+	 * @return	true if the emitter has been shut down.
+	 */
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	/**
+	 * @return	The maximum number of records written in a batch
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return	A snapshot of statistics for this emitter.
+	 */
+	public Stats getStats() {
+		Stats stats = new Stats();
+		stats.setQueueDepth(queue.size());
+		stats.setMaxQueueDepth(maxQueueDepth.get());
+		stats.setCapacity(queue.size() + queue.remainingCapacity());
+		stats.setWritten(written.sum());
+		stats.setOverflowed(overflowed.sum());
+		stats.setDropped(dropped.sum());
+		stats.setFailed(failed.sum());
+		stats.setOverflowPolicy(overflowPolicy);
+		return stats;
+	}
+}
@@ -0,0 +1,63 @@
+package gov.cdc.izgateway.logging.capture;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+import gov.cdc.izgateway.logging.event.TransactionData;
+import gov.cdc.izgateway.logging.event.TransactionData.MessageType;
+import gov.cdc.izgateway.utils.HL7Utils;
+import lombok.Data;
+
+/**
+ * A request recorded by {@link TrafficCapture}: when it arrived, where it was sent, what it
+ * contained with PHI removed, and how long it took.
+ *
+ * @author Audacious Inquiry
+ */
+@Data
+@JsonInclude(Include.NON_NULL)
+public class CapturedRequest {
+	/** The outcome of a request that completed without a fault */
+	public static final String OK = "OK";
+
+	/** The time the request arrived in milliseconds since the epoch */
+	private long time;
+	/** The type of the request, submitSingleMessage or connectivityTest */
+	private String messageType;
+	/** The id of the destination of the request */
+	private String destinationId;
+	/** The size of the request payload in characters */
+	private int requestSize;
+	/** The HL7 message or echo back of the request, with PHI removed */
+	private String message;
+	/** The time in milliseconds taken to respond to the request */
+	private long elapsed;
+	/** The time in milliseconds spent waiting on the destination */
+	private long elapsedIIS;
+	/** OK, or the fault code or name of a request that failed */
+	private String outcome;
+	/** The number of times the request was retried */
+	private int retries;
+
+	/**
+	 * Record a completed request
+	 * @param t	The transaction data of the request
+	 * @return	The captured request
+	 */
+	public static CapturedRequest of(TransactionData t) {
+		CapturedRequest r = new CapturedRequest();
+		r.time = t.getStartTime();
+		r.messageType = String.valueOf(t.getMessageType());
+		r.destinationId = t.getDestination().getId();
+		r.requestSize = t.getRequestPayloadSize();
+		// Echo backs are free text that may contain PHI, and are captured by size alone
+		r.message = t.getMessageType() == MessageType.SUBMIT_SINGLE_MESSAGE ? HL7Utils.protectHL7Message(t.getRequestHL7Message()) : "";
+		r.elapsed = t.getElapsedTimeTotal();
+		r.elapsedIIS = t.getElapsedTimeIIS();
+		r.outcome = t.getHasProcessError() ? StringUtils.defaultIfEmpty(StringUtils.defaultIfEmpty(t.getFaultCode(), t.getFaultName()), "Error") : OK;
+		r.retries = t.getRetries();
+		return r;
+	}
+}
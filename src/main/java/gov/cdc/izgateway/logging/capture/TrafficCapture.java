@@ -0,0 +1,262 @@
+package gov.cdc.izgateway.logging.capture;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import gov.cdc.izgateway.logging.TransactionDataEmitter;
+import gov.cdc.izgateway.logging.TransactionDataEmitter.OverflowPolicy;
+import gov.cdc.izgateway.logging.event.TransactionData;
+import gov.cdc.izgateway.logging.event.TransactionData.MessageType;
+import gov.cdc.izgateway.utils.JsonUtils;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * TrafficCapture records the SubmitSingleMessage and ConnectivityTest requests handled by this
+ * server to a file, so that the shape of real traffic can be replayed against a later release.
+ *
+ * Each request is written as a {@link CapturedRequest} on a line of JSON in a gzip compressed file.
+ * Request messages are masked with {@link gov.cdc.izgateway.utils.HL7Utils#protectHL7Message(String)}
+ * before they are written.  Records are handed to a writer thread through a {@link TransactionDataEmitter}
+ * that drops records when it cannot keep up, so capturing never slows requests.  An active capture is
+ * closed when the JVM exits, so that its file remains readable.
+ *
+ * @author Audacious Inquiry
+ */
+@Slf4j
+public class TrafficCapture {
+	/** The default maximum number of requests waiting to be written */
+	public static final int DEFAULT_CAPACITY = 4096;
+	/** The time in milliseconds to wait for waiting requests to be written when capture stops */
+	private static final long STOP_TIMEOUT = 5000;
+	private static final ObjectWriter WRITER = JsonUtils.getMapper().writerFor(CapturedRequest.class);
+	private static final ObjectReader READER = JsonUtils.getMapper().readerFor(CapturedRequest.class);
+	private static final TrafficCapture defaultCapture = new TrafficCapture();
+
+	/**
+	 * Statistics on traffic capture.
+	 */
+	@Data
+	@Schema(description="Statistics on traffic capture")
+	public static class Stats {
+		@Schema(description="True if requests are being captured")
+		private boolean active;
+		@Schema(description="The file requests are captured to")
+		private String file;
+		@Schema(description="The time capture started in milliseconds since the epoch")
+		private long started;
+		@Schema(description="The maximum number of requests to capture, or 0 for no limit")
+		private long maxRequests;
+		@Schema(description="Number of requests captured")
+		private long captured;
+		@Schema(description="Number of requests not captured because the writer could not keep up")
+		private long dropped;
+		@Schema(description="Number of requests that could not be written because of an error")
+		private long failed;
+	}
+
+	/**
+	 * A capture to a file.  The file is written under a ReentrantLock rather than a monitor, so
+	 * that a request thread that races with close does not pin its carrier while waiting on file I/O.
+	 */
+	private static class Session {
+		private final Path file;
+		private final long started = System.currentTimeMillis();
+		private final long maxRequests;
+		private final Writer out;
+		private final TransactionDataEmitter emitter;
+		private final LongAdder captured = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+		/** Closes the file if the JVM exits while capturing, since a gzip file without its trailer cannot be read */
+		private final Thread shutdownHook = new Thread(this::close, "TrafficCapture-Close");
+		private final ReentrantLock lock = new ReentrantLock();
+		private boolean closed;
+
+		private Session(Path file, int capacity, long maxRequests) throws IOException {
+			this.file = file;
+			this.maxRequests = maxRequests;
+			this.out = new BufferedWriter(new OutputStreamWriter(
+				new GZIPOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE_NEW)), StandardCharsets.UTF_8));
+			this.emitter = new TransactionDataEmitter(capacity, TransactionDataEmitter.DEFAULT_BATCH_SIZE, OverflowPolicy.DROP, 0, this::write);
+			Runtime.getRuntime().addShutdownHook(shutdownHook);
+		}
+
+		private boolean isFull() {
+			return maxRequests > 0 && captured.sum() >= maxRequests;
+		}
+
+		// Called on the writer thread, or on a request thread that raced with close
+		private void write(TransactionData t) {
+			lock.lock();
+			try {
+				if (closed || isFull()) {
+					return;
+				}
+				out.write(WRITER.writeValueAsString(CapturedRequest.of(t)));
+				out.write('\n');
+				captured.increment();
+			} catch (IOException e) {
+				failed.increment();
+				if (failed.sum() == 1) {
+					log.error("Cannot write to traffic capture file {}: {}", file, e.getMessage());
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void close() {
+			if (Thread.currentThread() != shutdownHook) {
+				try {
+					Runtime.getRuntime().removeShutdownHook(shutdownHook);
+				} catch (IllegalStateException e) {
+					// The JVM is already shutting down, and the hook will close the file
+				}
+			}
+			emitter.shutdown(STOP_TIMEOUT);
+			lock.lock();
+			try {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				out.close();
+			} catch (IOException e) {
+				log.error("Cannot close traffic capture file {}: {}", file, e.getMessage());
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private Stats getStats() {
+			Stats s = new Stats();
+			s.setFile(file.toString());
+			s.setStarted(started);
+			s.setMaxRequests(maxRequests);
+			s.setCaptured(captured.sum());
+			s.setDropped(emitter.getStats().getDropped());
+			s.setFailed(failed.sum());
+			return s;
+		}
+	}
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private volatile Session session;
+	private volatile Stats last = new Stats();
+
+	/**
+	 * @return The capture fed by the request pipeline
+	 */
+	public static TrafficCapture getDefault() {
+		return defaultCapture;
+	}
+
+	/**
+	 * Start capturing requests.
+	 * @param file	The file to capture to, which must not exist
+	 * @param capacity	The maximum number of requests waiting to be written
+	 * @param maxRequests	The number of requests after which capture stops, or 0 for no limit
+	 * @return	The statistics of the new capture
+	 * @throws IOException	If the file cannot be created
+	 * @throws IllegalStateException	If requests are already being captured
+	 */
+	public Stats start(Path file, int capacity, long maxRequests) throws IOException {
+		lock.lock();
+		try {
+			if (session != null) {
+				throw new IllegalStateException("Traffic is already being captured to " + session.file);
+			}
+			session = new Session(file, capacity, Math.max(0, maxRequests));
+			log.info("Capturing traffic to {}", file);
+			return getStats();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stop capturing requests, writing those that are waiting to the file.
+	 * @return	The statistics of the capture that was stopped, or of the last capture if none was active
+	 */
+	public Stats stop() {
+		lock.lock();
+		try {
+			Session s = session;
+			if (s != null) {
+				session = null;
+				s.close();
+				last = s.getStats();
+				log.info("Captured {} requests to {}, {} dropped", last.getCaptured(), last.getFile(), last.getDropped());
+			}
+			return last;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return	The statistics of the active capture, or of the last capture if none is active
+	 */
+	public Stats getStats() {
+		Session s = session;
+		if (s == null) {
+			return last;
+		}
+		Stats stats = s.getStats();
+		stats.setActive(true);
+		return stats;
+	}
+
+	/**
+	 * Capture a completed request, if capturing.  The record must not be modified after this call.
+	 * @param t	The transaction data of the request
+	 */
+	public void record(TransactionData t) {
+		Session s = session;
+		if (s == null || s.isFull()) {
+			return;
+		}
+		MessageType type = t.getMessageType();
+		if (type == MessageType.SUBMIT_SINGLE_MESSAGE || type == MessageType.CONNECTIVITY_TEST) {
+			s.emitter.emit(t);
+		}
+	}
+
+	/**
+	 * Read the requests in a capture file.
+	 * @param file	The file
+	 * @return	The requests, in the order they were written
+	 * @throws IOException	If the file cannot be read
+	 */
+	public static List<CapturedRequest> read(Path file) throws IOException {
+		List<CapturedRequest> requests = new ArrayList<>();
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(
+			new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (!line.isBlank()) {
+					requests.add(READER.readValue(line));
+				}
+			}
+		}
+		return requests;
+	}
+}
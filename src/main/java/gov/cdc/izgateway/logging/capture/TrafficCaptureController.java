@@ -0,0 +1,113 @@
+package gov.cdc.izgateway.logging.capture;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import gov.cdc.izgateway.common.BadRequestException;
+import gov.cdc.izgateway.security.AccessControlRegistry;
+import gov.cdc.izgateway.security.Roles;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import jakarta.annotation.security.RolesAllowed;
+
+/**
+ * TrafficCaptureController starts and stops the capture of requests by {@link TrafficCapture}.
+ * Capture files are written to the directory given by hub.capture.directory.  An active capture
+ * is stopped when the application context is closed, so that its file is a complete gzip stream.
+ *
+ * @author Audacious Inquiry
+ */
+@RestController
+@CrossOrigin
+@RolesAllowed({Roles.ADMIN})
+@RequestMapping({"/rest"})
+@Lazy(false)
+public class TrafficCaptureController implements DisposableBean {
+	private static final String NAME_PATTERN = "[A-Za-z0-9_.-]+";
+	private final Path directory;
+	private final int capacity;
+
+	/**
+	 * Construct a new traffic capture controller
+	 * @param registry	The access control registry
+	 * @param directory	The directory capture files are written to
+	 * @param capacity	The maximum number of requests waiting to be written
+	 */
+	@Autowired
+	public TrafficCaptureController(AccessControlRegistry registry,
+		@Value("${hub.capture.directory:capture}") String directory,
+		@Value("${hub.capture.capacity:" + TrafficCapture.DEFAULT_CAPACITY + "}") int capacity
+	) {
+		registry.register(this);
+		this.directory = Paths.get(directory);
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Report on traffic capture
+	 * @return	The statistics of the active capture, or of the last capture if none is active
+	 */
+	@Operation(summary="Report on traffic capture", description="Return statistics on the active or last traffic capture")
+	@GetMapping("/capture")
+	public TrafficCapture.Stats getCapture() {
+		return TrafficCapture.getDefault().getStats();
+	}
+
+	/**
+	 * Start capturing traffic
+	 * @param name	The name of the capture file
+	 * @param maxRequests	The number of requests after which capture stops, or 0 for no limit
+	 * @return	The statistics of the new capture
+	 */
+	@Operation(summary="Start capturing traffic",
+		description="Record SubmitSingleMessage and ConnectivityTest requests, with PHI masked, to a gzip compressed file of JSON lines")
+	@PostMapping("/capture/start")
+	public TrafficCapture.Stats startCapture(
+		@Parameter(description="The name of the capture file, defaults to capture-<timestamp>.jsonl.gz") @RequestParam(required=false) String name,
+		@Parameter(description="The number of requests after which capture stops, or 0 for no limit") @RequestParam(defaultValue="0") long maxRequests
+	) {
+		if (StringUtils.isBlank(name)) {
+			name = "capture-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".jsonl.gz";
+		} else if (!name.matches(NAME_PATTERN) || name.startsWith(".")) {
+			throw new BadRequestException("Capture file names may only contain letters, digits, '_', '-' and '.'");
+		}
+		try {
+			Files.createDirectories(directory);
+			return TrafficCapture.getDefault().start(directory.resolve(name), capacity, maxRequests);
+		} catch (IOException | IllegalStateException e) {
+			throw new BadRequestException("Cannot start traffic capture: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Stop capturing traffic
+	 * @return	The statistics of the capture that was stopped
+	 */
+	@Operation(summary="Stop capturing traffic", description="Write requests waiting to be captured and close the capture file")
+	@PostMapping("/capture/stop")
+	public TrafficCapture.Stats stopCapture() {
+		return TrafficCapture.getDefault().stop();
+	}
+
+	@Override
+	public void destroy() {
+		// Write waiting requests and the gzip trailer, or the file cannot be replayed
+		TrafficCapture.getDefault().stop();
+	}
+}
@@ -34,10 +34,12 @@ public interface EventCreator {
      * @return  A hexidecimal string representing the session id.
      */
     static String toHex(byte[] sessionId) {
-        StringBuilder sessId = new StringBuilder();
-        for (byte c : sessionId) {
-            sessId.append(String.format("%02x", c & 0xff));
+        char[] sessId = new char[sessionId.length * 2];
+        for (int i = 0; i < sessionId.length; i++) {
+            int c = sessionId[i] & 0xff;
+            sessId[2 * i] = Character.forDigit(c >>> 4, 16);
+            sessId[2 * i + 1] = Character.forDigit(c & 0x0f, 16);
         }
-        return sessId.toString();
+        return new String(sessId);
     }
 }
@@ -9,6 +9,10 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.annotation.JsonFormat.Shape;
 
 import gov.cdc.izgateway.common.Constants;
+import gov.cdc.izgateway.common.LoadShedder;
+import gov.cdc.izgateway.logging.SessionEventCache;
+import gov.cdc.izgateway.logging.TransactionDataEmitter;
+import gov.cdc.izgateway.utils.BufferPool;
 import gov.cdc.izgateway.utils.SystemUtils;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
@@ -24,7 +28,7 @@ import java.util.Date;
  *
  */
 @JsonPropertyOrder({ 
-	"isHealthy", "statusAt", "lastChangeReason",
+	"isHealthy", "statusAt", "lastChangeReason", "degraded", "degradedReason",
 	"started", "startupTime",
 	"buildName", "serverName", "environment",  
 	"lastHealthyDate", "lastUnhealthyDate", "eventCount", 
@@ -43,6 +47,13 @@ public class Health {
 	@Schema(description="Reason for the last health update")
 	private String lastChangeReason = null;
 
+	@JsonProperty
+	@Schema(description="True if the server is saturated and rejecting low priority requests. Load balancers should prefer other servers")
+	private boolean degraded = false;
+
+	@Schema(description="Reason the server is degraded")
+	private String degradedReason = null;
+
 	@JsonProperty @JsonFormat(shape=Shape.STRING, pattern = Constants.TIMESTAMP_FORMAT)
 	@Schema(description="Start timestamp of the server")
 	private final Date started;
@@ -127,6 +138,8 @@ public class Health {
         this.healthy = that.healthy;
         this.statusAt = new Date();
         this.lastChangeReason = that.lastChangeReason;
+        this.degraded = that.degraded;
+        this.degradedReason = that.degradedReason;
         
         this.started = that.started;
         this.startupTime = that.startupTime;
@@ -198,6 +211,42 @@ public class Health {
 		return successVolume.get();
 	}
 
+	/**
+	 * @return statistics on the use of the buffer pool used for request and response bodies
+	 */
+	@JsonProperty
+	@Schema(description="Statistics on the use of the buffer pool used for request and response bodies")
+	public BufferPool.Stats getBufferPool() {
+		return BufferPool.getDefault().getStats();
+	}
+
+	/**
+	 * @return statistics on the emission of transaction data records
+	 */
+	@JsonProperty
+	@Schema(description="Statistics on the emission of transaction data records")
+	public TransactionDataEmitter.Stats getTransactionLog() {
+		return TransactionDataEmitter.getDefault().getStats();
+	}
+
+	/**
+	 * @return statistics on the correlation of TLS sessions with requests
+	 */
+	@JsonProperty
+	@Schema(description="Statistics on the correlation of TLS sessions with requests")
+	public SessionEventCache.Stats getSessionEvents() {
+		return SessionEventCache.getDefault().getStats();
+	}
+
+	/**
+	 * @return statistics on load shedding and the most recent utilization sample
+	 */
+	@JsonProperty
+	@Schema(description="Statistics on load shedding and the most recent utilization sample")
+	public LoadShedder.Stats getLoadShedding() {
+		return LoadShedder.getDefault().getStats();
+	}
+
 	/**
 	 * bump the atomic request volume counter
 	 */
@@ -8,36 +8,45 @@ import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import gov.cdc.izgateway.common.Constants;
 import gov.cdc.izgateway.configuration.AppProperties;
+import gov.cdc.izgateway.logging.TransactionDataEmitter;
+import gov.cdc.izgateway.logging.info.CompressionInfo;
 import gov.cdc.izgateway.logging.info.DestinationInfo;
+import gov.cdc.izgateway.logging.info.HL7ErrorInfo;
 import gov.cdc.izgateway.logging.info.MessageInfo.RequestInfo;
 import gov.cdc.izgateway.logging.info.MessageInfo.ResponseInfo;
 import gov.cdc.izgateway.logging.markers.MarkerObjectFieldName;
-import gov.cdc.izgateway.logging.markers.Markers2;
 import gov.cdc.izgateway.soap.fault.Fault;
 import gov.cdc.izgateway.soap.fault.FaultSupport;
 import gov.cdc.izgateway.soap.fault.HubClientFault;
 import gov.cdc.izgateway.soap.fault.UnexpectedExceptionFault;
 import gov.cdc.izgateway.soap.fault.UnsupportedOperationFault;
 import gov.cdc.izgateway.logging.info.SourceInfo;
+import gov.cdc.izgateway.utils.DateUtil;
+import gov.cdc.izgateway.utils.HL7Index;
+import gov.cdc.izgateway.utils.HL7ResponseAnalysis;
 import gov.cdc.izgateway.utils.HL7Utils;
 import gov.cdc.izgateway.utils.HL7Utils.HL7Message;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AccessLevel;
 import lombok.Data;
 import lombok.Getter;
-import lombok.extern.slf4j.Slf4j;
+import lombok.Setter;
 
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.UUID;
 import java.util.regex.Pattern;
 import org.apache.commons.lang3.StringUtils;
 
-@Slf4j
 @JsonPropertyOrder(value = {
 		"transactionId", "eventId", "messageId", "dateTime", "source", "destination",
 		// This ordering simplifies retention of log ordering in IZGW 1.X of web service messages
@@ -51,6 +60,7 @@ description = "Records information about API requests. There should be a transac
  			+ "(We do this since the SOAP processing is multi-threaded (multiple messages being processed at once), "
  			+ "so the log file would have logging messages from different processes all mixed together. Really tough to "
  			+ "troubleshoot.  Using this class, the info for one soap message is logged in a single log message.)")
+@JsonSerialize(using = TransactionDataSerializer.class)
 @Data
 @MarkerObjectFieldName("transactionData")
 @JsonInclude(Include.ALWAYS)
@@ -113,7 +123,11 @@ public class TransactionData {
     public static final String HL7_ANY_FIELD = "\\|[^\\|]*";
     // Matches an ERR Segment with ERR-4-1 == "E"
     public static final String HL7_ERR_ERROR = "(ERR" + HL7_ANY_FIELD + HL7_ANY_FIELD + HL7_ANY_FIELD + "\\|E)";
-    // Matches any message that matches either the reject or the ERR error patterns.
+    /**
+     * Matches any message that matches either the reject or the ERR error patterns.
+     * @deprecated Responses are classified by {@link HL7ResponseAnalysis#isError()}
+     */
+    @Deprecated(since="2.29", forRemoval=true)
     public static final Pattern HL7_ERROR_PATTERN = Pattern.compile("(" + HL7_REJECT_ERROR + "|" + HL7_ERR_ERROR + ")");
 
     // Date and time formatters
@@ -199,6 +213,10 @@ public class TransactionData {
     @Schema(description="The read time communicating with the destination")
     private long readTimeIIS = 0;			       // Time (msecs) taken to receive a response from the IIS
 
+    @JsonProperty
+    @Schema(description="The read timeout in effect when communicating with the destination")
+    private long readTimeoutIIS = 0;		       // Read timeout (msecs) of the last attempt to send to the IIS
+
     @JsonProperty
     @Schema(description="The write time communicating with the destination")
     private long writeTimeIIS = 0;			       // Time (msecs) taken to send request to the IIS
@@ -230,6 +248,19 @@ public class TransactionData {
     @Schema(description="The reported HL7 error")
     private String hl7Error = "";               // The HL7 error (up to max of 255 chars.)
 
+    @JsonProperty
+    @Schema(description="The acknowledgement code (MSA-1) of the response HL7 message")
+    private String responseAckCode;
+
+    @JsonProperty
+    @Schema(description="The query response status (QAK-2) of the response HL7 message")
+    private String responseQueryStatus;
+
+    @JsonProperty
+    @JsonInclude(Include.NON_EMPTY)
+    @Schema(description="The errors reported in ERR segments of the response HL7 message")
+    private List<HL7ErrorInfo> hl7Errors = new ArrayList<>();
+
     @JsonProperty
     @Schema(description="The request HL7 payload")
     private String requestHL7Message = "";          // SOAP request HL7 message
@@ -379,6 +410,16 @@ public class TransactionData {
     @Getter
     private ResponseInfo serverResponse = new ResponseInfo();
 
+    /** The index of the request HL7 message, shared with other users of the request message */
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    private transient HL7Index requestHL7Index;
+
+    @JsonProperty
+    @JsonInclude(Include.NON_EMPTY)
+    @Schema(description="Compression of message bodies sent or received in this transaction")
+    private List<CompressionInfo> compression = new ArrayList<>();
+
     public static String getNextEventId() {
         return EventId.INSTANCE.getNext();
     }
@@ -506,14 +547,21 @@ public class TransactionData {
      * @return true if the message is for a known test case
      */
     public boolean matchesTest(String message) {
-    	if (message == null) {
+    	return matchesTest(message == null ? null : new HL7Index(message));
+    }
+
+    /**
+     * Indicates if the indexed message matches known test patterns
+     * @param index	The index of the message
+     * @return true if the message is for a known test case
+     */
+    public boolean matchesTest(HL7Index index) {
+    	if (index == null) {
     		return true;
     	}
-        String[] segments = message.split("[\r\n]");
-        String[] mshParts = segments[0].split("\\|");
-    	for (int segIndex = 1; segIndex < segments.length; segIndex ++) {
-    		if ((segments[segIndex].startsWith("QPD") && !testField(segments, mshParts, segIndex, 4)) ||
-    			(segments[segIndex].startsWith("PID") && !testField(segments, mshParts, segIndex, 5))
+    	for (int seg = 1; seg < index.getSegmentCount(); seg ++) {
+    		if ((index.isSegment(seg, "QPD") && !testField(index, seg, 4)) ||
+    			(index.isSegment(seg, "PID") && !testField(index, seg, 5))
     		) {
 				return false;
     		} 
@@ -521,18 +569,34 @@ public class TransactionData {
     	return true;
     }
 
-	private boolean testField(String[] segments, String[] mshParts, int found, int fieldLoc) {
-		String[] fields = segments[found].split("\\|");
-        return fields.length > fieldLoc && isKnownTestPatient(mshParts, fields[fieldLoc]);
+    /**
+     * Indicates if an analyzed response matches known test patterns
+     * @param analysis	The analysis of the response
+     * @return true if the message is for a known test case
+     */
+    public boolean matchesTest(HL7ResponseAnalysis analysis) {
+    	if (analysis == null) {
+    		return true;
+    	}
+    	for (String name: analysis.getPatientNames()) {
+    		if (name == null || !isKnownTestPatient(analysis.getMsh(), name)) {
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+
+	private boolean testField(HL7Index index, int seg, int fieldLoc) {
+        return index.hasContentFrom(seg, fieldLoc) && isKnownTestPatient(index, index.getField(seg, fieldLoc));
 	}
     
     /**
      * Determines if this is a patient matching a KNOWN test pattern. 
-     * @param mshParts 
+     * @param index	The index of the message
      * @param name	Patient name in the message
      * @return	true if the patient matches the pattern
      */
-    private boolean isKnownTestPatient(String[] mshParts, String name) {
+    private boolean isKnownTestPatient(HL7Index index, String name) {
     	if (name == null) {
     		return false;
     	}
@@ -562,7 +626,7 @@ public class TransactionData {
     	}
 
     	// Specifically marked as a test message in MSH-5.
-    	return (mshParts.length <= 5 || mshParts[5].equals("TEST") || mshParts[3].equals("TEST"));
+    	return !hasMshField(index, 6) || index.fieldEquals(0, 6, "TEST") || index.fieldEquals(0, 4, "TEST");
 	}
 
 	  /**
@@ -576,48 +640,62 @@ public class TransactionData {
     }
     
     public void setRequestHL7Message(String val) {
-        requestHL7Message = isProd() || !setKnownTestMessage(matchesTest(val))  ? HL7Utils.protectHL7Message(val) : val;
-        if (!StringUtils.isEmpty(requestHL7Message)) {
-            String[] mshParts = StringUtils.substring(requestHL7Message,
-                    0, StringUtils.indexOfAny(requestHL7Message, HL7Message.SEGMENT_SEPARATORS)
-            ).split("\\|");
-            requestMsh3 = getFirstFieldComponent(mshParts, HL7Message.SENDING_APPLICATION - 1);
-            requestMsh4 = getFirstFieldComponent(mshParts, HL7Message.SENDING_FACILITY - 1);
-            requestMsh5 = getFirstFieldComponent(mshParts, HL7Message.RECEIVING_APPLICATION - 1);
-            requestMsh6 = getFirstFieldComponent(mshParts, HL7Message.RECEIVING_FACILITY - 1);
-            requestMsh7 = getField(mshParts, HL7Message.MESSAGE_DATETIME - 1);
-            String msgType = getFirstFieldComponent(mshParts, HL7Message.MESSAGE_TYPE - 1);
+        requestHL7Index = val == null ? null : new HL7Index(val);
+        // MSH fields are reported from the logged content, which differs from the message when it is protected
+        HL7Index msh;
+        if (isProd() || !setKnownTestMessage(matchesTest(requestHL7Index))) {
+            requestHL7Message = requestHL7Index == null ? null : HL7Utils.protectHL7Message(requestHL7Index);
+            // Only the first segment of the protected copy is indexed, the message is not split again
+            msh = HL7Index.ofFirstSegment(requestHL7Message);
+        } else {
+            requestHL7Message = val;
+            msh = requestHL7Index;
+        }
+        if (msh != null && !StringUtils.isEmpty(requestHL7Message)) {
+            requestMsh3 = getFirstFieldComponent(msh, HL7Message.SENDING_APPLICATION);
+            requestMsh4 = getFirstFieldComponent(msh, HL7Message.SENDING_FACILITY);
+            requestMsh5 = getFirstFieldComponent(msh, HL7Message.RECEIVING_APPLICATION);
+            requestMsh6 = getFirstFieldComponent(msh, HL7Message.RECEIVING_FACILITY);
+            requestMsh7 = getField(msh, HL7Message.MESSAGE_DATETIME);
+            String msgType = getFirstFieldComponent(msh, HL7Message.MESSAGE_TYPE);
             requestPayloadType = RequestPayloadType.fromString(msgType);
-            requestMsh10 = getField(mshParts, HL7Message.MESSAGE_CONTROL_ID - 1);
-            requestMsh22 = getFirstFieldComponent(mshParts, HL7Message.SENDING_RESPONSIBLE_ORGANIZATION - 1);
+            requestMsh10 = getField(msh, HL7Message.MESSAGE_CONTROL_ID);
+            requestMsh22 = getFirstFieldComponent(msh, HL7Message.SENDING_RESPONSIBLE_ORGANIZATION);
         }
         setRequestPayloadSize(StringUtils.length(val));
     }
 
     public void setResponseHL7Message(String val) {
-    	if (isKnownTestMessage() && !matchesTest(val)) {
+        // Masking, error detection and test detection share a single pass over the response
+        HL7ResponseAnalysis analysis = HL7Utils.analyzeHL7Response(val);
+    	if (isKnownTestMessage() && !matchesTest(analysis)) {
     		// Response should match test message requirements as well.  If it doesn't
     		// reset test to false.
     		setKnownTestMessage(false);
     	}
-        responseHL7Message = isProd() || !isKnownTestMessage() ? HL7Utils.protectHL7Message(val)  : val;
-        if (!StringUtils.isEmpty(responseHL7Message)) {
-            String[] mshParts = StringUtils.substring(responseHL7Message,
-                    0, StringUtils.indexOfAny(requestHL7Message, HL7Message.SEGMENT_SEPARATORS)
-            ).split("\\|");
-            responseMsh3 = getFirstFieldComponent(mshParts, HL7Message.SENDING_APPLICATION - 1);
-            responseMsh4 = getFirstFieldComponent(mshParts, HL7Message.SENDING_FACILITY - 1);
-            responseMsh5 = getFirstFieldComponent(mshParts, HL7Message.RECEIVING_APPLICATION - 1);
-            responseMsh6 = getFirstFieldComponent(mshParts, HL7Message.RECEIVING_FACILITY - 1);
-            responseMsh7 = getField(mshParts, HL7Message.MESSAGE_DATETIME - 1);
-            responseMsh10 = getField(mshParts, HL7Message.MESSAGE_CONTROL_ID - 1);
-            responseMsh22 = getFirstFieldComponent(mshParts, HL7Message.SENDING_RESPONSIBLE_ORGANIZATION - 1);
+        HL7Index msh;
+        if (isProd() || !isKnownTestMessage()) {
+            responseHL7Message = analysis == null ? null : analysis.getMasked();
+            msh = analysis == null ? null : analysis.getMaskedMsh();
+        } else {
+            responseHL7Message = val;
+            msh = analysis == null ? null : analysis.getMsh();
+        }
+        if (msh != null && !StringUtils.isEmpty(responseHL7Message)) {
+            responseMsh3 = getFirstFieldComponent(msh, HL7Message.SENDING_APPLICATION);
+            responseMsh4 = getFirstFieldComponent(msh, HL7Message.SENDING_FACILITY);
+            responseMsh5 = getFirstFieldComponent(msh, HL7Message.RECEIVING_APPLICATION);
+            responseMsh6 = getFirstFieldComponent(msh, HL7Message.RECEIVING_FACILITY);
+            responseMsh7 = getField(msh, HL7Message.MESSAGE_DATETIME);
+            responseMsh10 = getField(msh, HL7Message.MESSAGE_CONTROL_ID);
+            responseMsh22 = getFirstFieldComponent(msh, HL7Message.SENDING_RESPONSIBLE_ORGANIZATION);
         }
         setResponsePayloadSize(StringUtils.length(val));
-        if (!StringUtils.isEmpty(val) && HL7_ERROR_PATTERN.matcher(val).find()) {
-            // If the given string is not empty and  has an error token in it, then update the hl7 error message in the object.
-            // (Also set the boolean appropriately)
-            // Note: if this string has no error token, don't mess with existing values as there may already be an error present from other strings.
+        responseAckCode = analysis == null ? null : analysis.getAckCode();
+        responseQueryStatus = analysis == null ? null : analysis.getQueryStatus();
+        hl7Errors = analysis == null ? new ArrayList<>() : new ArrayList<>(analysis.getErrors());
+        if (analysis != null && analysis.isError()) {
+            // If the response rejects the message or reports an error, then update the hl7 error message in the object.
             hasHL7Error = true;
             hl7Error = responseHL7Message;
         } else {
@@ -626,14 +704,22 @@ public class TransactionData {
         }
     }
 
+    /**
+     * Determine if an MSH field is present, as it would be after splitting
+     * MSH on the field separator, which removes trailing empty fields.
+     */
+    private static boolean hasMshField(HL7Index index, int field) {
+        return index != null && index.getSegmentCount() > 0 && index.hasContentFrom(0, field);
+    }
+
     @JsonIgnore
-    private String getField(String[] parts, int index) {
-        return parts.length > index ? parts[index] : null;
+    private static String getField(HL7Index index, int field) {
+        return hasMshField(index, field) ? index.getField(0, field) : null;
     }
 
     @JsonIgnore
-    private String getFirstFieldComponent(String[] parts, int index) {
-        return StringUtils.substringBefore(getField(parts, index),"^");
+    private static String getFirstFieldComponent(HL7Index index, int field) {
+        return hasMshField(index, field) ? index.getFirstComponent(0, field) : null;
     }
 
     public void setProcessError(String summary, String detail) {
@@ -671,6 +757,22 @@ public class TransactionData {
     	return getMessage();
     }
 
+    /**
+     * @return The request MSH-7 (Message Timestamp) in the local time zone if it has no offset, or null if missing or invalid
+     */
+    @JsonIgnore
+    public OffsetDateTime getRequestMessageTime() {
+        return DateUtil.safeParseHL7DateTime(requestMsh7, ZoneId.systemDefault());
+    }
+
+    /**
+     * @return The response MSH-7 (Message Timestamp) in the local time zone if it has no offset, or null if missing or invalid
+     */
+    @JsonIgnore
+    public OffsetDateTime getResponseMessageTime() {
+        return DateUtil.safeParseHL7DateTime(responseMsh7, ZoneId.systemDefault());
+    }
+
     @JsonIgnore
     public String getMessage() {
         String unknown = "**unknown**";
@@ -699,8 +801,13 @@ public class TransactionData {
         setWriteTimeIIS(getElapsedTimeIIS() - getReadTimeIIS());
     }
 
+    /**
+     * Compute the transaction times and emit this record to the log.  The record is written
+     * asynchronously, and so must not be modified after this call.
+     * @see TransactionDataEmitter
+     */
     public void logIt() {
         computeTransactionTimes();
-        log.info(Markers2.append("transactionData", this), "{}", getMessage());
+        TransactionDataEmitter.getDefault().emit(this);
     }
 }
@@ -0,0 +1,116 @@
+package gov.cdc.izgateway.logging.event;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import gov.cdc.izgateway.logging.info.LogRecordSerializer;
+
+/**
+ * Writes TransactionData in the form written by Jackson's bean serializer, which is the
+ * schema of the transactionData log record.  Properties named in the @JsonPropertyOrder of
+ * TransactionData come first, and the remainder follow in alphabetical order.  A property
+ * added to TransactionData must also be added here, in its place in that order.
+ *
+ * @see LogRecordSerializer
+ * @author Audacious Inquiry
+ */
+public class TransactionDataSerializer extends LogRecordSerializer<TransactionData> {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Create a new serializer.
+	 */
+	public TransactionDataSerializer() {
+		super(TransactionData.class);
+	}
+
+	@SuppressWarnings("removal")
+	@Override
+	protected void writeProperties(TransactionData t, JsonGenerator gen, SerializerProvider provider) throws IOException {
+		// The order given by @JsonPropertyOrder
+		gen.writeStringField("transactionId", t.getTransactionId());
+		gen.writeStringField("eventId", t.getEventId());
+		gen.writeStringField("messageId", t.getMessageId());
+		writeTimestampField(gen, provider, "dateTime", t.getDateTime());
+		provider.defaultSerializeField("source", t.getSource(), gen);
+		provider.defaultSerializeField("destination", t.getDestination(), gen);
+		provider.defaultSerializeField("serverRequest", t.getServerRequest(), gen);
+		provider.defaultSerializeField("clientRequest", t.getClientRequest(), gen);
+		provider.defaultSerializeField("clientResponse", t.getClientResponse(), gen);
+		provider.defaultSerializeField("serverResponse", t.getServerResponse(), gen);
+
+		// The remainder in alphabetical order
+		writeStringArrayField(gen, "additionalIDs", t.getAdditionalIDs());
+		gen.writeStringField("cipherSuite", t.getCipherSuite());
+		writeNonEmptyField(gen, provider, "compression", t.getCompression());
+		gen.writeStringField("destinationID", t.getDestinationID());
+		gen.writeStringField("destinationURL", t.getDestinationURL());
+		gen.writeNumberField("elapsedTimeIIS", t.getElapsedTimeIIS());
+		gen.writeNumberField("elapsedTimeProcessing", t.getElapsedTimeProcessing());
+		gen.writeNumberField("elapsedTimeTotal", t.getElapsedTimeTotal());
+		gen.writeStringField("facilityID", t.getFacilityID());
+		gen.writeStringField("faultCode", t.getFaultCode());
+		gen.writeStringField("faultName", t.getFaultName());
+		gen.writeBooleanField("hasHL7Error", t.getHasHL7Error());
+		gen.writeBooleanField("hasProcessError", t.getHasProcessError());
+		gen.writeStringField("hl7Error", t.getHl7Error());
+		writeNonEmptyField(gen, provider, "hl7Errors", t.getHl7Errors());
+		gen.writeNumberField("iisStartTime", t.getIisStartTime());
+		gen.writeNumberField("inboundSoapMessageSize", t.getInboundSoapMessageSize());
+		gen.writeBooleanField("knownTestMessage", t.isKnownTestMessage());
+		gen.writeStringField("messageType", t.getMessageType() == null ? null : t.getMessageType().toString());
+		gen.writeNumberField("outBoundSoapMessageSize", t.getOutBoundSoapMessageSize());
+		gen.writeStringField("processError", t.getProcessError());
+		gen.writeStringField("processErrorDetail", t.getProcessErrorDetail());
+		gen.writeStringField("processErrorSummary", t.getProcessErrorSummary());
+		gen.writeBooleanField("prod", t.isProd());
+		gen.writeNumberField("readTimeIIS", t.getReadTimeIIS());
+		gen.writeNumberField("readTimeoutIIS", t.getReadTimeoutIIS());
+		gen.writeStringField("replyTo", t.getReplyTo());
+		gen.writeStringField("requestHL7Message", t.getRequestHL7Message());
+		gen.writeStringField("requestMsh10", t.getRequestMsh10());
+		gen.writeStringField("requestMsh22", t.getRequestMsh22());
+		gen.writeStringField("requestMsh3", t.getRequestMsh3());
+		gen.writeStringField("requestMsh4", t.getRequestMsh4());
+		gen.writeStringField("requestMsh5", t.getRequestMsh5());
+		gen.writeStringField("requestMsh6", t.getRequestMsh6());
+		gen.writeStringField("requestMsh7", t.getRequestMsh7());
+		gen.writeNumberField("requestPayloadSize", t.getRequestPayloadSize());
+		gen.writeStringField("requestPayloadType", t.getRequestPayloadType() == null ? null : t.getRequestPayloadType().toString());
+		provider.defaultSerializeField("response", t.getResponse(), gen);
+		gen.writeStringField("responseAckCode", t.getResponseAckCode());
+		gen.writeStringField("responseHL7Message", t.getResponseHL7Message());
+		gen.writeStringField("responseMsh10", t.getResponseMsh10());
+		gen.writeStringField("responseMsh22", t.getResponseMsh22());
+		gen.writeStringField("responseMsh3", t.getResponseMsh3());
+		gen.writeStringField("responseMsh4", t.getResponseMsh4());
+		gen.writeStringField("responseMsh5", t.getResponseMsh5());
+		gen.writeStringField("responseMsh6", t.getResponseMsh6());
+		gen.writeStringField("responseMsh7", t.getResponseMsh7());
+		gen.writeNumberField("responsePayloadSize", t.getResponsePayloadSize());
+		gen.writeStringField("responseQueryStatus", t.getResponseQueryStatus());
+		gen.writeBooleanField("responseReceived", t.isResponseReceived());
+		gen.writeNumberField("retries", t.getRetries());
+		gen.writeStringField("serverMode", t.getServerMode());
+		gen.writeStringField("serviceType", t.getServiceType());
+		gen.writeStringField("sourceHost", t.getSourceHost());
+		gen.writeStringField("sourceIP", t.getSourceIP());
+		gen.writeStringField("sourceType", t.getSourceType());
+		gen.writeNumberField("startTime", t.getStartTime());
+		gen.writeNumberField("threadId", t.getThreadId());
+		gen.writeNumberField("writeTimeIIS", t.getWriteTimeIIS());
+		gen.writeStringField("wsdlVersion", t.getWsdlVersion());
+	}
+
+	/**
+	 * Write a list property annotated with {@code @JsonInclude(Include.NON_EMPTY)}.
+	 */
+	private static void writeNonEmptyField(JsonGenerator gen, SerializerProvider provider, String name, List<?> value) throws IOException {
+		if (value != null && !value.isEmpty()) {
+			provider.defaultSerializeField(name, value, gen);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package gov.cdc.izgateway.logging.info;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import gov.cdc.izgateway.logging.info.MessageInfo.Direction;
+import gov.cdc.izgateway.logging.info.MessageInfo.EndpointType;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * The CompressionInfo class records the compression of a message body sent or received with a
+ * Content-Encoding.
+ *
+ * @author Audacious Inquiry
+ */
+@JsonPropertyOrder({ "endpointType", "direction", "encoding", "compressedBytes", "uncompressedBytes", "ratio", "bytesSaved", "cpuTime" })
+@Schema(description = "Records compression of a message body sent or received")
+@Data
+public class CompressionInfo {
+	@Schema(description = "The type of endpoint")
+	private final EndpointType endpointType;
+
+	@Schema(description = "The direction of the message")
+	private final Direction direction;
+
+	@Schema(description = "The content encoding", allowableValues = { "gzip", "deflate" })
+	private final String encoding;
+
+	@Schema(description = "The number of bytes on the wire")
+	private long compressedBytes;
+
+	@Schema(description = "The number of bytes in the message body before compression")
+	private long uncompressedBytes;
+
+	@Schema(description = "The time in milliseconds spent compressing or decompressing the body")
+	private double cpuTime;
+
+	/**
+	 * @return The compression ratio, uncompressed to compressed size.
+	 */
+	@JsonProperty
+	@Schema(description = "The compression ratio (uncompressed / compressed size)")
+	public double getRatio() {
+		return compressedBytes == 0 ? 0 : (double) uncompressedBytes / compressedBytes;
+	}
+
+	/**
+	 * @return The number of bytes not sent on the wire due to compression.
+	 */
+	@JsonProperty
+	@Schema(description = "The number of bytes saved on the wire by compression")
+	public long getBytesSaved() {
+		return uncompressedBytes - compressedBytes;
+	}
+}
@@ -10,6 +10,7 @@ import javax.net.ssl.SSLPeerUnverifiedException;
 import javax.security.auth.x500.X500Principal;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import gov.cdc.izgateway.utils.X500Utils;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -22,6 +23,7 @@ import org.apache.commons.lang3.StringUtils;
  * The DestinationInfo object records information about the endpoint to which message are intended to be or have been sent.
  */
 @Schema(description = "Information about a destination endpoint")
+@JsonSerialize(using = DestinationInfoSerializer.class)
 @Data
 @NoArgsConstructor
 @EqualsAndHashCode(callSuper=true)
@@ -0,0 +1,42 @@
+package gov.cdc.izgateway.logging.info;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Writes a DestinationInfo in the form written by Jackson's bean serializer.
+ *
+ * @see LogRecordSerializer
+ * @author Audacious Inquiry
+ */
+public class DestinationInfoSerializer extends LogRecordSerializer<DestinationInfo> {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Create a new serializer.
+	 */
+	public DestinationInfoSerializer() {
+		super(DestinationInfo.class);
+	}
+
+	@Override
+	protected void writeProperties(DestinationInfo destination, JsonGenerator gen, SerializerProvider provider) throws IOException {
+		// Fields in declaration order, from HostInfo down, then getters
+		gen.writeStringField("host", destination.getHost());
+		gen.writeStringField("ipAddress", destination.getIpAddress());
+		gen.writeStringField("commonName", destination.getCommonName());
+		gen.writeStringField("cipherSuite", destination.getCipherSuite());
+		gen.writeStringField("organization", destination.getOrganization());
+		gen.writeStringField("serialNumber", destination.getSerialNumber());
+		gen.writeStringField("serialNumberHex", destination.getSerialNumberHex());
+		writeTimestampField(gen, provider, "validFrom", destination.getValidFrom());
+		writeTimestampField(gen, provider, "validTo", destination.getValidTo());
+		gen.writeStringField("id", destination.getId());
+		gen.writeStringField("url", destination.getUrl());
+		gen.writeBooleanField("connected", destination.isConnected());
+		gen.writeStringField("protocol", destination.getProtocol());
+		gen.writeStringField("fips", destination.getFips());
+	}
+}
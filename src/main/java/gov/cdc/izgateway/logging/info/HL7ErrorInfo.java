@@ -0,0 +1,41 @@
+package gov.cdc.izgateway.logging.info;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * The HL7ErrorInfo class records an error reported in an ERR segment of an HL7 response.
+ * Only coded values are recorded, never the text of the error, which may contain PHI.
+ *
+ * @author Audacious Inquiry
+ */
+@JsonPropertyOrder({ "severity", "code", "codingSystem", "location" })
+@JsonInclude(Include.NON_NULL)
+@Schema(description = "Records an error reported in an HL7 ERR segment")
+@Data
+public class HL7ErrorInfo {
+	@Schema(description = "The severity of the error (ERR-4)", allowableValues = { "E", "W", "I" })
+	private String severity;
+
+	@Schema(description = "The HL7 error code (ERR-3.1)")
+	private String code;
+
+	@Schema(description = "The coding system of the HL7 error code (ERR-3.3)")
+	private String codingSystem;
+
+	@Schema(description = "The location of the error in the request message (ERR-2)")
+	private String location;
+
+	/**
+	 * @return true if the error has a severity of E (Error)
+	 */
+	@JsonIgnore
+	public boolean isError() {
+		return severity != null && severity.startsWith("E");
+	}
+}
@@ -0,0 +1,122 @@
+package gov.cdc.izgateway.logging.info;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.time.FastDateFormat;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.BeanSerializerFactory;
+import com.fasterxml.jackson.databind.ser.ResolvableSerializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import gov.cdc.izgateway.common.Constants;
+
+/**
+ * LogRecordSerializer is the base class for the hand-maintained serializers of the objects
+ * written in every transactionData log record.  These write their properties directly to
+ * the JsonGenerator in the order and form that Jackson's bean serializer would, without
+ * reflection, and so must be kept in step with the annotations on the classes they serialize.
+ *
+ * Property values that are not simple types are written with the serializers of the
+ * ObjectMapper in use.  Subclasses of the serialized type may add properties, and so are
+ * written with the bean serializer that Jackson would otherwise have used.
+ *
+ * @param <T>	The serialized type
+ * @author Audacious Inquiry
+ */
+public abstract class LogRecordSerializer<T> extends StdSerializer<T> {
+	private static final long serialVersionUID = 1L;
+	/** Bean serializers for subclasses of the serialized type */
+	private final transient Map<Class<?>, JsonSerializer<Object>> subclassSerializers = new ConcurrentHashMap<>();
+
+	protected LogRecordSerializer(Class<T> type) {
+		super(type);
+	}
+
+	@Override
+	public final void serialize(T value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+		if (value.getClass() != handledType()) {
+			getSubclassSerializer(value.getClass(), provider).serialize(value, gen, provider);
+			return;
+		}
+		gen.writeStartObject(value);
+		writeProperties(value, gen, provider);
+		gen.writeEndObject();
+	}
+
+	/**
+	 * Write the properties of a value.
+	 * @param value	The value
+	 * @param gen	The generator to write to
+	 * @param provider	The provider for serializers of property values
+	 * @throws IOException	If an error occurs writing the properties
+	 */
+	protected abstract void writeProperties(T value, JsonGenerator gen, SerializerProvider provider) throws IOException;
+
+	private JsonSerializer<Object> getSubclassSerializer(Class<?> type, SerializerProvider provider) throws JsonMappingException {
+		JsonSerializer<Object> ser = subclassSerializers.get(type);
+		if (ser == null) {
+			JavaType javaType = provider.constructType(type);
+			ser = BeanSerializerFactory.instance.findBeanOrAddOnSerializer(provider, javaType, provider.getConfig().introspect(javaType), false);
+			if (ser instanceof ResolvableSerializer resolvable) {
+				resolvable.resolve(provider);
+			}
+			subclassSerializers.put(type, ser);
+		}
+		return ser;
+	}
+
+	/**
+	 * Write a date formatted as by {@code @JsonFormat(shape=Shape.STRING, pattern=Constants.TIMESTAMP_FORMAT)}.
+	 * @param gen	The generator to write to
+	 * @param provider	The provider supplying the time zone and locale
+	 * @param name	The property name
+	 * @param date	The date, which may be null
+	 * @throws IOException	If an error occurs writing the property
+	 */
+	protected static void writeTimestampField(JsonGenerator gen, SerializerProvider provider, String name, Date date) throws IOException {
+		if (date == null) {
+			gen.writeNullField(name);
+		} else {
+			gen.writeStringField(name, FastDateFormat.getInstance(Constants.TIMESTAMP_FORMAT, provider.getTimeZone(), provider.getLocale()).format(date));
+		}
+	}
+
+	/**
+	 * Write a string array.
+	 * @param gen	The generator to write to
+	 * @param name	The property name
+	 * @param values	The values, which may be null
+	 * @throws IOException	If an error occurs writing the property
+	 */
+	protected static void writeStringArrayField(JsonGenerator gen, String name, String[] values) throws IOException {
+		gen.writeFieldName(name);
+		if (values == null) {
+			gen.writeNull();
+			return;
+		}
+		gen.writeStartArray(values, values.length);
+		for (String value: values) {
+			gen.writeString(value);
+		}
+		gen.writeEndArray();
+	}
+
+	/**
+	 * Write an enum by name.
+	 * @param gen	The generator to write to
+	 * @param name	The property name
+	 * @param value	The value, which may be null
+	 * @throws IOException	If an error occurs writing the property
+	 */
+	protected static void writeEnumField(JsonGenerator gen, String name, Enum<?> value) throws IOException {
+		gen.writeStringField(name, value == null ? null : value.name());
+	}
+}
@@ -1,5 +1,6 @@
 package gov.cdc.izgateway.logging.info;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
@@ -14,12 +15,15 @@ import org.apache.commons.lang3.StringUtils;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import gov.cdc.izgateway.logging.RequestContext;
 import gov.cdc.izgateway.logging.event.TransactionData;
+import gov.cdc.izgateway.soap.message.HasHL7Message;
 import gov.cdc.izgateway.soap.message.SoapMessage;
 import gov.cdc.izgateway.soap.message.WsaHeaders;
 import gov.cdc.izgateway.soap.net.SoapMessageWriter;
+import gov.cdc.izgateway.soap.net.SoapPayloadMasker;
 import gov.cdc.izgateway.utils.FixedByteArrayOutputStream;
 import gov.cdc.izgateway.utils.IndentingXMLStreamWriter;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -30,14 +34,17 @@ import io.swagger.v3.oas.annotations.media.Schema;
  * @author Audacious Inquiry
  */
 @Schema(description = "Records a Web Service message to or from an endpoint")
+@JsonSerialize(using = MessageInfoSerializer.class)
 @Data
 public class MessageInfo {
 	@Schema(description = "Records request Web Service messages to an endpoint")
+	@JsonSerialize(using = MessageInfoSerializer.RequestInfoSerializer.class)
 	@Data
 	public static class RequestInfo {
 		private MessageInfo ws_request_message; 		// NOSONAR This name is kept for log compatibility
 	}	
 	@Schema(description = "Records response Web Service messages from an endpoint")
+	@JsonSerialize(using = MessageInfoSerializer.ResponseInfoSerializer.class)
 	@Data
 	public static class ResponseInfo {
 		private MessageInfo ws_response_message; 		// NOSONAR This name is kept for log compatibility
@@ -81,14 +88,28 @@ public class MessageInfo {
 			return payloadString;
 		}
 		
-		// Generate payload from the object itself.
-		FixedByteArrayOutputStream fos = new FixedByteArrayOutputStream();
-		try {
-			new SoapMessageWriter(payload, IndentingXMLStreamWriter.createInstance(fos), filtering).write();
-		} catch (XMLStreamException | CryptoException e) {
-			// Swallow this, we only want the first part anyway.
+		if (payload == null) {
+			return null;
+		}
+		
+		if (payload.getWireText() != null) {
+			// Use the content as it was on the wire, whose credentials are already masked.
+			boolean protectHl7 = filtering && payload instanceof HasHL7Message;
+			payloadString = protectHl7 ? SoapPayloadMasker.mask(payload.getWireText(), true) : payload.getWireText();
+			return payloadString;
+		}
+		
+		// Generate payload from the object itself when it has not been on the wire.
+		try (FixedByteArrayOutputStream fos = new FixedByteArrayOutputStream()) {
+			try {
+				new SoapMessageWriter(payload, IndentingXMLStreamWriter.createInstance(fos), filtering).write();
+			} catch (XMLStreamException | CryptoException e) {
+				// Swallow this, we only want the first part anyway.
+			}
+			payloadString = fos.toString();
+		} catch (IOException e) {
+			// Closing the memory stream only returns its buffer to the pool.
 		}
-		payloadString = fos.toString();
 		return payloadString;
 	}
 	
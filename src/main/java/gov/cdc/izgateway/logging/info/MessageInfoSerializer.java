@@ -0,0 +1,79 @@
+package gov.cdc.izgateway.logging.info;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import gov.cdc.izgateway.logging.info.MessageInfo.RequestInfo;
+import gov.cdc.izgateway.logging.info.MessageInfo.ResponseInfo;
+
+/**
+ * Writes a MessageInfo in the form written by Jackson's bean serializer.  The HTTP and
+ * WS-Addressing headers and any fault are written by the serializers of the ObjectMapper in use.
+ *
+ * @see LogRecordSerializer
+ * @author Audacious Inquiry
+ */
+public class MessageInfoSerializer extends LogRecordSerializer<MessageInfo> {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Create a new serializer.
+	 */
+	public MessageInfoSerializer() {
+		super(MessageInfo.class);
+	}
+
+	@Override
+	protected void writeProperties(MessageInfo info, JsonGenerator gen, SerializerProvider provider) throws IOException {
+		// Fields in declaration order
+		gen.writeStringField("payload", info.getPayload());
+		if (info.getHttpHeaders() != null) {
+			provider.defaultSerializeField("httpHeaders", info.getHttpHeaders(), gen);
+		}
+		writeEnumField(gen, "direction", info.getDirection());
+		writeEnumField(gen, "endpointType", info.getEndpointType());
+		provider.defaultSerializeField("soapFault", info.getSoapFault(), gen);
+		provider.defaultSerializeField("soapHeaders", info.getSoapHeaders(), gen);
+		gen.writeBooleanField("filtering", info.isFiltering());
+	}
+
+	/**
+	 * Writes a RequestInfo in the form written by Jackson's bean serializer.
+	 */
+	public static class RequestInfoSerializer extends LogRecordSerializer<RequestInfo> {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Create a new serializer.
+		 */
+		public RequestInfoSerializer() {
+			super(RequestInfo.class);
+		}
+
+		@Override
+		protected void writeProperties(RequestInfo info, JsonGenerator gen, SerializerProvider provider) throws IOException {
+			provider.defaultSerializeField("ws_request_message", info.getWs_request_message(), gen);
+		}
+	}
+
+	/**
+	 * Writes a ResponseInfo in the form written by Jackson's bean serializer.
+	 */
+	public static class ResponseInfoSerializer extends LogRecordSerializer<ResponseInfo> {
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * Create a new serializer.
+		 */
+		public ResponseInfoSerializer() {
+			super(ResponseInfo.class);
+		}
+
+		@Override
+		protected void writeProperties(ResponseInfo info, JsonGenerator gen, SerializerProvider provider) throws IOException {
+			provider.defaultSerializeField("ws_response_message", info.getWs_response_message(), gen);
+		}
+	}
+}
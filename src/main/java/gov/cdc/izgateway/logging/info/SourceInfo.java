@@ -4,6 +4,7 @@ import java.security.cert.X509Certificate;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 import gov.cdc.izgateway.security.IzgPrincipal;
 import gov.cdc.izgateway.security.principal.CertificatePrincipalProviderImpl;
@@ -18,6 +19,7 @@ import lombok.NoArgsConstructor;
  */
 @JsonPropertyOrder({"commonName", "organization", "validFrom", "validTo", "serialNumber", "serialNumberHex", "fips"})
 @Schema(description = "Information common to all requesters")
+@JsonSerialize(using = SourceInfoSerializer.class)
 @Data
 @NoArgsConstructor
 @EqualsAndHashCode(callSuper=false)
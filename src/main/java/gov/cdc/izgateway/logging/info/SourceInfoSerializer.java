@@ -0,0 +1,42 @@
+package gov.cdc.izgateway.logging.info;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Writes a SourceInfo in the form written by Jackson's bean serializer.
+ *
+ * @see LogRecordSerializer
+ * @author Audacious Inquiry
+ */
+public class SourceInfoSerializer extends LogRecordSerializer<SourceInfo> {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Create a new serializer.
+	 */
+	public SourceInfoSerializer() {
+		super(SourceInfo.class);
+	}
+
+	@Override
+	protected void writeProperties(SourceInfo source, JsonGenerator gen, SerializerProvider provider) throws IOException {
+		// The order given by @JsonPropertyOrder
+		gen.writeStringField("commonName", source.getCommonName());
+		gen.writeStringField("organization", source.getOrganization());
+		writeTimestampField(gen, provider, "validFrom", source.getValidFrom());
+		writeTimestampField(gen, provider, "validTo", source.getValidTo());
+		gen.writeStringField("serialNumber", source.getSerialNumber());
+		gen.writeStringField("serialNumberHex", source.getSerialNumberHex());
+		gen.writeStringField("fips", source.getFips());
+		// Then fields in declaration order, from HostInfo down
+		gen.writeStringField("host", source.getHost());
+		gen.writeStringField("ipAddress", source.getIpAddress());
+		gen.writeStringField("cipherSuite", source.getCipherSuite());
+		gen.writeStringField("id", source.getId());
+		gen.writeStringField("facilityId", source.getFacilityId());
+		gen.writeStringField("type", source.getType());
+	}
+}
@@ -1,7 +1,5 @@
 package gov.cdc.izgateway.logging.markers;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -31,6 +29,10 @@ import net.logstash.logback.marker.Markers;
  * log.info(Markers2.append("myInfo", x) "This is the message"); will generate JSON in the form:
  * 
  * { "myInfo": { however Info is marshalled by Jackson }, "message": "This is the message" }
+ * 
+ * A Throwable is reported with its stack trace and a stack_trace_fingerprint. A stack trace already
+ * reported in the current window (a minute by default) is replaced by a stack_trace_repeat count
+ * (see {@link StackTraceCache}).
  */
 public class Markers2 {
     public static final String MARKER_FIELD_NAME_DELIM = "_";
@@ -50,14 +52,19 @@ public class Markers2 {
 			} else if (o instanceof LogstashMarker lm) {
 				marker.add(lm);
 			} else if (o instanceof Throwable t) {
-
-            	StringWriter sw = new StringWriter();
-            	PrintWriter w = new PrintWriter(sw);
-            	t.printStackTrace(w);
-            	
+				// The stack trace is only rendered the first time it is seen in a window
+				StackTraceCache.Occurrence occurrence = StackTraceCache.getDefault().record(t);
 				marker.add(Markers.append("exception", t.getClass().getSimpleName()));
 				marker.add(Markers.append("exceptionMessage", t.getMessage()));
-				marker.add(Markers.append("stack_trace", sw.toString()));
+				marker.add(Markers.append("stack_trace_fingerprint", occurrence.getFingerprint()));
+				if (occurrence.getStackTrace() != null) {
+					marker.add(Markers.append("stack_trace", occurrence.getStackTrace()));
+					if (occurrence.getSuppressed() > 0) {
+						marker.add(Markers.append("stack_trace_suppressed", occurrence.getSuppressed()));
+					}
+				} else {
+					marker.add(Markers.append("stack_trace_repeat", occurrence.getRepeat()));
+				}
 				if (t instanceof Fault fault) {
 					marker.add(Markers.append("faultName", fault.getFaultName()));
 					marker.add(Markers.append("summary", fault.getSummary()));
@@ -0,0 +1,184 @@
+package gov.cdc.izgateway.logging.markers;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.lang3.StringUtils;
+
+import lombok.Getter;
+
+/**
+ * StackTraceCache limits how often the same stack trace is rendered and logged.
+ *
+ * Each Throwable is fingerprinted by a hash of the class and stack frames of it and each of its causes,
+ * but not their messages, so that the same failure at the same place has the same fingerprint even when
+ * the messages differ (e.g., by including a timestamp or destination URL).  The full stack trace is rendered
+ * only for the first occurrence of a fingerprint in each time window. Later occurrences in the window
+ * report the fingerprint and a repeat count, so that during an outage thousands of identical
+ * traces are neither rendered nor shipped.
+ *
+ * The number of fingerprints tracked is bounded, the least recently seen being forgotten first.
+ * The default window can be set in milliseconds with the system property {@value #WINDOW_PROPERTY};
+ * a window of 0 renders every stack trace.
+ *
+ * @author Audacious Inquiry
+ */
+public class StackTraceCache {
+	/** The system property used to set the window of the default cache in milliseconds */
+	public static final String WINDOW_PROPERTY = "izgw.stackTrace.window";
+	/** The default window in milliseconds */
+	public static final long DEFAULT_WINDOW = 60_000;
+	/** The default number of fingerprints tracked */
+	public static final int DEFAULT_CAPACITY = 1024;
+	/** The maximum number of causes included in a fingerprint */
+	private static final int MAX_CAUSES = 32;
+
+	private static final StackTraceCache DEFAULT_CACHE = new StackTraceCache(DEFAULT_CAPACITY, Long.getLong(WINDOW_PROPERTY, DEFAULT_WINDOW));
+
+	/**
+	 * What to log for an occurrence of a stack trace.
+	 */
+	@Getter
+	public static class Occurrence {
+		/** The fingerprint of the stack trace */
+		private final String fingerprint;
+		/** The rendered stack trace, or null if it was already logged in this window */
+		private final String stackTrace;
+		/** The number of occurrences of this fingerprint in the window, including this one */
+		private final int repeat;
+		/** The number of occurrences in the previous window that were not rendered */
+		private final int suppressed;
+
+		private Occurrence(String fingerprint, String stackTrace, int repeat, int suppressed) {
+			this.fingerprint = fingerprint;
+			this.stackTrace = stackTrace;
+			this.repeat = repeat;
+			this.suppressed = suppressed;
+		}
+	}
+
+	private static class Entry {
+		private long windowStart;
+		private int count;
+	}
+
+	private final long window;
+	/** Guards entries; a ReentrantLock rather than a monitor, so logging from a virtual thread does not pin its carrier */
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Map<Long, Entry> entries;
+
+	/**
+	 * Create a new cache.
+	 * @param capacity	The maximum number of fingerprints tracked.
+	 * @param window	The time in milliseconds during which a stack trace is rendered only once, or 0 to render every stack trace.
+	 */
+	public StackTraceCache(int capacity, long window) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be > 0");
+		}
+		this.window = Math.max(0, window);
+		this.entries = new LinkedHashMap<>(Math.min(capacity, 64), 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return The cache used by {@link Markers2}
+	 */
+	public static StackTraceCache getDefault() {
+		return DEFAULT_CACHE;
+	}
+
+	/**
+	 * Record an occurrence of a Throwable, rendering its stack trace if it has not already been
+	 * rendered in the current window.
+	 * @param t	The Throwable
+	 * @return	What to log for the occurrence
+	 */
+	public Occurrence record(Throwable t) {
+		return record(t, System.currentTimeMillis());
+	}
+
+	Occurrence record(Throwable t, long now) {
+		long hash = hash(t);
+		String fingerprint = toFingerprint(hash);
+		int repeat;
+		int suppressed = 0;
+		lock.lock();
+		try {
+			Entry entry = entries.get(hash);
+			if (entry == null) {
+				entry = new Entry();
+				entry.windowStart = now;
+				entries.put(hash, entry);
+			} else if (now - entry.windowStart >= window) {
+				suppressed = entry.count - 1;
+				entry.windowStart = now;
+				entry.count = 0;
+			}
+			repeat = ++entry.count;
+		} finally {
+			lock.unlock();
+		}
+		// Render outside of the lock
+		return new Occurrence(fingerprint, repeat == 1 ? render(t) : null, repeat, suppressed);
+	}
+
+	/**
+	 * Compute the fingerprint of a Throwable.
+	 * @param t	The Throwable
+	 * @return	The fingerprint, as 16 hexadecimal digits
+	 */
+	public static String fingerprint(Throwable t) {
+		return toFingerprint(hash(t));
+	}
+
+	private static String toFingerprint(long hash) {
+		return StringUtils.leftPad(Long.toHexString(hash), 16, '0');
+	}
+
+	/**
+	 * Hash the classes and stack frames of a Throwable and its causes.
+	 */
+	static long hash(Throwable t) {
+		Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		long h = 1;
+		for (int causes = 0; t != null && causes < MAX_CAUSES && seen.add(t); t = t.getCause(), causes++) {
+			h = 31 * h + t.getClass().getName().hashCode();
+			for (StackTraceElement frame: t.getStackTrace()) {
+				h = 31 * h + frame.getClassName().hashCode();
+				h = 31 * h + frame.getMethodName().hashCode();
+				h = 31 * h + frame.getLineNumber();
+			}
+		}
+		return mix(h);
+	}
+
+	/**
+	 * Spread the bits of a hash across all 64 bits (the MurmurHash3 finalizer).
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static String render(Throwable t) {
+		StringWriter sw = new StringWriter();
+		t.printStackTrace(new PrintWriter(sw));
+		return sw.toString();
+	}
+}
@@ -0,0 +1,250 @@
+package gov.cdc.izgateway.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import gov.cdc.izgateway.utils.JsonUtils;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * AdaptiveTimeouts learns a read timeout for each destination from the time it has recently taken to respond,
+ * so that slow destinations are given enough time, and threads do not wait long on destinations that are
+ * usually fast.
+ *
+ * The time each destination takes to respond is recorded for its most recent {@link #getWindow()} attempts.
+ * Once {@link #getMinSamples()} have been recorded, its timeout is the {@link #getPercentile()} of those times
+ * times the {@link #getMultiplier()}, clamped to {@link #getMinTimeout()} and {@link #getMaxTimeout()}.
+ * Until then, the timeout last learned (e.g., loaded by {@link #load(File)}) or the default timeout applies.
+ * A read that times out is recorded as taking the timeout in effect, so that once enough reads to a
+ * destination that has slowed down time out to reach the percentile, its timeout grows.
+ *
+ * Response times are always recorded, learned timeouts are only applied when {@link #isEnabled()}.
+ * At most {@value #MAX_DESTINATIONS} destinations are tracked, others use the default timeout.
+ *
+ * @author Audacious Inquiry
+ */
+@Slf4j
+@Getter
+@Setter
+public class AdaptiveTimeouts {
+	/** The maximum number of destinations tracked */
+	public static final int MAX_DESTINATIONS = 500;
+	/** How often, in samples recorded, the timeout of a destination is recomputed once learned */
+	private static final int RECOMPUTE_INTERVAL = 10;
+
+	private static final AdaptiveTimeouts DEFAULT_TIMEOUTS = new AdaptiveTimeouts();
+
+	/**
+	 * The timeout learned for a destination.
+	 */
+	@Data
+	@Schema(description="The read timeout learned for a destination")
+	public static class Stats {
+		@Schema(description="The number of response times recorded")
+		private long samples;
+		@Schema(description="The number of reads that timed out")
+		private long timeouts;
+		@Schema(description="The configured percentile of the response times in the window in milliseconds")
+		private long percentile;
+		@Schema(description="The read timeout learned in milliseconds, or 0 if none has been learned")
+		private long learned;
+	}
+
+	/** True to apply learned timeouts, false to always use the default timeout */
+	private boolean enabled = false;
+	/** The percentile of recent response times from which the timeout is derived */
+	private double percentile = 99.0;
+	/** The multiple of the percentile used as the timeout */
+	private double multiplier = 3.0;
+	/** The smallest timeout in milliseconds that will be learned */
+	private long minTimeout = 5_000;
+	/** The largest timeout in milliseconds that will be learned */
+	private long maxTimeout = 120_000;
+	/** The number of response times that must be recorded before a timeout is learned */
+	private int minSamples = 20;
+	/** The number of most recent response times kept for each destination */
+	@Setter(AccessLevel.NONE)
+	private int window = 200;
+
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	private final Map<String, Destination> destinations = new ConcurrentHashMap<>();
+
+	/*
+	 * Samples are recorded under a ReentrantLock rather than a monitor, so a virtual thread
+	 * recording a response time does not pin its carrier, and the samples are sorted outside it.
+	 */
+	private class Destination {
+		private final ReentrantLock lock = new ReentrantLock();
+		private final long[] samples = new long[window];
+		private int next = 0;
+		private long count = 0;
+		private long timeouts = 0;
+		private volatile long percentileValue = 0;
+		private volatile long learned = 0;
+
+		private void record(long millis, boolean timedOut) {
+			long[] window;
+			lock.lock();
+			try {
+				samples[next] = Math.max(0, millis);
+				next = (next + 1) % samples.length;
+				count++;
+				if (timedOut) {
+					timeouts++;
+				}
+				if (count < minSamples || (count != minSamples && count % RECOMPUTE_INTERVAL != 0 && !timedOut)) {
+					return;
+				}
+				window = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+			} finally {
+				lock.unlock();
+			}
+			recompute(window);
+		}
+
+		private void recompute(long[] sorted) {
+			int n = sorted.length;
+			Arrays.sort(sorted);
+			int index = (int) Math.ceil(n * percentile / 100) - 1;
+			long value = sorted[Math.max(0, Math.min(n - 1, index))];
+			percentileValue = value;
+			learned = Math.max(minTimeout, Math.min(maxTimeout, Math.round(value * multiplier)));
+		}
+
+		private Stats getStats() {
+			Stats s = new Stats();
+			lock.lock();
+			try {
+				s.setSamples(count);
+				s.setTimeouts(timeouts);
+			} finally {
+				lock.unlock();
+			}
+			s.setPercentile(percentileValue);
+			s.setLearned(learned);
+			return s;
+		}
+	}
+
+	/**
+	 * @return The timeouts used by IZ Gateway
+	 */
+	public static AdaptiveTimeouts getDefault() {
+		return DEFAULT_TIMEOUTS;
+	}
+
+	/**
+	 * Set the number of most recent response times kept for each destination.  This
+	 * applies to destinations first tracked after the change.
+	 * @param window	The number of response times
+	 */
+	public void setWindow(int window) {
+		this.window = Math.max(1, window);
+	}
+
+	/**
+	 * Get the read timeout to use for a destination.
+	 * @param destinationId	The destination
+	 * @param defaultTimeout	The timeout in milliseconds to use if none has been learned
+	 * @return	The timeout in milliseconds
+	 */
+	public int getReadTimeout(String destinationId, int defaultTimeout) {
+		if (!enabled || destinationId == null) {
+			return defaultTimeout;
+		}
+		Destination d = destinations.get(destinationId);
+		long learned = d == null ? 0 : d.learned;
+		return learned == 0 ? defaultTimeout : (int) learned;
+	}
+
+	/**
+	 * Record the time a destination took to respond.  Reads that fail before timing out should not be
+	 * recorded, as they say nothing about how long the destination takes to respond.
+	 * @param destinationId	The destination
+	 * @param millis	The time in milliseconds from sending the request until the response was read or the read timed out
+	 * @param timedOut	True if the read timed out
+	 */
+	public void record(String destinationId, long millis, boolean timedOut) {
+		Destination d = getDestination(destinationId);
+		if (d != null) {
+			d.record(millis, timedOut);
+		}
+	}
+
+	private Destination getDestination(String destinationId) {
+		if (destinationId == null) {
+			return null;
+		}
+		Destination d = destinations.get(destinationId);
+		if (d != null || destinations.size() >= MAX_DESTINATIONS) {
+			return d;
+		}
+		return destinations.computeIfAbsent(destinationId, k -> new Destination());
+	}
+
+	/**
+	 * Report on the timeouts learned.
+	 * @return	A map from destination to the timeout learned for it, in alphabetical order
+	 */
+	public Map<String, Stats> getStats() {
+		Map<String, Stats> result = new TreeMap<>();
+		destinations.forEach((id, d) -> result.put(id, d.getStats()));
+		return result;
+	}
+
+	/**
+	 * Save the timeouts learned, so that they can be used after a restart until new ones are learned.
+	 * @param file	The file to write
+	 * @throws IOException	If the file cannot be written
+	 */
+	public void save(File file) throws IOException {
+		Map<String, Long> learned = new TreeMap<>();
+		destinations.forEach((id, d) -> {
+			if (d.learned != 0) {
+				learned.put(id, d.learned);
+			}
+		});
+		File temp = new File(file.getPath() + ".tmp");
+		JsonUtils.getMapper().writeValue(temp, learned);
+		if (!temp.renameTo(file) && (!file.delete() || !temp.renameTo(file))) {
+			throw new IOException("Cannot replace " + file);
+		}
+	}
+
+	/**
+	 * Load timeouts saved by {@link #save(File)}.  A destination that has already
+	 * learned a timeout keeps it.
+	 * @param file	The file to read
+	 * @throws IOException	If the file cannot be read
+	 */
+	public void load(File file) throws IOException {
+		Map<String, Long> learned = JsonUtils.getMapper().readValue(file, new TypeReference<Map<String, Long>>() {});
+		learned.forEach((id, timeout) -> {
+			Destination d = getDestination(id);
+			if (d != null && d.learned == 0 && timeout != null && timeout > 0) {
+				d.learned = Math.max(minTimeout, Math.min(maxTimeout, timeout));
+			}
+		});
+		log.info("Loaded read timeouts for {} destinations from {}", learned.size(), file);
+	}
+
+	/**
+	 * Forget all response times and timeouts learned.
+	 */
+	public void reset() {
+		destinations.clear();
+	}
+}
@@ -0,0 +1,149 @@
+package gov.cdc.izgateway.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * LatencyHistogram records latencies in microseconds in log-linear buckets, in the manner of an
+ * HdrHistogram with 32 buckets per power of two, so that any reported percentile is within about 3%
+ * of the recorded value, from 1 microsecond to about 38 hours.  Recording does not lock or allocate.
+ *
+ * @author Audacious Inquiry
+ */
+public class LatencyHistogram {
+	/** The number of bits of a value that select a bucket within a power of two, plus one */
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+	/** The largest value tracked, larger values are recorded as this value */
+	public static final long MAX_VALUE = (1L << 37) - 1;
+	private static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+	/** The percentiles reported */
+	private static final double[] PERCENTILES = { 50, 90, 95, 99, 99.9 };
+
+	/**
+	 * A point in time summary of a histogram.
+	 */
+	@Data
+	@Schema(description="Summary of latencies in microseconds")
+	public static class Snapshot {
+		@Schema(description="Number of latencies recorded")
+		private long count;
+		@Schema(description="Sum of latencies recorded")
+		private long sum;
+		@Schema(description="Smallest latency recorded")
+		private long min;
+		@Schema(description="Largest latency recorded")
+		private long max;
+		@Schema(description="Mean latency")
+		private double mean;
+		@Schema(description="Median latency")
+		private long p50;
+		@Schema(description="90th percentile latency")
+		private long p90;
+		@Schema(description="95th percentile latency")
+		private long p95;
+		@Schema(description="99th percentile latency")
+		private long p99;
+		@Schema(description="99.9th percentile latency")
+		private long p999;
+	}
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Record a latency.
+	 * @param micros	The latency in microseconds. Negative values are recorded as 0.
+	 */
+	public void record(long micros) {
+		long value = Math.min(Math.max(0, micros), MAX_VALUE);
+		counts.incrementAndGet(indexOf(value));
+		count.increment();
+		sum.add(value);
+		if (value < min.get()) {
+			min.accumulateAndGet(value, Math::min);
+		}
+		if (value > max.get()) {
+			max.accumulateAndGet(value, Math::max);
+		}
+	}
+
+	/**
+	 * @return	The number of latencies recorded
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Summarize the histogram.  Values recorded while the snapshot is taken may or may not be included.
+	 * @return	The summary
+	 */
+	public Snapshot getSnapshot() {
+		long[] copy = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			copy[i] = counts.get(i);
+			total += copy[i];
+		}
+		Snapshot s = new Snapshot();
+		s.setCount(total);
+		if (total == 0) {
+			return s;
+		}
+		long highest = max.get();
+		s.setSum(sum.sum());
+		s.setMin(min.get());
+		s.setMax(highest);
+		s.setMean((double) s.getSum() / total);
+		long[] values = new long[PERCENTILES.length];
+		long seen = 0;
+		int p = 0;
+		for (int i = 0; i < BUCKET_COUNT && p < PERCENTILES.length; i++) {
+			seen += copy[i];
+			while (p < PERCENTILES.length && seen >= Math.ceil(total * PERCENTILES[p] / 100)) {
+				values[p++] = Math.min(highestValueOf(i), highest);
+			}
+		}
+		s.setP50(values[0]);
+		s.setP90(values[1]);
+		s.setP95(values[2]);
+		s.setP99(values[3]);
+		s.setP999(values[4]);
+		return s;
+	}
+
+	/**
+	 * Compute the bucket for a value.  Values less than SUB_BUCKET_COUNT have a bucket each,
+	 * thereafter each power of two is divided into SUB_BUCKET_HALF_COUNT buckets.
+	 */
+	static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS + 1;
+		return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift) - SUB_BUCKET_HALF_COUNT;
+	}
+
+	/**
+	 * Compute the largest value recorded in a bucket.
+	 */
+	static long highestValueOf(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+		long sub = (long) (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+		return ((sub + 1) << shift) - 1;
+	}
+}
@@ -0,0 +1,135 @@
+package gov.cdc.izgateway.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * Meter counts events and reports their rate per second as exponentially weighted moving averages
+ * over 1, 5 and 15 minutes, in the manner of the Unix load average.  Events are counted on a LongAdder,
+ * and the averages are updated every five seconds by the first thread to mark or read the meter after
+ * the interval has passed, so no timer thread is needed.
+ *
+ * @author Audacious Inquiry
+ */
+public class Meter {
+	private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+	/**
+	 * A point in time summary of a meter.
+	 */
+	@Data
+	@Schema(description="Event counts and rates per second")
+	public static class Snapshot {
+		@Schema(description="Number of events")
+		private long count;
+		@Schema(description="Rate of events per second over the last minute")
+		private double rate1m;
+		@Schema(description="Rate of events per second over the last five minutes")
+		private double rate5m;
+		@Schema(description="Rate of events per second over the last fifteen minutes")
+		private double rate15m;
+	}
+
+	/**
+	 * An exponentially weighted moving average, only updated by the thread that wins the tick.
+	 */
+	private static class MovingAverage {
+		private final double alpha;
+		private volatile double rate;
+		private boolean initialized;
+
+		private MovingAverage(int minutes) {
+			this.alpha = 1 - Math.exp(-5.0 / 60 / minutes);
+		}
+
+		private void tick(long events) {
+			double instantRate = events / (double) TimeUnit.NANOSECONDS.toSeconds(TICK_INTERVAL);
+			if (initialized) {
+				rate += alpha * (instantRate - rate);
+			} else {
+				rate = instantRate;
+				initialized = true;
+			}
+		}
+	}
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder uncounted = new LongAdder();
+	private final MovingAverage m1 = new MovingAverage(1);
+	private final MovingAverage m5 = new MovingAverage(5);
+	private final MovingAverage m15 = new MovingAverage(15);
+	private final AtomicLong lastTick;
+
+	/**
+	 * Create a new meter.
+	 */
+	public Meter() {
+		this(System.nanoTime());
+	}
+
+	Meter(long now) {
+		lastTick = new AtomicLong(now);
+	}
+
+	/**
+	 * Count an event.
+	 */
+	public void mark() {
+		mark(System.nanoTime());
+	}
+
+	void mark(long now) {
+		tickIfNecessary(now);
+		count.increment();
+		uncounted.increment();
+	}
+
+	/**
+	 * @return The number of events
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return A summary of the meter
+	 */
+	public Snapshot getSnapshot() {
+		return getSnapshot(System.nanoTime());
+	}
+
+	Snapshot getSnapshot(long now) {
+		tickIfNecessary(now);
+		Snapshot s = new Snapshot();
+		s.setCount(count.sum());
+		s.setRate1m(m1.rate);
+		s.setRate5m(m5.rate);
+		s.setRate15m(m15.rate);
+		return s;
+	}
+
+	private void tickIfNecessary(long now) {
+		long old = lastTick.get();
+		long age = now - old;
+		if (age < TICK_INTERVAL) {
+			return;
+		}
+		long newTick = now - age % TICK_INTERVAL;
+		if (!lastTick.compareAndSet(old, newTick)) {
+			// Another thread is updating the averages
+			return;
+		}
+		long events = uncounted.sumThenReset();
+		for (long i = age / TICK_INTERVAL; i > 0; i--) {
+			m1.tick(events);
+			m5.tick(events);
+			m15.tick(events);
+			// Events are attributed to the first interval, later intervals were idle
+			events = 0;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package gov.cdc.izgateway.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import gov.cdc.izgateway.common.ResourceNotFoundException;
+import gov.cdc.izgateway.security.AccessControlRegistry;
+import gov.cdc.izgateway.security.Roles;
+import gov.cdc.izgateway.utils.UtilizationSampler;
+import io.swagger.v3.oas.annotations.Operation;
+import jakarta.annotation.security.RolesAllowed;
+
+/**
+ * MetricsController reports the latency and throughput of IZ Gateway transactions
+ * by destination, message type and fault code.
+ *
+ * @author Audacious Inquiry
+ */
+@RestController
+@CrossOrigin
+@RolesAllowed({Roles.ADMIN, Roles.OPERATIONS})
+@RequestMapping({"/rest"})
+@Lazy(false)
+public class MetricsController {
+	/** The content type of the Prometheus text exposition format */
+	public static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final boolean prometheusEnabled;
+
+	/**
+	 * Construct a new metrics controller
+	 * @param registry	The access control registry
+	 * @param prometheusEnabled	True to report metrics in Prometheus format
+	 */
+	@Autowired
+	public MetricsController(AccessControlRegistry registry, @Value("${hub.metrics.prometheus:false}") boolean prometheusEnabled) {
+		registry.register(this);
+		this.prometheusEnabled = prometheusEnabled;
+	}
+
+	/**
+	 * Report on latency and throughput.
+	 * @return A map from dimension (destination, messageType, faultCode or transaction) to a map from name to its metrics
+	 */
+	@Operation(summary="Report latency percentiles in microseconds and rates per second",
+		description="Return metrics by destination, message type, fault code, and for all transactions")
+	@GetMapping("/metrics")
+	public Map<String, Map<String, Timer.Snapshot>> getMetrics() {
+		return MetricsRegistry.getDefault().getSnapshot();
+	}
+
+	/**
+	 * Report on recent utilization.
+	 * @return The utilization samples kept, oldest first
+	 */
+	@Operation(summary="Report recent utilization",
+		description="Return the CPU, heap, garbage collection, thread pool and connection utilization samples kept, oldest first")
+	@GetMapping("/metrics/utilization")
+	public List<UtilizationSampler.Sample> getUtilization() {
+		return UtilizationSampler.getDefault().getSamples();
+	}
+
+	/**
+	 * Report on the read timeouts learned for each destination.
+	 * @return A map from destination to the read timeout learned for it
+	 */
+	@Operation(summary="Report the read timeouts learned for each destination",
+		description="Return the response time percentile and read timeout learned for each destination, in milliseconds")
+	@GetMapping("/metrics/timeouts")
+	public Map<String, AdaptiveTimeouts.Stats> getTimeouts() {
+		return AdaptiveTimeouts.getDefault().getStats();
+	}
+
+	/**
+	 * Report on latency and throughput in Prometheus format, if enabled by hub.metrics.prometheus.
+	 * @return The metrics in Prometheus text exposition format
+	 */
+	@Operation(summary="Report latency and rates in Prometheus text format",
+		description="Available when hub.metrics.prometheus is true")
+	@GetMapping(value="/metrics/prometheus", produces=PROMETHEUS_CONTENT_TYPE)
+	public String getPrometheusMetrics() {
+		if (!prometheusEnabled) {
+			throw new ResourceNotFoundException("Prometheus metrics are not enabled");
+		}
+		return MetricsRegistry.getDefault().toPrometheus();
+	}
+}
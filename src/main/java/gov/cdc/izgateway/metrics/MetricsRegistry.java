@@ -0,0 +1,174 @@
+package gov.cdc.izgateway.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+
+import gov.cdc.izgateway.logging.event.TransactionData;
+
+/**
+ * MetricsRegistry aggregates the latency and throughput of transactions in process, so that percentiles
+ * and rates can be reported without searching the logs.  Timers are kept for each name within a dimension:
+ * <ul>
+ * <li>{@value #DESTINATION}: each attempt to send a message to a destination, timed to the microsecond.</li>
+ * <li>{@value #MESSAGE_TYPE}: the total time of each transaction by message type.</li>
+ * <li>{@value #FAULT_CODE}: the total time of each failed transaction by fault code.</li>
+ * <li>{@value #TRANSACTION}: the total time of all transactions.</li>
+ * </ul>
+ * Each dimension keeps at most {@value #MAX_NAMES} names, after which further names are counted under {@value #OTHER}.
+ *
+ * @author Audacious Inquiry
+ */
+public class MetricsRegistry {
+	/** The dimension for attempts to send to a destination */
+	public static final String DESTINATION = "destination";
+	/** The dimension for transactions by message type */
+	public static final String MESSAGE_TYPE = "messageType";
+	/** The dimension for failed transactions by fault code */
+	public static final String FAULT_CODE = "faultCode";
+	/** The dimension for all transactions */
+	public static final String TRANSACTION = "transaction";
+	/** The name of the timer in the {@value #TRANSACTION} dimension */
+	public static final String ALL = "all";
+	/** The name under which values are counted when a dimension has too many names */
+	public static final String OTHER = "other";
+	/** The maximum number of names in a dimension */
+	public static final int MAX_NAMES = 500;
+	private static final String UNKNOWN = "unknown";
+	private static final double MICROS_PER_SECOND = 1_000_000.0;
+
+	private static final MetricsRegistry DEFAULT_REGISTRY = new MetricsRegistry();
+
+	private final Map<String, Map<String, Timer>> dimensions = new ConcurrentHashMap<>();
+
+	/**
+	 * @return The registry used by IZ Gateway
+	 */
+	public static MetricsRegistry getDefault() {
+		return DEFAULT_REGISTRY;
+	}
+
+	/**
+	 * Get the timer for a name within a dimension, creating it if necessary.
+	 * @param dimension	The dimension
+	 * @param name	The name
+	 * @return	The timer
+	 */
+	public Timer getTimer(String dimension, String name) {
+		Map<String, Timer> timers = dimensions.computeIfAbsent(dimension, k -> new ConcurrentHashMap<>());
+		Timer timer = timers.get(name);
+		if (timer != null) {
+			return timer;
+		}
+		if (timers.size() >= MAX_NAMES) {
+			name = OTHER;
+		}
+		return timers.computeIfAbsent(name, k -> new Timer());
+	}
+
+	/**
+	 * Record an attempt to send a message to a destination.
+	 * @param destinationId	The destination
+	 * @param micros	The time from connection until the response was read or the attempt failed, in microseconds
+	 * @param success	True if a response was read
+	 */
+	public void recordDestination(String destinationId, long micros, boolean success) {
+		getTimer(DESTINATION, StringUtils.defaultIfEmpty(destinationId, UNKNOWN)).record(micros, success);
+	}
+
+	/**
+	 * Record a completed transaction, after its times have been computed.
+	 * @param t	The transaction
+	 */
+	public void record(TransactionData t) {
+		long micros = t.getElapsedTimeTotal() * 1000;
+		boolean success = !t.getHasProcessError();
+		getTimer(TRANSACTION, ALL).record(micros, success);
+		getTimer(MESSAGE_TYPE, t.getMessageType() == null ? UNKNOWN : t.getMessageType().toString()).record(micros, success);
+		if (!success) {
+			String code = StringUtils.defaultIfEmpty(t.getFaultCode(), t.getFaultName());
+			getTimer(FAULT_CODE, StringUtils.defaultIfEmpty(code, UNKNOWN)).record(micros, false);
+		}
+	}
+
+	/**
+	 * Summarize all timers.
+	 * @return	A map from dimension to a map from name to a summary of its timer, in alphabetical order
+	 */
+	public Map<String, Map<String, Timer.Snapshot>> getSnapshot() {
+		Map<String, Map<String, Timer.Snapshot>> result = new TreeMap<>();
+		dimensions.forEach((dimension, timers) -> {
+			Map<String, Timer.Snapshot> snapshots = new TreeMap<>();
+			timers.forEach((name, timer) -> snapshots.put(name, timer.getSnapshot()));
+			result.put(dimension, snapshots);
+		});
+		return result;
+	}
+
+	/**
+	 * Write all timers in the Prometheus text exposition format, with latencies in seconds.
+	 * @return	The timers in Prometheus format
+	 */
+	public String toPrometheus() {
+		Map<String, Map<String, Timer.Snapshot>> snapshot = getSnapshot();
+		StringBuilder b = new StringBuilder();
+		b.append("# HELP izgw_latency_seconds Latency of IZ Gateway operations\n");
+		b.append("# TYPE izgw_latency_seconds summary\n");
+		forEach(snapshot, (labels, s) -> {
+			LatencyHistogram.Snapshot l = s.getLatency();
+			appendQuantile(b, labels, "0.5", l.getP50());
+			appendQuantile(b, labels, "0.9", l.getP90());
+			appendQuantile(b, labels, "0.95", l.getP95());
+			appendQuantile(b, labels, "0.99", l.getP99());
+			appendQuantile(b, labels, "0.999", l.getP999());
+			appendSample(b, "izgw_latency_seconds_sum", labels, format(l.getSum() / MICROS_PER_SECOND));
+			appendSample(b, "izgw_latency_seconds_count", labels, Long.toString(l.getCount()));
+		});
+		appendMeter(b, snapshot, "requests", "Operations performed by IZ Gateway", true);
+		appendMeter(b, snapshot, "failures", "Operations performed by IZ Gateway that failed", false);
+		return b.toString();
+	}
+
+	private interface SnapshotConsumer {
+		void accept(String labels, Timer.Snapshot snapshot);
+	}
+
+	private static void forEach(Map<String, Map<String, Timer.Snapshot>> snapshot, SnapshotConsumer consumer) {
+		snapshot.forEach((dimension, timers) -> timers.forEach((name, s) ->
+			consumer.accept("dimension=\"" + escape(dimension) + "\",name=\"" + escape(name) + "\"", s)));
+	}
+
+	private static void appendMeter(StringBuilder b, Map<String, Map<String, Timer.Snapshot>> snapshot, String metric, String help, boolean requests) {
+		b.append("# HELP izgw_").append(metric).append("_total ").append(help).append('\n');
+		b.append("# TYPE izgw_").append(metric).append("_total counter\n");
+		forEach(snapshot, (labels, s) -> appendSample(b, "izgw_" + metric + "_total", labels,
+			Long.toString((requests ? s.getRequests() : s.getFailures()).getCount())));
+		b.append("# HELP izgw_").append(metric).append("_rate ").append(help).append(" per second\n");
+		b.append("# TYPE izgw_").append(metric).append("_rate gauge\n");
+		forEach(snapshot, (labels, s) -> {
+			Meter.Snapshot m = requests ? s.getRequests() : s.getFailures();
+			appendSample(b, "izgw_" + metric + "_rate", labels + ",window=\"1m\"", format(m.getRate1m()));
+			appendSample(b, "izgw_" + metric + "_rate", labels + ",window=\"5m\"", format(m.getRate5m()));
+			appendSample(b, "izgw_" + metric + "_rate", labels + ",window=\"15m\"", format(m.getRate15m()));
+		});
+	}
+
+	private static void appendQuantile(StringBuilder b, String labels, String quantile, long micros) {
+		appendSample(b, "izgw_latency_seconds", labels + ",quantile=\"" + quantile + "\"", format(micros / MICROS_PER_SECOND));
+	}
+
+	private static void appendSample(StringBuilder b, String metric, String labels, String value) {
+		b.append(metric).append('{').append(labels).append("} ").append(value).append('\n');
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.6f", value);
+	}
+
+	private static String escape(String label) {
+		return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
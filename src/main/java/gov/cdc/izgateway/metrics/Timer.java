@@ -0,0 +1,60 @@
+package gov.cdc.izgateway.metrics;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * Timer records the latency and throughput of an operation, and the rate at which it fails.
+ *
+ * @author Audacious Inquiry
+ */
+public class Timer {
+	/**
+	 * A point in time summary of a timer.
+	 */
+	@Data
+	@Schema(description="Latency and throughput of an operation")
+	public static class Snapshot {
+		@Schema(description="Operations performed")
+		private Meter.Snapshot requests;
+		@Schema(description="Operations that failed")
+		private Meter.Snapshot failures;
+		@Schema(description="Latency of operations in microseconds")
+		private LatencyHistogram.Snapshot latency;
+	}
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final Meter requests = new Meter();
+	private final Meter failures = new Meter();
+
+	/**
+	 * Record an operation.
+	 * @param micros	The latency of the operation in microseconds
+	 * @param success	True if the operation succeeded
+	 */
+	public void record(long micros, boolean success) {
+		latency.record(micros);
+		requests.mark();
+		if (!success) {
+			failures.mark();
+		}
+	}
+
+	/**
+	 * @return	The latency histogram
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @return	A summary of the timer
+	 */
+	public Snapshot getSnapshot() {
+		Snapshot s = new Snapshot();
+		s.setRequests(requests.getSnapshot());
+		s.setFailures(failures.getSnapshot());
+		s.setLatency(latency.getSnapshot());
+		return s;
+	}
+}
@@ -17,6 +17,7 @@ import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.KeyManagerFactory;
@@ -84,6 +85,8 @@ public class ClientTlsSupport implements InitializingBean {
 
 	private KeyManagerFactory keyMgrFact;
 	private SSLContext sslContext;
+	/** Guards loading of the key store, a lock rather than a monitor so that virtual threads do not pin their carrier */
+	private final ReentrantLock keyStoreLock = new ReentrantLock();
 	
     @Getter
     private X509Certificate certificate;
@@ -174,10 +177,15 @@ public class ClientTlsSupport implements InitializingBean {
 	 * @throws KeyStoreException
 	 * @throws CertificateException
 	 */
-	synchronized KeyStore loadKeyStore(boolean reload) {
-		KeyStore ks = config.getClientKeyStore().load(reload);
-		setClientHostname(ks);
-		return ks;
+	KeyStore loadKeyStore(boolean reload) {
+		keyStoreLock.lock();
+		try {
+			KeyStore ks = config.getClientKeyStore().load(reload);
+			setClientHostname(ks);
+			return ks;
+		} finally {
+			keyStoreLock.unlock();
+		}
 	}
 
 	private void setClientHostname(KeyStore keystore) {
@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.util.ServiceConfigurationError;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
@@ -27,13 +28,16 @@ class KeyStoreLoader {
 	private final String type;
 
 	@Getter
-	private long lastUpdated = 0;
+	private volatile long lastUpdated = 0;
 	@Getter
-	private int reloadCount = 0;
+	private volatile int reloadCount = 0;
 	
 	@Getter
 	@JsonIgnore
-	private KeyStore store;
+	private volatile KeyStore store;
+	
+	/** Serializes reloading without pinning a virtual thread to its carrier while the file is read */
+	private final ReentrantLock reloadLock = new ReentrantLock();
 	
 	KeyStoreLoader(String file, String password, String provider, String type) {
 		try {
@@ -73,7 +77,7 @@ class KeyStoreLoader {
 	}
 	
 	void updated() {
-		++reloadCount;
+		reloadCount++; // NOSONAR, only updated while holding reloadLock
 		this.lastUpdated = getLastModified();
 	}
 	
@@ -82,16 +86,24 @@ class KeyStoreLoader {
 	}
 	
 	KeyStore load(boolean reload) {
-		reload = reload || isOutOfDate();
-		if (!reload && store != null) {
-			return store;
+		KeyStore ks = store;
+		if (!reload && ks != null && !isOutOfDate()) {
+			return ks;
 		}
+		reloadLock.lock();
 		try {
-			KeyStore ks = KeyStore.getInstance(getType().toUpperCase(), getProvider());
-			ks.load(new FileInputStream(new File(getFile())), getPassword().toCharArray());
+			// Another thread may have reloaded the store while this one waited
+			ks = store;
+			if (!reload && ks != null && !isOutOfDate()) {
+				return ks;
+			}
+			ks = KeyStore.getInstance(getType().toUpperCase(), getProvider());
+			try (FileInputStream is = new FileInputStream(new File(getFile()))) {
+				ks.load(is, getPassword().toCharArray());
+			}
 			updated();
 			store = ks;
-			return store;
+			return ks;
 		} catch (GeneralSecurityException e) {
 			log.error(Markers2.append(e), "Cannot create Key Store : {}", e.getMessage());
 			throw new ServiceConfigurationError(e.getMessage(), e);
@@ -101,6 +113,8 @@ class KeyStoreLoader {
 		} catch (IOException e) {
 			log.error(Markers2.append(e), "Cannot read Key Store file: {}", getFile());
 			throw new ServiceConfigurationError(e.getMessage(), e);
+		} finally {
+			reloadLock.unlock();
 		}
 	}
 	
@@ -1,30 +1,25 @@
 package gov.cdc.izgateway.security.crypto;
 
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 class KeyProviderBase {
-    private final Set<ByteArrayWrapper> keyHistory = new LinkedHashSet<>();
+    // Keys are added rarely and checked on every decryption, so reads must not block
+    private final Set<ByteArrayWrapper> keyHistory = new CopyOnWriteArraySet<>();
 
     public List<byte[]> getAllKeys() {
-        synchronized (TestKeyProvider.class) {
-            return keyHistory.stream()
-                    .map(ByteArrayWrapper::getData)
-                    .toList();
-        }
+        return keyHistory.stream()
+                .map(ByteArrayWrapper::getData)
+                .toList();
     }
 
     public void addKeyToHistory(byte[] keyBytes) {
-        synchronized (TestKeyProvider.class) {
-            keyHistory.add(new ByteArrayWrapper(keyBytes));
-        }
+        keyHistory.add(new ByteArrayWrapper(keyBytes));
     }
 
     // Check if key exists
     public boolean keyExists(byte[] keyBytes) {
-        synchronized (CryptoSupport.class) {
-            return keyHistory.contains(new ByteArrayWrapper(keyBytes));
-        }
+        return keyHistory.contains(new ByteArrayWrapper(keyBytes));
     }
 }
@@ -1,11 +1,12 @@
 package gov.cdc.izgateway.security.oauth;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 import gov.cdc.izgateway.logging.markers.Markers2;
 import gov.cdc.izgateway.security.ClientTlsSupport;
 import gov.cdc.izgateway.utils.CapturingSSLSocketFactory;
+import gov.cdc.izgateway.utils.JsonUtils;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -21,9 +22,8 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
 import javax.xml.ws.http.HTTPException;
@@ -33,16 +33,18 @@ import javax.xml.ws.http.HTTPException;
 @EqualsAndHashCode(callSuper=false)
 public class ExternalTokenStore extends SimpleTokenStore {
 	private static final String OAUTH_ENDPOINT = "oauthEndpoint";
+	private static final ObjectReader TOKEN_READER = JsonUtils.getMapper().readerFor(AccessToken.class)
+		.without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, DeserializationFeature.FAIL_ON_IGNORED_PROPERTIES);
 	private ClientTlsSupport tlsSupport;
     private URL url;
-    private String username;
-    private String password;
-    private AccessToken accessToken;
+    private volatile String username;
+    private volatile String password;
+    private volatile AccessToken accessToken;
     private boolean usingQueryParameters;
     private boolean debugging;
     private int numRetries = 2;
     
-    private static Map<String, ExternalTokenStore> stores = Collections.synchronizedMap(new TreeMap<>());
+    private static final Map<String, ExternalTokenStore> stores = new ConcurrentHashMap<>();
     
     public interface RequestWriter {
     	   void write(HttpsURLConnection con, AccessToken t) throws IOException;
@@ -186,14 +188,18 @@ public class ExternalTokenStore extends SimpleTokenStore {
     	
     	do {
     		try {
-		        if (accessToken == null) {
-		        	accessToken = getNewToken();
+		        // Read the shared token once, since another thread may replace or clear it
+		        AccessToken token = accessToken;
+		        if (token == null) {
+		        	token = getNewToken();
+		        	accessToken = token;
 		        	log.info(Markers2.append(OAUTH_ENDPOINT, url.toString()), "Got new access token");
-		        } else if (!accessToken.isValid()) {
+		        } else if (!token.isValid()) {
 		        	refreshOnFailure();
+		        	token = accessToken;
 		        }
-		        if (accessToken != null) {
-		        	return accessToken.getAccessToken();
+		        if (token != null) {
+		        	return token.getAccessToken();
 		        }
     		} catch (OAuthReportedHttpException ex) {
     			log.error(Markers2.append(ex, OAUTH_ENDPOINT, url.toString()), 
@@ -254,12 +260,7 @@ public class ExternalTokenStore extends SimpleTokenStore {
         AccessToken token = null;
         try (InputStream is = con.getInputStream()) {
         	String value = IOUtils.toString(is, StandardCharsets.UTF_8);
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.disable(
-                DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES,
-                DeserializationFeature.FAIL_ON_IGNORED_PROPERTIES
-            );
-            token = mapper.readValue(new StringReader(value), AccessToken.class);
+            token = TOKEN_READER.readValue(new StringReader(value));
         }
         return token;
     }
@@ -43,8 +43,7 @@ import lombok.extern.slf4j.Slf4j;
 public class RevocationChecker {
 	private static final long GOODCERT_RECHECK_HOURS = 24;
 	private static final Map<String, String> BASE_OCSP_REQ_HEADERS = new LinkedHashMap<>();
-	private static final DigestCalculator digestCalc = getDigestCalculator();
-	private static RevocationChecker instance;
+	private static volatile RevocationChecker instance;
 	
 	public enum SslLocation {
 	    CLIENT, SERVER;
@@ -83,6 +82,11 @@ public class RevocationChecker {
 		BASE_OCSP_REQ_HEADERS.put(HttpHeaders.CONTENT_TYPE, ContentTypes.OCSP_REQ.toString());
 	}
 	
+	/**
+	 * A DigestCalculator holds the state of the digest it is computing, so it cannot be
+	 * shared by concurrent checks.
+	 * @return	A new DigestCalculator for an OCSP request
+	 */
 	private static DigestCalculator getDigestCalculator() {
 		try {
 			return CryptoUtils.DIGEST_CALC_PROV.get(CertificateID.HASH_SHA1);
@@ -206,7 +210,7 @@ public class RevocationChecker {
 			RequestHelper ocspRequestHelper = new RequestHelper();
 
 			// Generate the Certificate Id with info hashed with Digest for easy processing
-			CertificateId ocspReqCertId = ocspRequestHelper.getOcspRequestCertificateId(digestCalc,
+			CertificateId ocspReqCertId = ocspRequestHelper.getOcspRequestCertificateId(getDigestCalculator(),
 					issuerCertHolder, cert);
 			OCSPReq ocspReq = ocspRequestHelper.createOCSPRequest(ocspReqCertId, nonceOcspReqExt);
 
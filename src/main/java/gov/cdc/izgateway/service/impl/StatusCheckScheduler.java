@@ -0,0 +1,279 @@
+package gov.cdc.izgateway.service.impl;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import gov.cdc.izgateway.configuration.StatusCheckerConfiguration;
+import gov.cdc.izgateway.logging.RequestContext;
+import gov.cdc.izgateway.model.IDestination;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * StatusCheckScheduler runs the status checks of many destinations in parallel, so that the time
+ * to check every destination does not grow with the number of destinations, and a destination that
+ * hangs does not delay the checks of the others.
+ *
+ * Each sweep starts the check of each destination at a random offset within the jitter window,
+ * so that destinations are not all contacted at once, and runs at most the configured number of
+ * checks at a time.  A check that has not finished by its deadline, measured from when it starts
+ * running on a worker, is interrupted, counted as timed out, and reported to
+ * {@link Check#timedOut(IDestination, long)}.  Callers are signalled by the completion of
+ * the future returned by {@link #sweep(Collection)}, rather than by polling.  Checks should also set
+ * their own I/O timeouts, since a thread blocked reading a socket cannot always be interrupted.
+ *
+ * @author Audacious Inquiry
+ */
+@Slf4j
+public class StatusCheckScheduler implements Closeable {
+	/**
+	 * The status check of a destination.
+	 */
+	public interface Check {
+		/**
+		 * Check the status of a destination, updating its status as appropriate.
+		 * @param dest	The destination
+		 * @throws Exception	If the check failed
+		 */
+		void check(IDestination dest) throws Exception;	// NOSONAR Any failure fails the check
+
+		/**
+		 * Called when the check of a destination has not finished by its deadline.
+		 * @param dest	The destination
+		 * @param deadline	The deadline in milliseconds
+		 */
+		default void timedOut(IDestination dest, long deadline) {
+			// Do nothing by default
+		}
+	}
+
+	/** The outcome of the check of a destination */
+	public enum Outcome {
+		/** The check succeeded */
+		OK,
+		/** The check threw an exception */
+		FAILED,
+		/** The check did not finish by its deadline */
+		TIMED_OUT
+	}
+
+	/**
+	 * Statistics on a sweep of status checks.
+	 */
+	@Data
+	@Schema(description="Statistics on a sweep of status checks")
+	public static class Sweep {
+		@Schema(description="The time the sweep started in milliseconds since the epoch")
+		private long started;
+		@Schema(description="The time in milliseconds from the start of the sweep until its last check finished")
+		private long duration;
+		@Schema(description="Number of destinations checked")
+		private int destinations;
+		@Schema(description="Number of checks that succeeded")
+		private int succeeded;
+		@Schema(description="Number of checks that failed")
+		private int failed;
+		@Schema(description="Number of checks that did not finish by their deadline")
+		private int timedOut;
+		@Schema(description="The longest time in milliseconds taken by a check")
+		private long slowestCheck;
+		@Schema(description="The destination whose check took the longest")
+		private String slowestDestination;
+
+		private synchronized void record(String destId, Outcome outcome, long elapsed) {
+			switch (outcome) {
+			case OK -> succeeded++;
+			case FAILED -> failed++;
+			default -> timedOut++;
+			}
+			if (elapsed >= slowestCheck) {
+				slowestCheck = elapsed;
+				slowestDestination = destId;
+			}
+		}
+	}
+
+	private final Check check;
+	private final int concurrency;
+	private final long jitter;
+	private final long deadline;
+	private final ExecutorService workers;
+	private final ScheduledExecutorService timer;
+	private final AtomicBoolean sweeping = new AtomicBoolean();
+	private volatile Sweep lastSweep;
+
+	/**
+	 * Create a scheduler configured by the status checker configuration
+	 * @param config	The configuration
+	 * @param check	The status check
+	 */
+	public StatusCheckScheduler(StatusCheckerConfiguration config, Check check) {
+		this(check, config.getStatusCheckConcurrency(),
+			TimeUnit.SECONDS.toMillis(config.getStatusCheckJitterInSeconds()),
+			TimeUnit.SECONDS.toMillis(config.getStatusCheckDeadlineInSeconds()));
+	}
+
+	/**
+	 * Create a scheduler
+	 * @param check	The status check
+	 * @param concurrency	The maximum number of checks run at once
+	 * @param jitter	The window in milliseconds over which the starts of checks in a sweep are spread
+	 * @param deadline	The time in milliseconds after it starts running by which a check must finish
+	 */
+	public StatusCheckScheduler(Check check, int concurrency, long jitter, long deadline) {
+		this.check = check;
+		this.concurrency = Math.max(1, concurrency);
+		this.jitter = Math.max(0, jitter);
+		this.deadline = Math.max(1, deadline);
+		AtomicInteger threadId = new AtomicInteger();
+		this.workers = Executors.newFixedThreadPool(this.concurrency, r -> {
+			Thread t = new Thread(r, "Status-Check-" + threadId.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "Status-Check-Scheduler");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Sweep the destinations periodically
+	 * @param destinations	Supplies the destinations to check at the start of each sweep
+	 * @param period	The time in milliseconds between the starts of sweeps
+	 */
+	public void start(Supplier<? extends Collection<? extends IDestination>> destinations, long period) {
+		timer.scheduleAtFixedRate(() -> {
+			try {
+				sweep(destinations.get());
+			} catch (Exception e) {
+				// An exception would cancel the schedule
+				log.error("Cannot start status check sweep: {}", e.getMessage(), e);
+			}
+		}, 0, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Check the status of each destination.  If the previous sweep has not finished, the
+	 * sweep is skipped, so that checks of a hung destination do not pile up.
+	 * @param destinations	The destinations to check
+	 * @return	A future completed with the statistics of the sweep when every check has finished or
+	 * timed out, or with null if the sweep was skipped
+	 */
+	public CompletableFuture<Sweep> sweep(Collection<? extends IDestination> destinations) {
+		if (!sweeping.compareAndSet(false, true)) {
+			log.warn("Skipping status check sweep, the previous sweep has not finished");
+			return CompletableFuture.completedFuture(null);
+		}
+		Sweep sweep = new Sweep();
+		sweep.setStarted(System.currentTimeMillis());
+		sweep.setDestinations(destinations.size());
+		long startNanos = System.nanoTime();
+		List<CompletableFuture<Outcome>> checks = new ArrayList<>(destinations.size());
+		for (IDestination dest: destinations) {
+			long delay = jitter == 0 ? 0 : ThreadLocalRandom.current().nextLong(jitter);
+			checks.add(schedule(dest, delay, sweep));
+		}
+		return CompletableFuture.allOf(checks.toArray(new CompletableFuture<?>[0]))
+			.handle((v, e) -> {
+				sweep.setDuration(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+				lastSweep = sweep;
+				sweeping.set(false);
+				log.info("Status check sweep of {} destinations completed in {} ms: {} succeeded, {} failed, {} timed out, slowest {} in {} ms",
+					sweep.getDestinations(), sweep.getDuration(), sweep.getSucceeded(), sweep.getFailed(),
+					sweep.getTimedOut(), sweep.getSlowestDestination(), sweep.getSlowestCheck());
+				return sweep;
+			});
+	}
+
+	private CompletableFuture<Outcome> schedule(IDestination dest, long delay, Sweep sweep) {
+		CompletableFuture<Outcome> outcome = new CompletableFuture<>();
+		timer.schedule(() -> workers.execute(() -> run(dest, outcome, sweep)), delay, TimeUnit.MILLISECONDS);
+		return outcome;
+	}
+
+	/**
+	 * Run a check on a worker.  The deadline starts when the check starts, so a check waiting
+	 * for a free worker is not timed out without contacting its destination.
+	 */
+	private void run(IDestination dest, CompletableFuture<Outcome> outcome, Sweep sweep) {
+		long started = System.nanoTime();
+		AtomicBoolean finished = new AtomicBoolean();
+		AtomicBoolean exited = new AtomicBoolean();
+		Thread worker = Thread.currentThread();
+		ScheduledFuture<?> timeout = timer.schedule(() -> {
+			if (finished.compareAndSet(false, true)) {
+				synchronized (exited) {
+					if (!exited.get()) {
+						worker.interrupt();
+					}
+				}
+				log.warn("Status check of {} did not finish in {} ms", dest.getDestinationId(), deadline);
+				try {
+					check.timedOut(dest, deadline);
+				} finally {
+					complete(dest, outcome, Outcome.TIMED_OUT, started, sweep);
+				}
+			}
+		}, deadline, TimeUnit.MILLISECONDS);
+		RequestContext.init();
+		try {
+			check.check(dest);
+			if (finished.compareAndSet(false, true)) {
+				complete(dest, outcome, Outcome.OK, started, sweep);
+			}
+		} catch (Exception e) {
+			if (finished.compareAndSet(false, true)) {
+				log.debug("Status check of {} failed: {}", dest.getDestinationId(), e.getMessage());
+				complete(dest, outcome, Outcome.FAILED, started, sweep);
+			}
+		} finally {
+			timeout.cancel(false);
+			RequestContext.clear();
+			synchronized (exited) {
+				// Don't let an interrupt from the deadline reach the next check run by this worker
+				exited.set(true);
+				Thread.interrupted();
+			}
+		}
+	}
+
+	private static void complete(IDestination dest, CompletableFuture<Outcome> outcome, Outcome value, long started, Sweep sweep) {
+		sweep.record(dest.getDestinationId(), value, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+		outcome.complete(value);
+	}
+
+	/**
+	 * @return The statistics of the last sweep to finish, or null if none has
+	 */
+	public Sweep getLastSweep() {
+		return lastSweep;
+	}
+
+	/**
+	 * @return The maximum number of checks run at once
+	 */
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	@Override
+	public void close() {
+		timer.shutdownNow();
+		workers.shutdownNow();
+	}
+}
@@ -14,6 +14,7 @@ import gov.cdc.izgateway.soap.fault.UnknownDestinationFault;
 import gov.cdc.izgateway.soap.message.SoapMessage;
 import gov.cdc.izgateway.soap.message.SubmitSingleMessageResponse;
 import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * MockMessage provides the a Mock for an IIS that enables test driven control
@@ -163,7 +164,7 @@ public enum MockMessage {
 
 
 	public static final MockMessage TC_FORCE_TIMEOUT = TC_13C;
-	private static int retryableRequestCount = 0;
+	private static final AtomicInteger retryableRequestCount = new AtomicInteger();
 	/**
 	 * Wrapped fault is used to identify exceptions which the Mock intends to
 	 * throw
@@ -439,7 +440,7 @@ public enum MockMessage {
 	}
 
 	private static boolean incrementRequestCount() {
-		return ++retryableRequestCount % 2 == 0;
+		return retryableRequestCount.incrementAndGet() % 2 == 0;
 	}
 }
 
@@ -1,16 +1,13 @@
 package gov.cdc.izgateway.soap;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -25,7 +22,9 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import gov.cdc.izgateway.common.HasDestinationUri;
+import gov.cdc.izgateway.common.LoadShedder;
 import gov.cdc.izgateway.configuration.AppProperties;
+import gov.cdc.izgateway.logging.HttpHeaderView;
 import gov.cdc.izgateway.logging.RequestContext;
 import gov.cdc.izgateway.logging.event.TransactionData;
 import gov.cdc.izgateway.logging.event.TransactionData.MessageType;
@@ -60,6 +59,7 @@ import gov.cdc.izgateway.soap.message.SubmitSingleMessageRequest;
 import gov.cdc.izgateway.soap.message.SubmitSingleMessageResponse;
 import gov.cdc.izgateway.soap.net.SoapMessageConverter.SoapConversionException;
 import gov.cdc.izgateway.soap.net.SoapMessageReader.SoapParseException;
+import gov.cdc.izgateway.utils.HL7Index;
 import gov.cdc.izgateway.utils.HL7Utils.HL7Message;
 import gov.cdc.izgateway.utils.JsonUtils;
 import io.swagger.v3.oas.annotations.Operation;
@@ -67,6 +67,7 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.Getter;
@@ -80,8 +81,11 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public abstract class SoapControllerBase {
 
-	private static Map<String, String> resourceCache = new HashMap<>();
 	private static final List<String> XSD_FILES = Arrays.asList("cdc-iis.xsd", "cdc-iis-2011.xsd", "cdc-iis-hub.xsd");
+	private static final String WSDL_PATH = "/soap/wsdl/";
+	private static final String SCHEMA_PATH = "/soap/schema/";
+	/** The WSDL and XSD resources served by this controller, loaded at startup */
+	private volatile SoapResourceTable resources = null;
 
 	protected final IMessageHeaderService mshService;
 	@Getter
@@ -145,6 +149,19 @@ public abstract class SoapControllerBase {
 		this.serviceType = usingHubHeaders ? "Gateway" : "Mock";
 	}
 
+	/**
+	 * Load the WSDL and XSD resources served by this controller.
+	 */
+	@PostConstruct
+	protected synchronized void loadResources() {
+		if (resources == null) {
+			List<String> paths = new ArrayList<>();
+			paths.add(WSDL_PATH + getWsdl());
+			XSD_FILES.forEach(xsd -> paths.add(SCHEMA_PATH + xsd));
+			resources = SoapResourceTable.load(paths, serverName);
+		}
+	}
+
 	/**
 	 * Log the start content for sending a SOAP Message
 	 * @param soapMessage	The message being sent
@@ -157,8 +174,8 @@ public abstract class SoapControllerBase {
 			if (soapMessage instanceof SubmitSingleMessageRequest s) {
 				tData.setMessageType(MessageType.SUBMIT_SINGLE_MESSAGE);
 				message = s.getHl7Message();
-				tData.getSource().setType(getSourceType(message));
 				tData.setRequestHL7Message(message);
+				tData.getSource().setType(getSourceType(tData.getRequestHL7Index()));
 			} else if (soapMessage instanceof ConnectivityTestRequest c) {
 				tData.setMessageType(MessageType.CONNECTIVITY_TEST);
 				message = c.getEchoBack();
@@ -173,7 +190,7 @@ public abstract class SoapControllerBase {
 				tData.setReplyTo(soapMessage.getWsaHeaders().getRelatesTo());
 				tData.setResponseReceived(false);
 				tData.getServerRequest().setWs_request_message(messageInfo);
-				messageInfo.setHttpHeaders(RequestContext.getHttpHeaders());
+				messageInfo.setHttpHeaders(HttpHeaderView.copyOf(RequestContext.getHttpHeaders()));
 			}
 			if (soapMessage instanceof HasFacilityID hfid) {
 				tData.getSource().setFacilityId(hfid.getFacilityID());
@@ -183,8 +200,8 @@ public abstract class SoapControllerBase {
 		tData.setServiceType(serviceType);
 	}
 
-	private String getSourceType(String message) {
-		HL7Message m = new HL7Message(message);
+	private String getSourceType(HL7Index index) {
+		HL7Message m = new HL7Message(index);
 		String[] mshVals = {
 				m.getField(HL7Message.SENDING_APPLICATION),
 				m.getField(HL7Message.SENDING_FACILITY)
@@ -304,10 +321,13 @@ public abstract class SoapControllerBase {
 	 * @param wsdl2	An alternate WSDL parameter in lowercase
 	 * @param xsd	The XSD to get
 	 * @param devAction	The devAction header
-	 * @return	The requested WSDL or XDS in a ResponseEntity.
+	 * @param ifNoneMatch	The If-None-Match header
+	 * @param acceptEncoding	The Accept-Encoding header
+	 * @return	The requested WSDL or XDS in a ResponseEntity, or Not Modified if the client has the current version.
 	 */
 	@Operation(summary = "Get the description of this Interface", description = "Returns the Web Service Description Language (WSDL) or XML Schema Description (XSD) for this interface")
 	@ApiResponse(responseCode = "200", description = "The WSDL or requested schema", content = @Content(mediaType = MediaType.APPLICATION_XML_VALUE, schema = @Schema(implementation = IMessageHeader.Map.class)))
+	@ApiResponse(responseCode = "304", description = "The WSDL or requested schema has not been modified", content = @Content)
 	@ApiResponse(responseCode = "404", description = "The requested schema was not found", content = @Content)
 	@ApiResponse(responseCode = "500", description = "A Fault occurred while processing", content = @Content)
 	@GetMapping(produces =
@@ -331,7 +351,13 @@ public abstract class SoapControllerBase {
 											String xsd,
 											@Schema(description="Throws the fault specified in the header parameter")
 											@RequestHeader(value="X-IIS-Hub-Dev-Action", required=false)
-											String devAction
+											String devAction,
+											@Schema(description="The ETags of versions already held by the client")
+											@RequestHeader(value=HttpHeaders.IF_NONE_MATCH, required=false)
+											String ifNoneMatch,
+											@Schema(description="The acceptable content encodings")
+											@RequestHeader(value=HttpHeaders.ACCEPT_ENCODING, required=false)
+											String acceptEncoding
 	) {
 		Fault fault = null;
 		logStartOfRequest(null);
@@ -346,8 +372,8 @@ public abstract class SoapControllerBase {
 				throw new UnsupportedOperationFault("Schema " + xsd + " unknown", null);
 			}
 			
-			String resourceName = wsdl != null ? "/soap/wsdl/" + getWsdl() : ("/soap/schema/" + xsd);
-			return logEndOfRequest(() -> getResource(resourceName));
+			String resourceName = wsdl != null ? WSDL_PATH + getWsdl() : (SCHEMA_PATH + xsd);
+			return logEndOfRequest(() -> getResource(resourceName, ifNoneMatch, acceptEncoding));
 		} catch (Fault ex) {
 			fault = ex;
 		} catch (Throwable ex) {
@@ -385,6 +411,9 @@ public abstract class SoapControllerBase {
 		
 		Fault fault;
 		try {
+			if (LoadShedder.getDefault().shouldShed(isLowPriority(soapMessage))) {
+				throw UnexpectedExceptionFault.serverBusy(LoadShedder.getDefault().getReason());
+			}
 			catchAndKillNonTestMessages();
 			String destinationId = getDestinationId(soapMessage);
 			if (!StringUtils.isEmpty(devAction)) {
@@ -406,6 +435,16 @@ public abstract class SoapControllerBase {
 		return handleFault(fault);
 	}
 
+	/**
+	 * Decide whether a request may be rejected while the server is saturated.
+	 * Connectivity tests and known test messages are low priority.
+	 * @param soapMessage	The request
+	 * @return	true if the request is low priority
+	 */
+	protected boolean isLowPriority(SoapMessage soapMessage) {
+		return soapMessage instanceof ConnectivityTestRequest || RequestContext.getTransactionData().isKnownTestMessage();
+	}
+
 	private void catchAndKillNonTestMessages() throws SecurityFault {
 		if (!isCatchAndKillEnabled()) {
 			return;
@@ -558,21 +597,16 @@ public abstract class SoapControllerBase {
 		);
 	}
 
-	private ResponseEntity<String> getResource(String path) throws UnsupportedOperationFault {
-		String result = resourceCache.get(path);
-		if (result == null) {
-			try {
-				result = IOUtils.resourceToString(path, StandardCharsets.UTF_8);
-				result = result.replace("{{SERVER.NAME}}", serverName);
-				// Need to substitute dev.phiz-project.org in WSDL with correct hostname
-				// Need to add a test on get on WSDL to verify hostname is correct
-			} catch (IOException ex) {
-				RequestContext.getTransactionData().setMessageType(MessageType.INVALID_REQUEST);
-				throw new UnsupportedOperationFault("Resource " + path + " unknown", ex);
-			}
-			resourceCache.put(path, result);
+	private ResponseEntity<byte[]> getResource(String path, String ifNoneMatch, String acceptEncoding) throws UnsupportedOperationFault {
+		if (resources == null) {
+			loadResources();
+		}
+		SoapResourceTable.Resource resource = resources.get(path);
+		if (resource == null) {
+			RequestContext.getTransactionData().setMessageType(MessageType.INVALID_REQUEST);
+			throw new UnsupportedOperationFault("Resource " + path + " unknown", null);
 		}
-		return new ResponseEntity<>(result, HttpStatus.OK);
+		return resource.toResponse(ifNoneMatch, acceptEncoding);
 	}
 
 	protected ResponseEntity<FaultMessage> handleFault(Fault fault) {
@@ -590,8 +624,9 @@ public abstract class SoapControllerBase {
 		logStartOfRequest(null);
 		if (ex.getCause() instanceof SoapParseException) {
 			f = new UnexpectedExceptionFault("Syntax Error", null, ex, RetryStrategy.CORRECT_MESSAGE, "An exception occurred parsing the SOAP Message");
-		} else if (ex.getCause() instanceof SecurityFault sf) {
-			f = sf;
+		} else if (ex.getCause() instanceof Fault fault) {
+			// e.g., a SecurityFault on decryption, or a MessageTooLargeFault on decoding
+			f = fault;
 		} else {
 			f = new UnexpectedExceptionFault("Syntax Error", null, ex, RetryStrategy.CORRECT_MESSAGE, "An exception occurred processing the SOAP Message");
 		}
@@ -0,0 +1,184 @@
+package gov.cdc.izgateway.soap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import gov.cdc.izgateway.soap.net.ContentCoding;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * SoapResourceTable is an immutable table of the WSDL and XSD resources served by a SOAP
+ * controller.  Resources are loaded once, with the endpoint address rewritten for the server,
+ * and are held in both identity and gzip encoded form with strong ETags and a Last-Modified date,
+ * so that serving them requires no I/O, substitution or compression per request, and clients that
+ * revalidate with If-None-Match get a 304 Not Modified response.
+ *
+ * @author Audacious Inquiry
+ */
+@Slf4j
+public class SoapResourceTable {
+	/** The placeholder in resources replaced by the server name */
+	public static final String SERVER_NAME_PLACEHOLDER = "{{SERVER.NAME}}";
+	private static final String GZIP = ContentCoding.GZIP;
+
+	/**
+	 * A resource and its encoded forms.
+	 */
+	@Getter
+	public static class Resource {
+		private final String path;
+		private final byte[] identity;
+		private final byte[] gzip;
+		private final String etag;
+		private final String gzipEtag;
+		private final long lastModified;
+
+		Resource(String path, byte[] identity, long lastModified) throws IOException {
+			this.path = path;
+			this.identity = identity;
+			this.gzip = compress(identity);
+			String hash = hash(identity);
+			this.etag = "\"" + hash + "\"";
+			// Each representation of a resource needs its own strong ETag.
+			this.gzipEtag = "\"" + hash + "-" + GZIP + "\"";
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * Check an If-None-Match header against this resource.  Either representation
+		 * is accepted, since both have the same content.
+		 * @param ifNoneMatch	The value of the If-None-Match header
+		 * @return	true if the client already has the current content
+		 */
+		public boolean matches(String ifNoneMatch) {
+			if (StringUtils.isBlank(ifNoneMatch)) {
+				return false;
+			}
+			for (String tag: ifNoneMatch.split(",")) {
+				tag = StringUtils.removeStart(tag.trim(), "W/");
+				if ("*".equals(tag) || etag.equals(tag) || gzipEtag.equals(tag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Create the response for this resource.
+		 * @param ifNoneMatch	The value of the If-None-Match header, or null if not present.
+		 * @param acceptEncoding	The value of the Accept-Encoding header, or null if not present.
+		 * @return	The response, 304 Not Modified if ifNoneMatch matches, otherwise 200 OK with the content.
+		 * A 304 response has no body, so it carries the ETag of the representation, but no Content-Encoding.
+		 */
+		public ResponseEntity<byte[]> toResponse(String ifNoneMatch, String acceptEncoding) {
+			boolean useGzip = acceptsGzip(acceptEncoding);
+			boolean notModified = matches(ifNoneMatch);
+			ResponseEntity.BodyBuilder builder = ResponseEntity
+				.status(notModified ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+				.eTag(useGzip ? gzipEtag : etag)
+				.lastModified(lastModified)
+				.varyBy(HttpHeaders.ACCEPT_ENCODING);
+			if (notModified) {
+				return builder.build();
+			}
+			if (useGzip) {
+				builder.header(HttpHeaders.CONTENT_ENCODING, GZIP);
+			}
+			return builder.body(useGzip ? gzip : identity);
+		}
+	}
+
+	private final Map<String, Resource> resources;
+
+	private SoapResourceTable(Map<String, Resource> resources) {
+		this.resources = Map.copyOf(resources);
+	}
+
+	/**
+	 * Load resources from the class path.  Resources that cannot be found are logged and skipped.
+	 * @param paths	The class path resources to load
+	 * @param serverName	The server name to substitute for {@value #SERVER_NAME_PLACEHOLDER}
+	 * @return	The table of loaded resources
+	 */
+	public static SoapResourceTable load(Collection<String> paths, String serverName) {
+		Map<String, Resource> loaded = new HashMap<>();
+		for (String path: paths) {
+			URL url = SoapResourceTable.class.getResource(path);
+			if (url == null) {
+				log.warn("Resource {} not found", path);
+				continue;
+			}
+			try {
+				URLConnection con = url.openConnection();
+				long lastModified = con.getLastModified();
+				String content;
+				try (InputStream is = con.getInputStream()) {
+					content = IOUtils.toString(is, StandardCharsets.UTF_8);
+				}
+				if (serverName != null) {
+					content = content.replace(SERVER_NAME_PLACEHOLDER, serverName);
+				}
+				// Last-Modified has a resolution of seconds
+				lastModified = (lastModified <= 0 ? System.currentTimeMillis() : lastModified) / 1000 * 1000;
+				loaded.put(path, new Resource(path, content.getBytes(StandardCharsets.UTF_8), lastModified));
+			} catch (IOException ex) {
+				log.warn("Resource {} could not be loaded: {}", path, ex.getMessage());
+			}
+		}
+		return new SoapResourceTable(loaded);
+	}
+
+	/**
+	 * Get a resource.
+	 * @param path	The path to the resource
+	 * @return	The resource, or null if it is not present in the table.
+	 */
+	public Resource get(String path) {
+		return resources.get(path);
+	}
+
+	/**
+	 * Determine if gzip encoding is acceptable to the client.
+	 * @param acceptEncoding	The value of the Accept-Encoding header
+	 * @return	true if gzip (or any encoding) is acceptable with a non-zero quality.
+	 */
+	public static boolean acceptsGzip(String acceptEncoding) {
+		return ContentCoding.accepts(acceptEncoding, GZIP);
+	}
+
+	private static byte[] compress(byte[] data) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 4 + 64);
+		try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+			gz.write(data);
+		}
+		return bos.toByteArray();
+	}
+
+	private static String hash(byte[] data) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+			return HexFormat.of().formatHex(digest, 0, 16);
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 is required of all Java platforms
+			throw new IllegalStateException(e);
+		}
+	}
+}
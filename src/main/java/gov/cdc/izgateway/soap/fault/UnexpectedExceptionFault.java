@@ -19,6 +19,15 @@ public class UnexpectedExceptionFault extends Fault {
 	public static UnexpectedExceptionFault devAction() {
 		return new UnexpectedExceptionFault("Simulated Fault", new NullPointerException("This is a test, this is only a test"), "User requested that a fault be generated for interface testing.");
 	}
+
+	/**
+	 * Create the fault returned when a low priority request is rejected because the server is saturated.
+	 * @param reason	The utilization that exceeded its threshold
+	 * @return	A fault the sender should retry using the normal retry strategy
+	 */
+	public static UnexpectedExceptionFault serverBusy(String reason) {
+		return new UnexpectedExceptionFault("Server Busy", "The server is too busy to accept low priority requests, retry later", null, RetryStrategy.NORMAL, reason);
+	}
 	
     public UnexpectedExceptionFault(String message, String detail, Throwable fault, RetryStrategy retry, String diagnostics) {
     	super.initCause(fault);
@@ -48,6 +57,17 @@ public class UnexpectedExceptionFault extends Fault {
         return getSummary() + ": " + getDetail();
     }
 
+    /**
+     * This fault has no MessageSupport, so it is retryable according to its own strategy.  Only
+     * {@link #serverBusy(String)} uses a retryable strategy; the other constructors default to
+     * {@link RetryStrategy#CONTACT_SUPPORT}, or are given {@link RetryStrategy#CORRECT_MESSAGE}.
+     * @return true if the fault is retryable
+     */
+    @Override
+    public boolean isRetryable() {
+        return retry.isRetryable();
+    }
+
     @Override
     public String getCode() {
         return "003";
@@ -13,7 +13,9 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Schema(description="A generic SOAP Request message for IZ Gateway")
 @Data
@@ -57,6 +59,16 @@ public class SoapMessage implements Serializable {
 	private HubHeader hubHeader = new HubHeader();
 	@Schema(description="The Web Services Addressing (WSA) values found in the soap:Header element if any")
 	private WsaHeaders wsaHeaders = new WsaHeaders();
+	/**
+	 * The leading text of this message as it was read from or written to the wire, with
+	 * credentials masked, used for logging so that the message need not be serialized a second time.
+	 * This is NOT copied by the copy constructors, as a copy has not yet been on the wire.
+	 */
+	@JsonIgnore
+	@Schema(hidden=true)
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	private transient String wireText;	// NOSONAR not serialized
 	/**
 	 * This constructor serves several functions.
 	 * 1. It supports upgrade during marshalling of inbound content from SoapMessage to a more specific type.
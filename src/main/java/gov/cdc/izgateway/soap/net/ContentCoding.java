@@ -0,0 +1,459 @@
+package gov.cdc.izgateway.soap.net;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.lang3.StringUtils;
+
+import gov.cdc.izgateway.logging.RequestContext;
+import gov.cdc.izgateway.logging.event.TransactionData;
+import gov.cdc.izgateway.logging.info.CompressionInfo;
+import gov.cdc.izgateway.logging.info.MessageInfo.Direction;
+import gov.cdc.izgateway.logging.info.MessageInfo.EndpointType;
+import gov.cdc.izgateway.soap.fault.MessageTooLargeFault;
+
+/**
+ * ContentCoding supports the gzip and deflate HTTP content codings for SOAP message bodies.
+ * It negotiates codings from Accept-Encoding headers, and wraps streams to compress or decompress
+ * them, metering the bytes on each side and the time spent in the codec so that they can be
+ * recorded as a {@link CompressionInfo} in the TransactionData.
+ *
+ * @author Audacious Inquiry
+ */
+public class ContentCoding {
+	/** The gzip content coding */
+	public static final String GZIP = "gzip";
+	/** The deflate (zlib) content coding */
+	public static final String DEFLATE = "deflate";
+	/** The value sent in Accept-Encoding headers */
+	public static final String ACCEPTED = GZIP + ", " + DEFLATE;
+	/** The default compression level, a balance of speed and size */
+	public static final int DEFAULT_LEVEL = 6;
+	/** The default minimum size of content worth compressing */
+	public static final int DEFAULT_MIN_SIZE = 1024;
+	/** The default maximum size of decoded content, which limits the memory a small compressed body can use */
+	public static final long DEFAULT_MAX_DECODED_SIZE = 16L * 1024 * 1024;
+	private static final String X_GZIP = "x-gzip";
+	private static final String IDENTITY = "identity";
+	private static final int BUFFER_SIZE = 8192;
+
+	private ContentCoding() {}
+
+	/**
+	 * Normalize a Content-Encoding value.
+	 * @param contentEncoding	The value of the Content-Encoding header.
+	 * @return	GZIP, DEFLATE, or null for the identity coding.
+	 * @throws IOException	If the content coding is not supported.
+	 */
+	public static String normalize(String contentEncoding) throws IOException {
+		if (StringUtils.isBlank(contentEncoding)) {
+			return null;
+		}
+		String coding = contentEncoding.trim();
+		if (GZIP.equalsIgnoreCase(coding) || X_GZIP.equalsIgnoreCase(coding)) {
+			return GZIP;
+		} else if (DEFLATE.equalsIgnoreCase(coding)) {
+			return DEFLATE;
+		} else if (IDENTITY.equalsIgnoreCase(coding)) {
+			return null;
+		}
+		throw new IOException("Unsupported Content-Encoding: " + contentEncoding);
+	}
+
+	/**
+	 * Determine if a content coding is acceptable to the client.
+	 * @param acceptEncoding	The value of the Accept-Encoding header
+	 * @param coding	The coding to check
+	 * @return	true if the coding (or any coding) is acceptable with a non-zero quality.
+	 */
+	public static boolean accepts(String acceptEncoding, String coding) {
+		return quality(acceptEncoding, coding) > 0;
+	}
+
+	/**
+	 * Choose the content coding to use for a response.
+	 * @param acceptEncoding	The value of the Accept-Encoding header
+	 * @return	GZIP or DEFLATE, whichever has the higher quality (preferring GZIP), or null if neither is acceptable.
+	 */
+	public static String negotiate(String acceptEncoding) {
+		double gzip = quality(acceptEncoding, GZIP);
+		double deflate = quality(acceptEncoding, DEFLATE);
+		if (gzip <= 0 && deflate <= 0) {
+			return null;
+		}
+		return gzip >= deflate ? GZIP : DEFLATE;
+	}
+
+	private static double quality(String acceptEncoding, String coding) {
+		if (StringUtils.isBlank(acceptEncoding)) {
+			return 0;
+		}
+		double wildcard = 0;
+		for (String entry: acceptEncoding.split(",")) {
+			String name = StringUtils.substringBefore(entry, ";").trim();
+			if (coding.equalsIgnoreCase(name) || (GZIP.equals(coding) && X_GZIP.equalsIgnoreCase(name))) {
+				// An explicit preference overrides any wildcard
+				return parseQuality(StringUtils.substringAfter(entry, ";"));
+			} else if ("*".equals(name)) {
+				wildcard = parseQuality(StringUtils.substringAfter(entry, ";"));
+			}
+		}
+		return wildcard;
+	}
+
+	private static double parseQuality(String params) {
+		for (String param: params.split(";")) {
+			String value = StringUtils.substringAfter(param.replace(" ", ""), "q=");
+			if (!value.isEmpty()) {
+				try {
+					return Double.parseDouble(value);
+				} catch (NumberFormatException ex) {
+					return 1;
+				}
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * Wrap an input stream to decode it, limiting the decoded content to {@link #DEFAULT_MAX_DECODED_SIZE}.
+	 * @param in	The encoded stream
+	 * @param coding	The (normalized) content coding
+	 * @return	A stream which decodes the content.
+	 * @throws IOException	If the stream header could not be read.
+	 */
+	public static DecodingInputStream decode(InputStream in, String coding) throws IOException {
+		return decode(in, coding, DEFAULT_MAX_DECODED_SIZE);
+	}
+
+	/**
+	 * Wrap an input stream to decode it.
+	 * @param in	The encoded stream
+	 * @param coding	The (normalized) content coding
+	 * @param maxDecodedSize	The maximum number of bytes of decoded content, after which reads fail
+	 * @return	A stream which decodes the content.
+	 * @throws IOException	If the stream header could not be read.
+	 */
+	public static DecodingInputStream decode(InputStream in, String coding, long maxDecodedSize) throws IOException {
+		return new DecodingInputStream(in, coding, maxDecodedSize);
+	}
+
+	/**
+	 * Wrap an output stream to encode it.
+	 * @param out	The stream to write the encoded content to.
+	 * @param coding	The (normalized) content coding
+	 * @param level	The compression level from 1 (fastest) to 9 (smallest)
+	 * @return	A stream which encodes the content.
+	 * @throws IOException	If the stream header could not be written.
+	 */
+	public static EncodingOutputStream encode(OutputStream out, String coding, int level) throws IOException {
+		return new EncodingOutputStream(out, coding, level);
+	}
+
+	/**
+	 * Record compression statistics in the current transaction.
+	 * @param info	The statistics to record.
+	 */
+	public static void record(CompressionInfo info) {
+		TransactionData tData = RequestContext.getTransactionData();
+		if (tData != null && info != null) {
+			tData.getCompression().add(info);
+		}
+	}
+
+	/**
+	 * Counts bytes passing through the encoded side of the codec, and the time spent
+	 * waiting on that stream, which is not codec time.
+	 */
+	private static class Meter {
+		private long bytes = 0;
+		private long nanos = 0;
+	}
+
+	/**
+	 * An input stream decoding gzip or deflate content.  Once more than the maximum decoded size
+	 * has been read, reads fail with an IOException, and {@link #isLimitExceeded()} reports it.
+	 */
+	public static class DecodingInputStream extends FilterInputStream {
+		private final String coding;
+		private final Meter meter;
+		private final long maxDecodedSize;
+		private long decodedBytes = 0;
+		private long codecNanos = 0;
+		private boolean limitExceeded = false;
+
+		private DecodingInputStream(InputStream in, String coding, long maxDecodedSize) throws IOException {
+			this(new MeteredInputStream(in, new Meter()), coding, maxDecodedSize);
+		}
+
+		private DecodingInputStream(MeteredInputStream in, String coding, long maxDecodedSize) throws IOException {
+			super(GZIP.equals(coding) ? new GZIPInputStream(in, BUFFER_SIZE) : inflate(in));
+			this.coding = coding;
+			this.meter = in.meter;
+			this.maxDecodedSize = maxDecodedSize;
+		}
+
+		/**
+		 * Create a stream to inflate deflate content. Some senders incorrectly send
+		 * raw deflate data without the zlib wrapper, so check for the zlib header.
+		 * @param in	The stream to inflate
+		 * @return	The inflating stream
+		 * @throws IOException	If the header cannot be read
+		 */
+		private static InflaterInputStream inflate(InputStream in) throws IOException {
+			PushbackInputStream pb = new PushbackInputStream(in, 2);
+			byte[] header = pb.readNBytes(2);
+			pb.unread(header);
+			boolean zlib = header.length == 2 && (header[0] & 0x0F) == Deflater.DEFLATED
+				&& (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+			Inflater inflater = new Inflater(!zlib);
+			return new InflaterInputStream(pb, inflater, BUFFER_SIZE) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						inflater.end();
+					}
+				}
+			};
+		}
+
+		@Override
+		public int read() throws IOException {
+			long start = System.nanoTime();
+			long waited = meter.nanos;
+			int c = super.read();
+			codecNanos += System.nanoTime() - start - (meter.nanos - waited);
+			if (c >= 0) {
+				decodedBytes++;
+				checkLimit();
+			}
+			return c;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			long start = System.nanoTime();
+			long waited = meter.nanos;
+			int count = super.read(b, off, len);
+			codecNanos += System.nanoTime() - start - (meter.nanos - waited);
+			if (count > 0) {
+				decodedBytes += count;
+				checkLimit();
+			}
+			return count;
+		}
+
+		private void checkLimit() throws IOException {
+			if (decodedBytes > maxDecodedSize) {
+				limitExceeded = true;
+				throw new IOException(String.format("Decoded %s content exceeds %d bytes", coding, maxDecodedSize));
+			}
+		}
+
+		/**
+		 * @return	true if reading stopped because the decoded content exceeded the maximum size
+		 */
+		public boolean isLimitExceeded() {
+			return limitExceeded;
+		}
+
+		/**
+		 * Create the fault reported when the decoded content exceeded the maximum size.
+		 * @param direction	Whether a request or response was being read
+		 * @return	The fault
+		 */
+		public MessageTooLargeFault toFault(MessageTooLargeFault.Direction direction) {
+			return new MessageTooLargeFault(direction, maxDecodedSize, decodedBytes);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		/**
+		 * Get the statistics for the content read so far.
+		 * @param endpointType	The type of endpoint reading the content
+		 * @return	The compression statistics
+		 */
+		public CompressionInfo getCompressionInfo(EndpointType endpointType) {
+			CompressionInfo info = new CompressionInfo(endpointType, Direction.INBOUND, coding);
+			info.setCompressedBytes(meter.bytes);
+			info.setUncompressedBytes(decodedBytes);
+			info.setCpuTime(codecNanos / 1_000_000.0);
+			return info;
+		}
+	}
+
+	/**
+	 * An output stream encoding content with gzip or deflate.
+	 */
+	public static class EncodingOutputStream extends FilterOutputStream {
+		private final String coding;
+		private final Meter meter;
+		private final Deflater deflater;
+		private final DeflaterOutputStream codec;
+		private long encodedBytes = 0;
+		private long codecNanos = 0;
+		private boolean finished = false;
+
+		private EncodingOutputStream(OutputStream out, String coding, int level) throws IOException {
+			this(new MeteredOutputStream(out, new Meter()), coding, level);
+		}
+
+		private EncodingOutputStream(MeteredOutputStream out, String coding, int level) throws IOException {
+			super(out);
+			this.coding = coding;
+			this.meter = out.meter;
+			if (GZIP.equals(coding)) {
+				this.deflater = null;
+				this.codec = new LeveledGZIPOutputStream(out, level);
+			} else {
+				this.deflater = new Deflater(level);
+				this.codec = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+			}
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			long start = System.nanoTime();
+			long waited = meter.nanos;
+			codec.write(b);
+			codecNanos += System.nanoTime() - start - (meter.nanos - waited);
+			encodedBytes++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			long start = System.nanoTime();
+			long waited = meter.nanos;
+			codec.write(b, off, len);
+			codecNanos += System.nanoTime() - start - (meter.nanos - waited);
+			encodedBytes += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			// Flushing a deflater without SYNC_FLUSH writes nothing new, so just
+			// flush what has been compressed so far.
+			out.flush();
+		}
+
+		/**
+		 * Finish writing the compressed content without closing the underlying stream.
+		 * @throws IOException	If an error occurs writing the content.
+		 */
+		public void finish() throws IOException {
+			if (finished) {
+				return;
+			}
+			finished = true;
+			long start = System.nanoTime();
+			long waited = meter.nanos;
+			try {
+				codec.finish();
+			} finally {
+				codecNanos += System.nanoTime() - start - (meter.nanos - waited);
+				if (deflater != null) {
+					deflater.end();
+				}
+			}
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				finish();
+			} finally {
+				out.close();
+			}
+		}
+
+		/**
+		 * Get the statistics for the content written so far.
+		 * @param endpointType	The type of endpoint writing the content
+		 * @return	The compression statistics
+		 */
+		public CompressionInfo getCompressionInfo(EndpointType endpointType) {
+			CompressionInfo info = new CompressionInfo(endpointType, Direction.OUTBOUND, coding);
+			info.setCompressedBytes(meter.bytes);
+			info.setUncompressedBytes(encodedBytes);
+			info.setCpuTime(codecNanos / 1_000_000.0);
+			return info;
+		}
+	}
+
+	/**
+	 * GZIPOutputStream has no constructor accepting a compression level, but the level
+	 * can be set before any content is compressed.
+	 */
+	private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+		LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+			super(out, BUFFER_SIZE);
+			def.setLevel(level);
+		}
+	}
+
+	private static class MeteredInputStream extends FilterInputStream {
+		private final Meter meter;
+		MeteredInputStream(InputStream in, Meter meter) {
+			super(in);
+			this.meter = meter;
+		}
+		@Override
+		public int read() throws IOException {
+			long start = System.nanoTime();
+			int c = super.read();
+			meter.nanos += System.nanoTime() - start;
+			if (c >= 0) {
+				meter.bytes++;
+			}
+			return c;
+		}
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			long start = System.nanoTime();
+			int count = super.read(b, off, len);
+			meter.nanos += System.nanoTime() - start;
+			if (count > 0) {
+				meter.bytes += count;
+			}
+			return count;
+		}
+	}
+
+	private static class MeteredOutputStream extends FilterOutputStream {
+		private final Meter meter;
+		MeteredOutputStream(OutputStream out, Meter meter) {
+			super(out);
+			this.meter = meter;
+		}
+		@Override
+		public void write(int b) throws IOException {
+			long start = System.nanoTime();
+			out.write(b);
+			meter.nanos += System.nanoTime() - start;
+			meter.bytes++;
+		}
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			long start = System.nanoTime();
+			out.write(b, off, len);
+			meter.nanos += System.nanoTime() - start;
+			meter.bytes += len;
+		}
+	}
+}
@@ -1,33 +1,45 @@
 package gov.cdc.izgateway.soap.net;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpInputMessage;
 
+import gov.cdc.izgateway.logging.info.MessageInfo.EndpointType;
+import gov.cdc.izgateway.soap.fault.MessageTooLargeFault;
+import gov.cdc.izgateway.utils.PooledBufferedInputStream;
+
 /**
  * This class converts an HttpURLConnection into an HttpInputMessage to work with SpringBoot Message Converters.
+ * The response is buffered using a pooled buffer, which must be returned by calling {@link #release()} 
+ * once the body is no longer needed.  A gzip or deflate encoded response is decoded before it is buffered,
+ * and the compression statistics are recorded in the TransactionData on release.  Reading fails once the
+ * decoded response exceeds the maximum decoded size, see {@link #getDecodedSizeFault()}.
  */
 final class HttpUrlConnectionInputMessage implements HttpInputMessage {
 	private final HttpURLConnection con;
-	private final BufferedInputStream is;
+	private final PooledBufferedInputStream is;
 	private final HttpHeaders headers = new HttpHeaders();
 	private final int bufferSize;
 	private final int statusCode;
+	private final ContentCoding.DecodingInputStream decoder;
 	
-	HttpUrlConnectionInputMessage(HttpURLConnection con, int maxBufferSize) throws IOException {
+	HttpUrlConnectionInputMessage(HttpURLConnection con, int maxBufferSize, long maxDecodedSize) throws IOException {
 		this.con = con;
+		String coding = ContentCoding.normalize(con.getContentEncoding());
 		long contentLength = con.getContentLengthLong();
-		if (contentLength < 0) {
+		if (contentLength < 0 || coding != null) {
+			// The decoded length is unknown
 			contentLength = maxBufferSize;
 		}
 		
 		// 1. Add some slop to the expressed length just in case, and 2. cast to int is OK, because maxBufferSize is an int.
 		this.bufferSize = (int) Math.min(contentLength + 1024, maxBufferSize);
 		this.statusCode = con.getResponseCode();
-		this.is = new BufferedInputStream(statusCode < HttpURLConnection.HTTP_BAD_REQUEST ? con.getInputStream() : con.getErrorStream(), bufferSize);
+		InputStream body = statusCode < HttpURLConnection.HTTP_BAD_REQUEST ? con.getInputStream() : con.getErrorStream();
+		this.decoder = coding == null || body == null ? null : ContentCoding.decode(body, coding, maxDecodedSize);
+		this.is = new PooledBufferedInputStream(decoder == null ? body : decoder, bufferSize);
 	}
 	
 	@Override
@@ -36,6 +48,11 @@ final class HttpUrlConnectionInputMessage implements HttpInputMessage {
 			con.getHeaderFields().entrySet().forEach(
 				field -> headers.addAll(field.getKey(), field.getValue())
 			);
+			if (decoder != null) {
+				// The body has been decoded, so these no longer describe it
+				headers.remove(HttpHeaders.CONTENT_ENCODING);
+				headers.remove(HttpHeaders.CONTENT_LENGTH);
+			}
 		}
 		return headers;
 	}
@@ -57,6 +74,23 @@ final class HttpUrlConnectionInputMessage implements HttpInputMessage {
 		}
 	}
 	
+	/**
+	 * Return the buffer used for the body to the pool.  The body cannot be read after this call.
+	 */
+	public void release() {
+		is.release();
+		if (decoder != null) {
+			ContentCoding.record(decoder.getCompressionInfo(EndpointType.CLIENT));
+		}
+	}
+	
+	/**
+	 * @return	The fault to report if reading failed because the decoded response was too large, or null
+	 */
+	public MessageTooLargeFault getDecodedSizeFault() {
+		return decoder != null && decoder.isLimitExceeded() ? decoder.toFault(MessageTooLargeFault.Direction.RESPONSE) : null;
+	}
+
 	public int getStatusCode() {
 		return statusCode;
 	}
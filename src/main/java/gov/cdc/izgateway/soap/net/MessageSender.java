@@ -2,7 +2,6 @@ package gov.cdc.izgateway.soap.net;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -39,6 +38,8 @@ import gov.cdc.izgateway.logging.info.EndPointInfo;
 import gov.cdc.izgateway.logging.info.MessageInfo;
 import gov.cdc.izgateway.logging.info.MessageInfo.Direction;
 import gov.cdc.izgateway.logging.info.MessageInfo.EndpointType;
+import gov.cdc.izgateway.metrics.AdaptiveTimeouts;
+import gov.cdc.izgateway.metrics.MetricsRegistry;
 import gov.cdc.izgateway.model.IDestination;
 import gov.cdc.izgateway.model.IEndpointStatus;
 import gov.cdc.izgateway.security.ClientTlsSupport;
@@ -49,6 +50,7 @@ import gov.cdc.izgateway.service.impl.EndpointStatusService;
 
 import gov.cdc.izgateway.soap.fault.DestinationConnectionFault;
 import gov.cdc.izgateway.soap.fault.Fault;
+import gov.cdc.izgateway.soap.fault.MessageTooLargeFault;
 import gov.cdc.izgateway.soap.fault.HubClientFault;
 import gov.cdc.izgateway.soap.fault.SecurityFault;
 import gov.cdc.izgateway.soap.message.ConnectivityTestRequest;
@@ -57,8 +59,6 @@ import gov.cdc.izgateway.soap.message.FaultMessage;
 import gov.cdc.izgateway.soap.message.SoapMessage;
 import gov.cdc.izgateway.soap.message.SubmitSingleMessageRequest;
 import gov.cdc.izgateway.soap.message.SubmitSingleMessageResponse;
-import gov.cdc.izgateway.utils.FixedByteArrayOutputStream;
-import gov.cdc.izgateway.utils.PreservingOutputStream;
 import gov.cdc.izgateway.utils.SystemUtils;
 
 import javax.net.ssl.HttpsURLConnection;
@@ -86,7 +86,6 @@ public class MessageSender {
 	private final SoapMessageConverter converter;
 	private final EndpointStatusService statusService;
 	private IStatusCheckerService statusChecker;
-	private boolean preserveOutput = true;  // set to true to preserve output for debugging.
 	private final boolean isProduction;
 	
 	/**
@@ -309,28 +308,42 @@ public class MessageSender {
 	public <T extends SoapMessage> T sendMessage(Class<T> clazz, IDestination dest, SoapMessage toBeSent)
 			throws Fault {
 		long started = 0;
+		long startedNanos = System.nanoTime();
 		long readStarted = 0;
+		int readTimeout = AdaptiveTimeouts.getDefault().getReadTimeout(dest.getDestinationId(),
+			(int) TimeUnit.SECONDS.toMillis(clientConfig.getReadTimeout()));
 		HttpURLConnection con = null;
-		OutputStream pos = null;
 		URL location = getUrl(dest);
 		T result = null;
 		try { // NOSONAR try with resources not appropriate here
 			started = System.currentTimeMillis();
-			con = setupConnection(tlsSupport.getSNIEnabledConnection(location));
+			con = setupConnection(tlsSupport.getSNIEnabledConnection(location), readTimeout);
+			RequestContext.getTransactionData().setReadTimeoutIIS(readTimeout);
 			MessageInfo messageInfo = new MessageInfo(toBeSent, EndpointType.CLIENT, Direction.OUTBOUND, isProduction);
 			RequestContext.getTransactionData().getClientRequest().setWs_request_message(messageInfo);
 			toBeSent.updateAction(dest.isHub());  // Sending to non-IZ Gateway endpoint
 			String action = toBeSent.getWsaHeaders().getAction();
 			con.setRequestProperty(HttpHeaders.CONTENT_TYPE, "application/soap+xml;charset=UTF-8;action=\"" + action + "\"");
+			if (clientConfig.isAcceptEncoding()) {
+				con.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, ContentCoding.ACCEPTED);
+			}
+			boolean compress = clientConfig.isCompressRequests(dest.getDestinationId()) 
+				&& toBeSent.length() >= clientConfig.getMinCompressSize();
+			if (compress) {
+				con.setRequestProperty(HttpHeaders.CONTENT_ENCODING, ContentCoding.GZIP);
+			}
 			messageInfo.setHttpHeaders(con.getRequestProperties());
 			
-			if (preserveOutput) {
-				pos = new PreservingOutputStream(con.getOutputStream(), FixedByteArrayOutputStream.DEFAULT_SIZE);
+			// The converter preserves the leading bytes written in toBeSent for logging.
+			if (compress) {
+				ContentCoding.EncodingOutputStream encoded = 
+					ContentCoding.encode(con.getOutputStream(), ContentCoding.GZIP, clientConfig.getCompressionLevel());
+				converter.write(toBeSent, encoded);
+				encoded.finish();
+				ContentCoding.record(encoded.getCompressionInfo(EndpointType.CLIENT));
 			} else {
-				pos = con.getOutputStream();
+				converter.write(toBeSent, con.getOutputStream());
 			}
-			
-			converter.write(toBeSent, pos);
 			readStarted = System.currentTimeMillis();
 			result = readResult(clazz, dest, con, started);
 			result.respondingTo(toBeSent);
@@ -354,24 +367,30 @@ public class MessageSender {
 			throw DestinationConnectionFault.writeError(dest, ex);
 		} finally {
 			long finished = System.currentTimeMillis(); 
-			if (result != null) {
-				RequestContext.getTransactionData().getClientResponse().setWs_response_message(new MessageInfo(result, EndpointType.CLIENT, Direction.INBOUND, isProduction));
-			}
 			// Increment elapsed time here in case of retries.
 			TransactionData tData = RequestContext.getTransactionData();
 			tData.setElapsedTimeIIS(tData.getElapsedTimeIIS() + (finished - started));
-			tData.setReadTimeIIS(tData.getReadTimeIIS() + (finished - readStarted));
+			if (readStarted != 0) {
+				long readTime = finished - readStarted;
+				tData.setReadTimeIIS(tData.getReadTimeIIS() + readTime);
+				// A read that failed quickly (e.g., a reset connection) says nothing about how long the destination takes
+				boolean timedOut = result == null && readTime >= readTimeout;
+				if (result != null || timedOut) {
+					AdaptiveTimeouts.getDefault().record(dest.getDestinationId(), readTime, timedOut);
+				}
+			}
+			MetricsRegistry.getDefault().recordDestination(dest.getDestinationId(), (System.nanoTime() - startedNanos) / 1000, result != null);
 			logDestinationCertificates(con);
 		}
 	}
 
 	private HttpURLConnection setupConnection(
-			HttpURLConnection con) throws ProtocolException {
+			HttpURLConnection con, int readTimeout) throws ProtocolException {
 		con.setRequestMethod(HttpMethod.POST.name());
 		con.setDoInput(true);
 		con.setDoOutput(true);
 		con.setConnectTimeout((int) TimeUnit.SECONDS.toMillis(clientConfig.getConnectTimeout()));
-		con.setReadTimeout((int) TimeUnit.SECONDS.toMillis(clientConfig.getReadTimeout()));
+		con.setReadTimeout(readTimeout);
 		con.setUseCaches(false);
 		con.setAllowUserInteraction(false);
 		con.setInstanceFollowRedirects(false);
@@ -398,44 +417,60 @@ public class MessageSender {
 		InputStream body = null;
 		Exception savedEx;
 		try {
-			SoapMessage result = null;
-			// Mark the buffer so we can reread on error.
-			m = new HttpUrlConnectionInputMessage(con, clientConfig.getMaxBufferSize());
-			statusCode = m.getStatusCode();
-			logDestinationCertificates(con);
-			body = m.getBody();
-			m.mark();
-			EndPointInfo endPoint = RequestContext.getDestinationInfo();
-			if (ACCEPTABLE_RESPONSE_CODES.contains(statusCode)) {
-				result = converter.read(m, endPoint);
-				if (result instanceof FaultMessage) {
-					m.reset();
-					throw HubClientFault.clientThrewFault(null, dest, statusCode, body, result, StringUtils.substringBefore(con.getURL().toString(), "?"));
-				} 
-				return clazz.cast(result);
-			} else {
-				try (InputStream errStream = con.getErrorStream()) {
-					String path = StringUtils.substringBefore(con.getURL().toString(), "?");
-					throw processHttpError(dest, statusCode, errStream, path);
+			try {
+				SoapMessage result = null;
+				// Mark the buffer so we can reread on error.
+				m = new HttpUrlConnectionInputMessage(con, clientConfig.getMaxBufferSize(), clientConfig.getMaxDecodedSize());
+				statusCode = m.getStatusCode();
+				logDestinationCertificates(con);
+				body = m.getBody();
+				m.mark();
+				EndPointInfo endPoint = RequestContext.getDestinationInfo();
+				if (ACCEPTABLE_RESPONSE_CODES.contains(statusCode)) {
+					result = converter.read(m, endPoint);
+					if (result instanceof FaultMessage) {
+						m.reset();
+						throw HubClientFault.clientThrewFault(null, dest, statusCode, body, result, StringUtils.substringBefore(con.getURL().toString(), "?"));
+					} 
+					return clazz.cast(result);
+				} else {
+					try (InputStream errStream = con.getErrorStream()) {
+						String path = StringUtils.substringBefore(con.getURL().toString(), "?");
+						throw processHttpError(dest, statusCode, errStream, path);
+					}
 				}
+			} catch (ClassCastException ex) {
+				savedEx = ex;
+			} catch (IOException ex) {
+				checkDecodedSize(m);
+				// There was an IO Exception reading the content
+				// We'll call this a destination connection fault of some sort.
+				throw DestinationConnectionFault.readError(dest, ex);
+			} catch (HttpMessageNotReadableException ex) {
+				checkDecodedSize(m);
+				if (ex.getCause() instanceof Fault f) {
+					throw f;
+				}
+				savedEx = ex;
 			}
-		} catch (ClassCastException ex) {
-			savedEx = ex;
-		} catch (IOException ex) {
-			// There was an IO Exception reading the content
-			// We'll call this a destination connection fault of some sort.
-			throw DestinationConnectionFault.readError(dest, ex);
-		} catch (HttpMessageNotReadableException ex) {
-			if (ex.getCause() instanceof Fault f) {
-				throw f;
+			if (m != null) {
+				m.reset();
+			}
+			// There can be no result here.
+			throw HubClientFault.invalidMessage(savedEx, dest, statusCode, body);
+		} finally {
+			// Faults read what they need from the body before they are thrown.
+			if (m != null) {
+				m.release();
 			}
-			savedEx = ex;
 		}
-		if (m != null) {
-			m.reset();
+	}
+
+	private static void checkDecodedSize(HttpUrlConnectionInputMessage m) throws MessageTooLargeFault {
+		MessageTooLargeFault f = m == null ? null : m.getDecodedSizeFault();
+		if (f != null) {
+			throw f;
 		}
-		// There can be no result here.
-		throw HubClientFault.invalidMessage(savedEx, dest, statusCode, body);
 	}
 
 	private HubClientFault processHttpError(IDestination dest, int statusCode, InputStream err, String path) {
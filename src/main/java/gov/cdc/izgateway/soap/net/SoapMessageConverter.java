@@ -1,6 +1,6 @@
 package gov.cdc.izgateway.soap.net;
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -10,7 +10,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import gov.cdc.izgateway.security.crypto.CryptoException;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpInputMessage;
@@ -20,11 +20,17 @@ import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.http.converter.HttpMessageNotWritableException;
 import org.springframework.http.converter.xml.SourceHttpMessageConverter;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import gov.cdc.izgateway.logging.info.EndPointInfo;
+import gov.cdc.izgateway.logging.info.MessageInfo.EndpointType;
+import gov.cdc.izgateway.soap.fault.MessageTooLargeFault;
+import gov.cdc.izgateway.soap.fault.MessageTooLargeFault.Direction;
 import gov.cdc.izgateway.soap.message.SoapMessage;
 import gov.cdc.izgateway.utils.FixedByteArrayOutputStream;
 import gov.cdc.izgateway.utils.IndentingXMLStreamWriter;
+import gov.cdc.izgateway.utils.PreservingOutputStream;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -36,7 +42,7 @@ import javax.xml.transform.stax.StAXSource;
 public class SoapMessageConverter implements HttpMessageConverter<SoapMessage> {
     private static List<MediaType> mediaTypes = Arrays.asList(MediaType.APPLICATION_XML, MediaType.TEXT_XML, MediaType.TEXT_PLAIN, new MediaType("application", "soap+xml"));
 
-	// Retain up to 8K of the input message for error handling.
+	// Retain up to 8K of the input message for error handling and logging.
 	private static final int MAX_RETAINED_INPUT = FixedByteArrayOutputStream.DEFAULT_SIZE;
 	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newDefaultFactory();
 	static {
@@ -58,6 +64,22 @@ public class SoapMessageConverter implements HttpMessageConverter<SoapMessage> {
 	@Getter
 	@Setter
 	private boolean isHub;
+	/** Compress responses when the client accepts a content coding */
+	@Getter
+	@Setter
+	private boolean compressResponses = false;
+	/** The minimum size of message content to compress */
+	@Getter
+	@Setter
+	private int minCompressSize = ContentCoding.DEFAULT_MIN_SIZE;
+	/** The compression level from 1 (fastest) to 9 (smallest) */
+	@Getter
+	@Setter
+	private int compressionLevel = ContentCoding.DEFAULT_LEVEL;
+	/** The maximum size of a gzip or deflate encoded body after it is decoded */
+	@Getter
+	@Setter
+	private long maxDecodedSize = ContentCoding.DEFAULT_MAX_DECODED_SIZE;
 	
 	public static class SoapConversionException extends HttpMessageNotReadableException {
 		private static final long serialVersionUID = 1L;
@@ -112,26 +134,65 @@ public class SoapMessageConverter implements HttpMessageConverter<SoapMessage> {
 
 	public SoapMessage read(HttpInputMessage message, EndPointInfo endpoint)
 			throws IOException, HttpMessageNotReadableException {
-		BufferedInputStream b = IOUtils.buffer(message.getBody());
+		// Tee what is read into a bounded buffer, so that the wire content can be logged without reserializing it,
+		// and reported on error.
+		ContentCoding.DecodingInputStream decoder = getDecoder(message);
+		PreservingOutputStream wire = new PreservingOutputStream(OutputStream.nullOutputStream(), MAX_RETAINED_INPUT);
+		InputStream body = new TeeInputStream(decoder == null ? message.getBody() : decoder, wire);
 		HttpInputMessage inputMessage = new HttpInputMessage() {
 			@Override public HttpHeaders getHeaders() { return message.getHeaders(); }
-			@Override public InputStream getBody() throws IOException { return b; }
+			@Override public InputStream getBody() throws IOException { return body; }
 		};
 		
-		inputMessage.getBody().mark(MAX_RETAINED_INPUT);
-		StAXSource source = staxSource.read(StAXSource.class, inputMessage);
 		try {
+			StAXSource source = staxSource.read(StAXSource.class, inputMessage);
+			try {
+				XMLStreamReader xmlReader = getReader(source);
+				SoapMessageReader r = new SoapMessageReader(xmlReader, getReadType(), null);
+				r.setHub(isHub());
+				r.setEndpoint(endpoint);
+				SoapMessage m = r.read();  // NOSONAR, enables debugging
+				m.setWireText(SoapPayloadMasker.maskCredentials(wire.toString()));
+				return m;
+			} catch (Exception e) {
+				// Report the retained input
+				byte[] retained = wire.getBytes();
+				HttpInputMessage retainedMessage = new HttpInputMessage() {
+					@Override public HttpHeaders getHeaders() { return message.getHeaders(); }
+					@Override public InputStream getBody() { return new ByteArrayInputStream(retained); }
+				};
+				throw new SoapConversionException(e.getMessage(), e, retainedMessage);
+			}
+		} catch (IOException | HttpMessageNotReadableException e) {
+			if (decoder != null && decoder.isLimitExceeded()) {
+				MessageTooLargeFault f = decoder.toFault(INBOUND.equals(type) ? Direction.REQUEST : Direction.RESPONSE);
+				throw new SoapConversionException(f.getMessage(), f, message);
+			}
+			throw e;
+		} finally {
+			wire.release();
+			if (decoder != null) {
+				ContentCoding.record(decoder.getCompressionInfo(EndpointType.SERVER));
+			}
+		}
+	}
 
-			XMLStreamReader xmlReader = getReader(source);
-			SoapMessageReader r = new SoapMessageReader(xmlReader, getReadType(), null);
-			r.setHub(isHub());
-			r.setEndpoint(endpoint);
-			SoapMessage m = r.read();  // NOSONAR, enables debugging
-			return m;
-		} catch (Exception e) {
-			inputMessage.getBody().reset();
-			throw new SoapConversionException(e.getMessage(), e, inputMessage);
+	/**
+	 * Get a decoder for the body of a message sent with a Content-Encoding.
+	 * @param message	The message
+	 * @return	The decoder, or null if the message body is not encoded.
+	 * @throws IOException	If the body cannot be read.
+	 * @throws SoapConversionException	If the content coding is not supported.
+	 */
+	private ContentCoding.DecodingInputStream getDecoder(HttpInputMessage message) throws IOException {
+		// Responses from destinations are decoded by HttpUrlConnectionInputMessage, which removes this header.
+		String coding;
+		try {
+			coding = ContentCoding.normalize(message.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		} catch (IOException e) {
+			throw new SoapConversionException(e.getMessage(), e, message);
 		}
+		return coding == null ? null : ContentCoding.decode(message.getBody(), coding, maxDecodedSize);
 	}
 
 	private XMLStreamReader getReader(StAXSource source) throws XMLStreamException {
@@ -155,7 +216,32 @@ public class SoapMessageConverter implements HttpMessageConverter<SoapMessage> {
 	public void write(SoapMessage message, MediaType contentType, HttpOutputMessage outputMessage)
 			throws IOException, HttpMessageNotWritableException {
 		outputMessage.getHeaders().set(HttpHeaders.CONTENT_TYPE, getContentType(message, contentType));
-		write(message, outputMessage.getBody());
+		String coding = getResponseCoding(message);
+		if (coding == null) {
+			write(message, outputMessage.getBody());
+			return;
+		}
+		outputMessage.getHeaders().set(HttpHeaders.CONTENT_ENCODING, coding);
+		outputMessage.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		ContentCoding.EncodingOutputStream encoded = 
+			ContentCoding.encode(outputMessage.getBody(), coding, compressionLevel);
+		write(message, encoded);
+		encoded.finish();
+		ContentCoding.record(encoded.getCompressionInfo(EndpointType.SERVER));
+	}
+	
+	/**
+	 * Choose the content coding for a response to the current request.
+	 * @param message	The response message
+	 * @return	The content coding, or null if the response should not be compressed.
+	 */
+	private String getResponseCoding(SoapMessage message) {
+		if (!compressResponses || message.length() < minCompressSize ||
+			!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attrs)
+		) {
+			return null;
+		}
+		return ContentCoding.negotiate(attrs.getRequest().getHeader(HttpHeaders.ACCEPT_ENCODING));
 	}
 	
 	private String getContentType(SoapMessage message,
@@ -169,9 +255,22 @@ public class SoapMessageConverter implements HttpMessageConverter<SoapMessage> {
 		return ct.toString();
 	}
 
+	/**
+	 * Write the message to the output stream, preserving the leading text written in the
+	 * message for logging.  Credentials, such as the decrypted destination password, are
+	 * masked before the text is kept.
+	 * @param message	The message to write
+	 * @param body	The stream to write it to
+	 */
 	public void write(SoapMessage message, OutputStream body) {
 		try {
-			new SoapMessageWriter(message, IndentingXMLStreamWriter.createInstance(body)).write();
+			PreservingOutputStream wire = new PreservingOutputStream(body, MAX_RETAINED_INPUT);
+			try {
+				new SoapMessageWriter(message, IndentingXMLStreamWriter.createInstance(wire)).write();
+				message.setWireText(SoapPayloadMasker.maskCredentials(wire.toString()));
+			} finally {
+				wire.release();
+			}
 		} catch (XMLStreamException | CryptoException e) {
 			throw new HttpMessageNotWritableException(e.getMessage(), e);
 		}
@@ -1,8 +1,9 @@
 package gov.cdc.izgateway.soap.net;
 
 import java.util.ArrayDeque;
-
+import java.util.Collection;
 import java.util.Deque;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -26,6 +27,7 @@ import gov.cdc.izgateway.soap.message.HasHL7Message;
 import gov.cdc.izgateway.soap.message.SoapMessage;
 import gov.cdc.izgateway.soap.message.SubmitSingleMessageRequest;
 import gov.cdc.izgateway.soap.message.SubmitSingleMessageResponse;
+import gov.cdc.izgateway.utils.ContentScanner;
 import gov.cdc.izgateway.utils.XmlUtils;
 import lombok.Getter;
 import lombok.Setter;
@@ -39,8 +41,16 @@ import javax.xml.stream.XMLStreamWriter;
 
 @Slf4j
 public class SoapMessageReader {
-	private static final String TAG_NAME_PATTERN = "script";
-	private static final String TEXT_VALUE_PATTERN = "javascript";
+	/** Patterns that may not appear in element names */
+	public static final List<String> DEFAULT_TAG_NAME_PATTERNS = List.of("script");
+	/** Patterns that may not appear in text or attribute values */
+	public static final List<String> DEFAULT_TEXT_VALUE_PATTERNS = List.of("javascript", "vbscript:", "<script", "<iframe");
+	/*
+	 * Each scanner is fully built before it is assigned, is immutable, and is published
+	 * through a volatile field, so readers on other threads always see a complete automaton.
+	 */
+	private static volatile ContentScanner tagNameScanner = new ContentScanner(DEFAULT_TAG_NAME_PATTERNS);
+	private static volatile ContentScanner textValueScanner = new ContentScanner(DEFAULT_TEXT_VALUE_PATTERNS);
 	/**
 	 * The type of messages to parser, Inbound Request or Inbound Response
 	 */
@@ -84,6 +94,9 @@ public class SoapMessageReader {
 	private String hubHeader;
 	private boolean isHtmlMessage = false;
 	private String documentElementName = null;
+	/** The scanners in effect when this reader was created, so a message is screened against one set of patterns */
+	private final ContentScanner tagNames = tagNameScanner;
+	private final ContentScanner textValues = textValueScanner;
 
 	/** You can set a writer to copy events to on the reader. */
 	private XMLStreamWriter writer;
@@ -134,6 +147,38 @@ public class SoapMessageReader {
 	public SoapMessageReader(XMLStreamReader reader, String type) {
 		this(reader, type, null);
 	}
+
+	/**
+	 * Set the patterns screened for in element names. All patterns are checked in a single pass
+	 * over each name, ignoring case.
+	 * @param patterns	The patterns to screen for
+	 */
+	public static void setTagNamePatterns(Collection<String> patterns) {
+		tagNameScanner = new ContentScanner(patterns);
+	}
+
+	/**
+	 * Set the patterns screened for in text and attribute values. All patterns are checked in a single
+	 * pass over each text node, ignoring case.
+	 * @param patterns	The patterns to screen for
+	 */
+	public static void setTextValuePatterns(Collection<String> patterns) {
+		textValueScanner = new ContentScanner(patterns);
+	}
+
+	/**
+	 * @return The patterns screened for in element names
+	 */
+	public static List<String> getTagNamePatterns() {
+		return tagNameScanner.getPatterns();
+	}
+
+	/**
+	 * @return The patterns screened for in text and attribute values
+	 */
+	public static List<String> getTextValuePatterns() {
+		return textValueScanner.getPatterns();
+	}
 	/**
 	 * Reset the reader for the next time through.
 	 */
@@ -434,9 +479,10 @@ public class SoapMessageReader {
 		if (isHtmlMessage) {
 			return elementText;
 		}
-		if (!StringUtils.isEmpty(elementText) && StringUtils.containsIgnoreCase(elementText, TEXT_VALUE_PATTERN)) {
+		String found = StringUtils.isEmpty(elementText) ? null : textValues.find(elementText);
+		if (found != null) {
 			throw SecurityFault.sourceAttack(
-					"Illegal text value in " + type + " inside: <" + lastElement + "> element", endpoint);
+					"Illegal text value '" + found + "' in " + type + " inside: <" + lastElement + "> element", endpoint);
 		}
 		return elementText;
 	}
@@ -455,9 +501,10 @@ public class SoapMessageReader {
 			return;
 		}
 		// Check element name for illegal values.
-		if (StringUtils.containsIgnoreCase(localName, TAG_NAME_PATTERN)) {
+		String found = tagNames.find(localName);
+		if (found != null) {
 			throw SecurityFault.sourceAttack(
-					"Illegal element name <" + localName + "> found in the " + type + " at: <" + lastElement,
+					"Illegal element name <" + localName + "> matching '" + found + "' found in the " + type + " at: <" + lastElement,
 					endpoint);
 		}
 		verifyAttributes();
@@ -470,9 +517,9 @@ public class SoapMessageReader {
 		// Check attribute values
 		int count = reader.getAttributeCount();
 		while (count-- > 0) {
-			String text = reader.getAttributeValue(count);
-			if (StringUtils.containsIgnoreCase(text, TEXT_VALUE_PATTERN)) {
-				throw SecurityFault.sourceAttack("Illegal attribute value in " + type + " at: <" + lastElement
+			String found = textValues.find(reader.getAttributeValue(count));
+			if (found != null) {
+				throw SecurityFault.sourceAttack("Illegal attribute value '" + found + "' in " + type + " at: <" + lastElement
 						+ " " + toNameString(reader.getAttributeName(count)) + "=", endpoint);
 			}
 		}
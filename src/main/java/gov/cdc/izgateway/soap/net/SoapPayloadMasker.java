@@ -0,0 +1,199 @@
+package gov.cdc.izgateway.soap.net;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import org.apache.commons.text.StringEscapeUtils;
+
+import gov.cdc.izgateway.utils.HL7Utils;
+
+/**
+ * SoapPayloadMasker prepares the wire content of a SOAP message for logging in a single streaming
+ * pass over the content.  Credentials are always replaced with {@link SoapMessageWriter#HIDDEN},
+ * and when filtering, HL7 message content is protected using {@link HL7Utils#protectHL7Message(String)}.
+ * This produces the same protections as writing the message with a filtering SoapMessageWriter,
+ * without having to serialize the message again.
+ *
+ * The wire content may be truncated at any point, so the content is not required to be well formed.
+ *
+ * @author Audacious Inquiry
+ */
+public class SoapPayloadMasker {
+	private static final Set<String> CREDENTIAL_ELEMENTS = Set.of("Username", "username", "Password", "password");
+	/** Elements containing HL7 messages, in both 2011 and 2014 schemas */
+	private static final Set<String> HL7_ELEMENTS = Set.of("Hl7Message", "hl7Message", "return");
+	private static final String CDATA_START = "<![CDATA[";
+	private static final String CDATA_END = "]]>";
+	private static final String COMMENT_START = "<!--";
+	private static final String COMMENT_END = "-->";
+
+	private SoapPayloadMasker() {}
+
+	/**
+	 * Mask the wire content of a SOAP message for logging.
+	 * @param wire	The bytes of the message as read from or written to the wire.
+	 * @param protectHl7	If true, the content of elements containing HL7 messages is protected.
+	 * This should only be set for messages containing HL7 content, as the 2011 schema also uses
+	 * the return element for EchoBack content.
+	 * @return	The masked content
+	 */
+	public static String mask(byte[] wire, boolean protectHl7) {
+		if (wire == null) {
+			return null;
+		}
+		return mask(new String(wire, StandardCharsets.UTF_8), protectHl7);
+	}
+
+	/**
+	 * Mask only the credentials in the content of a SOAP message, so that it can be retained
+	 * without keeping credentials in clear text.
+	 * @param text	The text of the message.
+	 * @return	The text with credentials masked, or the text itself if it contains no credentials
+	 */
+	public static String maskCredentials(String text) {
+		if (text == null || (!text.contains("sername") && !text.contains("assword"))) {
+			return text;
+		}
+		return mask(text, false);
+	}
+
+	/**
+	 * Mask the content of a SOAP message for logging.
+	 * @param text	The text of the message.
+	 * @param protectHl7	If true, the content of elements containing HL7 messages is protected.
+	 * @return	The masked content
+	 */
+	public static String mask(String text, boolean protectHl7) {
+		if (text == null) {
+			return null;
+		}
+		StringBuilder b = new StringBuilder(text.length());
+		int pos = 0;
+		int len = text.length();
+		while (pos < len) {
+			int lt = text.indexOf('<', pos);
+			if (lt < 0) {
+				b.append(text, pos, len);
+				break;
+			}
+			b.append(text, pos, lt);
+			if (text.startsWith(COMMENT_START, lt)) {
+				pos = copyThrough(text, lt, COMMENT_END, b);
+				continue;
+			}
+			if (text.startsWith(CDATA_START, lt)) {
+				pos = copyThrough(text, lt, CDATA_END, b);
+				continue;
+			}
+			int gt = text.indexOf('>', lt);
+			if (gt < 0) {
+				// Truncated inside a tag.
+				b.append(text, lt, len);
+				break;
+			}
+			b.append(text, lt, gt + 1);
+			pos = gt + 1;
+			if (text.charAt(lt + 1) == '/' || text.charAt(lt + 1) == '?' || text.charAt(gt - 1) == '/') {
+				// End tags, processing instructions and empty elements have no content to mask.
+				continue;
+			}
+			String name = localName(text, lt + 1, gt);
+			if (CREDENTIAL_ELEMENTS.contains(name)) {
+				int end = contentEnd(text, pos);
+				if (end > pos) {
+					b.append(SoapMessageWriter.HIDDEN);
+				}
+				pos = end;
+			} else if (protectHl7 && HL7_ELEMENTS.contains(name)) {
+				int end = contentEnd(text, pos);
+				protect(text.substring(pos, end), b);
+				pos = end;
+			}
+		}
+		return b.toString();
+	}
+
+	private static int copyThrough(String text, int start, String terminator, StringBuilder b) {
+		int end = text.indexOf(terminator, start);
+		end = end < 0 ? text.length() : end + terminator.length();
+		b.append(text, start, end);
+		return end;
+	}
+
+	/**
+	 * Get the local name of the element in a start tag.
+	 * @param text	The text
+	 * @param start	The position following the opening &lt;
+	 * @param end	The position of the closing &gt;
+	 * @return	The name of the element without any namespace prefix.
+	 */
+	private static String localName(String text, int start, int end) {
+		int nameEnd = start;
+		int nameStart = start;
+		while (nameEnd < end) {
+			char c = text.charAt(nameEnd);
+			if (Character.isWhitespace(c) || c == '/') {
+				break;
+			} else if (c == ':') {
+				nameStart = nameEnd + 1;
+			}
+			nameEnd++;
+		}
+		return text.substring(nameStart, nameEnd);
+	}
+
+	/**
+	 * Find the end of the text content of an element.
+	 * @param text	The text
+	 * @param start	The start of the content
+	 * @return	The position of the next end tag outside of a CDATA section, or the end of the text if truncated.
+	 */
+	private static int contentEnd(String text, int start) {
+		int pos = start;
+		while (pos < text.length()) {
+			int lt = text.indexOf('<', pos);
+			if (lt < 0) {
+				break;
+			}
+			if (text.startsWith(CDATA_START, lt)) {
+				int end = text.indexOf(CDATA_END, lt);
+				if (end < 0) {
+					break;
+				}
+				pos = end + CDATA_END.length();
+			} else if (text.startsWith("</", lt)) {
+				return lt;
+			} else {
+				pos = lt + 1;
+			}
+		}
+		return text.length();
+	}
+
+	private static void protect(String content, StringBuilder b) {
+		int cdata = content.indexOf(CDATA_START);
+		if (cdata >= 0) {
+			int end = content.indexOf(CDATA_END, cdata);
+			String hl7 = content.substring(cdata + CDATA_START.length(), end < 0 ? content.length() : end);
+			b.append(content, 0, cdata).append(CDATA_START).append(HL7Utils.protectHL7Message(hl7));
+			if (end >= 0) {
+				b.append(content, end, content.length());
+			}
+			return;
+		}
+		String hl7 = HL7Utils.protectHL7Message(StringEscapeUtils.unescapeXml(content));
+		if (hl7 == null) {
+			return;
+		}
+		for (int i = 0; i < hl7.length(); i++) {
+			char c = hl7.charAt(i);
+			switch (c) {
+			case '&': b.append("&amp;"); break;
+			case '<': b.append("&lt;"); break;
+			case '>': b.append("&gt;"); break;
+			case '\r': b.append("&#xD;"); break;
+			default: b.append(c); break;
+			}
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package gov.cdc.izgateway.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+/**
+ * BufferPool is a size-classed pool of byte arrays used for request and response bodies
+ * in the SOAP stack, so that buffers of a few to 64K are reused rather than allocated
+ * for every message.
+ *
+ * Buffers are handed out in power of two size classes from {@link #MIN_SIZE} to {@link #MAX_SIZE}
+ * and so may be larger than requested.  Requests for more than {@link #MAX_SIZE} bytes are
+ * allocated directly and are not pooled.  Each size class retains a bounded number of released
+ * buffers, beyond which released buffers are left to the garbage collector.
+ *
+ * A buffer must be released exactly once, and must not be used after it is released.  When leak
+ * detection is enabled (e.g., in tests, by setting the system property {@value #LEAK_DETECTION_PROPERTY} to true),
+ * the pool records where each outstanding buffer was acquired, fails on double release, and
+ * overwrites released buffers so that use after release is visible.
+ *
+ * @author Audacious Inquiry
+ */
+public class BufferPool {
+	/** The smallest buffer size handed out */
+	public static final int MIN_SIZE = 1024;
+	/** The largest buffer size that is pooled */
+	public static final int MAX_SIZE = 64 * 1024;
+	/** The default number of buffers retained for each size class */
+	public static final int DEFAULT_RETAINED = 32;
+	/** The system property used to enable leak detection in the default pool */
+	public static final String LEAK_DETECTION_PROPERTY = "izgw.bufferpool.leakDetection";
+	private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+	private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+	/** Fill value for released buffers when detecting leaks */
+	private static final byte RELEASED = (byte) 0xDB;
+
+	private static final BufferPool DEFAULT_POOL = new BufferPool(DEFAULT_RETAINED, Boolean.getBoolean(LEAK_DETECTION_PROPERTY));
+
+	/**
+	 * Statistics on pool usage.
+	 */
+	@Data
+	@Schema(description="Statistics on the use of the buffer pool")
+	public static class Stats {
+		@Schema(description="Number of buffers acquired from the pool")
+		private long hits;
+		@Schema(description="Number of buffers that had to be allocated because none were available")
+		private long misses;
+		@Schema(description="Number of buffers allocated outside the pool because they were too large")
+		private long unpooled;
+		@Schema(description="Number of released buffers not retained because the pool was full")
+		private long discarded;
+		@Schema(description="Number of buffers acquired and not yet released, which is only exact when leak detection is enabled")
+		private int outstanding;
+		@Schema(description="Number of buffers available in the pool")
+		private int available;
+		@Schema(description="True if leak detection is enabled")
+		private boolean leakDetection;
+	}
+
+	@SuppressWarnings("unchecked")
+	private final ArrayBlockingQueue<byte[]>[] pools = new ArrayBlockingQueue[SIZE_CLASSES];
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder unpooled = new LongAdder();
+	private final LongAdder discarded = new LongAdder();
+	private final AtomicInteger outstanding = new AtomicInteger();
+	private final boolean leakDetection;
+	/** Where each outstanding buffer was acquired, only used when detecting leaks */
+	private final Map<byte[], Throwable> acquiredAt = Collections.synchronizedMap(new IdentityHashMap<>());
+
+	/**
+	 * Create a new buffer pool.
+	 * @param retained	The maximum number of buffers retained in each size class.
+	 * @param leakDetection	True to enable leak detection.
+	 */
+	public BufferPool(int retained, boolean leakDetection) {
+		if (retained < 1) {
+			throw new IllegalArgumentException("Retained buffers must be > 0");
+		}
+		for (int i = 0; i < SIZE_CLASSES; i++) {
+			pools[i] = new ArrayBlockingQueue<>(retained);
+		}
+		this.leakDetection = leakDetection;
+	}
+
+	/**
+	 * @return The pool shared by the SOAP stack.
+	 */
+	public static BufferPool getDefault() {
+		return DEFAULT_POOL;
+	}
+
+	/**
+	 * Get the size class for a buffer of at least size bytes.
+	 * @param size	The size
+	 * @return	The index of the size class.
+	 */
+	private static int sizeClass(int size) {
+		if (size <= MIN_SIZE) {
+			return 0;
+		}
+		return Integer.SIZE - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+	}
+
+	/**
+	 * Acquire a buffer of at least size bytes.
+	 * @param size	The minimum size of the buffer
+	 * @return	A buffer of at least size bytes. Its content is undefined.
+	 */
+	public byte[] acquire(int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Buffer size must be >= 0");
+		}
+		if (size > MAX_SIZE) {
+			unpooled.increment();
+			return new byte[size];
+		}
+		int sizeClass = sizeClass(size);
+		byte[] buffer = pools[sizeClass].poll();
+		if (buffer == null) {
+			misses.increment();
+			buffer = new byte[MIN_SIZE << sizeClass];
+		} else {
+			hits.increment();
+		}
+		outstanding.incrementAndGet();
+		if (leakDetection) {
+			acquiredAt.put(buffer, new Throwable("Buffer of " + buffer.length + " bytes acquired"));
+		}
+		return buffer;
+	}
+
+	/**
+	 * Return a buffer acquired from this pool to it.  Buffers that are not pool sized, such as those
+	 * acquired larger than the largest size class, are ignored.
+	 *
+	 * Only buffers acquired from this pool may be released to it.  With leak detection this is
+	 * checked.  Without it, the pool does not track its buffers, so a pool sized buffer that was not
+	 * acquired from it cannot be told apart, and is retained like any other.  It is counted as released,
+	 * but the number outstanding never drops below zero.
+	 * @param buffer	The buffer to release, which may be null.
+	 * @throws IllegalStateException	If leak detection is enabled and the buffer is not outstanding.
+	 */
+	public void release(byte[] buffer) {
+		if (buffer == null || buffer.length > MAX_SIZE || buffer.length < MIN_SIZE || Integer.bitCount(buffer.length) != 1) {
+			return;
+		}
+		if (leakDetection) {
+			if (acquiredAt.remove(buffer) == null) {
+				throw new IllegalStateException("Buffer released twice or not acquired from this pool");
+			}
+			Arrays.fill(buffer, RELEASED);
+		}
+		outstanding.updateAndGet(n -> Math.max(0, n - 1));
+		if (!pools[sizeClass(buffer.length)].offer(buffer)) {
+			discarded.increment();
+		}
+	}
+
+	/**
+	 * @return	true if leak detection is enabled.
+	 */
+	public boolean isLeakDetection() {
+		return leakDetection;
+	}
+
+	/**
+	 * Get the buffers that have not been released.  This is only available
+	 * when leak detection is enabled.
+	 * @return	An exception for each outstanding buffer, with a stack trace showing where it was acquired.
+	 */
+	public List<Throwable> getLeaks() {
+		synchronized (acquiredAt) {
+			return new ArrayList<>(acquiredAt.values());
+		}
+	}
+
+	/**
+	 * @return A snapshot of statistics for this pool.
+	 */
+	public Stats getStats() {
+		Stats stats = new Stats();
+		stats.setHits(hits.sum());
+		stats.setMisses(misses.sum());
+		stats.setUnpooled(unpooled.sum());
+		stats.setDiscarded(discarded.sum());
+		stats.setOutstanding(outstanding.get());
+		int available = 0;
+		for (ArrayBlockingQueue<byte[]> pool: pools) {
+			available += pool.size();
+		}
+		stats.setAvailable(available);
+		stats.setLeakDetection(leakDetection);
+		return stats;
+	}
+}
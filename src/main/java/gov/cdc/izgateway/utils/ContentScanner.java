@@ -0,0 +1,226 @@
+package gov.cdc.izgateway.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * ContentScanner is a compiled, case-insensitive, multi-pattern scanner based on the
+ * Aho-Corasick algorithm.  The patterns are compiled into a dense DFA once, after which
+ * any number of patterns can be searched for in a single pass over the input.  This
+ * allows new patterns to be screened for without adding another full scan of the
+ * content for each one.
+ *
+ * Instances are immutable and thread safe once constructed.
+ *
+ * @author Audacious Inquiry
+ */
+public class ContentScanner {
+	private static final int ASCII = 128;
+	/** The character class for characters that appear in no pattern */
+	private static final int OTHER = 0;
+
+	private final List<String> patterns;
+	/** Maps ASCII characters (upper and lower case) to their character class */
+	private final int[] asciiClasses = new int[ASCII];
+	/** Sorted non-ASCII characters found in the patterns, in lower case */
+	private final char[] otherChars;
+	/** Character classes for otherChars */
+	private final int[] otherClasses;
+	/** The number of character classes (including OTHER) */
+	private final int width;
+	/** The transition table, indexed by state * width + character class */
+	private final int[] transitions;
+	/** The index of the pattern matched on entry to each state, or -1 */
+	private final int[] matches;
+
+	/**
+	 * Create a scanner for the given set of patterns.
+	 * @param patterns	The patterns to search for.  Matching is case-insensitive.
+	 * @throws IllegalArgumentException if no patterns are given, or any is empty.
+	 */
+	public ContentScanner(String ... patterns) {
+		this(Arrays.asList(patterns));
+	}
+
+	/**
+	 * Create a scanner for the given set of patterns.
+	 * @param patterns	The patterns to search for.  Matching is case-insensitive.
+	 * @throws IllegalArgumentException if no patterns are given, or any is empty.
+	 */
+	public ContentScanner(Collection<String> patterns) {
+		Set<String> unique = new LinkedHashSet<>();
+		for (String p: patterns) {
+			if (p == null || p.isEmpty()) {
+				throw new IllegalArgumentException("Patterns cannot be null or empty");
+			}
+			unique.add(p.toLowerCase(Locale.ROOT));
+		}
+		if (unique.isEmpty()) {
+			throw new IllegalArgumentException("At least one pattern must be provided");
+		}
+		this.patterns = Collections.unmodifiableList(new ArrayList<>(unique));
+
+		// Assign character classes
+		TreeMap<Character, Integer> others = new TreeMap<>();
+		int classes = 1;
+		for (String p: this.patterns) {
+			for (int i = 0; i < p.length(); i++) {
+				char c = p.charAt(i);
+				if (c < ASCII) {
+					if (asciiClasses[c] == OTHER) {
+						asciiClasses[c] = classes;
+						asciiClasses[Character.toUpperCase(c)] = classes;
+						classes++;
+					}
+				} else if (!others.containsKey(c)) {
+					others.put(c, classes++);
+				}
+			}
+		}
+		width = classes;
+		otherChars = new char[others.size()];
+		otherClasses = new int[others.size()];
+		int pos = 0;
+		for (var e: others.entrySet()) {
+			otherChars[pos] = e.getKey();
+			otherClasses[pos++] = e.getValue();
+		}
+
+		// Build the trie
+		List<int[]> trie = new ArrayList<>();
+		List<Integer> output = new ArrayList<>();
+		trie.add(newRow());
+		output.add(-1);
+		for (int p = 0; p < this.patterns.size(); p++) {
+			String pattern = this.patterns.get(p);
+			int state = 0;
+			for (int i = 0; i < pattern.length(); i++) {
+				int cc = classOf(pattern.charAt(i));
+				if (trie.get(state)[cc] < 0) {
+					trie.get(state)[cc] = trie.size();
+					trie.add(newRow());
+					output.add(-1);
+				}
+				state = trie.get(state)[cc];
+			}
+			if (output.get(state) < 0) {
+				output.set(state, p);
+			}
+		}
+
+		// Compute failure links breadth first, folding them into a complete DFA
+		int states = trie.size();
+		transitions = new int[states * width];
+		matches = new int[states];
+		int[] fail = new int[states];
+		Deque<Integer> queue = new ArrayDeque<>();
+		for (int cc = 0; cc < width; cc++) {
+			int next = trie.get(0)[cc];
+			if (next < 0) {
+				transitions[cc] = 0;
+			} else {
+				transitions[cc] = next;
+				fail[next] = 0;
+				queue.add(next);
+			}
+		}
+		matches[0] = output.get(0);
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+			int out = output.get(state);
+			matches[state] = out >= 0 ? out : matches[fail[state]];
+			for (int cc = 0; cc < width; cc++) {
+				int next = trie.get(state)[cc];
+				if (next < 0) {
+					transitions[state * width + cc] = transitions[fail[state] * width + cc];
+				} else {
+					transitions[state * width + cc] = next;
+					fail[next] = transitions[fail[state] * width + cc];
+					queue.add(next);
+				}
+			}
+		}
+	}
+
+	private int[] newRow() {
+		int[] row = new int[width];
+		Arrays.fill(row, -1);
+		return row;
+	}
+
+	private int classOf(char c) {
+		if (c < ASCII) {
+			return asciiClasses[c];
+		}
+		char lower = Character.toLowerCase(c);
+		if (lower < ASCII) {
+			return asciiClasses[lower];
+		}
+		int pos = Arrays.binarySearch(otherChars, lower);
+		return pos < 0 ? OTHER : otherClasses[pos];
+	}
+
+	/**
+	 * @return The (lower case) patterns this scanner searches for.
+	 */
+	public List<String> getPatterns() {
+		return patterns;
+	}
+
+	/**
+	 * Find the first pattern appearing in the text.
+	 * @param text	The text to scan
+	 * @return	The first matching pattern (in lower case), or null if none was found.
+	 */
+	public String find(CharSequence text) {
+		if (text == null) {
+			return null;
+		}
+		int state = 0;
+		for (int i = 0, len = text.length(); i < len; i++) {
+			state = transitions[state * width + classOf(text.charAt(i))];
+			int m = matches[state];
+			if (m >= 0) {
+				return patterns.get(m);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Find the first pattern appearing in a region of a character array.
+	 * @param text	The characters to scan
+	 * @param start	The starting offset
+	 * @param length	The number of characters to scan
+	 * @return	The first matching pattern (in lower case), or null if none was found.
+	 */
+	public String find(char[] text, int start, int length) {
+		int state = 0;
+		for (int i = start, end = start + length; i < end; i++) {
+			state = transitions[state * width + classOf(text[i])];
+			int m = matches[state];
+			if (m >= 0) {
+				return patterns.get(m);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Test whether any pattern appears in the text.
+	 * @param text	The text to scan
+	 * @return	true if any pattern was found
+	 */
+	public boolean matches(CharSequence text) {
+		return find(text) != null;
+	}
+}
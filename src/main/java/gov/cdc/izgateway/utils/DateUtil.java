@@ -1,7 +1,13 @@
 package gov.cdc.izgateway.utils;
 
 import java.text.ParseException;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.OffsetDateTime;
+import java.time.Year;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
@@ -24,6 +30,8 @@ import org.apache.commons.lang3.time.FastDateFormat;
  * 
  * Other keywords work including YESTERDAY, TOMORROW, and the Day of the Week (which always corresponds to today or a day in the future).
  * 
+ * HL7 V2 DTM values (YYYY[MM[DD[HH[MM[SS[.S[S[S[S]]]]]]]]][+/-ZZZZ]) are parsed directly by {@link #parseHL7DateTime(CharSequence, ZoneId)},
+ * and the heuristics above are only applied to values that aren't.
  */
 public class DateUtil {
     private static final String[] MONTHS = { "JANUARY", "FEBRUARY", "MARCH", "APRIL", "MAY", "JUNE", "JULY", "AUGUST", "SEPTEMBER", "OCTOBER", "NOVEMBER", "DECEMBER" };
@@ -33,7 +41,105 @@ public class DateUtil {
     	Month, Day, Digits, Punct, AmPm, Unknown, Empty, Year, Hour, Minute, Second, Millis, TZ 
     };
     
-    private static final String SIMPLE_FORMAT = "yyyyMMddhhmmss";
+    private static final String SIMPLE_FORMAT = "yyyyMMddHHmmss";
+    private static final FastDateFormat TIMESTAMP_FORMAT = FastDateFormat.getInstance("yyyyMMddHHmmssZ");
+    /** Scale of a fraction of a second with 1 to 4 digits to nanoseconds */
+    private static final int[] NANO_SCALE = { 0, 100_000_000, 10_000_000, 1_000_000, 100_000 };
+    private static final int MAX_OFFSET_SECONDS = 18 * 3600;
+    
+    /**
+     * Parse an HL7 V2 DTM value of the form YYYY[MM[DD[HH[MM[SS[.S[S[S[S]]]]]]]]][+/-ZZZZ].
+     * Omitted date and time components take their lowest value, so 202401 is the first moment of
+     * January 2024.
+     * 
+     * @param value	The value to parse
+     * @param defaultZone	The time zone of the value if it has no offset
+     * @return	The parsed value
+     * @throws DateTimeParseException if the value is not a valid DTM value
+     */
+    public static OffsetDateTime parseHL7DateTime(CharSequence value, ZoneId defaultZone) {
+    	OffsetDateTime result = value == null ? null : parseDtm(value, defaultZone);
+    	if (result == null) {
+    		throw new DateTimeParseException("Invalid HL7 DTM value", value == null ? "" : value, 0);
+    	}
+    	return result;
+    }
+
+    /**
+     * Parse an HL7 V2 DTM value, such as MSH-7, as it appears in a message.
+     * @param value	The value to parse
+     * @param defaultZone	The time zone of the value if it has no offset
+     * @return	The parsed value, or null if the value is empty or not a valid DTM value
+     */
+    public static OffsetDateTime safeParseHL7DateTime(CharSequence value, ZoneId defaultZone) {
+    	return value == null ? null : parseDtm(value, defaultZone);
+    }
+
+    /**
+     * Parse an HL7 V2 DTM value without creating intermediate objects.
+     * @return The parsed value, or null if the value is not a valid DTM value
+     */
+	private static OffsetDateTime parseDtm(CharSequence s, ZoneId defaultZone) { // NOSONAR Complexity is in validation
+		int end = s.length();
+		int digits = countDigits(s, 0, end);
+		if (digits < 4 || digits > 14 || digits % 2 != 0) {
+			return null;
+		}
+		int year = toInt(s, 0, 4);
+		int month = digits >= 6 ? toInt(s, 4, 2) : 1;
+		int day = digits >= 8 ? toInt(s, 6, 2) : 1;
+		int hour = digits >= 10 ? toInt(s, 8, 2) : 0;
+		int minute = digits >= 12 ? toInt(s, 10, 2) : 0;
+		int second = digits >= 14 ? toInt(s, 12, 2) : 0;
+		if (month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year)) ||
+			hour > 23 || minute > 59 || second > 59) {
+			return null;
+		}
+		int pos = digits;
+		int nanos = 0;
+		if (pos < end && s.charAt(pos) == '.') {
+			// A fraction of a second is only permitted after seconds
+			int fraction = countDigits(s, pos + 1, end);
+			if (digits != 14 || fraction < 1 || fraction >= NANO_SCALE.length) {
+				return null;
+			}
+			nanos = toInt(s, pos + 1, fraction) * NANO_SCALE[fraction];
+			pos += fraction + 1;
+		}
+		if (pos == end) {
+			ZoneOffset offset = defaultZone instanceof ZoneOffset zo ? zo :
+				defaultZone.getRules().getOffset(LocalDateTime.of(year, month, day, hour, minute, second, nanos));
+			return OffsetDateTime.of(year, month, day, hour, minute, second, nanos, offset);
+		}
+		char sign = s.charAt(pos);
+		if ((sign != '+' && sign != '-') || end - pos != 5 || countDigits(s, pos + 1, end) != 4) {
+			return null;
+		}
+		int offsetMinutes = toInt(s, pos + 3, 2);
+		int offsetSeconds = toInt(s, pos + 1, 2) * 3600 + offsetMinutes * 60;
+		if (offsetMinutes > 59 || offsetSeconds > MAX_OFFSET_SECONDS) {
+			return null;
+		}
+		ZoneOffset offset = ZoneOffset.ofTotalSeconds(sign == '-' ? -offsetSeconds : offsetSeconds);
+		return OffsetDateTime.of(year, month, day, hour, minute, second, nanos, offset);
+	}
+
+	private static int countDigits(CharSequence s, int start, int end) {
+		int pos = start;
+		while (pos < end && s.charAt(pos) >= '0' && s.charAt(pos) <= '9') {
+			pos++;
+		}
+		return pos - start;
+	}
+
+	private static int toInt(CharSequence s, int start, int length) {
+		int value = 0;
+		for (int i = start; i < start + length; i++) {
+			value = value * 10 + (s.charAt(i) - '0');
+		}
+		return value;
+	}
+
     
     public static Date safeParseDate(String date) {
 		try {
@@ -107,6 +213,12 @@ public class DateUtil {
 		}
     }
 	public static Date parseDate(String date) throws ParseException {
+		// HL7 DTM values, the most common case
+		String trimmed = date.trim();
+		OffsetDateTime dtm = parseDtm(trimmed, ZoneId.systemDefault());
+		if (dtm != null) {
+			return Date.from(dtm.toInstant());
+		}
     	// Simple forms for computers. 
     	Date d = simpleParse(date);
     	if (d != null) {
@@ -295,9 +407,7 @@ public class DateUtil {
 	}
 
     public static String createTimestamp() {
-        FastDateFormat fdf = FastDateFormat.getInstance("yyyyMMddHHmmssZ");
-
-        return fdf.format(new Date());
+        return TIMESTAMP_FORMAT.format(new Date());
     }
 
     public static class SimpleParseState {
@@ -7,26 +7,53 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 
+import gov.cdc.izgateway.logging.RequestContext;
+
 public class ExecUtils {
 
+	/** The maximum number of threads used by {@link #execAll(List, Consumer, int, TimeUnit)} */
+	public static final int MAX_THREADS = 16;
+
 	private ExecUtils() {}
 
+	/**
+	 * Wait until a condition is true or a time has passed, checking it every 100 ms.
+	 * @param maxDelay	The maximum time to wait in milliseconds
+	 * @param t	The condition
+	 * @return	true if the condition was met
+	 */
 	public static boolean waitFor(long maxDelay, BooleanSupplier t) {
 		long stopTime = System.currentTimeMillis() + maxDelay;
-		do {
+		long remaining;
+		while (!t.getAsBoolean() && (remaining = stopTime - System.currentTimeMillis()) > 0) {
 			try {
-				Thread.sleep(100);
+				Thread.sleep(Math.min(100, remaining));
 			} catch (InterruptedException e) {
 				Thread.currentThread().interrupt();
+				return t.getAsBoolean();
 			}
-		} while (System.currentTimeMillis() < stopTime && !Boolean.TRUE.equals(t.getAsBoolean()));
-		return Boolean.TRUE.equals(t.getAsBoolean());
+		}
+		return t.getAsBoolean();
 	}
 	
     
+	/**
+	 * Run a consumer on each item of a list in parallel, on at most {@link #MAX_THREADS} threads,
+	 * waiting at most the given time for all to complete.  Work still running after that time
+	 * is interrupted.
+	 * @param <T>	The type of item
+	 * @param l	The items
+	 * @param consumer	The consumer
+	 * @param wait	The time to wait
+	 * @param units	The units of wait
+	 * @return	true if every item was consumed in time
+	 */
 	public static <T> boolean execAll(List<T> l, Consumer<T> consumer, int wait, TimeUnit units) {
-		ExecutorService exec = Executors.newFixedThreadPool(Math.max(4, wait));
-		l.forEach(consumer::accept);
+		if (l.isEmpty()) {
+			return true;
+		}
+		ExecutorService exec = Executors.newFixedThreadPool(Math.min(l.size(), MAX_THREADS));
+		l.forEach(item -> exec.execute(RequestContext.wrap(() -> consumer.accept(item))));
 		exec.shutdown();
 		boolean allComplete = false;
 		try {
@@ -34,6 +61,9 @@ public class ExecUtils {
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
 		}
+		if (!allComplete) {
+			exec.shutdownNow();
+		}
 		return allComplete;
 	}
 }
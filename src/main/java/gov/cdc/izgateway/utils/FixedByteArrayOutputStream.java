@@ -1,38 +1,43 @@
 package gov.cdc.izgateway.utils;
 
-import java.io.ByteArrayOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * A memory based output stream that can only hold so much
  * before it fails with an IOException.
- *  
+ *
+ * Storage is drawn from the {@link BufferPool} as the stream grows, and returned
+ * to it when the stream is closed.
  */
 public class FixedByteArrayOutputStream  extends FilterOutputStream {
 	private final int maxSize;
-	private final ByteArrayOutputStream bos;
+	private final BufferPool pool;
+	private byte[] buffer = null;
+	private int count = 0;
 	private int currentSize = 0;
 	public static final int DEFAULT_SIZE = 8192;
-	
+
 	public FixedByteArrayOutputStream(int maxSize) {
-		super(new ByteArrayOutputStream());
-		bos = (ByteArrayOutputStream) out;
+		super(OutputStream.nullOutputStream());
 		this.maxSize = maxSize;
+		this.pool = BufferPool.getDefault();
 	}
-	
+
 	public FixedByteArrayOutputStream() {
 		this(DEFAULT_SIZE);
 	}
-	
+
 	public class SizeExceededException extends IOException {
 		private static final long serialVersionUID = 1L;
 
 		private SizeExceededException() {
 			super(String.format("Maximum size of %d exceeded", maxSize));
 		}
-		
+
 		public int getSize() {
 			return currentSize;
 		}
@@ -43,7 +48,8 @@ public class FixedByteArrayOutputStream  extends FilterOutputStream {
 		if (++currentSize > maxSize) {
 			throw new SizeExceededException();
 		}
-		super.write(b);
+		ensureCapacity(count + 1);
+		buffer[count++] = (byte) b;
 	}
 
 	@Override
@@ -51,7 +57,22 @@ public class FixedByteArrayOutputStream  extends FilterOutputStream {
 		if ((currentSize += len) > maxSize) {
 			throw new SizeExceededException();
 		}
-		super.write(b, off, len);
+		ensureCapacity(count + len);
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+	}
+
+	private void ensureCapacity(int needed) {
+		if (buffer != null && buffer.length >= needed) {
+			return;
+		}
+		int size = buffer == null ? BufferPool.MIN_SIZE : buffer.length * 2;
+		byte[] newBuffer = pool.acquire(Math.min(Math.max(size, needed), maxSize));
+		if (buffer != null) {
+			System.arraycopy(buffer, 0, newBuffer, 0, count);
+			pool.release(buffer);
+		}
+		buffer = newBuffer;
 	}
 
 	@Override
@@ -59,22 +80,29 @@ public class FixedByteArrayOutputStream  extends FilterOutputStream {
 		super.flush();
 	}
 
+	/**
+	 * Close the stream, returning its storage to the pool. The content
+	 * is no longer available after the stream is closed.
+	 */
 	@Override
 	public void close() throws IOException {
 		super.close();
+		reset();
+		pool.release(buffer);
+		buffer = null;
 	}
-	
+
 	public byte[] toByteArray() {
-		return bos.toByteArray();
+		return buffer == null ? new byte[0] : Arrays.copyOf(buffer, count);
 	}
-	
+
 	public String toString() {
-		return bos.toString(StandardCharsets.UTF_8);
+		return buffer == null ? "" : new String(buffer, 0, count, StandardCharsets.UTF_8);
 	}
-	
+
 	public void reset() {
 		currentSize = 0;
-		bos.reset();
+		count = 0;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,438 @@
+package gov.cdc.izgateway.utils;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * HL7Index is an index of the segment and field offsets in an HL7 V2 message.
+ * The index holds only offsets into the message text, which is not copied, and
+ * is built on first access, so that a message can be split once and the index
+ * shared by everything that needs to look at its segments and fields.
+ *
+ * Segments are separated by carriage returns or line feeds, and empty segments are skipped.
+ * The field separator and encoding characters are taken from MSH-1 and MSH-2 (or FHS/BHS)
+ * in the first segment, defaulting to |^~\&.
+ *
+ * Fields are numbered as in HL7, field 0 being the segment name.  In header segments (MSH, FHS, BHS),
+ * field 1 is the field separator itself, and field 2 the encoding characters.
+ *
+ * Instances are not thread safe.
+ *
+ * @author Audacious Inquiry
+ */
+public class HL7Index {
+	/** The default field separator */
+	public static final char DEFAULT_FIELD_SEPARATOR = '|';
+	/** The default encoding characters */
+	public static final String DEFAULT_ENCODING_CHARACTERS = "^~\\&";
+	private static final int INITIAL_SEGMENTS = 16;
+	private static final int INITIAL_FIELDS = 128;
+	/** The part index returned by toPart for MSH-1, which is not a delimited part */
+	private static final int HEADER_FIELD_SEPARATOR = -2;
+
+	private final CharSequence text;
+	private boolean built = false;
+	private char fieldSeparator = DEFAULT_FIELD_SEPARATOR;
+	private char componentSeparator = DEFAULT_ENCODING_CHARACTERS.charAt(0);
+	private char repetitionSeparator = DEFAULT_ENCODING_CHARACTERS.charAt(1);
+	private char escapeCharacter = DEFAULT_ENCODING_CHARACTERS.charAt(2);
+	private char subcomponentSeparator = DEFAULT_ENCODING_CHARACTERS.charAt(3);
+
+	private int segmentCount = 0;
+	private int[] segmentStart;
+	private int[] segmentEnd;
+	/** The index in fieldStart of the segment name */
+	private int[] firstField;
+	private int fieldCount = 0;
+	/** The offset of the first character of each delimited part of each segment */
+	private int[] fieldStart;
+
+	/**
+	 * Create an index of an HL7 message.
+	 * @param text	The message text, which must not change while the index is in use.
+	 */
+	public HL7Index(CharSequence text) {
+		this.text = text == null ? "" : text;
+	}
+
+	/**
+	 * Create an index of only the first segment of a message, such as the MSH segment of a masked
+	 * copy, without indexing the rest of it.
+	 * @param text	The message text, which must not change while the index is in use.
+	 * @return	The index of the first segment, or null if text is null or empty
+	 */
+	public static HL7Index ofFirstSegment(CharSequence text) {
+		if (text == null || text.length() == 0) {
+			return null;
+		}
+		int end = 0;
+		while (end < text.length() && text.charAt(end) != '\r' && text.charAt(end) != '\n') {
+			end++;
+		}
+		return new HL7Index(CharBuffer.wrap(text, 0, end));
+	}
+
+	/**
+	 * @return The indexed message text
+	 */
+	public CharSequence getText() {
+		return text;
+	}
+
+	private void build() {
+		if (built) {
+			return;
+		}
+		built = true;
+		segmentStart = new int[INITIAL_SEGMENTS];
+		segmentEnd = new int[INITIAL_SEGMENTS];
+		firstField = new int[INITIAL_SEGMENTS];
+		fieldStart = new int[INITIAL_FIELDS];
+
+		int len = text.length();
+		int pos = 0;
+		while (pos < len) {
+			char c = text.charAt(pos);
+			if (c == '\r' || c == '\n') {
+				pos++;
+				continue;
+			}
+			if (segmentCount == 0) {
+				readEncodingCharacters(pos);
+			}
+			addSegment(pos);
+			while (pos < len && (c = text.charAt(pos)) != '\r' && c != '\n') {
+				if (c == fieldSeparator) {
+					addField(pos + 1);
+				}
+				pos++;
+			}
+			segmentEnd[segmentCount - 1] = pos;
+		}
+	}
+
+	private void readEncodingCharacters(int start) {
+		if (!isHeaderName(start) || text.length() <= start + 3) {
+			return;
+		}
+		fieldSeparator = text.charAt(start + 3);
+		char[] encoding = { componentSeparator, repetitionSeparator, escapeCharacter, subcomponentSeparator };
+		for (int i = 0; i < encoding.length; i++) {
+			int pos = start + 4 + i;
+			if (pos >= text.length()) {
+				break;
+			}
+			char c = text.charAt(pos);
+			if (c == fieldSeparator || c == '\r' || c == '\n') {
+				break;
+			}
+			encoding[i] = c;
+		}
+		componentSeparator = encoding[0];
+		repetitionSeparator = encoding[1];
+		escapeCharacter = encoding[2];
+		subcomponentSeparator = encoding[3];
+	}
+
+	private boolean isHeaderName(int start) {
+		return regionMatches(start, "MSH") || regionMatches(start, "FHS") || regionMatches(start, "BHS");
+	}
+
+	private boolean regionMatches(int start, String value) {
+		if (start + value.length() > text.length()) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if (text.charAt(start + i) != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void addSegment(int start) {
+		if (segmentCount == segmentStart.length) {
+			int size = segmentCount * 2;
+			segmentStart = Arrays.copyOf(segmentStart, size);
+			segmentEnd = Arrays.copyOf(segmentEnd, size);
+			firstField = Arrays.copyOf(firstField, size);
+		}
+		segmentStart[segmentCount] = start;
+		firstField[segmentCount] = fieldCount;
+		segmentCount++;
+		addField(start);
+	}
+
+	private void addField(int start) {
+		if (fieldCount == fieldStart.length) {
+			fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+		}
+		fieldStart[fieldCount++] = start;
+	}
+
+	/**
+	 * @return The field separator
+	 */
+	public char getFieldSeparator() {
+		build();
+		return fieldSeparator;
+	}
+
+	/**
+	 * @return The component separator
+	 */
+	public char getComponentSeparator() {
+		build();
+		return componentSeparator;
+	}
+
+	/**
+	 * @return The repetition separator
+	 */
+	public char getRepetitionSeparator() {
+		build();
+		return repetitionSeparator;
+	}
+
+	/**
+	 * @return The escape character
+	 */
+	public char getEscapeCharacter() {
+		build();
+		return escapeCharacter;
+	}
+
+	/**
+	 * @return The subcomponent separator
+	 */
+	public char getSubcomponentSeparator() {
+		build();
+		return subcomponentSeparator;
+	}
+
+	/**
+	 * @return The number of (non-empty) segments in the message
+	 */
+	public int getSegmentCount() {
+		build();
+		return segmentCount;
+	}
+
+	/**
+	 * @param seg	The segment index
+	 * @return	The offset of the start of the segment
+	 */
+	public int getSegmentStart(int seg) {
+		checkSegment(seg);
+		return segmentStart[seg];
+	}
+
+	/**
+	 * @param seg	The segment index
+	 * @return	The offset of the end of the segment (exclusive)
+	 */
+	public int getSegmentEnd(int seg) {
+		checkSegment(seg);
+		return segmentEnd[seg];
+	}
+
+	/**
+	 * @param seg	The segment index
+	 * @return	The segment text, without its segment separator
+	 */
+	public CharSequence getSegment(int seg) {
+		checkSegment(seg);
+		return text.subSequence(segmentStart[seg], segmentEnd[seg]);
+	}
+
+	/**
+	 * @param seg	The segment index
+	 * @return	The segment name (field 0)
+	 */
+	public String getSegmentName(int seg) {
+		return getField(seg, 0);
+	}
+
+	/**
+	 * Test the name of a segment without copying it.
+	 * @param seg	The segment index
+	 * @param name	The name to check
+	 * @return	true if the segment has the given name
+	 */
+	public boolean isSegment(int seg, String name) {
+		return fieldEquals(seg, 0, name);
+	}
+
+	/**
+	 * @param seg	The segment index
+	 * @return	true if the segment is an MSH, FHS or BHS segment
+	 */
+	public boolean isHeader(int seg) {
+		checkSegment(seg);
+		return partCount(seg) > 1 && fieldStart[firstField[seg] + 1] == segmentStart[seg] + 4 &&
+			isHeaderName(segmentStart[seg]);
+	}
+
+	/**
+	 * Find the first segment with a given name.
+	 * @param name	The segment name
+	 * @return	The index of the segment, or -1 if not found
+	 */
+	public int findSegment(String name) {
+		return findSegment(name, 0);
+	}
+
+	/**
+	 * Find the next segment with a given name.
+	 * @param name	The segment name
+	 * @param from	The index of the segment to start searching from
+	 * @return	The index of the segment, or -1 if not found
+	 */
+	public int findSegment(String name, int from) {
+		build();
+		for (int seg = Math.max(from, 0); seg < segmentCount; seg++) {
+			if (isSegment(seg, name)) {
+				return seg;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param seg	The segment index
+	 * @return	The number of the last field present in the segment
+	 */
+	public int getFieldCount(int seg) {
+		checkSegment(seg);
+		int parts = partCount(seg);
+		return isHeader(seg) ? parts : parts - 1;
+	}
+
+	/**
+	 * @param seg	The segment index
+	 * @param field	The field number
+	 * @return	The offset of the start of the field, or -1 if not present
+	 */
+	public int getFieldStart(int seg, int field) {
+		int part = toPart(seg, field);
+		if (part == HEADER_FIELD_SEPARATOR) {
+			return segmentStart[seg] + 3;
+		}
+		return part < 0 ? -1 : fieldStart[firstField[seg] + part];
+	}
+
+	/**
+	 * @param seg	The segment index
+	 * @param field	The field number
+	 * @return	The offset of the end of the field (exclusive), or -1 if not present
+	 */
+	public int getFieldEnd(int seg, int field) {
+		int part = toPart(seg, field);
+		if (part == HEADER_FIELD_SEPARATOR) {
+			return segmentStart[seg] + 4;
+		}
+		return part < 0 ? -1 : partEnd(seg, part);
+	}
+
+	/**
+	 * @param seg	The segment index
+	 * @param field	The field number
+	 * @return	The content of the field, or null if not present
+	 */
+	public String getField(int seg, int field) {
+		int start = getFieldStart(seg, field);
+		return start < 0 ? null : text.subSequence(start, getFieldEnd(seg, field)).toString();
+	}
+
+	/**
+	 * Get the first component of a field. Repetitions are not considered.
+	 * @param seg	The segment index
+	 * @param field	The field number
+	 * @return	The content of the field up to the first component separator, or null if not present
+	 */
+	public String getFirstComponent(int seg, int field) {
+		int start = getFieldStart(seg, field);
+		if (start < 0) {
+			return null;
+		}
+		int end = getFieldEnd(seg, field);
+		if (getFieldSeparator() != componentSeparator) {
+			for (int pos = start; pos < end; pos++) {
+				if (text.charAt(pos) == componentSeparator) {
+					end = pos;
+					break;
+				}
+			}
+		}
+		return text.subSequence(start, end).toString();
+	}
+
+	/**
+	 * Compare the content of a field to a value without copying it.
+	 * @param seg	The segment index
+	 * @param field	The field number
+	 * @param value	The value to compare to
+	 * @return	true if the field is present and equal to value
+	 */
+	public boolean fieldEquals(int seg, int field, String value) {
+		int start = getFieldStart(seg, field);
+		return start >= 0 && value != null && getFieldEnd(seg, field) - start == value.length() && regionMatches(start, value);
+	}
+
+	/**
+	 * Determine whether any field at or after a given field has content.  This is true for exactly the fields
+	 * that would be present after splitting the segment on the field separator with String.split, which
+	 * removes trailing empty fields.
+	 * @param seg	The segment index
+	 * @param field	The field number
+	 * @return	true if any field at or after the given field is non-empty.
+	 */
+	public boolean hasContentFrom(int seg, int field) {
+		int start = getFieldStart(seg, field);
+		if (start < 0) {
+			return false;
+		}
+		for (int pos = start; pos < segmentEnd[seg]; pos++) {
+			if (text.charAt(pos) != fieldSeparator) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Convert an HL7 field number to the index of the delimited part of the segment.
+	 * @param seg	The segment
+	 * @param field	The field number
+	 * @return	The part index, -1 if not present, or HEADER_FIELD_SEPARATOR for MSH-1
+	 */
+	private int toPart(int seg, int field) {
+		checkSegment(seg);
+		if (field < 0) {
+			throw new IllegalArgumentException("Field number must be positive");
+		}
+		int part = field;
+		if (field > 0 && isHeader(seg)) {
+			if (field == 1) {
+				return HEADER_FIELD_SEPARATOR;
+			}
+			part = field - 1;
+		}
+		return part < partCount(seg) ? part : -1;
+	}
+
+	private int partCount(int seg) {
+		return (seg + 1 < segmentCount ? firstField[seg + 1] : fieldCount) - firstField[seg];
+	}
+
+	private int partEnd(int seg, int part) {
+		return part + 1 < partCount(seg) ? fieldStart[firstField[seg] + part + 1] - 1 : segmentEnd[seg];
+	}
+
+	private void checkSegment(int seg) {
+		build();
+		if (seg < 0 || seg >= segmentCount) {
+			throw new IndexOutOfBoundsException("Segment " + seg + " is not present in a message with " + segmentCount + " segments");
+		}
+	}
+}
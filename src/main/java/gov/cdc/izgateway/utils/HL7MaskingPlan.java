@@ -0,0 +1,396 @@
+package gov.cdc.izgateway.utils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HL7MaskingPlan is a compiled form of the rules used to protect PHI in HL7 messages, mapping
+ * each allowed segment name to the set of fields retained as is, and the set of fields retained
+ * after removing uncontrolled text from coded (CWE) values.
+ *
+ * A plan masks a message in a single pass over its characters, without regular expressions
+ * or intermediate strings, producing the same output as {@link HL7Utils#stripSegment(String, Collection)}
+ * applied segment by segment, except that CWE text is removed from each repetition of a field.
+ *
+ * Plans are immutable and thread safe.
+ *
+ * @see HL7Utils#protectHL7Message(String, Map, String)
+ * @author Audacious Inquiry
+ */
+public class HL7MaskingPlan {
+	/** The CWE components retained in stripped fields: identifier, coding system, alternate identifier and alternate coding system */
+	private static final BitSet CWE_COMPONENTS = bits(0, 2, 3, 5);
+
+	private static class SegmentPlan {
+		private final String name;
+		/** True if all fields are retained */
+		private final boolean all;
+		/** Parts of the segment (split on the field separator) retained as is */
+		private final BitSet keep = new BitSet();
+		/** Parts of the segment retained after stripping CWE text */
+		private final BitSet strip = new BitSet();
+
+		SegmentPlan(String name, Collection<Integer> allowedFields) {
+			this.name = name;
+			this.all = allowedFields.isEmpty();
+			if (all) {
+				return;
+			}
+			// Field numbers for segments other than MSH are adjusted by one for the segment name, which is always retained
+			boolean adjust = !"MSH".equals(name);
+			if (adjust) {
+				keep.set(0);
+			}
+			for (int value: allowedFields) {
+				if (adjust) {
+					value = value < 0 ? value - 1 : value + 1;
+				}
+				if (value < 0) {
+					strip.set(-value - 1);
+				} else if (value > 0) {
+					keep.set(value - 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Receives each segment of a message as it is masked, so that other information
+	 * can be gathered from the message in the same pass.
+	 */
+	@FunctionalInterface
+	public interface SegmentVisitor {
+		/**
+		 * Visit a segment of the unmasked message.
+		 * @param text	The message text
+		 * @param start	The start of the segment
+		 * @param end	The end of the segment (exclusive), before any segment separator
+		 * @param fieldSeparator	The field separator of the message
+		 * @param componentSeparator	The component separator of the message
+		 */
+		void visitSegment(CharSequence text, int start, int end, char fieldSeparator, char componentSeparator);
+	}
+
+	private final SegmentPlan[] segments;
+
+	private HL7MaskingPlan(List<SegmentPlan> segments) {
+		this.segments = segments.toArray(new SegmentPlan[0]);
+	}
+
+	/**
+	 * Compile the masking rules for a set of allowed segments.
+	 * @param allowedSegments	A map of allowed segments to allowed fields, as for {@link HL7Utils#protectHL7Message(String, Map, String)}.
+	 * @return	The compiled plan
+	 */
+	public static HL7MaskingPlan compile(Map<String, Collection<Integer>> allowedSegments) {
+		List<SegmentPlan> plans = new ArrayList<>();
+		allowedSegments.forEach((name, fields) -> plans.add(new SegmentPlan(name, fields)));
+		return new HL7MaskingPlan(plans);
+	}
+
+	private static BitSet bits(int ... values) {
+		BitSet b = new BitSet();
+		for (int value: values) {
+			b.set(value);
+		}
+		return b;
+	}
+
+	/**
+	 * Determine if a segment name is allowed by this plan.
+	 * @param text	Text containing the segment name
+	 * @param start	The start of the name
+	 * @param end	The end of the name (exclusive)
+	 * @return	true if the segment is allowed.
+	 */
+	public boolean isAllowed(CharSequence text, int start, int end) {
+		return find(text, start, end) != null;
+	}
+
+	private SegmentPlan find(CharSequence text, int start, int end) {
+		for (SegmentPlan plan: segments) {
+			if (plan.name.length() == end - start && regionMatches(text, start, plan.name)) {
+				return plan;
+			}
+		}
+		return null;
+	}
+
+	private static boolean regionMatches(CharSequence text, int start, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (text.charAt(start + i) != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Mask a message, removing all parts that aren't explicitly allowed.  Each retained segment is
+	 * terminated by a newline.  Runs of removed segments are replaced with a single etcSuffix line.
+	 *
+	 * @param message	The message to mask
+	 * @param etcSuffix	Suffix to insert to denote removed content, or empty for none.
+	 * @param out	The builder to append the masked message to
+	 * @return out
+	 */
+	public StringBuilder mask(CharSequence message, String etcSuffix, StringBuilder out) {
+		return mask(message, etcSuffix, out, null);
+	}
+
+	/**
+	 * Mask a message, passing each segment to a visitor as it is masked.
+	 *
+	 * @param message	The message to mask
+	 * @param etcSuffix	Suffix to insert to denote removed content, or empty for none.
+	 * @param out	The builder to append the masked message to
+	 * @param visitor	The visitor to pass segments to, or null
+	 * @return out
+	 */
+	public StringBuilder mask(CharSequence message, String etcSuffix, StringBuilder out, SegmentVisitor visitor) {
+		int outStart = out.length();
+		String etc = etcSuffix == null || etcSuffix.isEmpty() ? "" : etcSuffix + "\n";
+		Separators sep = new Separators(message);
+		int len = message.length();
+		int pos = 0;
+		while (pos < len) {
+			char c = message.charAt(pos);
+			if (c == '\r' || c == '\n') {
+				pos++;
+			} else {
+				pos = maskSegment(message, pos, sep, etc, out, outStart, visitor);
+			}
+		}
+		if (out.length() - outStart == etc.length() && endsWith(out, outStart, etc)) {
+			out.setLength(outStart);
+		}
+		return out;
+	}
+
+	/**
+	 * Mask the segment starting at pos.
+	 * @return	The position of the end of the segment
+	 */
+	private int maskSegment(CharSequence text, int pos, Separators sep, String etc, StringBuilder out, int outStart, SegmentVisitor visitor) {
+		int len = text.length();
+		int nameEnd = endOfPart(text, pos, sep.field);
+		int segmentEnd = nameEnd < len && text.charAt(nameEnd) == sep.field ? endOfSegment(text, nameEnd) : nameEnd;
+		if (visitor != null) {
+			visitor.visitSegment(text, pos, segmentEnd, sep.field, sep.component);
+		}
+		int contentEnd = trimEnd(text, pos, segmentEnd);
+		if (contentEnd == pos) {
+			// A blank line
+			return segmentEnd;
+		}
+		SegmentPlan plan = find(text, pos, Math.min(nameEnd, contentEnd));
+		if (plan == null) {
+			if (!endsWith(out, outStart, etc)) {
+				out.append(etc);
+			}
+		} else if (plan.all) {
+			out.append(text, pos, contentEnd).append('\n');
+		} else {
+			maskFields(text, pos, contentEnd, plan, sep, out);
+			out.append('\n');
+		}
+		return segmentEnd;
+	}
+
+	/**
+	 * Write the allowed fields of a segment.  Trailing fields that are empty or removed are
+	 * not written, as for String.split.
+	 */
+	private static void maskFields(CharSequence text, int start, int end, SegmentPlan plan, Separators sep, StringBuilder out) {
+		Trailer trailer = new Trailer();
+		int part = 0;
+		for (int partStart = start; ; part++) {
+			int partEnd = Math.min(endOfPart(text, partStart, sep.field), end);
+			boolean strip = plan.strip.get(part);
+			boolean allowed = strip || plan.keep.get(part);
+			if (trailer.next(part, allowed, partEnd > partStart, out, sep.field)) {
+				if (strip) {
+					stripRepetitions(text, partStart, partEnd, sep, out);
+				} else {
+					out.append(text, partStart, partEnd);
+				}
+			}
+			if (partEnd >= end) {
+				break;
+			}
+			partStart = partEnd + 1;
+		}
+		trailer.finish(out, sep.field);
+	}
+
+	/**
+	 * Remove uncontrolled text from each repetition of a CWE field.
+	 */
+	private static void stripRepetitions(CharSequence text, int start, int end, Separators sep, StringBuilder out) {
+		if (sep.repetition == sep.component) {
+			stripComponents(text, start, end, sep.component, out);
+			return;
+		}
+		int repStart = start;
+		while (true) {
+			int repEnd = repStart;
+			while (repEnd < end && text.charAt(repEnd) != sep.repetition) {
+				repEnd++;
+			}
+			stripComponents(text, repStart, repEnd, sep.component, out);
+			if (repEnd >= end) {
+				return;
+			}
+			out.append(sep.repetition);
+			repStart = repEnd + 1;
+		}
+	}
+
+	private static void stripComponents(CharSequence text, int start, int end, char separator, StringBuilder out) {
+		Trailer trailer = new Trailer();
+		int component = 0;
+		for (int compStart = start; ; component++) {
+			int compEnd = compStart;
+			while (compEnd < end && text.charAt(compEnd) != separator) {
+				compEnd++;
+			}
+			if (trailer.next(component, CWE_COMPONENTS.get(component), compEnd > compStart, out, separator)) {
+				out.append(text, compStart, compEnd);
+			}
+			if (compEnd >= end) {
+				break;
+			}
+			compStart = compEnd + 1;
+		}
+		trailer.finish(out, separator);
+	}
+
+	/**
+	 * Tracks separators owed between written parts, so that trailing separators
+	 * are written only up to the last allowed part present in the input.  A part is present if it,
+	 * or any part after it, is non-empty.
+	 */
+	private static class Trailer {
+		/** Separators not yet written */
+		private int owed = 0;
+		/** Separators to write at the end, for an allowed empty part known to be present */
+		private int confirmed = 0;
+		/** Separators to write at the end, for an allowed empty part if it turns out to be present */
+		private int tentative = -1;
+
+		/**
+		 * Account for the next part.
+		 * @return true if the part content should be written, in which case owed separators have been.
+		 */
+		boolean next(int part, boolean allowed, boolean nonEmpty, StringBuilder out, char separator) {
+			if (part > 0) {
+				owed++;
+			}
+			if (allowed && nonEmpty) {
+				append(out, separator, owed);
+				owed = 0;
+				confirmed = 0;
+				tentative = -1;
+				return true;
+			}
+			if (allowed) {
+				tentative = owed;
+			} else if (nonEmpty && tentative >= 0) {
+				confirmed = tentative;
+			}
+			return false;
+		}
+
+		void finish(StringBuilder out, char separator) {
+			append(out, separator, confirmed);
+		}
+
+		private static void append(StringBuilder out, char separator, int count) {
+			for (int i = 0; i < count; i++) {
+				out.append(separator);
+			}
+		}
+	}
+
+	private static int endOfPart(CharSequence text, int pos, char separator) {
+		int len = text.length();
+		char c;
+		while (pos < len && (c = text.charAt(pos)) != separator && c != '\r' && c != '\n') {
+			pos++;
+		}
+		return pos;
+	}
+
+	private static int endOfSegment(CharSequence text, int pos) {
+		int len = text.length();
+		char c;
+		while (pos < len && (c = text.charAt(pos)) != '\r' && c != '\n') {
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * Trailing whitespace before a segment separator is not part of the segment.
+	 */
+	private static int trimEnd(CharSequence text, int start, int end) {
+		if (end >= text.length()) {
+			return end;
+		}
+		while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+			end--;
+		}
+		return end;
+	}
+
+	private static boolean endsWith(StringBuilder b, int start, String suffix) {
+		int offset = b.length() - suffix.length();
+		if (offset < start) {
+			return false;
+		}
+		for (int i = 0; i < suffix.length(); i++) {
+			if (b.charAt(offset + i) != suffix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The separators declared in the first segment of the message, if it is a header segment.
+	 */
+	private static class Separators {
+		private char field = HL7Index.DEFAULT_FIELD_SEPARATOR;
+		private char component = HL7Index.DEFAULT_ENCODING_CHARACTERS.charAt(0);
+		private char repetition = HL7Index.DEFAULT_ENCODING_CHARACTERS.charAt(1);
+
+		Separators(CharSequence text) {
+			int start = 0;
+			int len = text.length();
+			while (start < len && (text.charAt(start) == '\r' || text.charAt(start) == '\n')) {
+				start++;
+			}
+			if (start + 3 >= len || !(regionMatches(text, start, "MSH") || regionMatches(text, start, "FHS") || regionMatches(text, start, "BHS"))) {
+				return;
+			}
+			field = text.charAt(start + 3);
+			if (isEncodingCharacter(text, start + 4)) {
+				component = text.charAt(start + 4);
+				if (isEncodingCharacter(text, start + 5)) {
+					repetition = text.charAt(start + 5);
+				}
+			}
+		}
+
+		private boolean isEncodingCharacter(CharSequence text, int pos) {
+			if (pos >= text.length()) {
+				return false;
+			}
+			char c = text.charAt(pos);
+			return c != field && c != '\r' && c != '\n';
+		}
+	}
+}
@@ -3,12 +3,26 @@ package gov.cdc.izgateway.utils;
 import ca.uhn.hl7v2.DefaultHapiContext;
 import ca.uhn.hl7v2.HL7Exception;
 import ca.uhn.hl7v2.HapiContext;
+import ca.uhn.hl7v2.Version;
 import ca.uhn.hl7v2.parser.PipeParser;
 import ca.uhn.hl7v2.util.Terser;
 import ca.uhn.hl7v2.validation.ValidationContext;
 import ca.uhn.hl7v2.validation.impl.ValidationContextFactory;
 import org.apache.commons.lang3.StringUtils;
 
+import java.nio.CharBuffer;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+
+/**
+ * HL7MessageFields extracts commonly used fields from the MSH segment of an HL7 message.
+ * 
+ * Well formed messages are handled by scanning only the MSH segment, producing the same values 
+ * as HAPI would.  A full HAPI parse is used only when the MSH segment contains anything the scanner 
+ * does not handle (escape sequences, repetitions, subcomponents, non-standard encoding characters, an 
+ * unrecognized version or an incomplete message type).  HAPI parsers are thread safe, so the default
+ * parser is shared by all instances rather than created for each one.
+ */
 public class HL7MessageFields {
     private static final HapiContext HAPI_CONTEXT;
     static {
@@ -17,6 +31,8 @@ public class HL7MessageFields {
         ValidationContext noValidation = ValidationContextFactory.noValidation();
         HAPI_CONTEXT.setValidationContext(noValidation);
     }
+    private static final PipeParser PARSER = HAPI_CONTEXT.getPipeParser();
+    private static final int VERSION = 12;
 
     private static final String UNKNOWN_VALUE = "{unknown}";
 
@@ -45,7 +61,7 @@ public class HL7MessageFields {
                 hl7FallbackLocation--; // adjust for HL7 Offset by 1
             }
             // Flag those requesting only first component
-            this.fallbackLocation = isFirstComponentOnly ? -fallbackLocation: fallbackLocation;
+            this.fallbackLocation = isFirstComponentOnly ? -hl7FallbackLocation : hl7FallbackLocation;
         }
 
         /**
@@ -70,6 +86,7 @@ public class HL7MessageFields {
         }
     }
 
+    /** The parser to use */
     private final PipeParser parser;
     /** Fallback on parsing error to string splitting on | */
     private String[] fallbackFields;
@@ -77,6 +94,7 @@ public class HL7MessageFields {
     private Terser messageFields;
     private String errorMessage;
     private boolean parseError;
+    private boolean scanned;
 
     public HL7MessageFields() {
         this(HAPI_CONTEXT, null);
@@ -88,13 +106,26 @@ public class HL7MessageFields {
         this(HAPI_CONTEXT, hl7Message);
     }
     public HL7MessageFields(HapiContext hapiContext, String hl7Message) {
-        parser = (hapiContext == null ? HAPI_CONTEXT : hapiContext).getPipeParser();
+        parser = hapiContext == null || hapiContext == HAPI_CONTEXT ? PARSER : hapiContext.getPipeParser();
         if (hl7Message != null) {
             parseHL7MessageToFields(hl7Message);
         }
     }
 
     public boolean parseHL7MessageToFields(String hl7Message) {
+        parseError = false;
+        errorMessage = null;
+        messageFields = null;
+        scanned = scanMsh(hl7Message);
+        return scanned || parseWithHapi(hl7Message);
+    }
+
+    /**
+     * Parse the message using HAPI.
+     * @param hl7Message    The message to parse
+     * @return true if the message was parsed without error.
+     */
+    boolean parseWithHapi(String hl7Message) {
         try {
             messageFields = new Terser(parser.parse(hl7Message));
         } catch (HL7Exception e) {
@@ -107,6 +138,104 @@ public class HL7MessageFields {
         return !parseError;
     }
 
+    /**
+     * Extract the fields from the MSH segment without parsing the rest of the message.  Each field
+     * is the first component of the first repetition, as the Terser would report it, or null if empty.
+     * @param hl7Message    The message to scan
+     * @return true if the fields were extracted, false if the message must be parsed by HAPI.
+     */
+    private boolean scanMsh(String hl7Message) {
+        if (hl7Message == null || !hl7Message.startsWith("MSH") || hl7Message.length() < 9) {
+            return false;
+        }
+        int end = StringUtils.indexOfAny(hl7Message, HL7Utils.HL7Message.SEGMENT_SEPARATORS);
+        if (end >= 0 && hl7Message.charAt(end) != '\r') {
+            // Leave messages using other segment separators to HAPI
+            return false;
+        }
+        HL7Index msh = new HL7Index(CharBuffer.wrap(hl7Message, 0, end < 0 ? hl7Message.length() : end));
+        if (!msh.isHeader(0) || !hasStandardEncoding(msh)) {
+            return false;
+        }
+        // Only versions with HAPI structures available are scanned, others are left to HAPI to handle
+        String version = getComponent(msh, VERSION, 1);
+        Version v = version == null ? null : Version.versionOf(version);
+        if (v == null || !v.available() ||
+            getComponent(msh, 9, 1) == null || getComponent(msh, 9, 2) == null
+        ) {
+            return false;
+        }
+        String[] values = new String[parsedFields.length];
+        for (ParsedPath path : ParsedPath.values()) {
+            int field = path.getFallbackLocation() + 1;
+            if (field <= 2) {
+                values[path.ordinal()] = msh.getField(0, field);
+            } else {
+                String value = msh.getField(0, field);
+                if (value != null && StringUtils.containsAny(value, msh.getRepetitionSeparator(),
+                    msh.getEscapeCharacter(), msh.getSubcomponentSeparator())
+                ) {
+                    return false;
+                }
+                values[path.ordinal()] = getComponent(msh, field, 1);
+            }
+        }
+        parsedFields = values;
+        return true;
+    }
+
+    private static boolean hasStandardEncoding(HL7Index msh) {
+        String encoding = msh.getField(0, 2);
+        if (encoding == null || encoding.length() != 4) {
+            return false;
+        }
+        String separators = msh.getFieldSeparator() + encoding;
+        for (int i = 0; i < separators.length(); i++) {
+            char c = separators.charAt(i);
+            if (Character.isLetterOrDigit(c) || Character.isWhitespace(c) || separators.indexOf(c) != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get a component of an MSH field.
+     * @param msh   The MSH index
+     * @param field The field number
+     * @param component The component number
+     * @return  The component, or null if empty or not present.
+     */
+    private static String getComponent(HL7Index msh, int field, int component) {
+        int start = msh.getFieldStart(0, field);
+        if (start < 0) {
+            return null;
+        }
+        int end = msh.getFieldEnd(0, field);
+        CharSequence text = msh.getText();
+        char separator = msh.getComponentSeparator();
+        for (int i = 1; i < component; i++) {
+            while (start < end && text.charAt(start) != separator) {
+                start++;
+            }
+            if (start++ >= end) {
+                return null;
+            }
+        }
+        int pos = start;
+        while (pos < end && text.charAt(pos) != separator) {
+            pos++;
+        }
+        return pos == start ? null : text.subSequence(start, pos).toString();
+    }
+
+    /**
+     * @return true if the fields were obtained by scanning the MSH segment, rather than parsing with HAPI.
+     */
+    boolean isScanned() {
+        return scanned;
+    }
+
     private void setParsedValues() {
         for (ParsedPath path : ParsedPath.values()) {
             try {
@@ -183,6 +312,14 @@ public class HL7MessageFields {
         return parsedFields[ParsedPath.MESSAGE_DATETIME.ordinal()];
     }
 
+    /**
+     * @return the messageDateTime parsed as an HL7 DTM value in the local time zone if it has no offset,
+     * or null if it is missing or invalid
+     */
+    public OffsetDateTime getMessageTimestamp() {
+        return DateUtil.safeParseHL7DateTime(getMessageDateTime(), ZoneId.systemDefault());
+    }
+
     /**
      * @return the securitySegment
      */
@@ -0,0 +1,234 @@
+package gov.cdc.izgateway.utils;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import gov.cdc.izgateway.logging.info.HL7ErrorInfo;
+import lombok.Getter;
+
+/**
+ * HL7ResponseAnalysis gathers what is reported about an HL7 response (an RSP or ACK) in the same
+ * pass over the message that masks it for logging: the acknowledgement code (MSA-1), the query
+ * response status (QAK-2), the errors reported in ERR segments, and the MSH segment.
+ *
+ * A response is an error if MSA-1 rejects the message (AR or CR), or an ERR segment
+ * reports an error with severity E.  Application errors (AE) with only warnings are not.
+ *
+ * @see HL7Utils#analyzeHL7Response(String)
+ * @author Audacious Inquiry
+ */
+public class HL7ResponseAnalysis implements HL7MaskingPlan.SegmentVisitor {
+	private static final int MSA_ACKNOWLEDGMENT_CODE = 1;
+	private static final int QAK_QUERY_RESPONSE_STATUS = 2;
+	private static final int ERR_LOCATION = 2;
+	private static final int ERR_CODE = 3;
+	private static final int ERR_SEVERITY = 4;
+	private static final int PID_PATIENT_NAME = 5;
+	private static final int QPD_PATIENT_NAME = 4;
+
+	/** The masked copy of the message */
+	@Getter
+	private String masked;
+	/** The acknowledgement code from MSA-1 */
+	@Getter
+	private String ackCode;
+	/** The query response status from QAK-2 */
+	@Getter
+	private String queryStatus;
+	private final List<HL7ErrorInfo> errors = new ArrayList<>();
+	private List<String> patientNames = Collections.emptyList();
+	private HL7Index msh;
+	private int segments = 0;
+
+	// The segment being visited
+	private CharSequence text;
+	private int segmentEnd;
+	private char fieldSeparator;
+	private char componentSeparator;
+
+	HL7ResponseAnalysis() {
+	}
+
+	void setMasked(String masked) {
+		this.masked = masked;
+	}
+
+	@Override
+	public void visitSegment(CharSequence text, int start, int end, char fieldSeparator, char componentSeparator) {
+		this.text = text;
+		this.segmentEnd = end;
+		this.fieldSeparator = fieldSeparator;
+		this.componentSeparator = componentSeparator;
+		boolean first = segments++ == 0;
+		if (!isName(start, end)) {
+			return;
+		}
+		if (first && regionMatches(start, "MSH")) {
+			msh = new HL7Index(CharBuffer.wrap(text, start, end));
+			return;
+		}
+		if (regionMatches(start, "MSA")) {
+			if (ackCode == null) {
+				ackCode = component(field(start, MSA_ACKNOWLEDGMENT_CODE));
+			}
+		} else if (regionMatches(start, "QAK")) {
+			if (queryStatus == null) {
+				queryStatus = component(field(start, QAK_QUERY_RESPONSE_STATUS));
+			}
+		} else if (regionMatches(start, "ERR")) {
+			addError(start);
+		} else if (regionMatches(start, "PID")) {
+			addPatientName(start, PID_PATIENT_NAME);
+		} else if (regionMatches(start, "QPD")) {
+			addPatientName(start, QPD_PATIENT_NAME);
+		}
+	}
+
+	private void addError(int start) {
+		HL7ErrorInfo error = new HL7ErrorInfo();
+		error.setLocation(emptyToNull(value(field(start, ERR_LOCATION))));
+		int code = field(start, ERR_CODE);
+		error.setCode(component(code));
+		error.setCodingSystem(component(nextComponent(nextComponent(code))));
+		error.setSeverity(component(field(start, ERR_SEVERITY)));
+		errors.add(error);
+	}
+
+	private void addPatientName(int start, int field) {
+		if (patientNames.isEmpty()) {
+			patientNames = new ArrayList<>();
+		}
+		int pos = field(start, field);
+		patientNames.add(hasContentFrom(pos) ? value(pos) : null);
+	}
+
+	/**
+	 * @return true if MSA-1 rejects the message, or any ERR segment reports an error.
+	 */
+	public boolean isError() {
+		if (ackCode != null && (ackCode.startsWith("AR") || ackCode.startsWith("CR"))) {
+			return true;
+		}
+		for (HL7ErrorInfo error: errors) {
+			if (error.isError()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return	The errors reported in ERR segments, in message order.
+	 */
+	public List<HL7ErrorInfo> getErrors() {
+		return Collections.unmodifiableList(errors);
+	}
+
+	/**
+	 * Get the patient names reported in PID-5 and QPD-4 of segments after the first, in message order.
+	 * A name is null if the segment has no content at or after the name field.  These are used to
+	 * recognize test patients, and are never logged.
+	 * @return	The patient names
+	 */
+	public List<String> getPatientNames() {
+		return Collections.unmodifiableList(patientNames);
+	}
+
+	/**
+	 * @return	An index of the MSH segment of the unmasked message, or null if the message does not start with one
+	 */
+	public HL7Index getMsh() {
+		return msh;
+	}
+
+	/**
+	 * @return	An index of the MSH segment of the masked message, or null if the masked message does not start with one
+	 */
+	public HL7Index getMaskedMsh() {
+		HL7Index index = HL7Index.ofFirstSegment(masked);
+		return index != null && index.isSegment(0, "MSH") ? index : null;
+	}
+
+	private boolean isName(int start, int end) {
+		return end - start >= 3 && (start + 3 == end || text.charAt(start + 3) == fieldSeparator);
+	}
+
+	private boolean regionMatches(int start, String name) {
+		return text.charAt(start) == name.charAt(0) && text.charAt(start + 1) == name.charAt(1) && text.charAt(start + 2) == name.charAt(2);
+	}
+
+	/**
+	 * @return The offset of the start of a field in the segment starting at start, or -1 if not present
+	 */
+	private int field(int start, int field) {
+		int pos = start;
+		for (int i = 0; i < field; i++) {
+			while (pos < segmentEnd && text.charAt(pos) != fieldSeparator) {
+				pos++;
+			}
+			if (pos >= segmentEnd) {
+				return -1;
+			}
+			pos++;
+		}
+		return pos;
+	}
+
+	private int fieldEnd(int pos) {
+		while (pos < segmentEnd && text.charAt(pos) != fieldSeparator) {
+			pos++;
+		}
+		return pos;
+	}
+
+	private boolean hasContentFrom(int pos) {
+		if (pos < 0) {
+			return false;
+		}
+		for (; pos < segmentEnd; pos++) {
+			if (text.charAt(pos) != fieldSeparator) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private String value(int pos) {
+		return pos < 0 ? null : text.subSequence(pos, fieldEnd(pos)).toString();
+	}
+
+	/**
+	 * @return The component starting at pos, or null if it is not present or empty
+	 */
+	private String component(int pos) {
+		if (pos < 0) {
+			return null;
+		}
+		int end = fieldEnd(pos);
+		int componentEnd = pos;
+		while (componentEnd < end && text.charAt(componentEnd) != componentSeparator) {
+			componentEnd++;
+		}
+		return componentEnd == pos ? null : text.subSequence(pos, componentEnd).toString();
+	}
+
+	/**
+	 * @return The offset of the component following the one at pos, or -1 if not present
+	 */
+	private int nextComponent(int pos) {
+		if (pos < 0) {
+			return -1;
+		}
+		int end = fieldEnd(pos);
+		while (pos < end && text.charAt(pos) != componentSeparator) {
+			pos++;
+		}
+		return pos < end ? pos + 1 : -1;
+	}
+
+	private static String emptyToNull(String value) {
+		return value == null || value.isEmpty() ? null : value;
+	}
+}
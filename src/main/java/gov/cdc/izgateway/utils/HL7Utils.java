@@ -3,12 +3,12 @@ package gov.cdc.izgateway.utils;
 import java.util.Collection;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.List;
-import java.io.IOException;
-import java.io.StringReader;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
 import org.apache.commons.lang3.StringUtils;
 
 import lombok.Getter;
@@ -19,14 +19,33 @@ import lombok.Getter;
  * logs without including any PHI.
  */
 public class HL7Utils {
+    /**
+     * The segments and fields retained by default.  Messages are masked with a plan compiled
+     * from this map, so after changing it, call {@link #defaultAllowedSegmentsChanged()}, or
+     * replace it with {@link #setDefaultAllowedSegments(Map)}.
+     */
     public static final Map<String, Collection<Integer>> DEFAULT_ALLOWED_SEGMENTS = new TreeMap<>();
     public static final String ETC = "...";
+    /** The plan compiled from DEFAULT_ALLOWED_SEGMENTS */
+    private static volatile HL7MaskingPlan defaultPlan;
+    /** Guards changes to DEFAULT_ALLOWED_SEGMENTS */
+    private static final ReentrantLock DEFAULT_LOCK = new ReentrantLock();
+    /** Builders larger than this aren't retained for reuse */
+    private static final int MAX_RETAINED_BUILDER = 64 * 1024;
+    /** The number of builders retained for reuse */
+    private static final int POOLED_BUILDERS = 64;
+    /*
+     * Builders are shared through a bounded pool rather than a ThreadLocal, since a request on a
+     * virtual thread would use its thread's builder only once.
+     */
+    private static final BlockingQueue<StringBuilder> BUILDERS = new ArrayBlockingQueue<>(POOLED_BUILDERS);
 
     static {
     	DEFAULT_ALLOWED_SEGMENTS.put("MSH", Arrays.asList(1, 2, 3, 4, 5, 6, 8, 9, 10, 11, 12, 21));
     	DEFAULT_ALLOWED_SEGMENTS.put("MSA", Arrays.asList(1, 2, 3));
     	DEFAULT_ALLOWED_SEGMENTS.put("QAK", Arrays.asList(1, 2, 3));
     	DEFAULT_ALLOWED_SEGMENTS.put("ERR", Arrays.asList(1, 2, -3, 4));
+    	defaultAllowedSegmentsChanged();
     }
 
 	private HL7Utils() {
@@ -49,53 +68,111 @@ public class HL7Utils {
 		if (StringUtils.isEmpty(message)) {
 			return message;
 		}
+		return protect(message, planFor(allowedSegments), etcSuffix);
+	}
 
-		if (StringUtils.isEmpty(etcSuffix)) {
-			etcSuffix = "";
-		} else {
-			etcSuffix += "\n";
-		}
-
-		String[] segments = message.split("\\s*[\\n\\r]+");
-		StringBuilder b = new StringBuilder();
-		for (String segment : segments) {
-			String segName = StringUtils.substringBefore(segment, "|");
-			Collection<Integer> allowedFields = allowedSegments.get(segName);
-			if (!"MSH".equals(segName) && allowedFields != null && !allowedFields.isEmpty()) {
-				allowedFields = adjustNonMSHAllowedValues(allowedFields);
-			}
-			if (allowedFields == null) {
-				if (!StringUtils.endsWith(b, etcSuffix)) {
-					b.append(etcSuffix);
-				}
-			} else if (allowedFields.isEmpty()) {
-				b.append(segment).append("\n");
-			} else {
-				b.append(stripSegment(segment, allowedFields)).append("\n");
-			}
+	/**
+	 * Given a map of allowed segments and fields, and an indexed message, remove all parts
+	 * that aren't explicitely allowed.
+	 *
+	 * @param index           The index of the message to protect.
+	 * @param allowedSegments A map of allowed segments to allowed fields. An empty
+	 *                        collection allows all fields.
+	 * @param etcSuffix       Suffix to insert to denote removed content.
+	 * @return The protected message.
+	 */
+	public static String protectHL7Message(HL7Index index, Map<String, Collection<Integer>> allowedSegments,
+			String etcSuffix) {
+		CharSequence message = index.getText();
+		if (message.length() == 0) {
+			return message.toString();
 		}
-		String result = b.toString();
-		return etcSuffix.equals(result) ? "" : result;
+		return protect(message, planFor(allowedSegments), etcSuffix);
 	}
 	
 	public static String protectHL7Message(String hl7Message) {
 		return HL7Utils.protectHL7Message(hl7Message, DEFAULT_ALLOWED_SEGMENTS, ETC);
 	}
 
+	public static String protectHL7Message(HL7Index index) {
+		return HL7Utils.protectHL7Message(index, DEFAULT_ALLOWED_SEGMENTS, ETC);
+	}
+
 	/**
-	 * Adjust field numbers for nonMSH segments in allowedFields.
-	 * 
-	 * @param allowedFields The collection to adjust
-	 * @return The adjusted collection.
+	 * Analyze an HL7 response, masking it with the default allowed segments and gathering
+	 * the acknowledgement, query status, errors and MSH segment in the same pass.
+	 *
+	 * @param message	The response message
+	 * @return	The analysis of the response, or null if message is null
 	 */
-	private static Collection<Integer> adjustNonMSHAllowedValues(Collection<Integer> allowedFields) {
-		List<Integer> values = new ArrayList<>();
-		for (int value : allowedFields) {
-			values.add(value < 0 ? value - 1 : (value + 1));
+	public static HL7ResponseAnalysis analyzeHL7Response(String message) {
+		if (message == null) {
+			return null;
+		}
+		HL7ResponseAnalysis analysis = new HL7ResponseAnalysis();
+		if (message.isEmpty()) {
+			analysis.setMasked(message);
+			return analysis;
+		}
+		StringBuilder b = acquireBuilder();
+		analysis.setMasked(defaultPlan.mask(message, ETC, b, analysis).toString());
+		releaseBuilder(b);
+		return analysis;
+	}
+
+	private static HL7MaskingPlan planFor(Map<String, Collection<Integer>> allowedSegments) {
+		return allowedSegments == DEFAULT_ALLOWED_SEGMENTS ? defaultPlan : HL7MaskingPlan.compile(allowedSegments);
+	}
+
+	/**
+	 * Replace the segments and fields retained by default.
+	 * @param allowedSegments	A map of allowed segments to allowed fields, as for {@link #protectHL7Message(String, Map, String)}
+	 */
+	public static void setDefaultAllowedSegments(Map<String, Collection<Integer>> allowedSegments) {
+		DEFAULT_LOCK.lock();
+		try {
+			DEFAULT_ALLOWED_SEGMENTS.clear();
+			DEFAULT_ALLOWED_SEGMENTS.putAll(allowedSegments);
+			defaultAllowedSegmentsChanged();
+		} finally {
+			DEFAULT_LOCK.unlock();
+		}
+	}
+
+	/**
+	 * Recompile the default plan after DEFAULT_ALLOWED_SEGMENTS has been changed.  Changes
+	 * to the map apply to messages masked after this is called.
+	 */
+	public static void defaultAllowedSegmentsChanged() {
+		DEFAULT_LOCK.lock();
+		try {
+			defaultPlan = HL7MaskingPlan.compile(DEFAULT_ALLOWED_SEGMENTS);
+		} finally {
+			DEFAULT_LOCK.unlock();
+		}
+	}
+
+	private static String protect(CharSequence message, HL7MaskingPlan plan, String etcSuffix) {
+		StringBuilder b = acquireBuilder();
+		String result = plan.mask(message, etcSuffix, b).toString();
+		releaseBuilder(b);
+		return result;
+	}
+
+	private static StringBuilder acquireBuilder() {
+		StringBuilder b = BUILDERS.poll();
+		if (b == null) {
+			return new StringBuilder(4096);
+		}
+		b.setLength(0);
+		return b;
+	}
+
+	private static void releaseBuilder(StringBuilder b) {
+		// Don't hold on to the buffer used for an unusually large message
+		if (b.capacity() <= MAX_RETAINED_BUILDER) {
+			BUILDERS.offer(b);
 		}
-		values.add(1);
-		allowedFields = values;
-		return allowedFields;
 	}
 
 	/**
@@ -109,6 +186,24 @@ public class HL7Utils {
 		return stripParts(segment, allowedFields, "|", HL7Utils::stripCWE);
 	}
 
+	/**
+	 * Strip an HL7 Segment of allowed fields using the given separators
+	 * 
+	 * @param segment       The segment to strip.
+	 * @param allowedFields The set of allowed fields.
+	 * @param fieldSeparator	The field separator
+	 * @param componentSeparator	The component separator
+	 * @return The stripped segment
+	 */
+	public static String stripSegment(String segment, Collection<Integer> allowedFields, char fieldSeparator, char componentSeparator) {
+		if (fieldSeparator == '|' && componentSeparator == '^') {
+			return stripSegment(segment, allowedFields);
+		}
+		String component = String.valueOf(componentSeparator);
+		return stripParts(segment, allowedFields, String.valueOf(fieldSeparator), 
+			cwe -> stripParts(cwe, Arrays.asList(1, 3, 4, 6), component, null));
+	}
+
 	/**
 	 * Strip uncontrolled text from an HL7 CWE type
 	 * 
@@ -139,7 +234,8 @@ public class HL7Utils {
 			return whole;
 		}
 		StringBuilder b = new StringBuilder();
-		String[] fields = whole.split("\\" + delim);
+		// An escaped punctuation character uses the String.split fast path
+		String[] fields = whole.split(Character.isLetterOrDigit(delim.charAt(0)) ? Pattern.quote(delim) : "\\" + delim);
 		int lastPart = 0;
 		for (int i = 0; i < fields.length; i++) {
 			if (stripper != null && allowedParts.contains(-(i + 1))) {
@@ -173,50 +269,56 @@ public class HL7Utils {
 		@Getter
 		private final String hl7Message;
 		@Getter
-		private final String msh;
-		private final String[] parts;
+		private final HL7Index index;
+
 		public HL7Message(final String hl7Message) {
-			this.hl7Message = hl7Message;
-			if (hl7Message == null) {
-				msh = null;
-				parts = new String[0];
-			} else {
-				int pos = StringUtils.indexOfAny(hl7Message, SEGMENT_SEPARATORS);
-				if (pos >= 0) {
-					// Grab the first field.
-					msh = hl7Message.substring(0, pos);
-					parts = msh.split("\\|");
-				} else {
-					msh = null;
-					parts = new String[0];
-				}
-			}
+			this(hl7Message == null ? null : new HL7Index(hl7Message));
+		}
+
+		/**
+		 * Create an HL7Message from an existing index of the message, so that the message is not split again.
+		 * @param index	The index of the message
+		 */
+		public HL7Message(final HL7Index index) {
+			this.index = index;
+			this.hl7Message = index == null ? null : index.getText().toString();
+		}
+
+		/**
+		 * @return	The first segment of the message
+		 */
+		public String getMsh() {
+			return index == null || index.getSegmentCount() == 0 ? null : index.getSegment(0).toString();
 		}
 		
+		/**
+		 * Get a field from the first segment.
+		 * @param index	The position of the field in the segment after splitting on the field separator,
+		 * where 0 is the segment name, and for MSH, 1 is MSH-2.
+		 * @return	The field, or null if not present
+		 */
 		public String getField(int index) {
-			if (index < 0) {
-				throw new IllegalArgumentException("Field number must be positive");
-			}
-			if (parts == null) {
+			int field = toFieldNumber(index);
+			if (field < 0) {
 				return null;
 			}
-			if (index >= parts.length) {
-				return null;
-			}
-			return parts[index];
+			return this.index.getField(0, field);
 		}
 		
 		public String getFirstSubFieldOf(int index) {
+			return StringUtils.substringBefore(getField(index), "~");
+		}
+
+		private int toFieldNumber(int index) {
 			if (index < 0) {
 				throw new IllegalArgumentException("Field number must be positive");
 			}
-			if (parts == null) {
-				return null;
+			if (this.index == null || this.index.getSegmentCount() == 0) {
+				return -1;
 			}
-			if (index >= parts.length) {
-				return null;
-			}
-			return StringUtils.substringBefore(parts[index], "~");
+			// The field separator in MSH-1 is not a delimited field.
+			int field = index > 0 && this.index.isHeader(0) ? index + 1 : index;
+			return this.index.hasContentFrom(0, field) ? field : -1;
 		}
 	}
 
@@ -249,18 +351,11 @@ public class HL7Utils {
 		if (message == null) {
 			return null;
 		}
-		StringReader r = new StringReader(message);
 		ParseState state = ParseState.CAN_START_SEGMENT;	// Can start segment delimiter
-		StringBuilder save = new StringBuilder();
-		StringBuilder b = new StringBuilder();
-		int cc;
-		try {
-			while ((cc = r.read()) != -1) {
-				char c = (char) cc;
-				state = transitionState(state, save, b, c);
-			}
-		} catch (IOException e) {
-			// Never happens
+		StringBuilder save = new StringBuilder(4);
+		StringBuilder b = new StringBuilder(message.length());
+		for (int i = 0; i < message.length(); i++) {
+			state = transitionState(state, save, b, message.charAt(i));
 		}
 		if (!save.isEmpty()) {
 			b.append(save);
@@ -297,17 +392,16 @@ public class HL7Utils {
 				}
 				return ParseState.WITHIN_SEGMENT;
 			} 
-			b.append(save.toString());
+			b.append(save);
 			save.setLength(0);
 			return ParseState.CAN_START_SEGMENT;
 		case END_SEGMENT_NAME: // waiting for |
 			save.append(c);
-			String seg = save.toString();
+			b.append(save);
+			boolean allowed = c == '|' && defaultPlan.isAllowed(save, 0, 3);
 			save.setLength(0);
-			b.append(seg);
 			if (c == '|') {
-				seg = seg.substring(0, 3);
-				if (HL7Utils.DEFAULT_ALLOWED_SEGMENTS.containsKey(seg)) {
+				if (allowed) {
 					// These segments don't contain PHI and so can be passed through.
 					return ParseState.CAN_START_SEGMENT;
 				}
@@ -2,16 +2,30 @@ package gov.cdc.izgateway.utils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 /**
  * Quick and dirty converter of POJOs to JSON Strings.
  */
 public class JsonUtils {
+	/**
+	 * The shared mapper.  An ObjectMapper is expensive to create and caches the serializers
+	 * it builds, so it is created once.  It is thread-safe, but must not be reconfigured.
+	 */
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final ObjectWriter WRITER = MAPPER.writer();
+
+	/**
+	 * @return The shared ObjectMapper, which must not be reconfigured.
+	 */
+	public static ObjectMapper getMapper() {
+		return MAPPER;
+	}
+
 	public static String toString(Object o) {
 	    // Create a json object from the data elements, and convert that to a string.
-	    ObjectMapper om = new ObjectMapper();
 	    try {
-	        return om.writeValueAsString(o);
+	        return WRITER.writeValueAsString(o);
 	    } catch (JsonProcessingException e) {
 	        return "Error converting " + o.getClass().getSimpleName() + " data to JSON: " + e.getMessage();
 	    }
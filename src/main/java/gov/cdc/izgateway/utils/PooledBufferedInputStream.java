@@ -0,0 +1,63 @@
+package gov.cdc.izgateway.utils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A BufferedInputStream whose buffer is drawn from a {@link BufferPool}.  The buffer
+ * is returned to the pool when the stream is closed or released, after which the
+ * stream can no longer be read.
+ *
+ * @author Audacious Inquiry
+ */
+public class PooledBufferedInputStream extends BufferedInputStream {
+	private final BufferPool pool;
+	private byte[] pooled;
+
+	/**
+	 * Create a buffered input stream using a buffer from the default pool.
+	 * @param in	The stream to buffer
+	 * @param size	The minimum buffer size
+	 */
+	public PooledBufferedInputStream(InputStream in, int size) {
+		this(in, size, BufferPool.getDefault());
+	}
+
+	/**
+	 * Create a buffered input stream using a buffer from the given pool.
+	 * @param in	The stream to buffer
+	 * @param size	The minimum buffer size
+	 * @param pool	The pool to draw the buffer from
+	 */
+	public PooledBufferedInputStream(InputStream in, int size, BufferPool pool) {
+		// Allocate a minimal buffer, and then replace it with one from the pool.
+		super(in, 1);
+		this.pool = pool;
+		this.pooled = pool.acquire(size);
+		buf = pooled;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * Return the buffer to the pool without closing the underlying stream.
+	 * The stream cannot be read after it is released.  Calling this more than
+	 * once has no effect.
+	 */
+	public synchronized void release() {
+		if (pooled != null) {
+			buf = null;
+			// If the buffer grew to honor a mark, the original was already replaced.
+			pool.release(pooled);
+			pooled = null;
+		}
+	}
+}
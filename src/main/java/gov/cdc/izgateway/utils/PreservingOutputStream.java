@@ -7,19 +7,37 @@ import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
- * This at present unused class is a FilterOutputStream that preserves the first N bytes of the output
- * for later reporting/diagnostics, et cetera.
+ * PreservingOutputStream is a FilterOutputStream that preserves the first N bytes of the output
+ * for later reporting/diagnostics, et cetera.  It is used to capture the bytes of SOAP messages as
+ * they are written to the wire so that they need not be serialized again for logging.
+ * 
+ * The preserving buffer is drawn from the {@link BufferPool}, and is returned to it when 
+ * the stream is closed or released.
  */
 public class PreservingOutputStream extends FilterOutputStream {
+	private final BufferPool pool;
 	byte[] buffer;
+	private final int limit;
 	String string = null;
 	int length = 0;
 	public PreservingOutputStream(OutputStream out, int bufferSize) {
+		this(out, bufferSize, BufferPool.getDefault());
+	}
+	
+	/**
+	 * Create a PreservingOutputStream drawing its buffer from the given pool.
+	 * @param out	The stream to write to
+	 * @param bufferSize	The number of bytes to preserve
+	 * @param pool	The pool to obtain the buffer from
+	 */
+	public PreservingOutputStream(OutputStream out, int bufferSize, BufferPool pool) {
 		super(out);
 		if (bufferSize < 1) {
 			throw new IllegalArgumentException("Buffer size mist be > 0");
 		}
-		buffer = new byte[bufferSize];
+		this.pool = pool;
+		this.limit = bufferSize;
+		buffer = pool.acquire(bufferSize);
 	}
 	
 	@Override
@@ -27,36 +45,62 @@ public class PreservingOutputStream extends FilterOutputStream {
 		if (remaining() > 0) {
 			buffer[length++] = (byte)b;
 		}
-		super.write(b);
+		out.write(b);
 		string = null;
 	}
 	
 	@Override
 	public void write(byte[] b, int off, int len) throws IOException {
 		if (remaining() > 0) {
-			int toCopy = Math.max(remaining(), len);
-			System.arraycopy(buffer, length, b, off, toCopy);
+			int toCopy = Math.min(remaining(), len);
+			System.arraycopy(b, off, buffer, length, toCopy);
 			length += toCopy;
 		}
-		super.write(b, off, len);
+		// Write directly to the underlying stream, FilterOutputStream would call write(int) for each byte
+		out.write(b, off, len);
 		string = null;
 	}
 	
+	/**
+	 * @return A copy of the bytes preserved from the start of the output.
+	 * @throws IllegalStateException if the stream has been released.
+	 */
 	public byte[] getBytes() {
-		if (length == buffer.length) { 
-			return buffer;
+		if (buffer == null) {
+			throw new IllegalStateException("Preserved bytes have been released");
 		}
 		return Arrays.copyOf(buffer, length);
 	}
 	
 	private int remaining() {
-		return buffer.length - length;
+		return buffer == null ? 0 : limit - length;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			release();
+		}
+	}
+	
+	/**
+	 * Return the preserving buffer to the pool without closing the underlying stream.
+	 * Output written after this is passed through but not preserved.  Calling this
+	 * more than once has no effect.
+	 */
+	public void release() {
+		if (buffer != null) {
+			pool.release(buffer);
+			buffer = null;
+		}
 	}
 	
 	@Override
 	public String toString() {
 		if (string == null) {
-			string = new String(getBytes(), StandardCharsets.UTF_8);
+			string = buffer == null ? "" : new String(buffer, 0, length, StandardCharsets.UTF_8);
 		}
 		return string;
 	}
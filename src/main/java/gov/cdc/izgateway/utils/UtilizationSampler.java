@@ -0,0 +1,265 @@
+package gov.cdc.izgateway.utils;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.ProtocolHandler;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * UtilizationSampler samples the utilization of this server at a fixed interval on a background
+ * thread, and keeps the most recent samples in a ring buffer.  Each {@link Sample} records CPU and
+ * heap use from {@link UtilizationService}, the heap still in use after the most recent garbage
+ * collection, the share of the interval spent in garbage collection, and the busy threads, queued
+ * requests and open connections of the Tomcat connector given to {@link #setConnector(ProtocolHandler)}.
+ *
+ * Listeners added with {@link #addListener(Consumer)} are called on the sampling thread with each
+ * new sample, so that policies such as {@link gov.cdc.izgateway.common.LoadShedder} can react to
+ * saturation without doing any work on request threads.
+ *
+ * @author Audacious Inquiry
+ */
+@Slf4j
+public class UtilizationSampler {
+	/** The default time in milliseconds between samples */
+	public static final long DEFAULT_INTERVAL = 1000;
+	/** The default number of samples kept */
+	public static final int DEFAULT_SIZE = 300;
+
+	private static final UtilizationSampler DEFAULT_SAMPLER = new UtilizationSampler(DEFAULT_SIZE);
+	private static final List<GarbageCollectorMXBean> GC_BEANS = ManagementFactory.getGarbageCollectorMXBeans();
+	private static final List<MemoryPoolMXBean> HEAP_POOLS = ManagementFactory.getMemoryPoolMXBeans().stream()
+		.filter(p -> p.getType() == MemoryType.HEAP && p.isCollectionUsageThresholdSupported()).toList();
+
+	/**
+	 * A sample of the utilization of this server.
+	 */
+	@Data
+	@AllArgsConstructor
+	@Schema(description="A sample of the utilization of this server")
+	public static class Sample {
+		@Schema(description="The time of the sample in milliseconds since the epoch")
+		private final long time;
+		@Schema(description="The CPU load of this process, from 0.0 to 1.0")
+		private final double processCpuLoad;
+		@Schema(description="The CPU load of the system, from 0.0 to 1.0")
+		private final double systemCpuLoad;
+		@Schema(description="The fraction of the maximum heap in use, from 0.0 to 1.0")
+		private final double heapUsed;
+		@Schema(description="The fraction of the maximum heap in use after the most recent garbage collection, from 0.0 to 1.0")
+		private final double heapAfterGc;
+		@Schema(description="The fraction of the time since the previous sample spent in garbage collection, from 0.0 to 1.0")
+		private final double gcTime;
+		@Schema(description="The number of connector threads processing requests")
+		private final int busyThreads;
+		@Schema(description="The maximum number of connector threads, or 0 if the connector does not use a pool")
+		private final int maxThreads;
+		@Schema(description="The number of requests waiting for a connector thread")
+		private final int queueDepth;
+		@Schema(description="The number of open connections")
+		private final long connections;
+		@Schema(description="The maximum number of open connections, or 0 if unknown")
+		private final long maxConnections;
+
+		/**
+		 * @return The fraction of connector threads that are busy, or 0 if the connector does not use a pool
+		 */
+		public double getThreadsUsed() {
+			return maxThreads <= 0 ? 0 : (double) busyThreads / maxThreads;
+		}
+
+		/**
+		 * @return The fraction of the maximum number of connections that are open, or 0 if the maximum is unknown
+		 */
+		public double getConnectionsUsed() {
+			return maxConnections <= 0 ? 0 : (double) connections / maxConnections;
+		}
+	}
+
+	private final CopyOnWriteArrayList<Consumer<Sample>> listeners = new CopyOnWriteArrayList<>();
+	private volatile ProtocolHandler connector;
+	private Sample[] ring;
+	private long count;
+	private long lastGcTime = getGcTime();
+	private long lastSampleTime = System.currentTimeMillis();
+	private ScheduledExecutorService timer;
+
+	/**
+	 * Create a sampler
+	 * @param size	The number of samples kept
+	 */
+	public UtilizationSampler(int size) {
+		ring = new Sample[Math.max(1, size)];
+	}
+
+	/**
+	 * @return The sampler of this server
+	 */
+	public static UtilizationSampler getDefault() {
+		return DEFAULT_SAMPLER;
+	}
+
+	/**
+	 * Set the connector whose threads, queue and connections are sampled.
+	 * @param connector	The protocol handler of the connector
+	 */
+	public void setConnector(ProtocolHandler connector) {
+		this.connector = connector;
+	}
+
+	/**
+	 * Add a listener called with each new sample on the sampling thread.
+	 * @param listener	The listener
+	 */
+	public void addListener(Consumer<Sample> listener) {
+		listeners.addIfAbsent(listener);
+	}
+
+	/**
+	 * Start sampling, replacing any samples kept.  If sampling has already started, it is restarted.
+	 * @param interval	The time in milliseconds between samples
+	 * @param size	The number of samples kept
+	 */
+	public synchronized void start(long interval, int size) {
+		stop();
+		ring = new Sample[Math.max(1, size)];
+		count = 0;
+		timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "Utilization-Sampler");
+			t.setDaemon(true);
+			return t;
+		});
+		timer.scheduleAtFixedRate(this::sampleSafely, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop sampling.  Samples already taken are kept.
+	 */
+	public synchronized void stop() {
+		if (timer != null) {
+			timer.shutdownNow();
+			timer = null;
+		}
+	}
+
+	private void sampleSafely() {
+		try {
+			sample();
+		} catch (Exception e) {
+			// An exception would cancel the schedule
+			log.error("Cannot sample utilization: {}", e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Take a sample, keep it, and pass it to the listeners.
+	 * @return	The sample
+	 */
+	public Sample sample() {
+		UtilizationService.Utilization u = UtilizationService.getUtilization();
+		MemoryUsage heap = u.getHeapMemoryUsage();
+		long maxHeap = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+		long now = System.currentTimeMillis();
+		long gcTime = getGcTime();
+
+		int busy = 0;
+		int max = 0;
+		int queued = 0;
+		long connections = 0;
+		long maxConnections = 0;
+		ProtocolHandler handler = connector;
+		if (handler != null) {
+			Executor executor = handler.getExecutor();
+			if (executor instanceof org.apache.tomcat.util.threads.ThreadPoolExecutor pool) {
+				busy = pool.getActiveCount();
+				max = pool.getMaximumPoolSize();
+				queued = pool.getQueue().size();
+			} else if (executor instanceof java.util.concurrent.ThreadPoolExecutor pool) {
+				busy = pool.getActiveCount();
+				max = pool.getMaximumPoolSize();
+				queued = pool.getQueue().size();
+			}
+			if (handler instanceof AbstractProtocol<?> protocol) {
+				connections = Math.max(0, protocol.getConnectionCount());
+				maxConnections = Math.max(0, protocol.getMaxConnections());
+			}
+		}
+
+		Sample s;
+		synchronized (this) {
+			long elapsed = now - lastSampleTime;
+			double gc = elapsed <= 0 ? 0 : Math.min(1.0, (double) (gcTime - lastGcTime) / elapsed);
+			lastSampleTime = now;
+			lastGcTime = gcTime;
+			s = new Sample(now, u.getProcessCpuLoad(), u.getSystemCpuLoad(),
+				maxHeap <= 0 ? 0 : (double) heap.getUsed() / maxHeap,
+				maxHeap <= 0 ? 0 : Math.min(1.0, (double) getHeapUsedAfterGc() / maxHeap), Math.max(0, gc),
+				busy, max, queued, connections, maxConnections);
+			ring[(int) (count++ % ring.length)] = s;
+		}
+		for (Consumer<Sample> listener: listeners) {
+			listener.accept(s);
+		}
+		return s;
+	}
+
+	/**
+	 * @return The most recent sample, or null if none has been taken
+	 */
+	public synchronized Sample getLatest() {
+		return count == 0 ? null : ring[(int) ((count - 1) % ring.length)];
+	}
+
+	/**
+	 * @return The samples kept, oldest first
+	 */
+	public synchronized List<Sample> getSamples() {
+		int n = (int) Math.min(count, ring.length);
+		List<Sample> samples = new ArrayList<>(n);
+		for (long i = count - n; i < count; i++) {
+			samples.add(ring[(int) (i % ring.length)]);
+		}
+		return samples;
+	}
+
+	/**
+	 * Unlike the heap in use, which includes garbage not yet collected and so routinely
+	 * nears the maximum before a collection, the heap in use after collection only grows
+	 * when live data does.
+	 * @return	The bytes in use in the heap pools after their most recent collection
+	 */
+	private static long getHeapUsedAfterGc() {
+		long total = 0;
+		for (MemoryPoolMXBean pool: HEAP_POOLS) {
+			MemoryUsage usage = pool.getCollectionUsage();
+			if (usage != null) {
+				total += Math.max(0, usage.getUsed());
+			}
+		}
+		return total;
+	}
+
+	private static long getGcTime() {
+		long total = 0;
+		for (GarbageCollectorMXBean gc: GC_BEANS) {
+			total += Math.max(0, gc.getCollectionTime());
+		}
+		return total;
+	}
+}
@@ -0,0 +1,80 @@
+package gov.cdc.izgateway.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads when the runtime supports them.  Virtual threads are a
+ * standard feature from Java 21, so they are reached through method handles that
+ * are resolved once, allowing this code to be built and run on earlier runtimes.
+ *
+ * @author Audacious Inquiry
+ */
+public class VirtualThreads {
+	private static final MethodHandle NEW_EXECUTOR = findExecutorFactory();
+	private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+
+	private VirtualThreads() {}
+
+	private static MethodHandle findExecutorFactory() {
+		try {
+			return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+				MethodType.methodType(ExecutorService.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	private static MethodHandle findIsVirtual() {
+		try {
+			return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the runtime supports virtual threads
+	 */
+	public static boolean isSupported() {
+		return NEW_EXECUTOR != null;
+	}
+
+	/**
+	 * Create an executor that starts a new virtual thread for each task.
+	 * @return	The executor
+	 * @throws UnsupportedOperationException if the runtime does not support virtual threads
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		if (NEW_EXECUTOR == null) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or later, this is Java " + Runtime.version().feature());
+		}
+		try {
+			return (ExecutorService) NEW_EXECUTOR.invokeExact();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) { // NOSONAR, invokeExact declares Throwable
+			throw new IllegalStateException("Cannot create virtual thread executor", e);
+		}
+	}
+
+	/**
+	 * @param t	The thread
+	 * @return true if the thread is a virtual thread
+	 */
+	public static boolean isVirtual(Thread t) {
+		if (IS_VIRTUAL == null) {
+			return false;
+		}
+		try {
+			return (boolean) IS_VIRTUAL.invokeExact(t);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) { // NOSONAR, invokeExact declares Throwable
+			return false;
+		}
+	}
+}
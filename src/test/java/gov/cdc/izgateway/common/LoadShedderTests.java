@@ -0,0 +1,83 @@
+package gov.cdc.izgateway.common;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import gov.cdc.izgateway.utils.UtilizationSampler.Sample;
+
+/**
+ * Unit tests for LoadShedder, verifying that low priority requests are shed only while
+ * saturated, and that recovery requires utilization to fall below the recovery ratio.
+ */
+class LoadShedderTests {
+
+	private static Sample cpu(double load) {
+		return new Sample(System.currentTimeMillis(), load, load, 0.5, 0.5, 0.0, 10, 200, 0, 10, 8192);
+	}
+
+	private static LoadShedder newShedder() {
+		LoadShedder shedder = new LoadShedder();
+		shedder.setEnabled(true);
+		shedder.setCpu(0.9);
+		shedder.setRecovery(0.8);
+		return shedder;
+	}
+
+	@Test
+	void testShedsOnlyLowPriorityWhenSaturated() {
+		LoadShedder shedder = newShedder();
+		shedder.accept(cpu(0.5));
+		assertFalse(shedder.shouldShed(true));
+
+		shedder.accept(cpu(0.95));
+		assertTrue(shedder.isShedding());
+		assertTrue(HealthService.getHealth().isDegraded());
+		assertTrue(shedder.shouldShed(true));
+		assertFalse(shedder.shouldShed(false));
+		assertEquals(1, shedder.getStats().getShed());
+		assertTrue(shedder.getReason().startsWith("CPU"), shedder.getReason());
+	}
+
+	@Test
+	void testRecoversBelowRecoveryRatio() {
+		LoadShedder shedder = newShedder();
+		shedder.accept(cpu(0.95));
+		assertTrue(shedder.isShedding());
+
+		// Below the threshold, but above the recovery ratio of it
+		shedder.accept(cpu(0.85));
+		assertTrue(shedder.isShedding());
+
+		shedder.accept(cpu(0.70));
+		assertFalse(shedder.isShedding());
+		assertFalse(HealthService.getHealth().isDegraded());
+		assertFalse(shedder.shouldShed(true));
+	}
+
+	@Test
+	void testDisabledNeverSheds() {
+		LoadShedder shedder = newShedder();
+		shedder.setEnabled(false);
+		shedder.accept(cpu(1.0));
+		assertFalse(shedder.shouldShed(true));
+	}
+
+	@Test
+	void testZeroThresholdIsIgnored() {
+		LoadShedder shedder = newShedder();
+		shedder.setThreads(0);
+		assertNull(shedder.getExceeded(new Sample(0, 0, 0, 0, 0, 0, 200, 200, 0, 0, 0), 1.0));
+		shedder.setThreads(0.9);
+		assertNotNull(shedder.getExceeded(new Sample(0, 0, 0, 0, 0, 0, 200, 200, 0, 0, 0), 1.0));
+	}
+
+	@Test
+	void testHeapUsesOccupancyAfterGc() {
+		LoadShedder shedder = newShedder();
+		shedder.setHeap(0.9);
+		// A nearly full heap that is mostly garbage is not saturated
+		assertNull(shedder.getExceeded(new Sample(0, 0, 0, 0.99, 0.5, 0, 0, 0, 0, 0, 0), 1.0));
+		assertNotNull(shedder.getExceeded(new Sample(0, 0, 0, 0.99, 0.95, 0, 0, 0, 0, 0, 0), 1.0));
+	}
+}
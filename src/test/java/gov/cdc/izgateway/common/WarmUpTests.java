@@ -0,0 +1,67 @@
+package gov.cdc.izgateway.common;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import gov.cdc.izgateway.logging.event.Health;
+
+/**
+ * Unit tests for WarmUp, and for the deferral of marking the server healthy while it runs.
+ */
+class WarmUpTests {
+	/** The server's health before each test, which tests of HealthService must restore */
+	private Health saved;
+
+	@BeforeEach
+	void saveHealth() {
+		saved = HealthService.getHealth();
+	}
+
+	@AfterEach
+	void restoreHealth() {
+		HealthService.restore(saved);
+	}
+
+	@Test
+	void testStopsWhenStable() {
+		// Any step taking time is within a tolerance of 1000 times its previous timing
+		WarmUp.Result result = new WarmUp(10_000, 1, 1000.0, 2).addStep("sleep", () -> Thread.sleep(1)).run();
+		assertTrue(result.isStable());
+		assertEquals(3, result.getRounds());
+		assertTrue(result.getBefore().containsKey("sleep"));
+		assertTrue(result.getAfter().containsKey("sleep"));
+	}
+
+	@Test
+	void testStopsAtMaxDuration() {
+		// A tolerance of 0 is never stable for a step whose timing varies
+		WarmUp.Result result = new WarmUp(50, 1, 0.0, 100).addStep("sleep", () -> Thread.sleep(5)).run();
+		assertFalse(result.isStable());
+		assertTrue(result.getDuration() >= 50);
+	}
+
+	@Test
+	void testFailingStepIsSkipped() {
+		WarmUp.Result result = new WarmUp(10_000, 1, 1000.0, 1)
+			.addStep("fails", () -> { throw new IllegalStateException("Missing provider"); })
+			.addStep("sleep", () -> Thread.sleep(1))
+			.run();
+		assertFalse(result.getAfter().containsKey("fails"));
+		assertTrue(result.getAfter().containsKey("sleep"));
+	}
+
+	@Test
+	void testHealthyIsDeferredUntilWarmUpEnds() {
+		HealthService.setHealthy(false, "Starting");
+		HealthService.startWarmUp();
+		HealthService.setHealthy(true, "Started");
+		assertFalse(HealthService.getHealth().isHealthy());
+		HealthService.endWarmUp("done");
+		assertFalse(HealthService.isWarmingUp());
+		assertTrue(HealthService.getHealth().isHealthy());
+		assertTrue(HealthService.getHealth().getLastChangeReason().contains("warm-up: done"));
+	}
+}
@@ -0,0 +1,44 @@
+package gov.cdc.izgateway.logging;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.tomcat.util.http.MimeHeaders;
+import org.junit.jupiter.api.Test;
+
+class HttpHeaderViewTests {
+	private static HttpHeaderView create() {
+		MimeHeaders headers = new MimeHeaders();
+		headers.addValue("Content-Type").setString("application/soap+xml");
+		headers.addValue("X-Forwarded-For").setString("10.0.0.1");
+		headers.addValue("x-forwarded-for").setString("10.0.0.2");
+		headers.addValue("Accept").setString("*/*");
+		return new HttpHeaderView(headers);
+	}
+
+	@Test
+	void testLookup() {
+		HttpHeaderView view = create();
+		assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), view.get("X-FORWARDED-FOR"));
+		assertEquals("application/soap+xml", view.getFirst("content-type"));
+		assertTrue(view.containsKey("accept"));
+		assertNull(view.get("Authorization"));
+		assertFalse(view.containsKey("Authorization"));
+		assertThrows(UnsupportedOperationException.class, () -> view.put("Accept", List.of("text/xml")));
+	}
+
+	@Test
+	void testIteration() {
+		HttpHeaderView view = create();
+		// Names are grouped case-insensitively under their first spelling, in name order
+		assertEquals(Arrays.asList("Accept", "Content-Type", "X-Forwarded-For"), List.copyOf(view.keySet()));
+		assertEquals(3, view.size());
+
+		Map<String, List<String>> copy = HttpHeaderView.copyOf(view);
+		assertNotSame(view, copy);
+		assertEquals(view, copy);
+	}
+}
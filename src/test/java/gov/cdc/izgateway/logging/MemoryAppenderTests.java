@@ -0,0 +1,126 @@
+package gov.cdc.izgateway.logging;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import gov.cdc.izgateway.logging.event.EventId;
+
+class MemoryAppenderTests {
+	private static MemoryAppender create(int capacity) {
+		MemoryAppender appender = new MemoryAppender();
+		appender.setCapacity(capacity);
+		appender.start();
+		return appender;
+	}
+
+	private static ILoggingEvent event(String eventId, Level level, String logger, String message) {
+		LoggingEvent event = new LoggingEvent();
+		event.setLevel(level);
+		event.setLoggerName(logger);
+		event.setMessage(message);
+		event.setMDCPropertyMap(eventId == null ? Collections.emptyMap() : Collections.singletonMap(EventId.EVENTID_KEY, eventId));
+		return event;
+	}
+
+	private static List<String> messages(List<ILoggingEvent> events) {
+		return events.stream().map(ILoggingEvent::getFormattedMessage).toList();
+	}
+
+	@Test
+	void testQuery() {
+		MemoryAppender appender = create(16);
+		for (int i = 0; i < 40; i++) {
+			appender.doAppend(event("e" + (i % 4), i % 10 == 0 ? Level.ERROR : Level.INFO, "logger" + (i % 2), "message " + i));
+		}
+		// Only the most recent 16 events are kept
+		assertEquals(16, appender.getSize());
+		assertEquals("message 24", appender.getLoggedEvents().get(0).getFormattedMessage());
+
+		MemoryAppender.Query query = new MemoryAppender.Query();
+		query.setEventId("e1");
+		MemoryAppender.Page page = appender.query(query);
+		assertEquals(4, page.getMatched());
+		assertEquals(List.of("message 37", "message 33", "message 29", "message 25"), messages(page.getEvents()));
+
+		query.setOffset(1);
+		query.setLimit(2);
+		assertEquals(List.of("message 33", "message 29"), messages(appender.query(query).getEvents()));
+
+		query = new MemoryAppender.Query();
+		query.setLevel(Level.ERROR);
+		assertEquals(List.of("message 30"), messages(appender.query(query).getEvents()));
+
+		query = new MemoryAppender.Query();
+		query.setLogger("logger1");
+		query.setText("message 3");
+		assertEquals(List.of("message 39", "message 37", "message 35", "message 33", "message 31"), messages(appender.query(query).getEvents()));
+
+		appender.reset();
+		assertEquals(0, appender.getSize());
+		assertEquals(0, appender.query(new MemoryAppender.Query()).getMatched());
+	}
+
+	@Test
+	void testConcurrentAppendAndQuery() throws Exception {
+		MemoryAppender appender = create(1024);
+		int threads = 8;
+		int events = 20_000;
+		AtomicBoolean done = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+		try {
+			// Queries during appending must only return events matching the query
+			Future<Integer> reader = executor.submit(() -> {
+				int mismatches = 0;
+				MemoryAppender.Query query = new MemoryAppender.Query();
+				query.setEventId("thread3");
+				query.setLimit(MemoryAppender.MAX_LIMIT);
+				while (!done.get()) {
+					for (ILoggingEvent e: appender.query(query).getEvents()) {
+						if (!"thread3".equals(e.getMDCPropertyMap().get(EventId.EVENTID_KEY))) {
+							mismatches++;
+						}
+					}
+				}
+				return mismatches;
+			});
+			List<Future<?>> writers = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				String eventId = "thread" + t;
+				writers.add(executor.submit(() -> {
+					for (int i = 0; i < events; i++) {
+						appender.doAppend(event(eventId, Level.INFO, "logger", eventId + " " + i));
+					}
+				}));
+			}
+			for (Future<?> writer: writers) {
+				writer.get();
+			}
+			done.set(true);
+			assertEquals(0, reader.get().intValue());
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1024, appender.getSize());
+		assertEquals(1024, appender.getLoggedEvents().size());
+		// Every event kept is found through its index
+		int matched = 0;
+		for (int t = 0; t < threads; t++) {
+			MemoryAppender.Query query = new MemoryAppender.Query();
+			query.setEventId("thread" + t);
+			matched += appender.query(query).getMatched();
+		}
+		assertEquals(1024, matched);
+	}
+}
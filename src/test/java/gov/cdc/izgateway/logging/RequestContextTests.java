@@ -0,0 +1,55 @@
+package gov.cdc.izgateway.logging;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+class RequestContextTests {
+	@Test
+	void testPropagation() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			// Give the worker thread a context of its own, which must be restored after each task
+			executor.submit(() -> {
+				RequestContext.getRoles().add("worker");
+				MDC.put("eventId", "worker");
+			}).get();
+
+			Map<String, List<String>> headers = Collections.singletonMap("X-Test", List.of("value"));
+			RequestContext.setHttpHeaders(headers);
+			RequestContext.getRoles().add("request");
+			MDC.put("eventId", "request");
+
+			Object[] seen = RequestContext.supplyAsync(() -> new Object[] {
+				RequestContext.getHttpHeaders(), RequestContext.getRoles().contains("request"), MDC.get("eventId")
+			}, executor).get(10, TimeUnit.SECONDS);
+			assertSame(headers, seen[0]);
+			assertEquals(Boolean.TRUE, seen[1]);
+			assertEquals("request", seen[2]);
+
+			// Work done on the request's behalf is visible to the request
+			RequestContext.wrap(executor).execute(RequestContext::disableTransactionDataLogging);
+			Object[] restored = executor.submit(() -> new Object[] {
+				RequestContext.getHttpHeaders(), RequestContext.getRoles().contains("worker"), MDC.get("eventId")
+			}).get(10, TimeUnit.SECONDS);
+			assertTrue(RequestContext.isLoggingDisabled());
+			assertNull(restored[0]);
+			assertEquals(Boolean.TRUE, restored[1]);
+			assertEquals("worker", restored[2]);
+		} finally {
+			executor.shutdown();
+			RequestContext.clear();
+			MDC.clear();
+		}
+		assertNull(RequestContext.getHttpHeaders());
+		assertFalse(RequestContext.isLoggingDisabled());
+	}
+}
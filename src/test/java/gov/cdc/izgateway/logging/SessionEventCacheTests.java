@@ -0,0 +1,100 @@
+package gov.cdc.izgateway.logging;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import gov.cdc.izgateway.logging.event.EventCreator.Event;
+
+class SessionEventCacheTests {
+	private final AtomicInteger ids = new AtomicInteger();
+
+	private String nextId() {
+		return Integer.toString(ids.incrementAndGet());
+	}
+
+	@Test
+	void testReferenceCounting() {
+		SessionEventCache cache = new SessionEventCache(60_000, 0, this::nextId);
+		String id = cache.create("session", 0);
+		// A resumed session reuses the event
+		assertEquals(id, cache.create("session", 1));
+		assertEquals(id, cache.take("session", 2).getId());
+		assertEquals(1, cache.size());
+		assertEquals(id, cache.take("session", 3).getId());
+		assertEquals(0, cache.size());
+		assertNull(cache.take("session", 4));
+
+		SessionEventCache.Stats stats = cache.getStats();
+		assertEquals(1, stats.getCreated());
+		assertEquals(1, stats.getReused());
+		assertEquals(2, stats.getMatched());
+		assertEquals(1, stats.getMissed());
+		assertEquals(1, stats.getReleased());
+	}
+
+	@Test
+	void testExpiry() {
+		long now = System.currentTimeMillis();
+		SessionEventCache cache = new SessionEventCache(1000, 500, this::nextId);
+		cache.create("old", now);
+		cache.create("new", now + 900);
+		// Resuming a session resets its age
+		cache.create("resumed", now);
+		cache.create("resumed", now + 600);
+		// Sweeps do not run more often than the interval
+		cache.take("none", now + 1100);
+		assertEquals(3, cache.size());
+		cache.take("none", now + 1500);
+		assertEquals(2, cache.size());
+		assertNull(cache.take("old", now + 1500));
+		assertEquals(1, cache.getStats().getExpired());
+	}
+
+	@Test
+	void testConcurrentUse() throws Exception {
+		// Threads repeatedly create and take events on a small set of shared sessions.  Every take
+		// follows a create on the same thread, so every take must find an event, and none may remain.
+		SessionEventCache cache = new SessionEventCache(60_000, 0, this::nextId);
+		int threads = 8;
+		int iterations = 50_000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Integer>> results = new ArrayList<>();
+			for (int i = 0; i < threads; i++) {
+				results.add(executor.submit(() -> {
+					int lost = 0;
+					for (int j = 0; j < iterations; j++) {
+						String session = "session" + ThreadLocalRandom.current().nextInt(16);
+						String id = cache.create(session);
+						Event event = cache.take(session);
+						if (event == null || !id.equals(event.getId())) {
+							lost++;
+						}
+					}
+					return lost;
+				}));
+			}
+			for (Future<Integer> result: results) {
+				assertEquals(0, result.get().intValue());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		SessionEventCache.Stats stats = cache.getStats();
+		assertEquals(0, cache.size());
+		assertEquals((long) threads * iterations, stats.getMatched());
+		assertEquals(0, stats.getMissed());
+		assertEquals((long) threads * iterations, stats.getCreated() + stats.getReused());
+		assertEquals(stats.getCreated(), stats.getReleased());
+		assertEquals(0, stats.getExpired());
+	}
+}
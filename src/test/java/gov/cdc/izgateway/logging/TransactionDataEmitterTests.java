@@ -0,0 +1,119 @@
+package gov.cdc.izgateway.logging;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import gov.cdc.izgateway.configuration.AppProperties;
+import gov.cdc.izgateway.logging.TransactionDataEmitter.OverflowPolicy;
+import gov.cdc.izgateway.logging.event.TransactionData;
+
+class TransactionDataEmitterTests {
+	private final List<String> written = new CopyOnWriteArrayList<>();
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@BeforeAll
+	static void setup() {
+		// TransactionData needs to know if the server is in production mode
+		new AppProperties();
+	}
+
+	/** A writer that records the eventId and MDC value, and waits until released */
+	private void write(TransactionData t) {
+		try {
+			release.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		written.add(t.getEventId() + ":" + MDC.get("key"));
+	}
+
+	@Test
+	void testDrainOnShutdown() {
+		TransactionDataEmitter emitter = new TransactionDataEmitter(100, 10, OverflowPolicy.BLOCK, 1000, this::write);
+		for (int i = 0; i < 50; i++) {
+			MDC.put("key", "value" + i);
+			emitter.emit(new TransactionData("event" + i));
+		}
+		MDC.clear();
+		assertTrue(written.isEmpty());
+		release.countDown();
+		assertTrue(emitter.shutdown(10000));
+		assertEquals(50, written.size());
+		// Records are written in order, with the MDC of the request
+		for (int i = 0; i < 50; i++) {
+			assertEquals("event" + i + ":value" + i, written.get(i));
+		}
+		assertEquals(50, emitter.getStats().getWritten());
+
+		// After shutdown, records are written on the calling thread
+		emitter.emit(new TransactionData("after"));
+		assertEquals("after:null", written.get(50));
+		// Shutdown may be repeated
+		assertTrue(emitter.shutdown(0));
+	}
+
+	@Test
+	void testDropPolicy() {
+		TransactionDataEmitter emitter = new TransactionDataEmitter(4, 10, OverflowPolicy.DROP, 1000, this::write);
+		for (int i = 0; i < 20; i++) {
+			emitter.emit(new TransactionData("event" + i));
+		}
+		TransactionDataEmitter.Stats stats = emitter.getStats();
+		// The writer holds at most one batch, and the queue at most its capacity
+		assertTrue(stats.getDropped() >= 20 - 4 - 10, "Dropped " + stats.getDropped());
+		assertEquals(4, stats.getCapacity());
+		assertTrue(stats.getMaxQueueDepth() <= 4);
+		release.countDown();
+		assertTrue(emitter.shutdown(10000));
+		assertEquals(20, emitter.getStats().getWritten() + emitter.getStats().getDropped());
+	}
+
+	@Test
+	void testBlockPolicy() {
+		TransactionDataEmitter emitter = new TransactionDataEmitter(2, 1, OverflowPolicy.BLOCK, 10, t -> {
+			if (Thread.currentThread().getName().startsWith("TransactionData-Writer")) {
+				write(t);
+			} else {
+				written.add(t.getEventId() + ":overflow");
+			}
+		});
+		for (int i = 0; i < 10; i++) {
+			emitter.emit(new TransactionData("event" + i));
+		}
+		// Records that did not fit were written on this thread after waiting
+		TransactionDataEmitter.Stats stats = emitter.getStats();
+		assertTrue(stats.getOverflowed() >= 10 - 2 - 1, "Overflowed " + stats.getOverflowed());
+		assertEquals(0, stats.getDropped());
+		release.countDown();
+		assertTrue(emitter.shutdown(10000));
+		assertEquals(10, written.size());
+		assertEquals(10, emitter.getStats().getWritten());
+	}
+
+	@Test
+	void testDestinationWithoutRequestContext() {
+		List<String> seen = new CopyOnWriteArrayList<>();
+		TransactionDataEmitter emitter = new TransactionDataEmitter(10, 10, OverflowPolicy.BLOCK, 1000,
+			t -> seen.add(TransactionDataEmitter.getWritingDestinationId() + ":" + (RequestContext.getContext() == null)));
+		TransactionData t = new TransactionData("event");
+		t.getDestination().setId("dest1");
+		RequestContext.setTransactionData(t);
+		try {
+			emitter.emit(t);
+		} finally {
+			RequestContext.clear();
+		}
+		assertTrue(emitter.shutdown(10000));
+		// The destination is carried to the writer, but the request's context is not
+		assertEquals(List.of("dest1:true"), seen);
+		assertNull(TransactionDataEmitter.getWritingDestinationId());
+	}
+}
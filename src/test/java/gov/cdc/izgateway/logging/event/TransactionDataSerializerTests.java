@@ -0,0 +1,133 @@
+package gov.cdc.izgateway.logging.event;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+
+import gov.cdc.izgateway.configuration.AppProperties;
+import gov.cdc.izgateway.logging.info.CompressionInfo;
+import gov.cdc.izgateway.logging.info.HL7ErrorInfo;
+import gov.cdc.izgateway.logging.info.MessageInfo;
+import gov.cdc.izgateway.logging.info.MessageInfo.Direction;
+import gov.cdc.izgateway.logging.info.MessageInfo.EndpointType;
+import gov.cdc.izgateway.utils.JsonUtils;
+
+class TransactionDataSerializerTests {
+	/** A mapper that ignores @JsonSerialize, and so uses Jackson's bean serializer */
+	private static final ObjectMapper BEAN_MAPPER = new ObjectMapper();
+
+	@BeforeAll
+	static void setup() {
+		// TransactionData needs to know if the server is in production mode
+		new AppProperties();
+		BEAN_MAPPER.setAnnotationIntrospector(new JacksonAnnotationIntrospector() {
+			private static final long serialVersionUID = 1L;
+			@Override
+			public Object findSerializer(Annotated a) {
+				return null;
+			}
+		});
+	}
+
+	static class ExtendedTransactionData extends TransactionData {
+		public String getExtension() {
+			return "extended";
+		}
+	}
+
+	private static TransactionData populate(TransactionData t) {
+		t.setMessageId("e8d1a8ff-3b6c-4a54-9a1d-0d54b1f1f0a1");
+		t.setThreadId(42);
+		t.setMessageType(TransactionData.MessageType.SUBMIT_SINGLE_MESSAGE);
+		t.setRequestEchoBack("MSH|^~\\&|TEST|TEST||||||QBP^Q11^QBP_Q11|12345|P|2.5.1\r");
+		t.setResponseEchoBack("MSH|^~\\&|IIS|IIS|TEST|TEST|||RSP^K11^RSP_K11|67890|P|2.5.1\rMSA|AE|12345\r");
+		t.setRequestPayloadType(TransactionData.RequestPayloadType.QBP);
+		t.setResponseAckCode("AE");
+		HL7ErrorInfo error = new HL7ErrorInfo();
+		error.setSeverity("E");
+		error.setCode("101");
+		error.setCodingSystem("HL70357");
+		error.setLocation("PID^1^7");
+		t.setHl7Errors(Arrays.asList(error));
+		t.setHasHL7Error(true);
+		t.setHl7Error("MSA|AE|12345");
+		t.setElapsedTimeIIS(120);
+		t.setReadTimeIIS(80);
+		t.setReadTimeoutIIS(30000);
+		t.setElapsedTimeTotal(200);
+		t.setRetries(1);
+		t.setServiceType("Gateway");
+		t.setHasProcessError(true);
+		t.setProcessErrorSummary("Summary");
+		t.setProcessErrorDetail("Detail");
+		t.setFaultName("HubClientFault");
+		t.setFaultCode("10");
+		t.setAdditionalIDs(new String[] { "a", null });
+		t.getSource().setCommonName("source.example.com");
+		t.getSource().setOrganization("Source Org");
+		t.getSource().setValidFrom(new Date(1_600_000_000_000L));
+		t.getSource().setId("md");
+		t.getSource().setType("IIS Share");
+		t.getDestination().setId("dev");
+		t.getDestination().setUrl("/dev/IISService");
+		t.getDestination().setConnected(true);
+		t.getDestination().setValidTo(new Date(1_900_000_000_000L));
+		MessageInfo request = new MessageInfo(null, EndpointType.SERVER, Direction.INBOUND, true);
+		Map<String, List<String>> headers = new LinkedHashMap<>();
+		headers.put("Content-Type", Arrays.asList("application/soap+xml"));
+		request.setHttpHeaders(headers);
+		t.getServerRequest().setWs_request_message(request);
+		t.getClientResponse().setWs_response_message(new MessageInfo(null, EndpointType.CLIENT, Direction.INBOUND, false));
+		CompressionInfo compression = new CompressionInfo(EndpointType.CLIENT, Direction.INBOUND, "gzip");
+		compression.setCompressedBytes(100);
+		compression.setUncompressedBytes(400);
+		t.getCompression().add(compression);
+		t.setResponse(Collections.singletonMap("key", "value"));
+		return t;
+	}
+
+	@Test
+	void testMatchesBeanSerializer() throws IOException {
+		Date date = new Date(1_700_000_000_123L);
+		TransactionData empty = new TransactionData(date, "1.1");
+		assertEquals(BEAN_MAPPER.writeValueAsString(empty), JsonUtils.getMapper().writeValueAsString(empty));
+
+		TransactionData t = populate(new TransactionData(date, "1.2"));
+		assertEquals(BEAN_MAPPER.writeValueAsString(t), JsonUtils.getMapper().writeValueAsString(t));
+	}
+
+	@Test
+	void testGoldenFile() throws IOException {
+		// The schema of the transactionData log record, which log dashboards depend on
+		TransactionData t = populate(new TransactionData(new Date(1_700_000_000_123L), "1.2"));
+		String actual = JsonUtils.getMapper().writeValueAsString(t)
+			.replace(t.getTransactionId(), "00000000-0000-0000-0000-000000000000");
+		try (InputStream is = getClass().getResourceAsStream("transactionData.json")) {
+			ObjectMapper mapper = JsonUtils.getMapper();
+			assertEquals(mapper.writeValueAsString(mapper.readTree(is)), actual);
+		}
+	}
+
+	@Test
+	void testSubclass() throws IOException {
+		// Subclasses are written with all of their properties
+		TransactionData t = populate(new ExtendedTransactionData());
+		String json = JsonUtils.getMapper().writeValueAsString(t);
+		assertTrue(json.contains("\"extension\":\"extended\""));
+		assertEquals(BEAN_MAPPER.writeValueAsString(t), json);
+	}
+}
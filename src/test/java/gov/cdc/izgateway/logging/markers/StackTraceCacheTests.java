@@ -0,0 +1,75 @@
+package gov.cdc.izgateway.logging.markers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+class StackTraceCacheTests {
+	private static Exception create(String message) {
+		return new IOException(message, new IllegalStateException("cause " + message));
+	}
+
+	@Test
+	void testFingerprint() {
+		Exception[] same = new Exception[2];
+		for (int i = 0; i < same.length; i++) {
+			// Created at the same place with different messages
+			same[i] = create("message " + i);
+		}
+		assertEquals(StackTraceCache.fingerprint(same[0]), StackTraceCache.fingerprint(same[1]));
+		assertEquals(16, StackTraceCache.fingerprint(same[0]).length());
+		// Created at a different place
+		assertNotEquals(StackTraceCache.fingerprint(same[0]), StackTraceCache.fingerprint(create("message 0")));
+		// With a different cause
+		Exception other = new IOException("message 0", new IllegalArgumentException());
+		other.setStackTrace(same[0].getStackTrace());
+		assertNotEquals(StackTraceCache.fingerprint(same[0]), StackTraceCache.fingerprint(other));
+	}
+
+	@Test
+	void testWindow() {
+		StackTraceCache cache = new StackTraceCache(10, 1000);
+		Exception e = create("message");
+		StackTraceCache.Occurrence first = cache.record(e, 0);
+		assertNotNull(first.getStackTrace());
+		assertTrue(first.getStackTrace().contains("cause message"));
+		assertEquals(1, first.getRepeat());
+
+		for (int i = 2; i <= 5; i++) {
+			StackTraceCache.Occurrence repeat = cache.record(e, 999);
+			assertNull(repeat.getStackTrace());
+			assertEquals(i, repeat.getRepeat());
+			assertEquals(first.getFingerprint(), repeat.getFingerprint());
+		}
+
+		// The next window renders the trace again, and reports what was not rendered
+		StackTraceCache.Occurrence next = cache.record(e, 1000);
+		assertNotNull(next.getStackTrace());
+		assertEquals(1, next.getRepeat());
+		assertEquals(4, next.getSuppressed());
+	}
+
+	@Test
+	void testCapacity() {
+		StackTraceCache cache = new StackTraceCache(2, 1000);
+		Exception a = create("a");
+		Exception b = create("b");
+		Exception c = create("c");
+		cache.record(a, 0);
+		cache.record(b, 0);
+		assertNull(cache.record(a, 0).getStackTrace());
+		// Adding c forgets b, the least recently seen
+		cache.record(c, 0);
+		assertNotNull(cache.record(b, 0).getStackTrace());
+	}
+
+	@Test
+	void testNoWindow() {
+		StackTraceCache cache = new StackTraceCache(10, 0);
+		Exception e = create("message");
+		assertNotNull(cache.record(e, 0).getStackTrace());
+		assertNotNull(cache.record(e, 0).getStackTrace());
+	}
+}
@@ -0,0 +1,99 @@
+package gov.cdc.izgateway.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for AdaptiveTimeouts, verifying that timeouts are learned from the percentile of
+ * recent response times, clamped to their bounds, grow after timeouts, and survive a save and load.
+ */
+class AdaptiveTimeoutsTests {
+	private static final int DEFAULT_TIMEOUT = 60_000;
+
+	private static AdaptiveTimeouts newTimeouts() {
+		AdaptiveTimeouts timeouts = new AdaptiveTimeouts();
+		timeouts.setEnabled(true);
+		timeouts.setPercentile(90);
+		timeouts.setMultiplier(2);
+		timeouts.setMinTimeout(1_000);
+		timeouts.setMaxTimeout(30_000);
+		timeouts.setMinSamples(10);
+		timeouts.setWindow(100);
+		return timeouts;
+	}
+
+	@Test
+	void testDefaultUntilMinSamples() {
+		AdaptiveTimeouts timeouts = newTimeouts();
+		for (int i = 1; i < 10; i++) {
+			timeouts.record("fast", 1_000, false);
+		}
+		assertEquals(DEFAULT_TIMEOUT, timeouts.getReadTimeout("fast", DEFAULT_TIMEOUT));
+		timeouts.record("fast", 1_000, false);
+		assertEquals(2_000, timeouts.getReadTimeout("fast", DEFAULT_TIMEOUT));
+	}
+
+	@Test
+	void testLearnsPercentileWithinBounds() {
+		AdaptiveTimeouts timeouts = newTimeouts();
+		for (int i = 1; i <= 100; i++) {
+			timeouts.record("slow", i * 100L, false);
+			timeouts.record("fast", 10, false);
+			timeouts.record("hung", 20_000, false);
+		}
+		// 90th percentile of 100 ms to 10 s is 9 s
+		assertEquals(18_000, timeouts.getReadTimeout("slow", DEFAULT_TIMEOUT));
+		assertEquals(1_000, timeouts.getReadTimeout("fast", DEFAULT_TIMEOUT));
+		assertEquals(30_000, timeouts.getReadTimeout("hung", DEFAULT_TIMEOUT));
+		assertEquals(9_000, timeouts.getStats().get("slow").getPercentile());
+	}
+
+	@Test
+	void testTimeoutsGrowTimeout() {
+		AdaptiveTimeouts timeouts = newTimeouts();
+		for (int i = 0; i < 10; i++) {
+			timeouts.record("dest", 1_000, false);
+		}
+		assertEquals(2_000, timeouts.getReadTimeout("dest", DEFAULT_TIMEOUT));
+		// Once more than one in ten reads time out, the 90th percentile is the timeout
+		timeouts.record("dest", 2_000, true);
+		assertEquals(2_000, timeouts.getReadTimeout("dest", DEFAULT_TIMEOUT));
+		timeouts.record("dest", 2_000, true);
+		assertEquals(4_000, timeouts.getReadTimeout("dest", DEFAULT_TIMEOUT));
+		assertEquals(2, timeouts.getStats().get("dest").getTimeouts());
+	}
+
+	@Test
+	void testDisabledUsesDefault() {
+		AdaptiveTimeouts timeouts = newTimeouts();
+		for (int i = 0; i < 10; i++) {
+			timeouts.record("dest", 1_000, false);
+		}
+		timeouts.setEnabled(false);
+		assertEquals(DEFAULT_TIMEOUT, timeouts.getReadTimeout("dest", DEFAULT_TIMEOUT));
+		assertEquals(2_000, timeouts.getStats().get("dest").getLearned());
+	}
+
+	@Test
+	void testSaveAndLoad() throws IOException {
+		AdaptiveTimeouts timeouts = newTimeouts();
+		for (int i = 0; i < 10; i++) {
+			timeouts.record("dest", 5_000, false);
+		}
+		File file = Files.createTempFile("timeouts", ".json").toFile();
+		try {
+			timeouts.save(file);
+			AdaptiveTimeouts restarted = newTimeouts();
+			restarted.load(file);
+			assertEquals(10_000, restarted.getReadTimeout("dest", DEFAULT_TIMEOUT));
+			assertEquals(DEFAULT_TIMEOUT, restarted.getReadTimeout("other", DEFAULT_TIMEOUT));
+		} finally {
+			Files.deleteIfExists(file.toPath());
+		}
+	}
+}
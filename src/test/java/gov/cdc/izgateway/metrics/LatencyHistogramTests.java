@@ -0,0 +1,51 @@
+package gov.cdc.izgateway.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTests {
+	@Test
+	void testBuckets() {
+		// Every value is in a bucket whose highest value is no less than it, and within about 3% of it
+		long previous = -1;
+		for (long value = 0; value < LatencyHistogram.MAX_VALUE; value = value < 1000 ? value + 1 : value + value / 7) {
+			int index = LatencyHistogram.indexOf(value);
+			long highest = LatencyHistogram.highestValueOf(index);
+			assertTrue(highest >= value, "highest value of bucket for " + value);
+			assertTrue(highest - value <= Math.max(1, value / 32), "precision of bucket for " + value);
+			assertTrue(index >= previous);
+			previous = index;
+		}
+		assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE)));
+	}
+
+	@Test
+	void testPercentiles() {
+		LatencyHistogram h = new LatencyHistogram();
+		for (long i = 1; i <= 10_000; i++) {
+			h.record(i * 100);
+		}
+		LatencyHistogram.Snapshot s = h.getSnapshot();
+		assertEquals(10_000, s.getCount());
+		assertEquals(100, s.getMin());
+		assertEquals(1_000_000, s.getMax());
+		assertEquals(500_050, s.getMean(), 0.001);
+		assertEquals(500_000, s.getP50(), 500_000 / 32.0);
+		assertEquals(990_000, s.getP99(), 990_000 / 32.0);
+		assertEquals(999_000, s.getP999(), 999_000 / 32.0);
+		assertTrue(s.getP999() <= s.getMax());
+	}
+
+	@Test
+	void testPrometheus() {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.recordDestination("dev", 250_000, true);
+		registry.recordDestination("dev", 1_500_000, false);
+		String text = registry.toPrometheus();
+		assertTrue(text.contains("izgw_latency_seconds_count{dimension=\"destination\",name=\"dev\"} 2\n"));
+		assertTrue(text.contains("izgw_latency_seconds_sum{dimension=\"destination\",name=\"dev\"} 1.750000\n"));
+		assertTrue(text.contains("izgw_requests_total{dimension=\"destination\",name=\"dev\"} 2\n"));
+		assertTrue(text.contains("izgw_failures_total{dimension=\"destination\",name=\"dev\"} 1\n"));
+	}
+}
@@ -0,0 +1,81 @@
+package gov.cdc.izgateway.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class MeterTests {
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	private static final double EPSILON = 1e-9;
+
+	@Test
+	void testNoRateUntilFirstTick() {
+		Meter m = new Meter(0);
+		for (int i = 0; i < 10; i++) {
+			m.mark(SECOND);
+		}
+		Meter.Snapshot s = m.getSnapshot(4 * SECOND);
+		assertEquals(10, s.getCount());
+		assertEquals(0, s.getRate1m(), EPSILON);
+		assertEquals(0, s.getRate15m(), EPSILON);
+	}
+
+	@Test
+	void testFirstTickSetsRate() {
+		Meter m = new Meter(0);
+		for (int i = 0; i < 60; i++) {
+			m.mark(SECOND);
+		}
+		// 60 events in the first five second interval
+		Meter.Snapshot s = m.getSnapshot(5 * SECOND);
+		assertEquals(60, s.getCount());
+		assertEquals(12, s.getRate1m(), EPSILON);
+		assertEquals(12, s.getRate5m(), EPSILON);
+		assertEquals(12, s.getRate15m(), EPSILON);
+	}
+
+	@Test
+	void testRatesDecayWhenIdle() {
+		Meter m = new Meter(0);
+		for (int i = 0; i < 60; i++) {
+			m.mark(SECOND);
+		}
+		m.getSnapshot(5 * SECOND);
+		// After a minute without events, each average has decayed by e^(-1 / its window in minutes)
+		Meter.Snapshot s = m.getSnapshot(65 * SECOND);
+		assertEquals(60, s.getCount());
+		assertEquals(12 * Math.exp(-1), s.getRate1m(), EPSILON);
+		assertEquals(12 * Math.exp(-1.0 / 5), s.getRate5m(), EPSILON);
+		assertEquals(12 * Math.exp(-1.0 / 15), s.getRate15m(), EPSILON);
+	}
+
+	@Test
+	void testEventsBeforeIdleIntervalsAreNotSpread() {
+		Meter m = new Meter(0);
+		for (int i = 0; i < 60; i++) {
+			m.mark(SECOND);
+		}
+		// The events are attributed to the first interval, and the following eleven were idle
+		Meter.Snapshot s = m.getSnapshot(60 * SECOND);
+		double alpha = 1 - Math.exp(-5.0 / 60);
+		assertEquals(12 * Math.pow(1 - alpha, 11), s.getRate1m(), EPSILON);
+	}
+
+	@Test
+	void testSteadyRate() {
+		Meter m = new Meter(0);
+		long now = 0;
+		// Two events per second for fifteen minutes
+		for (int i = 0; i < 1800; i++) {
+			m.mark(now);
+			now += SECOND / 2;
+		}
+		Meter.Snapshot s = m.getSnapshot(now);
+		assertEquals(1800, s.getCount());
+		assertEquals(2, s.getRate1m(), EPSILON);
+		assertEquals(2, s.getRate5m(), EPSILON);
+		assertEquals(2, s.getRate15m(), EPSILON);
+	}
+}
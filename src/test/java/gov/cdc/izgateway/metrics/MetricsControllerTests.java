@@ -0,0 +1,53 @@
+package gov.cdc.izgateway.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import gov.cdc.izgateway.common.ResourceNotFoundException;
+import gov.cdc.izgateway.security.AccessControlRegistry;
+
+class MetricsControllerTests {
+	/** A sample line of the Prometheus text exposition format */
+	private static final Pattern SAMPLE = Pattern.compile("[a-z_]+\\{(\\w+=\"(\\\\.|[^\"\\\\])*\",?)+\\} -?\\d+\\.?\\d*");
+
+	@Test
+	void testPrometheusDisabled() {
+		MetricsController controller = new MetricsController(mock(AccessControlRegistry.class), false);
+		assertThrows(ResourceNotFoundException.class, controller::getPrometheusMetrics);
+	}
+
+	@Test
+	void testPrometheusFormat() {
+		MetricsRegistry.getDefault().recordDestination("prometheus-test", 250_000, true);
+		MetricsRegistry.getDefault().recordDestination("prometheus-test", 750_000, false);
+		MetricsRegistry.getDefault().recordDestination("quote\"test", 1000, true);
+		MetricsController controller = new MetricsController(mock(AccessControlRegistry.class), true);
+		String text = controller.getPrometheusMetrics();
+		assertTrue(text.endsWith("\n"));
+
+		List<String> lines = Arrays.asList(text.split("\n"));
+		for (String line: lines) {
+			assertTrue(line.startsWith("# HELP ") || line.startsWith("# TYPE ") || SAMPLE.matcher(line).matches(), line);
+		}
+		assertTrue(lines.contains("# TYPE izgw_latency_seconds summary"));
+		assertTrue(lines.contains("# TYPE izgw_requests_total counter"));
+		assertTrue(lines.contains("# TYPE izgw_failures_rate gauge"));
+
+		String labels = "{dimension=\"destination\",name=\"prometheus-test\"";
+		assertTrue(lines.contains("izgw_latency_seconds_count" + labels + "} 2"));
+		// Latencies are reported in seconds
+		assertTrue(lines.contains("izgw_latency_seconds_sum" + labels + "} 1.000000"));
+		assertTrue(lines.contains("izgw_requests_total" + labels + "} 2"));
+		assertTrue(lines.contains("izgw_failures_total" + labels + "} 1"));
+		assertTrue(lines.stream().anyMatch(l -> l.startsWith("izgw_latency_seconds" + labels + ",quantile=\"0.99\"} ")));
+		assertTrue(lines.stream().anyMatch(l -> l.startsWith("izgw_requests_rate" + labels + ",window=\"15m\"} ")));
+		// Label values are escaped
+		assertTrue(lines.contains("izgw_requests_total{dimension=\"destination\",name=\"quote\\\"test\"} 1"));
+	}
+}
@@ -0,0 +1,55 @@
+package gov.cdc.izgateway.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class MetricsRegistryTests {
+	@Test
+	void testSnapshot() {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.recordDestination("dest1", 1000, true);
+		registry.recordDestination("dest1", 3000, false);
+		registry.recordDestination("dest2", 500, true);
+		registry.recordDestination(null, 100, true);
+
+		Map<String, Map<String, Timer.Snapshot>> snapshot = registry.getSnapshot();
+		assertEquals(Set.of(MetricsRegistry.DESTINATION), snapshot.keySet());
+		Map<String, Timer.Snapshot> destinations = snapshot.get(MetricsRegistry.DESTINATION);
+		// Names are in alphabetical order
+		assertEquals("[dest1, dest2, unknown]", destinations.keySet().toString());
+
+		Timer.Snapshot dest1 = destinations.get("dest1");
+		assertEquals(2, dest1.getRequests().getCount());
+		assertEquals(1, dest1.getFailures().getCount());
+		assertEquals(2, dest1.getLatency().getCount());
+		assertEquals(4000, dest1.getLatency().getSum());
+		assertEquals(1000, dest1.getLatency().getMin());
+		assertEquals(0, destinations.get("dest2").getFailures().getCount());
+	}
+
+	@Test
+	void testSnapshotIsDetached() {
+		MetricsRegistry registry = new MetricsRegistry();
+		registry.recordDestination("dest", 1000, true);
+		Map<String, Map<String, Timer.Snapshot>> snapshot = registry.getSnapshot();
+		registry.recordDestination("dest", 1000, true);
+		registry.recordDestination("other", 1000, true);
+		assertEquals(1, snapshot.get(MetricsRegistry.DESTINATION).size());
+		assertEquals(1, snapshot.get(MetricsRegistry.DESTINATION).get("dest").getRequests().getCount());
+	}
+
+	@Test
+	void testNamesAreBounded() {
+		MetricsRegistry registry = new MetricsRegistry();
+		for (int i = 0; i < MetricsRegistry.MAX_NAMES + 10; i++) {
+			registry.recordDestination("dest" + i, 1000, true);
+		}
+		Map<String, Timer.Snapshot> destinations = registry.getSnapshot().get(MetricsRegistry.DESTINATION);
+		assertEquals(MetricsRegistry.MAX_NAMES + 1, destinations.size());
+		assertEquals(10, destinations.get(MetricsRegistry.OTHER).getRequests().getCount());
+	}
+}
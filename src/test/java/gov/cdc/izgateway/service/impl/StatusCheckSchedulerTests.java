@@ -0,0 +1,105 @@
+package gov.cdc.izgateway.service.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import gov.cdc.izgateway.model.IDestination;
+
+/**
+ * Unit tests for StatusCheckScheduler, verifying that checks run in parallel up to the
+ * concurrency limit, and that a hung check times out without delaying the others.
+ */
+class StatusCheckSchedulerTests {
+
+	private static List<IDestination> destinations(String ... ids) {
+		List<IDestination> l = new ArrayList<>();
+		for (String id: ids) {
+			IDestination dest = mock(IDestination.class);
+			when(dest.getDestinationId()).thenReturn(id);
+			l.add(dest);
+		}
+		return l;
+	}
+
+	@Test
+	void testChecksRunInParallelWithinConcurrency() throws Exception {
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		StatusCheckScheduler.Check check = dest -> {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			Thread.sleep(100);
+			running.decrementAndGet();
+		};
+		try (StatusCheckScheduler scheduler = new StatusCheckScheduler(check, 4, 0, 5000)) {
+			StatusCheckScheduler.Sweep sweep = scheduler.sweep(destinations("a", "b", "c", "d", "e", "f", "g", "h"))
+				.get(5, TimeUnit.SECONDS);
+			assertEquals(8, sweep.getSucceeded());
+			assertEquals(4, maxRunning.get());
+			// Two waves of four, rather than eight checks one after another
+			assertTrue(sweep.getDuration() < 700, "Sweep took " + sweep.getDuration() + " ms");
+			assertSame(sweep, scheduler.getLastSweep());
+		}
+	}
+
+	@Test
+	void testHungCheckTimesOut() throws Exception {
+		List<String> timedOut = new ArrayList<>();
+		StatusCheckScheduler.Check check = new StatusCheckScheduler.Check() {
+			@Override
+			public void check(IDestination dest) throws Exception {
+				switch (dest.getDestinationId()) {
+				case "hung" -> Thread.sleep(10_000);
+				case "down" -> throw new IllegalStateException("down");
+				default -> { /* ok */ }
+				}
+			}
+			@Override
+			public void timedOut(IDestination dest, long deadline) {
+				timedOut.add(dest.getDestinationId());
+			}
+		};
+		try (StatusCheckScheduler scheduler = new StatusCheckScheduler(check, 2, 50, 200)) {
+			StatusCheckScheduler.Sweep sweep = scheduler.sweep(destinations("hung", "down", "up"))
+				.get(5, TimeUnit.SECONDS);
+			assertEquals(1, sweep.getSucceeded());
+			assertEquals(1, sweep.getFailed());
+			assertEquals(1, sweep.getTimedOut());
+			assertEquals(List.of("hung"), timedOut);
+			assertEquals("hung", sweep.getSlowestDestination());
+			assertTrue(sweep.getDuration() < 2000, "Sweep took " + sweep.getDuration() + " ms");
+		}
+	}
+
+	@Test
+	void testQueuedCheckIsNotTimedOut() throws Exception {
+		// With one worker, the second check waits for the hung one, but its deadline starts only when it runs
+		List<String> timedOut = new ArrayList<>();
+		StatusCheckScheduler.Check check = new StatusCheckScheduler.Check() {
+			@Override
+			public void check(IDestination dest) throws Exception {
+				if ("hung".equals(dest.getDestinationId())) {
+					Thread.sleep(10_000);
+				}
+			}
+			@Override
+			public void timedOut(IDestination dest, long deadline) {
+				timedOut.add(dest.getDestinationId());
+			}
+		};
+		try (StatusCheckScheduler scheduler = new StatusCheckScheduler(check, 1, 0, 200)) {
+			StatusCheckScheduler.Sweep sweep = scheduler.sweep(destinations("hung", "up"))
+				.get(5, TimeUnit.SECONDS);
+			assertEquals(1, sweep.getSucceeded());
+			assertEquals(1, sweep.getTimedOut());
+			assertEquals(List.of("hung"), timedOut);
+		}
+	}
+}
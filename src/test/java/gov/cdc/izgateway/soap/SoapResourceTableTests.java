@@ -0,0 +1,98 @@
+package gov.cdc.izgateway.soap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+class SoapResourceTableTests {
+	private static final String WSDL = "/soap/wsdl/cdc-iis-hub.wsdl";
+	private static final String XSD = "/soap/schema/cdc-iis.xsd";
+	private static final SoapResourceTable TABLE =
+		SoapResourceTable.load(Arrays.asList(WSDL, XSD, "/soap/wsdl/missing.wsdl"), "izgw.example.com");
+
+	@Test
+	void testLoad() {
+		SoapResourceTable.Resource wsdl = TABLE.get(WSDL);
+		assertNotNull(wsdl);
+		assertNotNull(TABLE.get(XSD));
+		assertNull(TABLE.get("/soap/wsdl/missing.wsdl"));
+
+		String content = new String(wsdl.getIdentity(), StandardCharsets.UTF_8);
+		assertFalse(content.contains(SoapResourceTable.SERVER_NAME_PLACEHOLDER));
+		assertTrue(content.contains("https://izgw.example.com/IISHubService"));
+		assertNotEquals(wsdl.getEtag(), wsdl.getGzipEtag());
+		assertNotEquals(wsdl.getEtag(), TABLE.get(XSD).getEtag());
+		assertEquals(0, wsdl.getLastModified() % 1000);
+	}
+
+	@Test
+	void testGzipResponse() throws IOException {
+		SoapResourceTable.Resource wsdl = TABLE.get(WSDL);
+		ResponseEntity<byte[]> response = wsdl.toResponse(null, "deflate, gzip;q=0.8");
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(wsdl.getGzipEtag(), response.getHeaders().getETag());
+		assertTrue(response.getHeaders().getVary().contains(HttpHeaders.ACCEPT_ENCODING));
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getBody()))) {
+			assertArrayEquals(wsdl.getIdentity(), in.readAllBytes());
+		}
+	}
+
+	@Test
+	void testIdentityResponse() {
+		SoapResourceTable.Resource wsdl = TABLE.get(WSDL);
+		ResponseEntity<byte[]> response = wsdl.toResponse(null, null);
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(wsdl.getEtag(), response.getHeaders().getETag());
+		assertEquals(wsdl.getLastModified(), response.getHeaders().getLastModified());
+		assertSame(wsdl.getIdentity(), response.getBody());
+	}
+
+	@Test
+	void testNotModified() {
+		SoapResourceTable.Resource wsdl = TABLE.get(WSDL);
+		ResponseEntity<byte[]> response = wsdl.toResponse("\"other\", " + wsdl.getEtag(), "gzip");
+		assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+		assertNull(response.getBody());
+		assertEquals(wsdl.getGzipEtag(), response.getHeaders().getETag());
+		assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+
+		assertTrue(wsdl.matches("W/" + wsdl.getGzipEtag()));
+		assertTrue(wsdl.matches("*"));
+		assertFalse(wsdl.matches(TABLE.get(XSD).getEtag()));
+		assertFalse(wsdl.matches(null));
+		assertEquals(HttpStatus.OK, wsdl.toResponse("\"other\"", null).getStatusCode());
+	}
+
+	@ParameterizedTest
+	@CsvSource(delimiter = '|', value = {
+		"gzip|true",
+		"GZIP|true",
+		"deflate, gzip|true",
+		"x-gzip|true",
+		"gzip;q=0|false",
+		"gzip; q=0.0|false",
+		"gzip;q=0.5|true",
+		"*|true",
+		"*;q=0|false",
+		"*, gzip;q=0|false",
+		"deflate|false",
+		"identity|false",
+		"''|false",
+	})
+	void testAcceptsGzip(String acceptEncoding, boolean expected) {
+		assertEquals(expected, SoapResourceTable.acceptsGzip(acceptEncoding));
+	}
+}
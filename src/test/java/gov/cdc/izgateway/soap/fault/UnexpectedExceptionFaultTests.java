@@ -0,0 +1,36 @@
+package gov.cdc.izgateway.soap.fault;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import gov.cdc.izgateway.model.RetryStrategy;
+
+class UnexpectedExceptionFaultTests {
+	@Test
+	void testServerBusyIsRetryable() {
+		UnexpectedExceptionFault f = UnexpectedExceptionFault.serverBusy("cpu 0.95 >= 0.90");
+		assertTrue(f.isRetryable());
+		assertEquals(RetryStrategy.NORMAL, f.getRetry());
+		assertEquals("Server Busy", f.getSummary());
+		assertEquals("cpu 0.95 >= 0.90", f.getDiagnostics());
+	}
+
+	@Test
+	void testOtherFaultsAreNotRetryable() {
+		// Every other way these faults are created uses a strategy that is not retried
+		assertFalse(new UnexpectedExceptionFault(new IllegalStateException("oops"), null).isRetryable());
+		assertFalse(new UnexpectedExceptionFault("Message", new IllegalStateException("oops"), null).isRetryable());
+		assertFalse(UnexpectedExceptionFault.devAction().isRetryable());
+		assertFalse(new UnexpectedExceptionFault("Schema Error", "Detail", null, RetryStrategy.CORRECT_MESSAGE, null).isRetryable());
+		assertFalse(new UnexpectedExceptionFault("Syntax Error", null, new IllegalStateException("oops"), null, null).isRetryable());
+	}
+
+	@Test
+	void testRetryFollowsStrategy() {
+		for (RetryStrategy retry: RetryStrategy.values()) {
+			UnexpectedExceptionFault f = new UnexpectedExceptionFault("Summary", "Detail", null, retry, null);
+			assertEquals(retry.isRetryable(), f.isRetryable(), retry.name());
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package gov.cdc.izgateway.soap.load;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import gov.cdc.izgateway.configuration.AppProperties;
+import gov.cdc.izgateway.configuration.ClientConfiguration;
+import gov.cdc.izgateway.configuration.SenderConfig;
+import gov.cdc.izgateway.configuration.ServerConfiguration;
+import gov.cdc.izgateway.logging.RequestContext;
+import gov.cdc.izgateway.logging.event.TransactionData;
+import gov.cdc.izgateway.metrics.LatencyHistogram;
+import gov.cdc.izgateway.model.IDestination;
+import gov.cdc.izgateway.model.IEndpointStatus;
+import gov.cdc.izgateway.security.ClientTlsSupport;
+import gov.cdc.izgateway.service.impl.EndpointStatusService;
+import gov.cdc.izgateway.soap.fault.Fault;
+import gov.cdc.izgateway.soap.message.SubmitSingleMessageRequest;
+import gov.cdc.izgateway.soap.net.MessageSender;
+import gov.cdc.izgateway.utils.BenchmarkSupport;
+import gov.cdc.izgateway.utils.SystemUtils;
+
+/**
+ * Measures end to end throughput and latency of sending messages through {@link MessageSender}
+ * to a {@link MockIisServer}, all on localhost.  Requests are sent with the concurrency, latency
+ * and test case mix of a {@link LoadProfile} read from load.* system properties, and the report
+ * gives throughput, latency percentiles, the rate of each outcome, retries, and the bytes
+ * allocated by the sending thread per request.
+ *
+ * @author Audacious Inquiry
+ */
+@Tag(BenchmarkSupport.TAG)
+class LoadBenchmark {
+	/** The outcome of requests that got a response */
+	public static final String OK = "OK";
+	private static final String DEST_ID = "loadtest";
+	private static final String MESSAGE =
+		"MSH|^~\\&|LOADTEST|LOADTEST|TEST|%s|20240101120000-0500||VXU^V04^VXU_V04|%d|P|2.5.1|||ER|AL\r"
+		+ "PID|1||12345^^^LOADTEST^MR||TEST^IZG^^^^^L||20200101|F\r"
+		+ "RXA|0|1|20240101|20240101|08^HepB^CVX|0.5|mL^mL^UCUM||00^New^NIP001\r";
+	private static final com.sun.management.ThreadMXBean THREADS =
+		(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/**
+	 * The measurements of a run.
+	 */
+	public static class Result {
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+		private final LongAdder retries = new LongAdder();
+		private final LongAdder allocated = new LongAdder();
+		private long elapsedNanos;
+
+		/** @return The latencies of requests in microseconds */
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		/** @return The number of requests by outcome, OK or the fault name and code */
+		public Map<String, Long> getOutcomes() {
+			Map<String, Long> m = new TreeMap<>();
+			outcomes.forEach((k, v) -> m.put(k, v.sum()));
+			return m;
+		}
+
+		/** @return The number of retries */
+		public long getRetries() {
+			return retries.sum();
+		}
+
+		/** @return The bytes allocated by the sending threads, or 0 if not measurable */
+		public long getAllocated() {
+			return allocated.sum();
+		}
+
+		/** @return The requests completed per second */
+		public double getThroughput() {
+			return elapsedNanos == 0 ? 0 : latency.getCount() * 1e9 / elapsedNanos;
+		}
+
+		/**
+		 * @return The report of this run
+		 */
+		public String report() {
+			StringWriter w = new StringWriter();
+			PrintWriter out = new PrintWriter(w);
+			LatencyHistogram.Snapshot s = latency.getSnapshot();
+			long count = s.getCount();
+			out.printf("Requests: %d in %.1f s, %.1f requests/s%n", count, elapsedNanos / 1e9, getThroughput());
+			out.printf("Latency ms: mean %.1f p50 %.1f p90 %.1f p95 %.1f p99 %.1f p99.9 %.1f max %.1f%n",
+				s.getMean() / 1000, s.getP50() / 1000.0, s.getP90() / 1000.0, s.getP95() / 1000.0,
+				s.getP99() / 1000.0, s.getP999() / 1000.0, s.getMax() / 1000.0);
+			getOutcomes().forEach((k, v) -> out.printf("  %-50s %8d %6.2f%%%n", k, v, count == 0 ? 0 : v * 100.0 / count));
+			out.printf("Retries: %d%n", getRetries());
+			out.printf("Allocated: %.1f KB/request on the sending thread%n", count == 0 ? 0 : getAllocated() / 1024.0 / count);
+			out.flush();
+			return w.toString();
+		}
+	}
+
+	private LoadProfile profile;
+	private MessageSender sender;
+	private IDestination destination;
+	private final AtomicInteger messageId = new AtomicInteger();
+
+	@Test
+	void measureLoad() throws Exception {
+		profile = LoadProfile.fromSystemProperties();
+		AppProperties app = new AppProperties();
+		try (MockIisServer iis = new MockIisServer(0, profile)) {
+			iis.start();
+			sender = createSender(profile, app);
+			destination = createDestination(iis.getDestinationUri());
+			run(profile.getWarmup());
+			Result result = run(profile.getRequests());
+			BenchmarkSupport.report(getClass(), "Profile: %s%n%s", profile, result.report());
+			assertEquals(profile.getRequests(), result.getLatency().getCount());
+		} finally {
+			app.getScheduler().shutdownNow();
+		}
+	}
+
+	/**
+	 * Send requests with the concurrency of the profile
+	 * @param requests	The number of requests to send
+	 * @return	The measurements
+	 * @throws Exception	If a sending thread failed
+	 */
+	private Result run(int requests) throws Exception {
+		Result result = new Result();
+		AtomicInteger remaining = new AtomicInteger(requests);
+		ExecutorService executor = Executors.newFixedThreadPool(profile.getConcurrency());
+		long start = System.nanoTime();
+		try {
+			List<Future<?>> workers = new ArrayList<>();
+			for (int i = 0; i < profile.getConcurrency(); i++) {
+				workers.add(executor.submit(() -> {
+					while (remaining.getAndDecrement() > 0) {
+						send(result);
+					}
+				}));
+			}
+			for (Future<?> worker: workers) {
+				worker.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		result.elapsedNanos = System.nanoTime() - start;
+		return result;
+	}
+
+	private void send(Result result) {
+		String testCase = profile.nextCase(ThreadLocalRandom.current());
+		String msh6 = LoadProfile.ECHO.equals(testCase) ? LoadProfile.ECHO_CASE : testCase;
+		SubmitSingleMessageRequest request = new SubmitSingleMessageRequest(String.format(MESSAGE, msh6, messageId.incrementAndGet()));
+		TransactionData tData = RequestContext.init();
+		long allocated = allocatedBytes();
+		long started = System.nanoTime();
+		String outcome = OK;
+		try {
+			sender.sendSubmitSingleMessage(destination, request);
+		} catch (Fault f) {
+			outcome = f.getFaultName() + (f.getCode() == null ? "" : " " + f.getCode());
+		} catch (RuntimeException e) {
+			outcome = e.getClass().getSimpleName();
+		} finally {
+			result.latency.record((System.nanoTime() - started) / 1000);
+			if (allocated >= 0) {
+				result.allocated.add(allocatedBytes() - allocated);
+			}
+			result.retries.add(tData.getRetries());
+			RequestContext.clear();
+		}
+		result.outcomes.computeIfAbsent(outcome, k -> new LongAdder()).increment();
+	}
+
+	private static long allocatedBytes() {
+		return THREADS.isThreadAllocatedMemorySupported() && THREADS.isThreadAllocatedMemoryEnabled() ?
+			THREADS.getCurrentThreadAllocatedBytes() : -1;
+	}
+
+	private static MessageSender createSender(LoadProfile profile, AppProperties app) {
+		SenderConfig senderConfig = new SenderConfig();
+		senderConfig.setMaxRetries(profile.getMaxRetries());
+		ClientConfiguration clientConfig = new ClientConfiguration();
+		clientConfig.setReadTimeout(profile.getReadTimeout());
+		clientConfig.setConnectTimeout(profile.getReadTimeout());
+
+		// The mock IIS speaks plain HTTP on localhost, connect to it without TLS
+		ClientTlsSupport tlsSupport = mock(ClientTlsSupport.class);
+		try {
+			when(tlsSupport.getSNIEnabledConnection(any())).thenAnswer(inv -> {
+				URL url = inv.getArgument(0);
+				return new URL("http", url.getHost(), url.getPort(), url.getFile()).openConnection();
+			});
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		IEndpointStatus status = mock(IEndpointStatus.class);
+		EndpointStatusService statusService = mock(EndpointStatusService.class);
+		when(statusService.getEndpointStatus(any())).thenReturn(status);
+
+		return new MessageSender(new ServerConfiguration(), senderConfig, clientConfig, tlsSupport, statusService, app);
+	}
+
+	private static IDestination createDestination(String uri) {
+		IDestination dest = mock(IDestination.class);
+		when(dest.getDestId()).thenReturn(DEST_ID);
+		when(dest.getDestinationId()).thenReturn(DEST_ID);
+		when(dest.getDestUri()).thenReturn(uri);
+		when(dest.getDestTypeId()).thenReturn(SystemUtils.getDestType());
+		when(dest.getDestType()).thenReturn(SystemUtils.getDestTypeAsString());
+		return dest;
+	}
+}
@@ -0,0 +1,230 @@
+package gov.cdc.izgateway.soap.load;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang3.StringUtils;
+
+import gov.cdc.izgateway.soap.MockMessage;
+
+/**
+ * The shape of a load test: how many requests are sent with what concurrency, how long the
+ * mock destination takes to respond, and which test cases the requests ask it to play out.
+ *
+ * Every setting can be given as a system property, e.g. -Dload.concurrency=32.
+ * <ul>
+ * <li>load.concurrency: Number of requests in flight at once (16)</li>
+ * <li>load.requests: Number of requests measured (10000)</li>
+ * <li>load.warmup: Number of requests sent before measuring (2000)</li>
+ * <li>load.latency: Response time of the mock destination, one of none, fixed:<i>ms</i>,
+ *   uniform:<i>min</i>-<i>max</i> or lognormal:<i>median</i>:<i>sigma</i> (lognormal:50:0.5)</li>
+ * <li>load.mix: Weighted test cases, e.g. TC_04:90,TC_21O:5,TC_22:5. A MockMessage name plays out
+ *   that test case, and ECHO returns the request message (TC_04:85,ECHO:5,TC_21O:4,TC_22:3,TC_21Z:2,TC_23A:1)</li>
+ * <li>load.readTimeout: Read timeout in seconds for requests to the mock destination, limiting
+ *   the wait for TC_13C and TC_13E (10)</li>
+ * <li>load.maxRetries: Number of retries of retryable failures (1)</li>
+ * </ul>
+ *
+ * @author Audacious Inquiry
+ */
+public class LoadProfile {
+	/** The mix entry returning the request message */
+	public static final String ECHO = "ECHO";
+	/** The MSH-6 value of requests that are echoed, recognized as a test message but not a mock */
+	static final String ECHO_CASE = "PERF";
+
+	private static final double MAX_LATENCY = 60_000;
+
+	private int concurrency = 16;
+	private int requests = 10_000;
+	private int warmup = 2_000;
+	private String latency = "lognormal:50:0.5";
+	private String mix = "TC_04:85,ECHO:5,TC_21O:4,TC_22:3,TC_21Z:2,TC_23A:1";
+	private int readTimeout = 10;
+	private int maxRetries = 1;
+
+	private String latencyType;
+	private double[] latencyParams;
+	private String[] cases;
+	private double[] weights;
+
+	/**
+	 * Create the default profile
+	 */
+	public LoadProfile() {
+		setLatency(latency);
+		setMix(mix);
+	}
+
+	/**
+	 * @return A profile with defaults replaced by any load.* system properties
+	 */
+	public static LoadProfile fromSystemProperties() {
+		LoadProfile p = new LoadProfile();
+		p.setConcurrency(Integer.getInteger("load.concurrency", p.getConcurrency()));
+		p.setRequests(Integer.getInteger("load.requests", p.getRequests()));
+		p.setWarmup(Integer.getInteger("load.warmup", p.getWarmup()));
+		p.setLatency(System.getProperty("load.latency", p.getLatency()));
+		p.setMix(System.getProperty("load.mix", p.getMix()));
+		p.setReadTimeout(Integer.getInteger("load.readTimeout", p.getReadTimeout()));
+		p.setMaxRetries(Integer.getInteger("load.maxRetries", p.getMaxRetries()));
+		return p;
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	public void setConcurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("concurrency must be at least 1");
+		}
+		this.concurrency = concurrency;
+	}
+
+	public int getRequests() {
+		return requests;
+	}
+
+	public void setRequests(int requests) {
+		this.requests = Math.max(0, requests);
+	}
+
+	public int getWarmup() {
+		return warmup;
+	}
+
+	public void setWarmup(int warmup) {
+		this.warmup = Math.max(0, warmup);
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	public String getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Set the response time distribution of the mock destination
+	 * @param latency	none, fixed:<i>ms</i>, uniform:<i>min</i>-<i>max</i> or lognormal:<i>median</i>:<i>sigma</i>
+	 * @throws IllegalArgumentException if the distribution cannot be parsed
+	 */
+	public void setLatency(String latency) {
+		String[] parts = StringUtils.split(StringUtils.trimToEmpty(latency).toLowerCase(), ":-");
+		String type = parts.length == 0 ? "none" : parts[0];
+		int expected = switch (type) {
+			case "none" -> 0;
+			case "fixed" -> 1;
+			case "uniform", "lognormal" -> 2;
+			default -> throw new IllegalArgumentException("Unknown latency distribution " + latency);
+		};
+		if (parts.length != expected + 1 && !(expected == 0 && parts.length == 0)) {
+			throw new IllegalArgumentException("Latency distribution " + latency + " needs " + expected + " parameters");
+		}
+		double[] params = new double[expected];
+		try {
+			for (int i = 0; i < expected; i++) {
+				params[i] = Double.parseDouble(parts[i + 1]);
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid latency distribution " + latency, e);
+		}
+		this.latency = latency;
+		this.latencyType = type;
+		this.latencyParams = params;
+	}
+
+	/**
+	 * Choose the time the mock destination takes to respond to a request
+	 * @param random	The source of randomness
+	 * @return	The response time in milliseconds
+	 */
+	public long nextLatency(Random random) {
+		double[] p = latencyParams;
+		double value = switch (latencyType) {
+			case "fixed" -> p[0];
+			case "uniform" -> p[0] + random.nextDouble() * (p[1] - p[0]);
+			case "lognormal" -> p[0] * Math.exp(p[1] * random.nextGaussian());
+			default -> 0;
+		};
+		return Math.round(Math.max(0, Math.min(value, MAX_LATENCY)));
+	}
+
+	public String getMix() {
+		return mix;
+	}
+
+	/**
+	 * Set the test cases requests ask the mock destination to play out
+	 * @param mix	A comma separated list of <i>case</i>:<i>weight</i>, where case is the name of a MockMessage or ECHO
+	 * @throws IllegalArgumentException if the mix cannot be parsed, or names an unknown test case
+	 */
+	public void setMix(String mix) {
+		List<String> names = new ArrayList<>();
+		List<Double> cumulative = new ArrayList<>();
+		double total = 0;
+		for (String entry: StringUtils.split(StringUtils.trimToEmpty(mix), ',')) {
+			String name = StringUtils.substringBefore(entry, ":").trim().toUpperCase();
+			String weight = StringUtils.substringAfter(entry, ":").trim();
+			if (!ECHO.equals(name) && MockMessage.getMock(name) == null) {
+				throw new IllegalArgumentException("Unknown test case " + name + " in " + mix);
+			}
+			double w;
+			try {
+				w = weight.isEmpty() ? 1 : Double.parseDouble(weight);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid weight for " + name + " in " + mix, e);
+			}
+			if (w <= 0) {
+				continue;
+			}
+			total += w;
+			names.add(name);
+			cumulative.add(total);
+		}
+		if (names.isEmpty()) {
+			throw new IllegalArgumentException("The mix " + mix + " contains no test cases");
+		}
+		this.mix = mix;
+		this.cases = names.toArray(new String[0]);
+		this.weights = cumulative.stream().mapToDouble(d -> d / cumulative.get(cumulative.size() - 1)).toArray();
+	}
+
+	/**
+	 * Choose the test case for a request
+	 * @param random	The source of randomness
+	 * @return	The name of a MockMessage, or ECHO
+	 */
+	public String nextCase(Random random) {
+		double r = random.nextDouble();
+		String[] c = cases;
+		double[] w = weights;
+		for (int i = 0; i < w.length - 1; i++) {
+			if (r < w[i]) {
+				return c[i];
+			}
+		}
+		return c[c.length - 1];
+	}
+
+	@Override
+	public String toString() {
+		return String.format("concurrency=%d requests=%d warmup=%d latency=%s mix=%s readTimeout=%ds maxRetries=%d",
+			concurrency, requests, warmup, latency, mix, readTimeout, maxRetries);
+	}
+}
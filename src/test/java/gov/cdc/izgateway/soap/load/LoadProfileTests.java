@@ -0,0 +1,57 @@
+package gov.cdc.izgateway.soap.load;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LoadProfileTests {
+	@Test
+	void testLatency() {
+		LoadProfile profile = new LoadProfile();
+		Random random = new Random(42);
+		profile.setLatency("none");
+		assertEquals(0, profile.nextLatency(random));
+		profile.setLatency("fixed:25");
+		assertEquals(25, profile.nextLatency(random));
+		profile.setLatency("uniform:10-20");
+		for (int i = 0; i < 1000; i++) {
+			long value = profile.nextLatency(random);
+			assertTrue(value >= 10 && value <= 20, "Uniform latency " + value);
+		}
+		profile.setLatency("lognormal:50:0.5");
+		int below = 0;
+		for (int i = 0; i < 10000; i++) {
+			if (profile.nextLatency(random) < 50) {
+				below++;
+			}
+		}
+		// Half of a lognormal distribution lies below its median
+		assertTrue(below > 4700 && below < 5300, "Below median " + below);
+
+		assertThrows(IllegalArgumentException.class, () -> profile.setLatency("gaussian:50"));
+		assertThrows(IllegalArgumentException.class, () -> profile.setLatency("uniform:10"));
+		assertThrows(IllegalArgumentException.class, () -> profile.setLatency("fixed:fast"));
+	}
+
+	@Test
+	void testMix() {
+		LoadProfile profile = new LoadProfile();
+		profile.setMix("TC_04:70,ECHO:20,TC_21O:10,TC_22:0");
+		Random random = new Random(42);
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < 10000; i++) {
+			counts.merge(profile.nextCase(random), 1, Integer::sum);
+		}
+		assertEquals(3, counts.size());
+		assertTrue(Math.abs(counts.get("TC_04") - 7000) < 300, "TC_04 " + counts);
+		assertTrue(Math.abs(counts.get(LoadProfile.ECHO) - 2000) < 300, "ECHO " + counts);
+		assertTrue(Math.abs(counts.get("TC_21O") - 1000) < 300, "TC_21O " + counts);
+
+		assertThrows(IllegalArgumentException.class, () -> profile.setMix("TC_99:1"));
+		assertThrows(IllegalArgumentException.class, () -> profile.setMix("TC_04:0"));
+	}
+}
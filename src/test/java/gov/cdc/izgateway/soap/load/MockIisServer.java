@@ -0,0 +1,177 @@
+package gov.cdc.izgateway.soap.load;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import gov.cdc.izgateway.logging.RequestContext;
+import gov.cdc.izgateway.soap.MockMessage;
+import gov.cdc.izgateway.soap.fault.Fault;
+import gov.cdc.izgateway.soap.message.FaultMessage;
+import gov.cdc.izgateway.soap.message.SoapMessage;
+import gov.cdc.izgateway.soap.message.SubmitSingleMessageResponse;
+import gov.cdc.izgateway.soap.net.SoapMessageConverter;
+
+/**
+ * A mock IIS listening on the loopback interface.  It answers SOAP requests the way the
+ * mock endpoint of SoapControllerBase does: requests naming a {@link MockMessage} test case
+ * get that test case's response, fault or HTTP status, and other requests are echoed.
+ * Each response is delayed by the latency distribution of a {@link LoadProfile}.
+ *
+ * The server speaks plain HTTP.  Destinations must use https, so {@link #getDestinationUri()}
+ * reports an https URI, and the sender is expected to connect to it using http.
+ *
+ * @author Audacious Inquiry
+ */
+public class MockIisServer implements Closeable {
+	/** The path the mock IIS listens on */
+	public static final String PATH = "/IISService";
+	private static final String SOAP_CONTENT_TYPE = "application/soap+xml;charset=UTF-8";
+
+	private final LoadProfile profile;
+	private final SoapMessageConverter converter = new SoapMessageConverter(SoapMessageConverter.INBOUND);
+	private final ExecutorService executor;
+	private final HttpServer server;
+
+	/**
+	 * Create a mock IIS
+	 * @param port	The port to listen on, or 0 for any free port
+	 * @param profile	The load profile giving the latency of responses
+	 * @throws IOException	If the server cannot listen on the port
+	 */
+	public MockIisServer(int port, LoadProfile profile) throws IOException {
+		this.profile = profile;
+		AtomicInteger threadId = new AtomicInteger();
+		this.executor = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "mock-iis-" + threadId.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		server.createContext(PATH, this::handle);
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * Start answering requests
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * @return	The port the server listens on
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * @return	The destination URI of the mock IIS
+	 */
+	public String getDestinationUri() {
+		return "https://localhost:" + getPort() + PATH;
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		RequestContext.init();
+		try {
+			SoapMessage request = converter.read(toInputMessage(exchange), null);
+			long delay = profile.nextLatency(ThreadLocalRandom.current());
+			if (delay > 0) {
+				Thread.sleep(delay);
+			}
+			write(exchange, respond(request));
+		} catch (SoapMessageConverter.SoapConversionException e) {
+			send(exchange, HttpStatus.BAD_REQUEST.value(), null, e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			send(exchange, HttpStatus.SERVICE_UNAVAILABLE.value(), null, "Interrupted");
+		} catch (Exception e) {
+			send(exchange, HttpStatus.INTERNAL_SERVER_ERROR.value(), null, String.valueOf(e));
+		} finally {
+			RequestContext.clear();
+			exchange.close();
+		}
+	}
+
+	private ResponseEntity<?> respond(SoapMessage request) { // NOSONAR ? is intentional
+		MockMessage mock = MockMessage.getMock(request.findTestCaseIdentifier());
+		try {
+			if (mock == null) {
+				return ResponseEntity.ok(new SubmitSingleMessageResponse(request, request.getSchema(), true));
+			}
+			ResponseEntity<?> response = mock.getMessage(request);
+			if (response.getBody() instanceof SoapMessage body) {
+				// The bodies of mock responses are shared, respond with a copy of the body
+				return ResponseEntity.status(response.getStatusCode()).body(new SubmitSingleMessageResponse(body, request.getSchema(), true));
+			}
+			return response;
+		} catch (Fault f) {
+			return ResponseEntity.internalServerError().body(new FaultMessage(f, request.getSchema()));
+		}
+	}
+
+	private void write(HttpExchange exchange, ResponseEntity<?> response) throws IOException {
+		int status = response.getStatusCode().value();
+		Object body = response.getBody();
+		if (body instanceof SoapMessage message) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			converter.write(message, bytes);
+			send(exchange, status, SOAP_CONTENT_TYPE, bytes.toByteArray());
+			return;
+		}
+		MediaType type = response.getHeaders().getContentType();
+		send(exchange, status, type == null ? null : type.toString(), body == null ? null : body.toString());
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		send(exchange, status, contentType, body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+		if (contentType != null) {
+			exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, contentType);
+		}
+		exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+		if (body.length != 0) {
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+	}
+
+	private static HttpInputMessage toInputMessage(HttpExchange exchange) {
+		HttpHeaders headers = new HttpHeaders();
+		exchange.getRequestHeaders().forEach(headers::addAll);
+		InputStream body = exchange.getRequestBody();
+		return new HttpInputMessage() {
+			@Override public HttpHeaders getHeaders() { return headers; }
+			@Override public InputStream getBody() { return body; }
+		};
+	}
+}
@@ -0,0 +1,283 @@
+package gov.cdc.izgateway.soap.load;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+
+import gov.cdc.izgateway.logging.RequestContext;
+import gov.cdc.izgateway.logging.capture.CapturedRequest;
+import gov.cdc.izgateway.logging.capture.TrafficCapture;
+import gov.cdc.izgateway.logging.event.TransactionData.MessageType;
+import gov.cdc.izgateway.metrics.LatencyHistogram;
+import gov.cdc.izgateway.soap.message.ConnectivityTestRequest;
+import gov.cdc.izgateway.soap.message.FaultMessage;
+import gov.cdc.izgateway.soap.message.SoapMessage;
+import gov.cdc.izgateway.soap.message.SubmitSingleMessageRequest;
+import gov.cdc.izgateway.soap.net.SoapMessageConverter;
+import gov.cdc.izgateway.utils.BenchmarkSupport;
+
+/**
+ * Replays a file recorded by {@link TrafficCapture} against a running gateway, reissuing each
+ * request at its recorded offset from the start of the capture, and reports how the latency
+ * and outcomes of the replay drift from those recorded.  It is skipped unless replay.file is set.
+ *
+ * Captured messages have PHI removed, so each is padded with a Z segment to its recorded size.
+ * Point the destinations at a mock, either by configuring the recorded destination ids on the
+ * gateway to use a mock IIS such as {@link MockIisServer}, or by sending every request to a
+ * single mock destination with replay.destination.
+ *
+ * Settings are given as system properties, e.g. -Dreplay.speed=4.
+ * <ul>
+ * <li>replay.file: The capture file to replay (required)</li>
+ * <li>replay.url: The SOAP endpoint of the gateway (https://localhost/IISHubService)</li>
+ * <li>replay.speed: 1 to replay at the recorded rate, N to replay N times faster, or 0 to replay
+ *   as fast as possible (1)</li>
+ * <li>replay.concurrency: The maximum number of requests in flight at once (64)</li>
+ * <li>replay.destination: The destination id to send every request to, in place of the recorded one</li>
+ * <li>replay.readTimeout: Read timeout in seconds (60)</li>
+ * </ul>
+ * Client certificates for the gateway are given with the usual javax.net.ssl system properties.
+ *
+ * @author Audacious Inquiry
+ */
+@Tag(BenchmarkSupport.TAG)
+class TrafficReplayBenchmark {
+	private static final String SOAP_CONTENT_TYPE = "application/soap+xml;charset=UTF-8";
+	private static final String PADDING = "\rZRP|";
+
+	/**
+	 * The measurements of a replay.
+	 */
+	public static class Result {
+		private final LatencyHistogram recorded = new LatencyHistogram();
+		private final LatencyHistogram replayed = new LatencyHistogram();
+		private final LongAdder drift = new LongAdder();
+		private final LongAdder lag = new LongAdder();
+		private final Map<String, LongAdder> mismatches = new ConcurrentHashMap<>();
+		private long elapsedNanos;
+		private long recordedMillis;
+
+		/** @return The latencies of the requests as recorded in microseconds */
+		public LatencyHistogram getRecorded() {
+			return recorded;
+		}
+
+		/** @return The latencies of the requests as replayed in microseconds */
+		public LatencyHistogram getReplayed() {
+			return replayed;
+		}
+
+		/** @return The number of requests by recorded and replayed outcome, for those whose outcomes differ */
+		public Map<String, Long> getMismatches() {
+			Map<String, Long> m = new TreeMap<>();
+			mismatches.forEach((k, v) -> m.put(k, v.sum()));
+			return m;
+		}
+
+		/**
+		 * @return The report of this replay
+		 */
+		public String report() {
+			StringWriter w = new StringWriter();
+			PrintWriter out = new PrintWriter(w);
+			long count = replayed.getCount();
+			out.printf("Requests: %d in %.1f s (recorded over %.1f s), %.1f requests/s%n",
+				count, elapsedNanos / 1e9, recordedMillis / 1e3, elapsedNanos == 0 ? 0 : count * 1e9 / elapsedNanos);
+			report(out, "Recorded", recorded.getSnapshot());
+			report(out, "Replayed", replayed.getSnapshot());
+			out.printf("Drift ms: mean %+.1f per request%n", count == 0 ? 0 : drift.sum() / 1000.0 / count);
+			out.printf("Schedule lag ms: mean %.1f per request%n", count == 0 ? 0 : lag.sum() / 1000.0 / count);
+			Map<String, Long> m = getMismatches();
+			out.printf("Outcome mismatches: %d%n", m.values().stream().mapToLong(Long::longValue).sum());
+			m.forEach((k, v) -> out.printf("  %-60s %8d%n", k, v));
+			out.flush();
+			return w.toString();
+		}
+
+		private static void report(PrintWriter out, String name, LatencyHistogram.Snapshot s) {
+			out.printf("%s latency ms: mean %.1f p50 %.1f p90 %.1f p99 %.1f max %.1f%n", name,
+				s.getMean() / 1000, s.getP50() / 1000.0, s.getP90() / 1000.0, s.getP99() / 1000.0, s.getMax() / 1000.0);
+		}
+	}
+
+	private final SoapMessageConverter converter = new SoapMessageConverter(SoapMessageConverter.OUTBOUND);
+	private URL url;
+	private double speed;
+	private int concurrency;
+	private String destination;
+	private int readTimeout;
+
+	@Test
+	void replayCapture() throws Exception {
+		String file = System.getProperty("replay.file");
+		assumeTrue(file != null, "Set replay.file to the capture file to replay");
+		url = new URL(System.getProperty("replay.url", "https://localhost/IISHubService"));
+		speed = Double.parseDouble(System.getProperty("replay.speed", "1"));
+		concurrency = Integer.getInteger("replay.concurrency", 64);
+		destination = StringUtils.trimToNull(System.getProperty("replay.destination"));
+		readTimeout = Integer.getInteger("replay.readTimeout", 60);
+		if (speed < 0 || concurrency < 1) {
+			throw new IllegalArgumentException("replay.speed must not be negative and replay.concurrency must be at least 1");
+		}
+		List<CapturedRequest> requests = TrafficCapture.read(Paths.get(file));
+		Result result = run(requests);
+		BenchmarkSupport.report(getClass(), "Replayed %d requests from %s to %s%n%s", requests.size(), file, url, result.report());
+		assertEquals(requests.size(), result.getReplayed().getCount());
+	}
+
+	/**
+	 * Replay the requests
+	 * @param requests	The requests, in the order they were captured
+	 * @return	The measurements
+	 * @throws Exception	If a sending thread failed
+	 */
+	private Result run(List<CapturedRequest> requests) throws Exception {
+		Result result = new Result();
+		if (requests.isEmpty()) {
+			return result;
+		}
+		long first = requests.stream().mapToLong(CapturedRequest::getTime).min().orElse(0);
+		result.recordedMillis = requests.stream().mapToLong(CapturedRequest::getTime).max().orElse(0) - first;
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		long start = System.nanoTime();
+		try {
+			List<Future<?>> sent = new ArrayList<>(requests.size());
+			for (CapturedRequest r: requests) {
+				long due = speed == 0 ? start : start + (long) (TimeUnit.MILLISECONDS.toNanos(r.getTime() - first) / speed);
+				long wait = due - System.nanoTime();
+				if (wait > 0) {
+					TimeUnit.NANOSECONDS.sleep(wait);
+				}
+				sent.add(executor.submit(() -> send(r, due, result)));
+			}
+			for (Future<?> f: sent) {
+				f.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		result.elapsedNanos = System.nanoTime() - start;
+		return result;
+	}
+
+	private void send(CapturedRequest r, long due, Result result) {
+		long started = System.nanoTime();
+		String outcome;
+		RequestContext.init();
+		try {
+			outcome = post(toMessage(r));
+		} catch (Exception e) {
+			outcome = e.getClass().getSimpleName();
+		} finally {
+			RequestContext.clear();
+		}
+		long elapsed = (System.nanoTime() - started) / 1000;
+		result.replayed.record(elapsed);
+		result.recorded.record(TimeUnit.MILLISECONDS.toMicros(r.getElapsed()));
+		result.drift.add(elapsed - TimeUnit.MILLISECONDS.toMicros(r.getElapsed()));
+		result.lag.add(Math.max(0, started - due) / 1000);
+		String recorded = StringUtils.defaultString(r.getOutcome(), CapturedRequest.OK);
+		if (!recorded.equals(outcome)) {
+			result.mismatches.computeIfAbsent(recorded + " -> " + outcome, k -> new LongAdder()).increment();
+		}
+	}
+
+	private SoapMessage toMessage(CapturedRequest r) {
+		SoapMessage m;
+		if (MessageType.CONNECTIVITY_TEST.toString().equals(r.getMessageType())) {
+			ConnectivityTestRequest ct = new ConnectivityTestRequest();
+			ct.setEchoBack(pad(r.getMessage(), r.getRequestSize()));
+			m = ct;
+		} else {
+			m = new SubmitSingleMessageRequest(pad(r.getMessage(), r.getRequestSize()));
+		}
+		m.setSchema(SoapMessage.HUB_NS);
+		m.getHubHeader().setDestinationId(destination == null ? r.getDestinationId() : destination);
+		m.updateAction(true);
+		return m;
+	}
+
+	/**
+	 * Restore a masked message to the size it was recorded with.
+	 * @param message	The masked message
+	 * @param size	The recorded size
+	 * @return	The message padded with a Z segment
+	 */
+	static String pad(String message, int size) {
+		String m = StringUtils.defaultString(message);
+		int missing = size - m.length() - PADDING.length();
+		if (missing <= 0) {
+			return m;
+		}
+		return m + PADDING + StringUtils.repeat('X', missing);
+	}
+
+	private String post(SoapMessage message) throws IOException {
+		HttpURLConnection con = (HttpURLConnection) url.openConnection();
+		try {
+			con.setRequestMethod("POST");
+			con.setDoOutput(true);
+			con.setConnectTimeout((int) TimeUnit.SECONDS.toMillis(readTimeout));
+			con.setReadTimeout((int) TimeUnit.SECONDS.toMillis(readTimeout));
+			con.setRequestProperty(HttpHeaders.CONTENT_TYPE, SOAP_CONTENT_TYPE + ";action=\"" + message.getWsaHeaders().getAction() + "\"");
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			converter.write(message, bytes);
+			try (OutputStream out = con.getOutputStream()) {
+				bytes.writeTo(out);
+			}
+			int status = con.getResponseCode();
+			InputStream in = status < HttpURLConnection.HTTP_BAD_REQUEST ? con.getInputStream() : con.getErrorStream();
+			byte[] body = in == null ? new byte[0] : IOUtils.toByteArray(in);
+			if (body.length == 0) {
+				return status == HttpURLConnection.HTTP_OK ? CapturedRequest.OK : "HTTP " + status;
+			}
+			SoapMessage response = converter.read(toInputMessage(con, body), null);
+			if (response instanceof FaultMessage fault) {
+				return StringUtils.defaultIfEmpty(StringUtils.defaultIfEmpty(fault.getCode(), fault.getFaultName()), "Error");
+			}
+			return status == HttpURLConnection.HTTP_OK ? CapturedRequest.OK : "HTTP " + status;
+		} finally {
+			con.disconnect();
+		}
+	}
+
+	private static HttpInputMessage toInputMessage(HttpURLConnection con, byte[] body) {
+		HttpHeaders headers = new HttpHeaders();
+		con.getHeaderFields().forEach((k, v) -> {
+			if (k != null) {
+				headers.addAll(k, v);
+			}
+		});
+		return new HttpInputMessage() {
+			@Override public HttpHeaders getHeaders() { return headers; }
+			@Override public InputStream getBody() { return new ByteArrayInputStream(body); }
+		};
+	}
+}
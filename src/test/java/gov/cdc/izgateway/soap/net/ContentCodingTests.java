@@ -0,0 +1,114 @@
+package gov.cdc.izgateway.soap.net;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import gov.cdc.izgateway.logging.info.CompressionInfo;
+import gov.cdc.izgateway.logging.info.MessageInfo.Direction;
+import gov.cdc.izgateway.logging.info.MessageInfo.EndpointType;
+import gov.cdc.izgateway.soap.fault.MessageTooLargeFault;
+
+class ContentCodingTests {
+	private static final byte[] CONTENT = "MSH|^~\\&|IZGW|IZGW|IIS|IIS|20240101120000||QBP^Q11^QBP_Q11|1|P|2.5.1|\r"
+		.repeat(100).getBytes(StandardCharsets.UTF_8);
+
+	@ParameterizedTest
+	@CsvSource(delimiter = '|', value = {
+		"gzip|gzip",
+		"deflate|deflate",
+		"'deflate, gzip'|gzip",
+		"'deflate, gzip;q=0.5'|deflate",
+		"'x-gzip'|gzip",
+		"'*'|gzip",
+		"'*;q=0, deflate'|deflate",
+		"'gzip;q=0, deflate;q=0'|",
+		"identity|",
+		"br|",
+		"''|",
+	})
+	void testNegotiate(String acceptEncoding, String expected) {
+		assertEquals(expected, ContentCoding.negotiate(acceptEncoding));
+	}
+
+	@Test
+	void testNormalize() throws IOException {
+		assertEquals(ContentCoding.GZIP, ContentCoding.normalize("x-gzip"));
+		assertEquals(ContentCoding.DEFLATE, ContentCoding.normalize(" Deflate "));
+		assertNull(ContentCoding.normalize("identity"));
+		assertNull(ContentCoding.normalize(null));
+		assertThrows(IOException.class, () -> ContentCoding.normalize("br"));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { ContentCoding.GZIP, ContentCoding.DEFLATE })
+	void testRoundTrip(String coding) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ContentCoding.EncodingOutputStream out = ContentCoding.encode(bos, coding, 1);
+		out.write(CONTENT, 0, 10);
+		out.write(CONTENT, 10, CONTENT.length - 10);
+		out.finish();
+
+		CompressionInfo sent = out.getCompressionInfo(EndpointType.SERVER);
+		assertEquals(Direction.OUTBOUND, sent.getDirection());
+		assertEquals(coding, sent.getEncoding());
+		assertEquals(CONTENT.length, sent.getUncompressedBytes());
+		assertEquals(bos.size(), sent.getCompressedBytes());
+		assertTrue(sent.getRatio() > 10);
+		assertEquals(CONTENT.length - bos.size(), sent.getBytesSaved());
+
+		ContentCoding.DecodingInputStream in = ContentCoding.decode(new ByteArrayInputStream(bos.toByteArray()), coding);
+		assertArrayEquals(CONTENT, in.readAllBytes());
+		CompressionInfo received = in.getCompressionInfo(EndpointType.CLIENT);
+		assertEquals(Direction.INBOUND, received.getDirection());
+		assertEquals(CONTENT.length, received.getUncompressedBytes());
+		assertEquals(bos.size(), received.getCompressedBytes());
+	}
+
+	@Test
+	void testRawDeflate() throws IOException {
+		// Some senders omit the zlib wrapper from deflate content
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try (DeflaterOutputStream out = new DeflaterOutputStream(bos, deflater)) {
+			out.write(CONTENT);
+		}
+		deflater.end();
+		try (InputStream in = ContentCoding.decode(new ByteArrayInputStream(bos.toByteArray()), ContentCoding.DEFLATE)) {
+			assertArrayEquals(CONTENT, in.readAllBytes());
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { ContentCoding.GZIP, ContentCoding.DEFLATE })
+	void testMaxDecodedSize(String coding) throws IOException {
+		// A small compressed body must not inflate without limit
+		byte[] zeros = new byte[1024 * 1024];
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ContentCoding.EncodingOutputStream out = ContentCoding.encode(bos, coding, 9);
+		out.write(zeros, 0, zeros.length);
+		out.finish();
+		assertTrue(bos.size() < 4096);
+
+		ContentCoding.DecodingInputStream in = ContentCoding.decode(new ByteArrayInputStream(bos.toByteArray()), coding, 64 * 1024);
+		assertThrows(IOException.class, in::readAllBytes);
+		assertTrue(in.isLimitExceeded());
+		MessageTooLargeFault f = in.toFault(MessageTooLargeFault.Direction.REQUEST);
+		assertEquals(64 * 1024, f.getMaxSize());
+
+		in = ContentCoding.decode(new ByteArrayInputStream(bos.toByteArray()), coding, zeros.length);
+		assertEquals(zeros.length, in.readAllBytes().length);
+		assertFalse(in.isLimitExceeded());
+	}
+}
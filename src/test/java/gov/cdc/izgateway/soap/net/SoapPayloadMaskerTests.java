@@ -0,0 +1,70 @@
+package gov.cdc.izgateway.soap.net;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class SoapPayloadMaskerTests {
+	private static final String REQUEST =
+		"<soap:Envelope xmlns:soap=\"http://www.w3.org/2003/05/soap-envelope\" xmlns:iis=\"urn:cdc:iisb:2014\">"
+		+ "<soap:Body><iis:SubmitSingleMessageRequest>"
+		+ "<iis:Username>user</iis:Username><iis:Password>secret</iis:Password>"
+		+ "<iis:FacilityID>FAC</iis:FacilityID>"
+		+ "<iis:Hl7Message>MSH|^~\\&amp;|SENDER|FAC|||20240101||VXU^V04^VXU_V04|1|P|2.5.1&#xD;"
+		+ "PID|1||12345^^^MR||DOE^JANE</iis:Hl7Message>"
+		+ "</iis:SubmitSingleMessageRequest></soap:Body></soap:Envelope>";
+
+	@Test
+	void testCredentialsAlwaysHidden() {
+		String masked = SoapPayloadMasker.mask(REQUEST.getBytes(StandardCharsets.UTF_8), false);
+		assertFalse(masked.contains("secret"));
+		assertFalse(masked.contains(">user<"));
+		assertTrue(masked.contains("<iis:Password>" + SoapMessageWriter.HIDDEN + "</iis:Password>"));
+		assertTrue(masked.contains("<iis:FacilityID>FAC</iis:FacilityID>"));
+		// Without filtering the HL7 content is unchanged
+		assertTrue(masked.contains("DOE^JANE"));
+	}
+
+	@Test
+	void testMaskCredentialsOnly() {
+		String masked = SoapPayloadMasker.maskCredentials(REQUEST);
+		assertFalse(masked.contains("secret"));
+		assertTrue(masked.contains("DOE^JANE"));
+		// Masking again, as for logging, leaves the masked credentials unchanged
+		assertEquals(SoapPayloadMasker.mask(REQUEST, true), SoapPayloadMasker.mask(masked, true));
+		String response = "<a><iis:FacilityID>FAC</iis:FacilityID></a>";
+		assertSame(response, SoapPayloadMasker.maskCredentials(response));
+	}
+
+	@Test
+	void testHl7Protected() {
+		String masked = SoapPayloadMasker.mask(REQUEST.getBytes(StandardCharsets.UTF_8), true);
+		assertFalse(masked.contains("DOE^JANE"));
+		assertTrue(masked.contains("MSH|^~\\&amp;|SENDER"));
+		assertTrue(masked.endsWith("</iis:Hl7Message></iis:SubmitSingleMessageRequest></soap:Body></soap:Envelope>"));
+	}
+
+	@Test
+	void testCdataProtected() {
+		String masked = SoapPayloadMasker.mask(
+			"<return><![CDATA[MSH|^~\\&|A|B\rPID|1||12345^^^MR||DOE^JANE]]></return>", true);
+		assertFalse(masked.contains("DOE^JANE"));
+		assertTrue(masked.startsWith("<return><![CDATA[MSH|^~\\&|A|B"));
+		assertTrue(masked.endsWith("]]></return>"));
+	}
+
+	@Test
+	void testTruncatedContent() {
+		assertEquals("<a><iis:Password>" + SoapMessageWriter.HIDDEN, SoapPayloadMasker.mask("<a><iis:Password>sec", true));
+		assertFalse(SoapPayloadMasker.mask("<a><iis:Hl7Message>MSH|^~\\&amp;|A&#xD;PID|1||DOE^JA", true).contains("DOE"));
+		assertEquals("<a><iis:Pass", SoapPayloadMasker.mask("<a><iis:Pass", true));
+	}
+
+	@Test
+	void testEmptyValuesUnchanged() {
+		String text = "<a><username/><password></password><hl7Message></hl7Message></a>";
+		assertEquals(text, SoapPayloadMasker.mask(text, true));
+	}
+}
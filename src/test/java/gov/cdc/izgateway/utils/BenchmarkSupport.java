@@ -0,0 +1,62 @@
+package gov.cdc.izgateway.utils;
+
+import java.util.function.IntSupplier;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Support for the benchmarks in the test tree.  A benchmark is a JUnit test class named
+ * *Benchmark and tagged {@value #TAG}.  Benchmarks are excluded from the default build, and
+ * are run with the benchmark profile, e.g. mvn test -Pbenchmark -Dtest=HL7IndexBenchmark.
+ * Results are written to the log rather than asserted, since timings vary between machines,
+ * but each benchmark asserts that the code paths it compares produce the same results.
+ *
+ * @author Audacious Inquiry
+ */
+@Slf4j
+public final class BenchmarkSupport {
+	/** The tag of benchmark tests */
+	public static final String TAG = "benchmark";
+	/** The number of rounds each operation is timed for, the first of which only warms up */
+	public static final int ROUNDS = 5;
+	/** Keeps the results of measured operations live, so they are not optimized away */
+	private static volatile long sink;
+
+	private BenchmarkSupport() {
+	}
+
+	/**
+	 * Time an operation.
+	 * @param iterations	The number of times the operation is called in each round
+	 * @param operation	The operation, returning a value derived from its result
+	 * @return	The fastest time per call in nanoseconds of the rounds after the first
+	 */
+	public static double nanosPerOp(int iterations, IntSupplier operation) {
+		double best = Double.MAX_VALUE;
+		long total = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				total += operation.getAsInt();
+			}
+			double perOp = (double) (System.nanoTime() - start) / iterations;
+			if (round > 0) {
+				best = Math.min(best, perOp);
+			}
+		}
+		sink = total;
+		return best;
+	}
+
+	/**
+	 * Report the result of a benchmark.
+	 * @param benchmark	The benchmark
+	 * @param format	The format of the result, as for String.format
+	 * @param args	The values of the result
+	 */
+	public static void report(Class<?> benchmark, String format, Object ... args) {
+		if (log.isInfoEnabled()) {
+			log.info("{}: {}", benchmark.getSimpleName(), String.format(format, args));
+		}
+	}
+}
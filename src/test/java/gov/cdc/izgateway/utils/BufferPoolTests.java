@@ -0,0 +1,113 @@
+package gov.cdc.izgateway.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class BufferPoolTests {
+
+	@Test
+	void testSizeClasses() {
+		BufferPool pool = new BufferPool(4, true);
+		assertEquals(BufferPool.MIN_SIZE, pool.acquire(0).length);
+		assertEquals(BufferPool.MIN_SIZE, pool.acquire(1024).length);
+		assertEquals(2048, pool.acquire(1025).length);
+		assertEquals(8192, pool.acquire(8192).length);
+		assertEquals(BufferPool.MAX_SIZE, pool.acquire(BufferPool.MAX_SIZE).length);
+		assertEquals(BufferPool.MAX_SIZE + 1, pool.acquire(BufferPool.MAX_SIZE + 1).length);
+		assertEquals(5, pool.getStats().getOutstanding());
+		assertEquals(1, pool.getStats().getUnpooled());
+		assertThrows(IllegalArgumentException.class, () -> pool.acquire(-1));
+	}
+
+	@Test
+	void testReuse() {
+		BufferPool pool = new BufferPool(1, false);
+		byte[] first = pool.acquire(4000);
+		byte[] second = pool.acquire(4000);
+		assertNotSame(first, second);
+		pool.release(first);
+		pool.release(second);
+		assertSame(first, pool.acquire(4096));
+
+		BufferPool.Stats stats = pool.getStats();
+		assertEquals(1, stats.getHits());
+		assertEquals(2, stats.getMisses());
+		assertEquals(1, stats.getDiscarded());
+		assertEquals(1, stats.getOutstanding());
+		assertEquals(0, stats.getAvailable());
+	}
+
+	@Test
+	void testLeakDetection() {
+		BufferPool pool = new BufferPool(4, true);
+		byte[] buffer = pool.acquire(100);
+		assertEquals(1, pool.getLeaks().size());
+		pool.release(buffer);
+		assertTrue(pool.getLeaks().isEmpty());
+		// Released buffers are overwritten to expose use after release
+		assertNotEquals(0, buffer[0]);
+		assertThrows(IllegalStateException.class, () -> pool.release(buffer));
+		// Buffers that are not pool sized are ignored
+		pool.release(new byte[100]);
+		assertEquals(0, pool.getStats().getOutstanding());
+		// Pool sized buffers not acquired from the pool are rejected
+		assertThrows(IllegalStateException.class, () -> pool.release(new byte[BufferPool.MIN_SIZE]));
+	}
+
+	@Test
+	void testForeignBufferWithoutLeakDetection() {
+		BufferPool pool = new BufferPool(4, false);
+		pool.release(new byte[100]);
+		assertEquals(0, pool.getStats().getAvailable());
+		// A pool sized buffer cannot be told apart from one acquired from the pool
+		byte[] foreign = new byte[BufferPool.MIN_SIZE];
+		pool.release(foreign);
+		assertEquals(1, pool.getStats().getAvailable());
+		assertEquals(0, pool.getStats().getOutstanding());
+		assertSame(foreign, pool.acquire(1));
+		assertEquals(1, pool.getStats().getOutstanding());
+	}
+
+	@Test
+	void testStreamsReleaseBuffers() throws IOException {
+		BufferPool pool = new BufferPool(4, true);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PreservingOutputStream pos = new PreservingOutputStream(out, 10, pool);
+		pos.write("Hello, World".getBytes(StandardCharsets.UTF_8));
+		assertEquals("Hello, Wor", new String(pos.getBytes(), StandardCharsets.UTF_8));
+		assertEquals("Hello, World", out.toString(StandardCharsets.UTF_8));
+		pos.release();
+		pos.release();
+		assertThrows(IllegalStateException.class, pos::getBytes);
+
+		try (PooledBufferedInputStream in = new PooledBufferedInputStream(
+				new ByteArrayInputStream("Hello".getBytes(StandardCharsets.UTF_8)), 4000, pool)) {
+			in.mark(4000);
+			assertEquals('H', in.read());
+			in.reset();
+			assertEquals("Hello", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+		assertTrue(pool.getLeaks().isEmpty(), () -> "Leaked: " + pool.getLeaks());
+	}
+
+	@Test
+	void testFixedByteArrayOutputStream() throws IOException {
+		BufferPool pool = BufferPool.getDefault();
+		int outstanding = pool.getStats().getOutstanding();
+		try (FixedByteArrayOutputStream fos = new FixedByteArrayOutputStream(3000)) {
+			byte[] data = new byte[1000];
+			fos.write(data);
+			fos.write(data);
+			fos.write(data);
+			assertEquals(3000, fos.toByteArray().length);
+			assertThrows(FixedByteArrayOutputStream.SizeExceededException.class, () -> fos.write(1));
+		}
+		assertEquals(outstanding, pool.getStats().getOutstanding());
+	}
+}
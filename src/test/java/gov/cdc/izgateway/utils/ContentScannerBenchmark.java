@@ -0,0 +1,46 @@
+package gov.cdc.izgateway.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures the cost of screening text for more patterns.  With containsIgnoreCase, each
+ * pattern is another scan of the text, while a ContentScanner finds all of them in one pass.
+ */
+@Tag(BenchmarkSupport.TAG)
+class ContentScannerBenchmark {
+	private static final List<String> PATTERNS = List.of("javascript", "vbscript:", "<script", "<iframe", "onerror=", "onload=", "data:text/html");
+	private static final String TEXT = StringUtils.repeat(
+		"MSH|^~\\&|SIIS|SIIS|IZG|IZG|20240101120000-0500||VXU^V04^VXU_V04|123456|P|2.5.1|||ER|AL\r"
+		+ "PID|1||12345^^^SIIS^MR||TEST^IZG^^^^^L||20200101|F\r"
+		+ "RXA|0|1|20240101|20240101|08^HepB^CVX|0.5|mL^mL^UCUM||00^New^NIP001\r", 20);
+	private static final int ITERATIONS = 200_000;
+
+	@Test
+	void compareWithContainsIgnoreCase() {
+		ContentScanner scanner = new ContentScanner(PATTERNS);
+		assertEquals(0, containsIgnoreCase(TEXT));
+		assertNull(scanner.find(TEXT));
+		assertEquals("<iframe", scanner.find(TEXT + "<IFRAME src='x'>"));
+
+		double perPattern = BenchmarkSupport.nanosPerOp(ITERATIONS, () -> containsIgnoreCase(TEXT));
+		double singlePass = BenchmarkSupport.nanosPerOp(ITERATIONS, () -> scanner.find(TEXT) == null ? 0 : 1);
+		BenchmarkSupport.report(getClass(), "containsIgnoreCase x %d patterns %.1f ns/op, ContentScanner %.1f ns/op",
+			PATTERNS.size(), perPattern, singlePass);
+	}
+
+	private static int containsIgnoreCase(String text) {
+		int found = 0;
+		for (String p: PATTERNS) {
+			if (StringUtils.containsIgnoreCase(text, p)) {
+				found++;
+			}
+		}
+		return found;
+	}
+}
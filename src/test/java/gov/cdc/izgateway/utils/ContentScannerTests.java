@@ -0,0 +1,60 @@
+package gov.cdc.izgateway.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class ContentScannerTests {
+	private static final ContentScanner SCANNER = 
+		new ContentScanner("javascript", "vbscript:", "<script", "<iframe", "onerror=", "he", "she", "hers");
+
+	@ParameterizedTest
+	@MethodSource
+	void testFind(String text, String expected) {
+		assertEquals(expected, SCANNER.find(text));
+		assertEquals(expected, SCANNER.find(text.toCharArray(), 0, text.length()));
+		assertEquals(expected != null, SCANNER.matches(text));
+	}
+
+	static String[][] testFind() {
+		return new String[][] {
+			{ "MSH|^~\\&|TEST|TEST|||20240101||VXU^V04|1|P|2.5.1", null },
+			{ "alert via JavaScript:alert(1)", "javascript" },
+			{ "JAVASCRIPT", "javascript" },
+			{ "jjavascript", "javascript" },
+			{ "javascrip", null },
+			{ "call VBScript:foo", "vbscript:" },
+			{ "<ScRiPt>", "<script" },
+			{ "<IFRAME src=x>", "<iframe" },
+			{ "<img onError=alert(1)>", "onerror=" },
+			// Classic Aho-Corasick case, shorter suffix pattern found via failure link
+			{ "ushers", "she" },
+			{ "ahe", "he" },
+			{ "", null },
+			{ "\u00e9\u00e8 no patterns here \u2603", null },
+		};
+	}
+
+	@Test
+	void testNonAsciiPatterns() {
+		ContentScanner s = new ContentScanner("caf\u00e9", "\u00dcber");
+		assertEquals("caf\u00e9", s.find("Le CAF\u00c9 est ouvert"));
+		assertEquals("\u00fcber", s.find("\u00dcBER alles"));
+		assertNull(s.find("cafe uber"));
+	}
+
+	@Test
+	void testNullText() {
+		assertNull(SCANNER.find(null));
+	}
+
+	@Test
+	void testInvalidPatterns() {
+		assertThrows(IllegalArgumentException.class, () -> new ContentScanner(Collections.emptyList()));
+		assertThrows(IllegalArgumentException.class, () -> new ContentScanner("a", ""));
+	}
+}
@@ -0,0 +1,91 @@
+package gov.cdc.izgateway.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.text.ParseException;
+import java.time.ZoneId;
+import java.util.function.IntSupplier;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures parsing of HL7 DTM values by DateUtil.parseHL7DateTime against the regular expression
+ * and FastDateFormat path that DateUtil.parseDate used for them, over a mix of DTM precisions
+ * with and without time zone offsets.
+ */
+@Tag(BenchmarkSupport.TAG)
+class DateUtilBenchmark {
+	private static final String[] VALUES = {
+		"20241116123011.989+0900", "20240101120000-0500", "20240101120000", "20240101"
+	};
+	private static final int ITERATIONS = 1_000_000;
+
+	@Test
+	void compareWithFastDateFormat() throws ParseException {
+		ZoneId zone = ZoneId.systemDefault();
+		for (String value: VALUES) {
+			assertEquals(formatted(value), DateUtil.parseHL7DateTime(value, zone).toEpochSecond(), value);
+		}
+		double formatted = BenchmarkSupport.nanosPerOp(ITERATIONS, new IntSupplier() {
+			private int i = 0;
+			@Override
+			public int getAsInt() {
+				try {
+					return (int) formatted(VALUES[i++ % VALUES.length]);
+				} catch (ParseException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+		double dtm = BenchmarkSupport.nanosPerOp(ITERATIONS, new IntSupplier() {
+			private int i = 0;
+			@Override
+			public int getAsInt() {
+				return (int) DateUtil.parseHL7DateTime(VALUES[i++ % VALUES.length], zone).toEpochSecond();
+			}
+		});
+		BenchmarkSupport.report(getClass(), "FastDateFormat %.1f ns/op, parseHL7DateTime %.1f ns/op", formatted, dtm);
+	}
+
+	/**
+	 * The former path for these values, from DateUtil.simpleParse.
+	 */
+	private static long formatted(String date) throws ParseException {
+		String s = date.trim().replaceAll("[-:Tt]", "");
+		if (!s.matches("\\d+(\\.\\d+)?(Z|[+-][01]\\d([0-4]\\d)?)?")) {
+			return 0;
+		}
+		String front = s;
+		String back = "";
+		String zone = null;
+		if (StringUtils.containsAny(s, '+', '-', '.', 'Z')) {
+			front = StringUtils.substringBefore(s, ".");
+			back = StringUtils.substringAfter(s, ".");
+			String h = back.length() == 0 ? front : back;
+			for (int i = 0; i < h.length(); i++) {
+				char c = h.charAt(i);
+				if (c == '-' || c == '+' || c == 'Z') {
+					zone = h.substring(i);
+					h = h.substring(0, i);
+					break;
+				}
+			}
+			if (back.length() == 0) {
+				front = h;
+			} else {
+				back = h;
+			}
+		}
+		String format = "yyyyMMddHHmmss".substring(0, Math.min(front.length(), 14));
+		if (back.length() > 0) {
+			format += "." + StringUtils.repeat('S', back.length());
+		}
+		if (zone != null && zone.length() != 0) {
+			format += "X";
+		}
+		return FastDateFormat.getInstance(format).parse(s).getTime() / 1000;
+	}
+}
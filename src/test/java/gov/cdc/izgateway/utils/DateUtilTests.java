@@ -0,0 +1,100 @@
+package gov.cdc.izgateway.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class DateUtilTests {
+	private static final ZoneOffset EST = ZoneOffset.ofHours(-5);
+
+	@ParameterizedTest
+	@CsvSource({
+		"2024,2024-01-01T00:00-05:00",
+		"202402,2024-02-01T00:00-05:00",
+		"20240229,2024-02-29T00:00-05:00",
+		"2024022913,2024-02-29T13:00-05:00",
+		"202402291359,2024-02-29T13:59-05:00",
+		"20240229135958,2024-02-29T13:59:58-05:00",
+		"20240229135958.1,2024-02-29T13:59:58.100-05:00",
+		"20240229135958.12,2024-02-29T13:59:58.120-05:00",
+		"20240229135958.123,2024-02-29T13:59:58.123-05:00",
+		"20240229135958.1234,2024-02-29T13:59:58.123400-05:00",
+		"20240229135958.1234+0900,2024-02-29T13:59:58.123400+09:00",
+		"20241116123011.989+0900,2024-11-16T12:30:11.989+09:00",
+		"20240101-0000,2024-01-01T00:00Z",
+		"2024+0530,2024-01-01T00:00+05:30",
+		"20240101235959-1800,2024-01-01T23:59:59-18:00",
+		"00000101,0000-01-01T00:00-05:00",
+	})
+	void testParseHL7DateTime(String value, String expected) {
+		assertEquals(OffsetDateTime.parse(expected), DateUtil.parseHL7DateTime(value, EST));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+		"", "202", "20240", "2024010", "202401011", "202401011200000",		// Digit counts
+		"202413", "202400", "20240100", "20230229", "20240431",				// Dates
+		"2024010124", "202401012360", "20240101235960",						// Times
+		"20240101120000.", "20240101120000.12345", "202401011200.5",		// Fractions
+		"2024+05", "2024+053", "2024+05300", "2024*0500", "2024+0560", "2024+1801",	// Offsets
+		" 2024", "2024 ", "2024-01-01", "2024010112:00", "\uFF11\uFF12\uFF13\uFF14",				// Other characters
+	})
+	void testInvalidHL7DateTime(String value) {
+		assertThrows(DateTimeParseException.class, () -> DateUtil.parseHL7DateTime(value, EST));
+		assertNull(DateUtil.safeParseHL7DateTime(value, EST));
+	}
+
+	@Test
+	void testAllDates() {
+		// Every day from 1899 through 2100 matches java.time, including leap years and centuries
+		DateTimeFormatter basic = DateTimeFormatter.BASIC_ISO_DATE;
+		for (LocalDate d = LocalDate.of(1899, 1, 1); d.getYear() <= 2100; d = d.plusDays(1)) {
+			assertEquals(d.atStartOfDay().atOffset(ZoneOffset.UTC), DateUtil.parseHL7DateTime(d.format(basic), ZoneOffset.UTC));
+		}
+	}
+
+	@Test
+	void testRandomInstants() {
+		DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyyMMddHHmmss.SSSSxx");
+		Random r = new Random(1);
+		for (int i = 0; i < 100_000; i++) {
+			OffsetDateTime expected = OffsetDateTime.of(1900 + r.nextInt(200), 1 + r.nextInt(12), 1 + r.nextInt(28),
+				r.nextInt(24), r.nextInt(60), r.nextInt(60), r.nextInt(10_000) * 100_000, ZoneOffset.ofTotalSeconds((r.nextInt(73) - 36) * 900));
+			assertEquals(expected, DateUtil.parseHL7DateTime(expected.format(format), EST));
+		}
+	}
+
+	@Test
+	void testDefaultZone() {
+		// The default zone's offset at the time of the value applies to values without an offset
+		ZoneId newYork = ZoneId.of("America/New_York");
+		assertEquals(OffsetDateTime.parse("2024-01-15T12:00-05:00"), DateUtil.parseHL7DateTime("202401151200", newYork));
+		assertEquals(OffsetDateTime.parse("2024-07-15T12:00-04:00"), DateUtil.parseHL7DateTime("202407151200", newYork));
+	}
+
+	@Test
+	void testParseDate() throws ParseException {
+		// HL7 values are parsed as DTM, including hours after noon
+		assertEquals(Date.from(OffsetDateTime.parse("2024-02-29T13:59:58.123+09:00").toInstant()),
+			DateUtil.parseDate(" 20240229135958.123+0900 "));
+		Date local = Date.from(OffsetDateTime.parse("2024-02-29T13:59:58Z").toLocalDateTime().atZone(ZoneId.systemDefault()).toInstant());
+		assertEquals(local, DateUtil.parseDate("20240229135958"));
+		// Other values still use the heuristics
+		assertEquals(local, DateUtil.parseDate("2024-02-29T13:59:58"));
+		assertEquals(new Date(170000000000L), DateUtil.parseDate("170000000000"));
+		assertNull(DateUtil.safeParseDate("not a date"));
+	}
+}
@@ -0,0 +1,67 @@
+package gov.cdc.izgateway.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures the work done by the users of a request message in its lifecycle (MSH field extraction,
+ * source type, test message detection and masking), each splitting the message for itself, against
+ * the same lookups made on one HL7Index of the message built once and shared.
+ */
+@Tag(BenchmarkSupport.TAG)
+class HL7IndexBenchmark {
+	private static final String MESSAGE =
+		"MSH|^~\\&|SIIS|SIIS|IZG|IZG|20240101120000-0500||VXU^V04^VXU_V04|123456|P|2.5.1|||ER|AL\r"
+		+ "PID|1||12345^^^SIIS^MR||TEST^IZG^^^^^L||20200101|F\r"
+		+ StringUtils.repeat("RXA|0|1|20240101|20240101|08^HepB^CVX|0.5|mL^mL^UCUM||00^New^NIP001\r", 20);
+	private static final int ITERATIONS = 200_000;
+
+	@Test
+	void compareWithSplitting() {
+		assertEquals(split(MESSAGE), indexed(MESSAGE));
+		double split = BenchmarkSupport.nanosPerOp(ITERATIONS, () -> split(MESSAGE));
+		double indexed = BenchmarkSupport.nanosPerOp(ITERATIONS, () -> indexed(MESSAGE));
+		BenchmarkSupport.report(getClass(), "split %.1f ns/op, HL7Index %.1f ns/op", split, indexed);
+	}
+
+	private static int split(String message) {
+		int found = 0;
+		// MSH fields for TransactionData
+		String[] msh = StringUtils.substring(message, 0, StringUtils.indexOfAny(message, '\r', '\n')).split("\\|");
+		found += StringUtils.substringBefore(msh[2], "^").length() + StringUtils.substringBefore(msh[8], "^").length();
+		// Source type
+		String[] parts = message.substring(0, message.indexOf('\r')).split("\\|");
+		found += parts[3].length() + parts[4].length();
+		// Test message detection
+		String[] segments = message.split("[\r\n]");
+		for (int seg = 1; seg < segments.length; seg++) {
+			if (segments[seg].startsWith("PID")) {
+				found += segments[seg].split("\\|")[5].length();
+			}
+		}
+		// Masking
+		for (String segment: message.split("\\s*[\\n\\r]+")) {
+			found += StringUtils.substringBefore(segment, "|").length();
+		}
+		return found;
+	}
+
+	private static int indexed(String message) {
+		int found = 0;
+		HL7Index index = new HL7Index(message);
+		found += index.getFirstComponent(0, 3).length() + index.getFirstComponent(0, 9).length();
+		found += index.getField(0, 4).length() + index.getField(0, 5).length();
+		for (int seg = 1; seg < index.getSegmentCount(); seg++) {
+			if (index.isSegment(seg, "PID")) {
+				found += index.getField(seg, 5).length();
+			}
+		}
+		for (int seg = 0; seg < index.getSegmentCount(); seg++) {
+			found += index.getSegmentName(seg).length();
+		}
+		return found;
+	}
+}
@@ -0,0 +1,88 @@
+package gov.cdc.izgateway.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class HL7IndexTests {
+	private static final String MESSAGE =
+		"MSH|^~\\&|WebIZ.1.0|PW0000|AS0000|AS0000|20241116123011.989+0900||RSP^K11^RSP_K11|PW0000123|P|2.5.1|||NE|NE|||||Z33^CDCPHINVS\r\n"
+		+ "MSA|AE|AS0000123\r"
+		+ "\r"
+		+ "ERR||MSH^1^6^1^1|999^ApplicationError^HL70357|E\r"
+		+ "QPD|Z34^Request Immunization History^CDCPHINVS|755718||SIMPSON^BART^M^^^^L|||\n";
+
+	@Test
+	void testSegments() {
+		HL7Index index = new HL7Index(MESSAGE);
+		assertEquals(4, index.getSegmentCount());
+		assertEquals("MSH", index.getSegmentName(0));
+		assertTrue(index.isSegment(1, "MSA"));
+		assertEquals(2, index.findSegment("ERR"));
+		assertEquals(-1, index.findSegment("ERR", 3));
+		assertEquals(-1, index.findSegment("PID"));
+		assertEquals("MSA|AE|AS0000123", index.getSegment(1).toString());
+		assertThrows(IndexOutOfBoundsException.class, () -> index.getSegment(4));
+	}
+
+	@Test
+	void testFields() {
+		HL7Index index = new HL7Index(MESSAGE);
+		assertTrue(index.isHeader(0));
+		assertEquals("|", index.getField(0, 1));
+		assertEquals("^~\\&", index.getField(0, 2));
+		assertEquals("WebIZ.1.0", index.getField(0, 3));
+		assertEquals("RSP^K11^RSP_K11", index.getField(0, 9));
+		assertEquals("RSP", index.getFirstComponent(0, 9));
+		assertEquals("Z33^CDCPHINVS", index.getField(0, 21));
+		assertEquals(21, index.getFieldCount(0));
+		assertNull(index.getField(0, 22));
+
+		assertFalse(index.isHeader(1));
+		assertEquals("AE", index.getField(1, 1));
+		assertTrue(index.fieldEquals(1, 2, "AS0000123"));
+		assertFalse(index.fieldEquals(1, 2, "AS000012"));
+
+		int qpd = index.findSegment("QPD");
+		assertEquals("", index.getField(qpd, 3));
+		assertEquals("SIMPSON^BART^M^^^^L", index.getField(qpd, 4));
+		assertEquals(7, index.getFieldCount(qpd));
+		assertTrue(index.hasContentFrom(qpd, 3));
+		assertFalse(index.hasContentFrom(qpd, 5));
+		assertThrows(IllegalArgumentException.class, () -> index.getField(qpd, -1));
+	}
+
+	@Test
+	void testEncodingCharacters() {
+		HL7Index index = new HL7Index("MSH#$~\\&#SENDER$1#FACILITY\rPID#1#FAMILY$GIVEN|X\r");
+		assertEquals('#', index.getFieldSeparator());
+		assertEquals('$', index.getComponentSeparator());
+		assertEquals('~', index.getRepetitionSeparator());
+		assertEquals("SENDER$1", index.getField(0, 3));
+		assertEquals("SENDER", index.getFirstComponent(0, 3));
+		assertEquals("FAMILY$GIVEN|X", index.getField(1, 2));
+		assertEquals("FAMILY", index.getFirstComponent(1, 2));
+
+		// Protection uses the declared separators
+		assertEquals("MSH#$~\\&#SENDER$1#FACILITY\n...\n", HL7Utils.protectHL7Message(index));
+	}
+
+	@Test
+	void testEmpty() {
+		assertEquals(0, new HL7Index(null).getSegmentCount());
+		assertEquals(0, new HL7Index("\r\n").getSegmentCount());
+		HL7Index index = new HL7Index("MSH");
+		assertFalse(index.isHeader(0));
+		assertNull(index.getField(0, 1));
+	}
+
+	@Test
+	void testFirstSegment() {
+		HL7Index msh = HL7Index.ofFirstSegment(MESSAGE);
+		assertEquals(1, msh.getSegmentCount());
+		assertEquals("PW0000123", msh.getField(0, 10));
+		assertEquals(-1, msh.findSegment("MSA"));
+		assertNull(HL7Index.ofFirstSegment(""));
+		assertNull(HL7Index.ofFirstSegment(null));
+	}
+}
@@ -0,0 +1,85 @@
+package gov.cdc.izgateway.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures masking a response carrying 20 RXA segments with the default rules, first by splitting
+ * it into segments, fields and components and looking each field up in the rules, as
+ * HL7Utils.protectHL7Message once did, and then with the compiled HL7MaskingPlan.
+ */
+@Tag(BenchmarkSupport.TAG)
+class HL7MaskingBenchmark {
+	private static final String MESSAGE =
+		"MSH|^~\\&|WebIZ.1.0|PW0000|AS0000|AS0000|20241116123011.989+0900||RSP^K11^RSP_K11|PW0000123|P|2.5.1|||NE|NE|||||Z33^CDCPHINVS\r"
+		+ "MSA|AE|AS0000123\r"
+		+ "ERR||MSH^1^6^1^1|999^ApplicationError^HL70357|E|4^Invalid value^HL70533^WEBIZ-AUTH-625^Facility is inactive^L\r"
+		+ "QAK|755718|AE|Z34^Request Immunization History^CDCPHINVS\r"
+		+ "QPD|Z34^Request Immunization History^CDCPHINVS|755718|84579^^^AS0000^MR|SIMPSON^BART^M^^^^L||19990101|M\r"
+		+ "PID|1||12345^^^SIIS^MR||TEST^IZG^^^^^L||20200101|F\r"
+		+ StringUtils.repeat("RXA|0|1|20240101|20240101|08^HepB^CVX|0.5|mL^mL^UCUM||00^New^NIP001\r", 20);
+	private static final int ITERATIONS = 200_000;
+
+	@Test
+	void compareWithSplitting() {
+		assertEquals(split(MESSAGE), HL7Utils.protectHL7Message(MESSAGE));
+		double split = BenchmarkSupport.nanosPerOp(ITERATIONS, () -> split(MESSAGE).length());
+		double compiled = BenchmarkSupport.nanosPerOp(ITERATIONS, () -> HL7Utils.protectHL7Message(MESSAGE).length());
+		BenchmarkSupport.report(getClass(), "split %.1f ns/op, compiled plan %.1f ns/op", split, compiled);
+	}
+
+	private static String split(String message) {
+		Map<String, Collection<Integer>> allowedSegments = HL7Utils.DEFAULT_ALLOWED_SEGMENTS;
+		StringBuilder b = new StringBuilder();
+		for (String segment : message.split("\\s*[\\n\\r]+")) {
+			String segName = StringUtils.substringBefore(segment, "|");
+			Collection<Integer> allowedFields = allowedSegments.get(segName);
+			if (!"MSH".equals(segName) && allowedFields != null && !allowedFields.isEmpty()) {
+				List<Integer> values = new ArrayList<>();
+				for (int value : allowedFields) {
+					values.add(value < 0 ? value - 1 : (value + 1));
+				}
+				values.add(1);
+				allowedFields = values;
+			}
+			if (allowedFields == null) {
+				if (!StringUtils.endsWith(b, "...\n")) {
+					b.append("...\n");
+				}
+			} else {
+				b.append(stripParts(segment, allowedFields, "|", true)).append("\n");
+			}
+		}
+		return b.toString();
+	}
+
+	private static String stripParts(String whole, Collection<Integer> allowedParts, String delim, boolean stripCWE) {
+		if (StringUtils.isEmpty(whole)) {
+			return whole;
+		}
+		StringBuilder b = new StringBuilder();
+		String[] fields = whole.split("\\" + delim);
+		int lastPart = 0;
+		for (int i = 0; i < fields.length; i++) {
+			if (stripCWE && allowedParts.contains(-(i + 1))) {
+				b.append(stripParts(fields[i], Arrays.asList(1, 3, 4, 6), "^", false));
+				lastPart = i;
+			} else if (allowedParts.contains(i + 1)) {
+				b.append(fields[i]);
+				lastPart = i;
+			}
+			b.append(delim);
+		}
+		b.setLength(b.length() - (fields.length - lastPart));
+		return b.toString();
+	}
+}
@@ -0,0 +1,70 @@
+package gov.cdc.izgateway.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+class HL7MaskingPlanTests {
+	private static final String MESSAGE =
+		"MSH|^~\\&|WebIZ.1.0|PW0000|AS0000|AS0000|20241116123011.989+0900||RSP^K11^RSP_K11|PW0000123|P|2.5.1|||NE|NE|||||Z33^CDCPHINVS\r\n"
+		+ "MSA|AE|AS0000123  \r"
+		+ "ERR||MSH^1^6^1^1|999^ApplicationError^HL70357|E|4^Invalid value^HL70533^WEBIZ-AUTH-625^Facility is inactive^L\r"
+		+ "PID|1||12345^^^SIIS^MR||TEST^IZG^^^^^L||20200101|F\r"
+		+ "RXA|0|1|20240101|20240101|08^HepB^CVX\r"
+		+ "QAK|755718|AE|Z34^Request Immunization History^CDCPHINVS\r";
+
+	@Test
+	void testDefaultPlan() {
+		assertEquals(
+			"MSH|^~\\&|WebIZ.1.0|PW0000|AS0000|AS0000|||RSP^K11^RSP_K11|PW0000123|P|2.5.1|||||||||Z33^CDCPHINVS\n"
+			+ "MSA|AE|AS0000123\n"
+			+ "ERR||MSH^1^6^1^1|999^^HL70357|E\n"
+			+ "...\n"
+			+ "QAK|755718|AE|Z34^Request Immunization History^CDCPHINVS\n",
+			HL7Utils.protectHL7Message(MESSAGE));
+		assertEquals("", HL7Utils.protectHL7Message("PID|1\rPV1|1\r"));
+	}
+
+	@Test
+	void testRepetitions() {
+		// Uncontrolled text is removed from each repetition of a CWE
+		String err = "MSH|^~\\&|A\rERR||MSH^1|999^Text^HL70357^X^Alt^L~101^Other^HL70357|E\r";
+		assertEquals("MSH|^~\\&|A\nERR||MSH^1|999^^HL70357^X^^L~101^^HL70357|E\n", HL7Utils.protectHL7Message(err));
+	}
+
+	@Test
+	void testCustomPlan() {
+		Map<String, Collection<Integer>> allowed = new TreeMap<>();
+		allowed.put("MSH", Collections.emptyList());
+		allowed.put("PID", Arrays.asList(1, -5));
+		HL7MaskingPlan plan = HL7MaskingPlan.compile(allowed);
+		assertTrue(plan.isAllowed("xPIDx", 1, 4));
+		assertFalse(plan.isAllowed("PV1", 0, 3));
+
+		StringBuilder b = new StringBuilder("prefix:");
+		plan.mask("MSH#$~\\&#SENDER\rPID#1#2#3#4#FAMILY$GIVEN$$$CODE\rPV1#1\r", "[etc]", b);
+		assertEquals("prefix:MSH#$~\\&#SENDER\nPID#1####FAMILY$$$\n[etc]\n", b.toString());
+	}
+
+	@Test
+	void testDefaultAllowedSegmentsCanChange() {
+		assertEquals("", HL7Utils.protectHL7Message("PV1|1|I\r"));
+		HL7Utils.DEFAULT_ALLOWED_SEGMENTS.put("PV1", Arrays.asList(1));
+		try {
+			// Changes apply once the default plan is recompiled
+			assertEquals("", HL7Utils.protectHL7Message("PV1|1|I\r"));
+			HL7Utils.defaultAllowedSegmentsChanged();
+			assertEquals("PV1|1\n", HL7Utils.protectHL7Message("PV1|1|I\r"));
+		} finally {
+			HL7Utils.DEFAULT_ALLOWED_SEGMENTS.remove("PV1");
+			HL7Utils.defaultAllowedSegmentsChanged();
+		}
+		assertEquals("", HL7Utils.protectHL7Message("PV1|1|I\r"));
+	}
+}
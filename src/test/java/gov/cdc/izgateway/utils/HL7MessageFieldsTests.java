@@ -0,0 +1,83 @@
+package gov.cdc.izgateway.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.OffsetDateTime;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * Golden tests verifying that scanning MSH produces the same fields as a full HAPI parse.
+ */
+class HL7MessageFieldsTests {
+	private static final String VXU_SEGMENTS = 
+		"PID|1||12345^^^SIIS^MR||TEST^IZG^^^^^L||20200101|F|||123 MAIN ST^^ANYTOWN^MA^02101^USA^P\r"
+		+ "PD1|||||||||||02^Reminder/Recall - any method^HL70215|||||A|20200101\r"
+		+ "NK1|1|TEST^MOTHER^^^^^L|MTH^Mother^HL70063\r"
+		+ "ORC|RE||197023^DCS|||||||^Clerk^Myron||||||||DCS^Dabig Clinical System^StateIIS\r"
+		+ "RXA|0|1|20240101|20240101|08^HepB^CVX|0.5|mL^mL^UCUM||00^New^NIP001||||||Z0860BB|20251231|MSD^Merck^MVX|||CP|A\r"
+		+ "RXR|C28161^Intramuscular^NCIT|LA^Left Arm^HL70163\r"
+		+ "OBX|1|CE|64994-7^Vaccine funding program eligibility category^LN|1|V02^VFC eligible - Medicaid^HL70064||||||F|||20240101|||VXC40^Eligibility captured at the immunization level^CDCPHINVS\r";
+
+	static Stream<Arguments> testScanMatchesHapi() {
+		return Stream.of(
+			// VXU with many RXA/OBX segments
+			Arguments.of("MSH|^~\\&|SIIS^1.2.3^ISO|SIIS|IZG|IZG|20240101120000-0500||VXU^V04^VXU_V04|123456|P|2.5.1|||ER|AL|||||Z22^CDCPHINVS\r"
+				+ VXU_SEGMENTS + VXU_SEGMENTS + VXU_SEGMENTS, true),
+			// QBP
+			Arguments.of("MSH|^~\\&|EHR|FAC^2.16.840.1.113883.3.72.5.20^ISO|IIS|IIS|20240315083000||QBP^Q11^QBP_Q11|Q123|P|2.5.1|||NE|NE|||||Z44^CDCPHINVS|AK0000^^^^^AKIIS^XX^^^AK0000|AKIIS\r"
+				+ "QPD|Z44^Request Evaluated History and Forecast^CDCPHINVS|Q123|12345^^^FAC^MR|DOE^JANE^^^^^L||20200101|F\r"
+				+ "RCP|I|10^RD&Records&HL70126|R^real-time^HL70394\r", true),
+			// RSP with security and an empty facility
+			Arguments.of("MSH|^~\\&|WebIZ.1.0|||AS0000|20241116123011.989+0900|SECRET|RSP^K11^RSP_K11|PW0000123|P|2.5.1|||NE|NE|||||Z33^CDCPHINVS\r"
+				+ "MSA|AE|AS0000123\rERR||MSH^1^6^1^1|999^ApplicationError^HL70357|E\rQAK|755718|AE|Z34^Request Immunization History^CDCPHINVS\r", true),
+			// ACK with CRLF segment separators and minimal MSH
+			Arguments.of("MSH|^~\\&|IIS|IIS|EHR|EHR|20240101||ACK^V04^ACK|ACK1|P|2.5.1\r\nMSA|AA|123456\r\n", true),
+			// Version 2.3.1 structures are not available, so this is left to HAPI
+			Arguments.of("MSH|^~\\&|OLD|OLDFAC|IIS|IIS|199912311200||VXU^V04|M1|P|2.3.1\r" + VXU_SEGMENTS, false),
+			// Escaped content in MSH-3 is left to HAPI
+			Arguments.of("MSH|^~\\&|A\\T\\B|FAC|IIS|IIS|20240101||VXU^V04^VXU_V04|M2|P|2.5.1\r" + VXU_SEGMENTS, false),
+			// Missing trigger event
+			Arguments.of("MSH|^~\\&|A|FAC|IIS|IIS|20240101||VXU|M3|P|2.5.1\r" + VXU_SEGMENTS, false),
+			// Missing version
+			Arguments.of("MSH|^~\\&|A|FAC|IIS|IIS|20240101||VXU^V04^VXU_V04|M4|P\r" + VXU_SEGMENTS, false),
+			// Unknown version
+			Arguments.of("MSH|^~\\&|A|FAC|IIS|IIS|20240101||VXU^V04^VXU_V04|M5|P|9.9\r" + VXU_SEGMENTS, false),
+			// Not HL7
+			Arguments.of("This is not an HL7 message", false)
+		);
+	}
+
+	@ParameterizedTest
+	@MethodSource
+	void testScanMatchesHapi(String message, boolean scanned) {
+		HL7MessageFields fields = new HL7MessageFields(message);
+		assertEquals(scanned, fields.isScanned());
+
+		HL7MessageFields hapi = new HL7MessageFields();
+		hapi.parseWithHapi(message);
+		assertEquals(hapi.isParseErrorError(), fields.isParseErrorError());
+		assertEquals(hapi.getFieldSeparator(), fields.getFieldSeparator());
+		assertEquals(hapi.getEncodingCharacters(), fields.getEncodingCharacters());
+		assertEquals(hapi.getSendingApplication(), fields.getSendingApplication());
+		assertEquals(hapi.getSendingFacility(), fields.getSendingFacility());
+		assertEquals(hapi.getReceivingApplication(), fields.getReceivingApplication());
+		assertEquals(hapi.getReceivingFacility(), fields.getReceivingFacility());
+		assertEquals(hapi.getMessageDateTime(), fields.getMessageDateTime());
+		assertEquals(hapi.getMessageTimestamp(), fields.getMessageTimestamp());
+		assertEquals(hapi.getSecurity(), fields.getSecurity());
+		assertEquals(hapi.getMessageType(), fields.getMessageType());
+		assertEquals(hapi.getSendingResponsibleOrganization(), fields.getSendingResponsibleOrganization());
+	}
+
+	@Test
+	void testMessageTimestamp() {
+		HL7MessageFields fields = new HL7MessageFields("MSH|^~\\&|IIS|IIS|EHR|EHR|20241116123011.989+0900||ACK^V04^ACK|ACK1|P|2.5.1\rMSA|AA|123456\r");
+		assertEquals(OffsetDateTime.parse("2024-11-16T12:30:11.989+09:00"), fields.getMessageTimestamp());
+		assertNull(new HL7MessageFields("MSH|^~\\&|IIS|IIS|EHR|EHR|2024-11-16||ACK^V04^ACK|ACK1|P|2.5.1\r").getMessageTimestamp());
+	}
+}
@@ -0,0 +1,79 @@
+package gov.cdc.izgateway.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import gov.cdc.izgateway.logging.info.HL7ErrorInfo;
+
+class HL7ResponseAnalysisTests {
+	private static final String RSP =
+		"MSH|^~\\&|WebIZ.1.0|PW0000|AS0000|AS0000|20241116123011.989+0900||RSP^K11^RSP_K11|PW0000123|P|2.5.1|||NE|NE|||||Z33^CDCPHINVS\r"
+		+ "MSA|AE|AS0000123\r"
+		+ "ERR||MSH^1^6^1^1|999^ApplicationError^HL70357|E|4^Invalid value^HL70533^WEBIZ-AUTH-625^Facility is inactive^L\r"
+		+ "ERR||PID^1^11^5|101^Required field missing^HL70357|W\r"
+		+ "QAK|755718|AE|Z34^Request Immunization History^CDCPHINVS\r"
+		+ "QPD|Z34^Request Immunization History^CDCPHINVS|755718||SIMPSON^BART^M^^^^L\r"
+		+ "PID|1||12345^^^SIIS^MR\r";
+
+	@Test
+	void testAnalysis() {
+		HL7ResponseAnalysis analysis = HL7Utils.analyzeHL7Response(RSP);
+		assertEquals(HL7Utils.protectHL7Message(RSP), analysis.getMasked());
+		assertEquals("AE", analysis.getAckCode());
+		assertEquals("AE", analysis.getQueryStatus());
+		assertTrue(analysis.isError());
+
+		HL7ErrorInfo error = analysis.getErrors().get(0);
+		assertEquals("E", error.getSeverity());
+		assertEquals("999", error.getCode());
+		assertEquals("HL70357", error.getCodingSystem());
+		assertEquals("MSH^1^6^1^1", error.getLocation());
+		assertEquals("W", analysis.getErrors().get(1).getSeverity());
+		assertEquals("101", analysis.getErrors().get(1).getCode());
+
+		// The patient name is available for test detection, but the PID has no name
+		assertEquals(Arrays.asList("SIMPSON^BART^M^^^^L", null), analysis.getPatientNames());
+		assertEquals("20241116123011.989+0900", analysis.getMsh().getField(0, 7));
+		// MSH-7 is not retained in the masked copy
+		assertEquals("", analysis.getMaskedMsh().getField(0, 7));
+		assertEquals("PW0000123", analysis.getMaskedMsh().getField(0, 10));
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+		"'MSA|AA|1\r',false",
+		"'MSA|AR|1\r',true",
+		"'MSA|CR|1\r',true",
+		"'MSA|AE|1\rERR||PID^1^7|101^Missing^HL70357|W\r',false",
+		"'MSA|AA|1\rERR||PID^1^7|101^Missing^HL70357|E\r',true",
+	})
+	void testIsError(String segments, boolean isError) {
+		HL7ResponseAnalysis analysis = HL7Utils.analyzeHL7Response("MSH|^~\\&|A|B|C|D|20240101||ACK^V04^ACK|1|P|2.5.1\r" + segments);
+		assertEquals(isError, analysis.isError());
+	}
+
+	@Test
+	void testEmpty() {
+		assertNull(HL7Utils.analyzeHL7Response(null));
+		HL7ResponseAnalysis analysis = HL7Utils.analyzeHL7Response("");
+		assertEquals("", analysis.getMasked());
+		assertNull(analysis.getMsh());
+		assertNull(analysis.getMaskedMsh());
+		assertFalse(analysis.isError());
+	}
+
+	@Test
+	void testFirstSegmentMustBeMsh() {
+		HL7ResponseAnalysis analysis = HL7Utils.analyzeHL7Response("MSA|AR|1\rERR||||E\r");
+		assertNull(analysis.getMsh());
+		assertNull(analysis.getMaskedMsh());
+		// The first segment is still analyzed
+		assertEquals("AR", analysis.getAckCode());
+		assertTrue(analysis.isError());
+	}
+}
@@ -0,0 +1,97 @@
+package gov.cdc.izgateway.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compares the request throughput of a pool of platform threads sized like the default Tomcat
+ * connector with that of a virtual thread per request, when each request waits on a slow
+ * destination.  On runtimes before Java 21 only the platform thread pool is measured.
+ */
+@Tag(BenchmarkSupport.TAG)
+class VirtualThreadsBenchmark {
+	private static final int POOL_SIZE = 200;
+	private static final int REQUESTS = 4000;
+	private static final long DESTINATION_DELAY = 100;
+
+	@Test
+	void compareWithPlatformThreads() throws Exception {
+		HttpServer destination = startSlowDestination();
+		URL url = new URL("http://localhost:" + destination.getAddress().getPort() + "/");
+		try {
+			for (int round = 0; round < 3; round++) {
+				double platform = run(Executors.newFixedThreadPool(POOL_SIZE), url);
+				String virtual = "unsupported before Java 21";
+				if (VirtualThreads.isSupported()) {
+					virtual = String.format("%.1f requests/s", run(VirtualThreads.newVirtualThreadPerTaskExecutor(), url));
+				}
+				BenchmarkSupport.report(getClass(), "round %d: %d platform threads %.1f requests/s, virtual threads %s",
+					round, POOL_SIZE, platform, virtual);
+			}
+		} finally {
+			destination.stop(0);
+		}
+	}
+
+	private static HttpServer startSlowDestination() throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), REQUESTS);
+		server.createContext("/", exchange -> {
+			try (InputStream in = exchange.getRequestBody(); OutputStream out = exchange.getResponseBody()) {
+				in.readAllBytes();
+				Thread.sleep(DESTINATION_DELAY);
+				byte[] body = "OK".getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, body.length);
+				out.write(body);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		return server;
+	}
+
+	private static double run(ExecutorService executor, URL url) throws Exception {
+		long start = System.nanoTime();
+		try {
+			List<Future<Integer>> results = new ArrayList<>(REQUESTS);
+			for (int i = 0; i < REQUESTS; i++) {
+				results.add(executor.submit(() -> send(url)));
+			}
+			for (Future<Integer> result: results) {
+				// Both executors must complete every request for their throughput to be comparable
+				assertEquals(200, result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return REQUESTS * 1e9 / (System.nanoTime() - start);
+	}
+
+	private static int send(URL url) throws IOException {
+		HttpURLConnection con = (HttpURLConnection) url.openConnection();
+		try (InputStream in = con.getInputStream()) {
+			in.readAllBytes();
+			return con.getResponseCode();
+		} finally {
+			con.disconnect();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package gov.cdc.izgateway.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+class VirtualThreadsTests {
+	/** Classes used while handling requests, whose locks must not pin a virtual thread to its carrier */
+	private static final List<String> HOT_PATH_CLASSES = List.of(
+		"gov.cdc.izgateway.security.KeyStoreLoader",
+		"gov.cdc.izgateway.security.ClientTlsSupport",
+		"gov.cdc.izgateway.security.crypto.KeyProviderBase",
+		"gov.cdc.izgateway.security.oauth.ExternalTokenStore",
+		"gov.cdc.izgateway.security.ocsp.RevocationChecker",
+		"gov.cdc.izgateway.metrics.AdaptiveTimeouts",
+		"gov.cdc.izgateway.logging.capture.TrafficCapture",
+		"gov.cdc.izgateway.common.HealthService",
+		"gov.cdc.izgateway.logging.markers.StackTraceCache",
+		"gov.cdc.izgateway.utils.HL7Utils",
+		"gov.cdc.izgateway.utils.HL7MessageFields"
+	);
+	private static final Pattern SYNCHRONIZED_BLOCK = Pattern.compile("\\bsynchronized\\s*\\(");
+
+	@Test
+	void testNoSynchronizedMethodsOnHotPaths() throws ClassNotFoundException {
+		List<String> pinning = new ArrayList<>();
+		for (Class<?> c: getHotPathClasses()) {
+			for (Method m: c.getDeclaredMethods()) {
+				if (Modifier.isSynchronized(m.getModifiers())) {
+					pinning.add(c.getName() + "." + m.getName());
+				}
+			}
+		}
+		assertEquals(List.of(), pinning);
+	}
+
+	@Test
+	void testNoThreadLocalsOnHotPaths() throws ClassNotFoundException {
+		// With a virtual thread per request, a value cached in a ThreadLocal is used only once
+		List<String> threadLocals = new ArrayList<>();
+		for (Class<?> c: getHotPathClasses()) {
+			for (Field f: c.getDeclaredFields()) {
+				if (ThreadLocal.class.isAssignableFrom(f.getType())) {
+					threadLocals.add(c.getName() + "." + f.getName());
+				}
+			}
+		}
+		assertEquals(List.of(), threadLocals);
+	}
+
+	/**
+	 * @return The hot path classes and the classes nested within them
+	 */
+	private List<Class<?>> getHotPathClasses() throws ClassNotFoundException {
+		List<Class<?>> classes = new ArrayList<>();
+		for (String name: HOT_PATH_CLASSES) {
+			addWithNested(classes, Class.forName(name, false, getClass().getClassLoader()));
+		}
+		return classes;
+	}
+
+	private static void addWithNested(List<Class<?>> classes, Class<?> c) {
+		classes.add(c);
+		for (Class<?> nested: c.getDeclaredClasses()) {
+			addWithNested(classes, nested);
+		}
+	}
+
+	@Test
+	void testNoSynchronizedBlocksOnHotPaths() throws IOException {
+		// Reflection cannot see synchronized blocks, so look for them in the source
+		List<String> pinning = new ArrayList<>();
+		for (String name: HOT_PATH_CLASSES) {
+			Path source = Path.of("src/main/java", name.replace('.', '/') + ".java");
+			List<String> lines = Files.readAllLines(source);
+			for (int i = 0; i < lines.size(); i++) {
+				String line = lines.get(i).trim();
+				if (!line.startsWith("//") && !line.startsWith("*") && SYNCHRONIZED_BLOCK.matcher(line).find()) {
+					pinning.add(source.getFileName() + ":" + (i + 1));
+				}
+			}
+		}
+		assertEquals(List.of(), pinning);
+	}
+
+	@Test
+	void testExecutor() throws Exception {
+		if (!VirtualThreads.isSupported()) {
+			assertThrows(UnsupportedOperationException.class, VirtualThreads::newVirtualThreadPerTaskExecutor);
+			assertFalse(VirtualThreads.isVirtual(Thread.currentThread()));
+			return;
+		}
+		ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+		try {
+			assertTrue(executor.submit(() -> VirtualThreads.isVirtual(Thread.currentThread())).get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdown();
+		}
+		assertFalse(VirtualThreads.isVirtual(Thread.currentThread()));
+	}
+}